@@ -0,0 +1,975 @@
+/*
+ * Copyright (C) 2016 Red Bottle Design, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redbottledesign.accounting.quickbooks.batch;
+
+import com.redbottledesign.accounting.quickbooks.exception.OutOfBalanceException;
+import com.redbottledesign.accounting.quickbooks.iif.IifExportable;
+import com.redbottledesign.accounting.quickbooks.models.Amount;
+import com.redbottledesign.accounting.quickbooks.models.BooleanValue;
+import com.redbottledesign.accounting.quickbooks.models.DataLineView;
+import com.redbottledesign.accounting.quickbooks.models.Date;
+import com.redbottledesign.accounting.quickbooks.models.DocNumber;
+import com.redbottledesign.accounting.quickbooks.models.ImmutableSplitLine;
+import com.redbottledesign.accounting.quickbooks.models.ImmutableTransactionLine;
+import com.redbottledesign.accounting.quickbooks.models.PaymentTerms;
+import com.redbottledesign.accounting.quickbooks.models.SplitLine;
+import com.redbottledesign.accounting.quickbooks.models.Transaction;
+import com.redbottledesign.accounting.quickbooks.models.TransactionLine;
+import com.redbottledesign.accounting.quickbooks.models.TransactionLineView;
+import com.redbottledesign.accounting.quickbooks.models.TxnType;
+import com.redbottledesign.accounting.quickbooks.util.IifUtils;
+import com.redbottledesign.util.Argument;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The common base for compact stores of transaction lines.
+ *
+ * <p>Every line is kept as a fixed set of primitive columns: amounts as whole
+ * cents, dates as epoch days, transaction types as byte codes, and all string
+ * columns as IDs in a shared {@link StringDictionary}. This class keeps the
+ * dictionary, the transaction boundaries, and the {@code TRNS}-only columns
+ * (to-print flag, due date, and terms) of each transaction; subclasses decide
+ * how the per-line columns are stored.</p>
+ *
+ * <p>The first line of each transaction is always exported as a
+ * {@code TRNS} line, and all remaining lines as {@code SPL} lines.</p>
+ *
+ * <p>Transactions can be added either from existing {@link Transaction}
+ * objects, or line-by-line without creating any model objects, through
+ * {@link #startTransaction()}, {@link #addLine}, and
+ * {@link #endTransaction()}. Stored lines can be read back without creating
+ * model objects through a {@link LineCursor}.</p>
+ *
+ * <p>This class is not thread-safe.</p>
+ *
+ * @author Guy Paddock (guy@redbottledesign.com)
+ */
+public abstract class AbstractLineStore
+implements IifExportable {
+    /**
+     * The sentinel epoch day used when a date is not set.
+     */
+    public static final int NO_DATE = Integer.MIN_VALUE;
+
+    /**
+     * The sentinel dictionary ID used when a value is not set at all (as
+     * opposed to being set to an empty value).
+     */
+    public static final int NO_VALUE = -1;
+
+    /**
+     * The code for a to-print flag that has no value.
+     */
+    static final byte TO_PRINT_EMPTY = -1;
+
+    /**
+     * The code for a to-print flag of "no".
+     */
+    static final byte TO_PRINT_NO = 0;
+
+    /**
+     * The code for a to-print flag of "yes".
+     */
+    static final byte TO_PRINT_YES = 1;
+
+    /**
+     * The transaction types, indexed by their byte codes.
+     */
+    static final TxnType[] TYPES = TxnType.values();
+
+    /**
+     * The dictionary for all string columns in this store.
+     */
+    private final StringDictionary dictionary;
+
+    /**
+     * The number of completed transactions in this store.
+     */
+    private int transactionCount;
+
+    /**
+     * The number of lines in this store, including the lines of any
+     * transaction still in progress.
+     */
+    private int lineCount;
+
+    /**
+     * Whether or not a transaction is in progress.
+     */
+    private boolean isTransactionOpen;
+
+    /**
+     * The net total of the transaction in progress, in cents.
+     */
+    private long openTransactionTotal;
+
+    /**
+     * The index of the first line of each transaction, plus one extra entry
+     * that marks the start of the next transaction.
+     */
+    private int[] transactionOffsets;
+
+    /**
+     * The to-print flag of each transaction.
+     */
+    private byte[] toPrintCodes;
+
+    /**
+     * The due date of each transaction, in epoch days.
+     */
+    private int[] dueDates;
+
+    /**
+     * The dictionary ID of the payment terms of each transaction.
+     */
+    private int[] termsIds;
+
+    /**
+     * Constructor for {@code AbstractLineStore}.
+     *
+     * @param   transactionCapacity
+     *          The expected number of transactions. The store grows as
+     *          needed.
+     */
+    protected AbstractLineStore(final int transactionCapacity) {
+        this(transactionCapacity, new StringDictionary());
+    }
+
+    /**
+     * Constructor for {@code AbstractLineStore} that stores string columns in
+     * an existing dictionary.
+     *
+     * <p>This allows several stores to share one dictionary, so that each
+     * distinct value is only kept and encoded once across all of them.</p>
+     *
+     * @param   transactionCapacity
+     *          The expected number of transactions. The store grows as
+     *          needed.
+     *
+     * @param   dictionary
+     *          The dictionary to use for string columns.
+     */
+    protected AbstractLineStore(final int transactionCapacity, final StringDictionary dictionary) {
+        Argument.ensureInRange(transactionCapacity, 1, Integer.MAX_VALUE - 1, "transactionCapacity");
+        Argument.ensureNotNull(dictionary, "dictionary");
+
+        this.dictionary         = dictionary;
+        this.transactionOffsets = new int[transactionCapacity + 1];
+        this.toPrintCodes       = new byte[transactionCapacity];
+        this.dueDates           = new int[transactionCapacity];
+        this.termsIds           = new int[transactionCapacity];
+    }
+
+    /**
+     * Indicates whether or not the given transaction can be added to a store
+     * without any loss of information.
+     *
+     * <p>This is the case if the transaction is in balance; its first line is
+     * a {@link TransactionLine}, and its remaining lines are
+     * {@link SplitLine}s; neither the transaction nor its lines are
+     * subclasses that could change how they are exported; every line has a
+     * type, date, account, and amount; and, all of its amounts are whole
+     * cents.</p>
+     *
+     * @param   transaction
+     *          The transaction to check.
+     *
+     * @return  {@code true} if {@link #add(Transaction)} would accept the
+     *          transaction and export it identically; or, {@code false}
+     *          otherwise.
+     */
+    public static boolean isStorable(final Transaction transaction) {
+        final List<DataLineView>    lines   = transaction.getLineViews();
+        boolean                     result  =
+            (transaction.getClass() == Transaction.class) && !lines.isEmpty() && transaction.isInBalance();
+
+        for (int lineIndex = 0; result && (lineIndex < lines.size()); ++lineIndex) {
+            final DataLineView  line        = lines.get(lineIndex);
+            final Class<?>      lineClass   = line.getClass();
+
+            if (lineIndex == 0) {
+                result = (lineClass == TransactionLine.class) || (lineClass == ImmutableTransactionLine.class);
+            }
+            else {
+                result = (lineClass == SplitLine.class) || (lineClass == ImmutableSplitLine.class);
+            }
+
+            result =
+                result
+                && (line.getType() != null)
+                && (line.getDate() != null)
+                && (line.getAccount() != null)
+                && (line.getAmount() != null)
+                && line.getAmount().isWholeCents();
+        }
+
+        return result;
+    }
+
+    /**
+     * Adds the given transaction to this store.
+     *
+     * <p>The transaction must be in balance, its first line must be a
+     * {@link TransactionLine}, its remaining lines must be
+     * {@link SplitLine}s, and all amounts must be whole cents.</p>
+     *
+     * @param   transaction
+     *          The transaction to add.
+     *
+     * @throws  IllegalArgumentException
+     *          If the transaction is empty, or has lines in an unsupported
+     *          arrangement.
+     *
+     * @throws  OutOfBalanceException
+     *          If the transaction is not in balance.
+     *
+     * @throws  ArithmeticException
+     *          If any amount in the transaction is not a whole number of
+     *          cents.
+     */
+    public void add(final Transaction transaction)
+    throws IllegalArgumentException, OutOfBalanceException, ArithmeticException {
+        final List<DataLineView>    lines;
+        final TransactionLineView   firstLine;
+
+        Argument.ensureNotNull(transaction, "transaction");
+
+        transaction.ensureIsInBalance();
+
+        lines = transaction.getLineViews();
+
+        if (lines.isEmpty() || !(lines.get(0) instanceof TransactionLineView)) {
+            throw new IllegalArgumentException(
+                "The first line of a batched transaction must be a transaction line.");
+        }
+
+        firstLine = (TransactionLineView)lines.get(0);
+
+        this.startTransaction(firstLine.needsToBePrinted(), firstLine.getDueDate(), firstLine.getTerms());
+
+        try {
+            for (int lineIndex = 0; lineIndex < lines.size(); ++lineIndex) {
+                final DataLineView line = lines.get(lineIndex);
+
+                if ((lineIndex > 0) && !((line instanceof SplitLine) || (line instanceof ImmutableSplitLine))) {
+                    throw new IllegalArgumentException(
+                        "All but the first line of a batched transaction must be split lines.");
+                }
+
+                this.appendLine(
+                    this.dictionary.idOf(line.getDocNumber().getValue()),
+                    this.dictionary.idOf(line.getId().getValue()),
+                    line.getType(),
+                    line.getDate().getEpochDay(),
+                    this.dictionary.idOf(line.getAccount().getValue()),
+                    this.dictionary.idOf(line.getName().getValue()),
+                    this.dictionary.idOf(line.getTxnClass().getValue()),
+                    line.getAmount().getCents(),
+                    this.dictionary.idOf(line.getPaymentMethod().getValue()),
+                    this.dictionary.idOf(line.getMemo().getValue()));
+            }
+        }
+        catch (RuntimeException ex) {
+            this.abandonTransaction();
+
+            throw ex;
+        }
+
+        this.endTransaction();
+    }
+
+    /**
+     * Starts a new transaction, with empty values for the
+     * {@code TRNS}-only columns.
+     *
+     * @throws  IllegalStateException
+     *          If a transaction is already in progress.
+     */
+    public void startTransaction()
+    throws IllegalStateException {
+        this.startTransaction(BooleanValue.EMPTY, null, null);
+    }
+
+    /**
+     * Starts a new transaction.
+     *
+     * <p>Lines are added to the transaction with {@link #addLine}, and the
+     * transaction is completed with {@link #endTransaction()}.</p>
+     *
+     * @param   needsToBePrinted
+     *          Whether or not the transaction should be marked "To be
+     *          printed"; or, {@link BooleanValue#EMPTY}.
+     *
+     * @param   dueDate
+     *          The due date for a bill or invoice; or, {@code null}.
+     *
+     * @param   terms
+     *          The payment terms for a bill or invoice; or, {@code null}.
+     *
+     * @throws  IllegalStateException
+     *          If a transaction is already in progress.
+     */
+    public void startTransaction(final BooleanValue needsToBePrinted, final Date dueDate,
+                                 final PaymentTerms terms)
+    throws IllegalStateException {
+        final int   transactionIndex = this.transactionCount;
+        final byte  toPrintCode;
+
+        Argument.ensureNotNull(needsToBePrinted, "needsToBePrinted");
+
+        if (this.isTransactionOpen) {
+            throw new IllegalStateException("A transaction is already in progress.");
+        }
+
+        if (needsToBePrinted.getValue() == null) {
+            toPrintCode = TO_PRINT_EMPTY;
+        }
+        else if (needsToBePrinted.getValue()) {
+            toPrintCode = TO_PRINT_YES;
+        }
+        else {
+            toPrintCode = TO_PRINT_NO;
+        }
+
+        this.ensureTransactionCapacity(transactionIndex + 1);
+
+        this.toPrintCodes[transactionIndex] = toPrintCode;
+
+        if (dueDate == null) {
+            this.dueDates[transactionIndex] = NO_DATE;
+        }
+        else {
+            this.dueDates[transactionIndex] = dueDate.getEpochDay();
+        }
+
+        if (terms == null) {
+            this.termsIds[transactionIndex] = NO_VALUE;
+        }
+        else {
+            this.termsIds[transactionIndex] = this.dictionary.idOf(terms.getValue());
+        }
+
+        this.transactionOffsets[transactionIndex] = this.lineCount;
+        this.openTransactionTotal                 = 0;
+        this.isTransactionOpen                    = true;
+    }
+
+    /**
+     * Adds a line to the transaction in progress.
+     *
+     * <p>Empty strings are used for any optional column that has no value.
+     * By convention, the amount is negative for a credit and positive for a
+     * debit.</p>
+     *
+     * @param   type
+     *          The type of transaction.
+     *
+     * @param   epochDay
+     *          The date of the transaction, as a number of days since
+     *          1970-01-01.
+     *
+     * @param   docNumber
+     *          The document number.
+     *
+     * @param   account
+     *          The account that the line affects.
+     *
+     * @param   name
+     *          The name to associate with the line.
+     *
+     * @param   txnClass
+     *          The transaction class.
+     *
+     * @param   amountCents
+     *          The amount of the line, in cents.
+     *
+     * @param   paymentMethod
+     *          The payment method.
+     *
+     * @param   memo
+     *          A note to add to the line.
+     *
+     * @throws  IllegalStateException
+     *          If no transaction is in progress.
+     */
+    public void addLine(final TxnType type, final int epochDay, final String docNumber,
+                        final String account, final String name, final String txnClass,
+                        final long amountCents, final String paymentMethod, final String memo)
+    throws IllegalStateException {
+        Argument.ensureNotNull(type,            "type");
+        Argument.ensureNotNull(docNumber,       "docNumber");
+        Argument.ensureNotNull(account,         "account");
+        Argument.ensureNotNull(name,            "name");
+        Argument.ensureNotNull(txnClass,        "txnClass");
+        Argument.ensureNotNull(paymentMethod,   "paymentMethod");
+        Argument.ensureNotNull(memo,            "memo");
+
+        if (account.isEmpty()) {
+            throw new IllegalArgumentException("account cannot be empty.");
+        }
+
+        if (docNumber.length() > DocNumber.MAX_LENGTH) {
+            throw new IllegalArgumentException(
+                String.format(
+                    "docNumber cannot be longer than %d characters (was given `%s`).",
+                    DocNumber.MAX_LENGTH,
+                    docNumber));
+        }
+
+        this.appendLine(
+            this.dictionary.idOf(docNumber),
+            StringDictionary.EMPTY_ID,
+            type,
+            epochDay,
+            this.dictionary.idOf(account),
+            this.dictionary.idOf(name),
+            this.dictionary.idOf(txnClass),
+            amountCents,
+            this.dictionary.idOf(paymentMethod),
+            this.dictionary.idOf(memo));
+    }
+
+    /**
+     * Completes the transaction in progress.
+     *
+     * <p>If the transaction is empty or not in balance, it is discarded and an
+     * exception is raised.</p>
+     *
+     * @throws  IllegalStateException
+     *          If no transaction is in progress, or the transaction has no
+     *          lines.
+     *
+     * @throws  OutOfBalanceException
+     *          If the transaction is not in balance.
+     */
+    public void endTransaction()
+    throws IllegalStateException, OutOfBalanceException {
+        final long total = this.openTransactionTotal;
+
+        this.ensureTransactionOpen();
+
+        if (this.lineCount == this.transactionOffsets[this.transactionCount]) {
+            this.abandonTransaction();
+
+            throw new IllegalStateException("A batched transaction must have at least one line.");
+        }
+
+        if (total != 0) {
+            this.abandonTransaction();
+
+            throw new OutOfBalanceException(
+                String.format(
+                    "This transaction is not in balance (DISCREPANCY: %s).",
+                    Amount.ofCents(total)));
+        }
+
+        ++this.transactionCount;
+
+        this.transactionOffsets[this.transactionCount] = this.lineCount;
+        this.isTransactionOpen                         = false;
+    }
+
+    /**
+     * Discards the transaction in progress, if any.
+     */
+    public void abandonTransaction() {
+        if (this.isTransactionOpen) {
+            this.lineCount          = this.transactionOffsets[this.transactionCount];
+            this.isTransactionOpen  = false;
+        }
+    }
+
+    /**
+     * Gets the dictionary that holds the values of all string columns in this
+     * store.
+     *
+     * @return  The dictionary.
+     */
+    public StringDictionary getDictionary() {
+        return this.dictionary;
+    }
+
+    /**
+     * Gets the number of completed transactions in this store.
+     *
+     * @return  The number of transactions.
+     */
+    public int getTransactionCount() {
+        return this.transactionCount;
+    }
+
+    /**
+     * Gets the number of lines in all completed transactions in this store.
+     *
+     * @return  The number of lines.
+     */
+    public int getLineCount() {
+        return this.transactionOffsets[this.transactionCount];
+    }
+
+    /**
+     * Gets the index of the first line of the given transaction.
+     *
+     * @param   transactionIndex
+     *          The index of the transaction.
+     *
+     * @return  The index of the transaction's {@code TRNS} line.
+     */
+    public int getFirstLineIndex(final int transactionIndex) {
+        this.ensureValidTransaction(transactionIndex);
+
+        return this.transactionOffsets[transactionIndex];
+    }
+
+    /**
+     * Gets the index just past the last line of the given transaction.
+     *
+     * @param   transactionIndex
+     *          The index of the transaction.
+     *
+     * @return  The index of the first line of the next transaction.
+     */
+    public int getEndLineIndex(final int transactionIndex) {
+        this.ensureValidTransaction(transactionIndex);
+
+        return this.transactionOffsets[transactionIndex + 1];
+    }
+
+    /**
+     * Gets the to-print flag of the given transaction.
+     *
+     * @param   transactionIndex
+     *          The index of the transaction.
+     *
+     * @return  {@code 1} for "yes", {@code 0} for "no", or {@code -1} if the
+     *          flag has no value.
+     */
+    public byte getToPrintCode(final int transactionIndex) {
+        this.ensureValidTransaction(transactionIndex);
+
+        return this.toPrintCodes[transactionIndex];
+    }
+
+    /**
+     * Gets the due date of the given transaction.
+     *
+     * @param   transactionIndex
+     *          The index of the transaction.
+     *
+     * @return  The due date, in epoch days; or, {@link #NO_DATE}.
+     */
+    public int getDueDate(final int transactionIndex) {
+        this.ensureValidTransaction(transactionIndex);
+
+        return this.dueDates[transactionIndex];
+    }
+
+    /**
+     * Gets the dictionary ID of the payment terms of the given transaction.
+     *
+     * @param   transactionIndex
+     *          The index of the transaction.
+     *
+     * @return  The ID of the terms; or, {@link #NO_VALUE}.
+     */
+    public int getTermsId(final int transactionIndex) {
+        this.ensureValidTransaction(transactionIndex);
+
+        return this.termsIds[transactionIndex];
+    }
+
+    /**
+     * Gets the dictionary ID of the document number of the given line.
+     *
+     * @param   lineIndex
+     *          The index of the line.
+     *
+     * @return  The ID of the document number.
+     */
+    public abstract int getDocNumberId(int lineIndex);
+
+    /**
+     * Gets the dictionary ID of the transaction identifier of the given line.
+     *
+     * @param   lineIndex
+     *          The index of the line.
+     *
+     * @return  The ID of the transaction identifier.
+     */
+    public abstract int getTxnIdentifierId(int lineIndex);
+
+    /**
+     * Gets the transaction type of the given line.
+     *
+     * @param   lineIndex
+     *          The index of the line.
+     *
+     * @return  The type of transaction.
+     */
+    public abstract TxnType getType(int lineIndex);
+
+    /**
+     * Gets the date of the given line.
+     *
+     * @param   lineIndex
+     *          The index of the line.
+     *
+     * @return  The date, in epoch days.
+     */
+    public abstract int getDate(int lineIndex);
+
+    /**
+     * Gets the dictionary ID of the account of the given line.
+     *
+     * @param   lineIndex
+     *          The index of the line.
+     *
+     * @return  The ID of the account.
+     */
+    public abstract int getAccountId(int lineIndex);
+
+    /**
+     * Gets the dictionary ID of the name of the given line.
+     *
+     * @param   lineIndex
+     *          The index of the line.
+     *
+     * @return  The ID of the name.
+     */
+    public abstract int getNameId(int lineIndex);
+
+    /**
+     * Gets the dictionary ID of the class of the given line.
+     *
+     * @param   lineIndex
+     *          The index of the line.
+     *
+     * @return  The ID of the class.
+     */
+    public abstract int getTxnClassId(int lineIndex);
+
+    /**
+     * Gets the amount of the given line.
+     *
+     * @param   lineIndex
+     *          The index of the line.
+     *
+     * @return  The amount, in cents.
+     */
+    public abstract long getAmountCents(int lineIndex);
+
+    /**
+     * Gets the dictionary ID of the payment method of the given line.
+     *
+     * @param   lineIndex
+     *          The index of the line.
+     *
+     * @return  The ID of the payment method.
+     */
+    public abstract int getPaymentMethodId(int lineIndex);
+
+    /**
+     * Gets the dictionary ID of the memo of the given line.
+     *
+     * @param   lineIndex
+     *          The index of the line.
+     *
+     * @return  The ID of the memo.
+     */
+    public abstract int getMemoId(int lineIndex);
+
+    /**
+     * Creates a new cursor over the lines in this store.
+     *
+     * <p>The cursor starts out positioned before the first line.</p>
+     *
+     * @return  The new cursor.
+     */
+    public LineCursor cursor() {
+        return new LineCursor(this);
+    }
+
+    /**
+     * Re-creates the model object for the given transaction.
+     *
+     * <p>Each call creates a new {@link Transaction}. Values are obtained
+     * through the shared value pools (e.g.
+     * {@link com.redbottledesign.accounting.quickbooks.models.Account#of(String)}).</p>
+     *
+     * @param   transactionIndex
+     *          The index of the transaction.
+     *
+     * @return  The transaction.
+     */
+    public Transaction getTransaction(final int transactionIndex) {
+        final Transaction   transaction = new Transaction();
+        final LineCursor    cursor      = this.cursor();
+        final int           endLine     = this.getEndLineIndex(transactionIndex);
+
+        cursor.moveTo(this.getFirstLineIndex(transactionIndex));
+
+        do {
+            transaction.addLine(cursor.toDataLine());
+        }
+        while (cursor.next() && (cursor.getLineIndex() < endLine));
+
+        return transaction;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Each transaction is exported through a {@link LineStoreRenderer}, as
+     * long as every value in the dictionary can be represented in
+     * {@link IifUtils#IIF_CHARSET}. Otherwise, each transaction is exported
+     * as an object instead, so that characters outside of that charset are
+     * kept, just as they are by {@link Transaction#toIifString()}.</p>
+     */
+    @Override
+    public String toIifString() {
+        final String result;
+
+        if (this.dictionary.isIifCharsetLossless()) {
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+            try {
+                new LineStoreRenderer(this).render(output);
+            }
+            catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+
+            result = new String(output.toByteArray(), IifUtils.IIF_CHARSET);
+        }
+        else {
+            final List<String> iifTransactions = new ArrayList<>(this.transactionCount);
+
+            for (int transactionIndex = 0; transactionIndex < this.transactionCount; ++transactionIndex) {
+                iifTransactions.add(this.getTransaction(transactionIndex).toIifString());
+            }
+
+            result = IifUtils.joinLines(iifTransactions);
+        }
+
+        return result;
+    }
+
+    /**
+     * Stores the per-line columns of a new line.
+     *
+     * <p>This is only called for the line just past the last stored line, so
+     * that implementations can grow their storage as needed. A line that
+     * belongs to a transaction that is later abandoned is overwritten by the
+     * next call.</p>
+     *
+     * <p>String columns are given as dictionary IDs, the type as a
+     * {@link TxnType}, the date in epoch days, and the amount in cents.</p>
+     *
+     * @param   lineIndex
+     *          The index of the new line.
+     *
+     * @param   docNumberId
+     *          The ID of the document number.
+     *
+     * @param   txnIdentifierId
+     *          The ID of the transaction identifier.
+     *
+     * @param   type
+     *          The type of transaction.
+     *
+     * @param   epochDay
+     *          The date of the line.
+     *
+     * @param   accountId
+     *          The ID of the account.
+     *
+     * @param   nameId
+     *          The ID of the name.
+     *
+     * @param   txnClassId
+     *          The ID of the class.
+     *
+     * @param   amountCents
+     *          The amount of the line.
+     *
+     * @param   paymentMethodId
+     *          The ID of the payment method.
+     *
+     * @param   memoId
+     *          The ID of the memo.
+     */
+    protected abstract void storeLine(int lineIndex, int docNumberId, int txnIdentifierId,
+                                      TxnType type, int epochDay, int accountId, int nameId,
+                                      int txnClassId, long amountCents, int paymentMethodId,
+                                      int memoId);
+
+    /**
+     * Finds the transaction that contains the given line.
+     *
+     * @param   lineIndex
+     *          The index of a line in a completed transaction.
+     *
+     * @return  The index of the transaction.
+     */
+    int findTransaction(final int lineIndex) {
+        final int result;
+        final int searchResult;
+
+        this.ensureValidLine(lineIndex);
+
+        searchResult = Arrays.binarySearch(this.transactionOffsets, 0, this.transactionCount, lineIndex);
+
+        if (searchResult >= 0) {
+            result = searchResult;
+        }
+        else {
+            // The insertion point is the transaction after the one we want.
+            result = -searchResult - 2;
+        }
+
+        return result;
+    }
+
+    /**
+     * Ensures that the given index refers to a line in a completed
+     * transaction.
+     *
+     * @param   lineIndex
+     *          The index to check.
+     *
+     * @throws  IndexOutOfBoundsException
+     *          If there is no such line.
+     */
+    protected void ensureValidLine(final int lineIndex)
+    throws IndexOutOfBoundsException {
+        if ((lineIndex < 0) || (lineIndex >= this.getLineCount())) {
+            throw new IndexOutOfBoundsException(
+                String.format(
+                    "No line has index `%d` (store has `%d` lines).",
+                    lineIndex,
+                    this.getLineCount()));
+        }
+    }
+
+    /**
+     * Calculates the new capacity for a column that needs to grow.
+     *
+     * @param   currentCapacity
+     *          The current capacity of the column.
+     *
+     * @param   minCapacity
+     *          The minimum capacity required.
+     *
+     * @return  The new capacity.
+     */
+    protected static int growCapacity(final int currentCapacity, final int minCapacity) {
+        final long doubled = (long)currentCapacity * 2;
+
+        return (int)Math.min(Integer.MAX_VALUE - 8, Math.max(doubled, minCapacity));
+    }
+
+    /**
+     * Appends a line to the transaction in progress, with all string columns
+     * already converted to dictionary IDs.
+     *
+     * @throws  IllegalStateException
+     *          If no transaction is in progress.
+     *
+     * @throws  ArithmeticException
+     *          If the net total of the transaction overflows.
+     */
+    private void appendLine(final int docNumberId, final int txnIdentifierId, final TxnType type,
+                            final int epochDay, final int accountId, final int nameId,
+                            final int txnClassId, final long amountCents,
+                            final int paymentMethodId, final int memoId) {
+        this.ensureTransactionOpen();
+
+        this.openTransactionTotal = Math.addExact(this.openTransactionTotal, amountCents);
+
+        this.storeLine(
+            this.lineCount,
+            docNumberId,
+            txnIdentifierId,
+            type,
+            epochDay,
+            accountId,
+            nameId,
+            txnClassId,
+            amountCents,
+            paymentMethodId,
+            memoId);
+
+        ++this.lineCount;
+    }
+
+    /**
+     * Ensures that a transaction is in progress.
+     *
+     * @throws  IllegalStateException
+     *          If no transaction is in progress.
+     */
+    private void ensureTransactionOpen()
+    throws IllegalStateException {
+        if (!this.isTransactionOpen) {
+            throw new IllegalStateException("No transaction is in progress.");
+        }
+    }
+
+    /**
+     * Ensures that the given index refers to a completed transaction.
+     *
+     * @param   transactionIndex
+     *          The index to check.
+     *
+     * @throws  IndexOutOfBoundsException
+     *          If there is no such transaction.
+     */
+    private void ensureValidTransaction(final int transactionIndex)
+    throws IndexOutOfBoundsException {
+        if ((transactionIndex < 0) || (transactionIndex >= this.transactionCount)) {
+            throw new IndexOutOfBoundsException(
+                String.format(
+                    "No transaction has index `%d` (store has `%d` transactions).",
+                    transactionIndex,
+                    this.transactionCount));
+        }
+    }
+
+    /**
+     * Grows the per-transaction columns, if necessary, to hold at least the
+     * given number of transactions.
+     *
+     * @param   capacity
+     *          The minimum number of transactions.
+     */
+    private void ensureTransactionCapacity(final int capacity) {
+        if (capacity > this.toPrintCodes.length) {
+            final int newCapacity = growCapacity(this.toPrintCodes.length, capacity);
+
+            this.transactionOffsets = Arrays.copyOf(this.transactionOffsets, newCapacity + 1);
+            this.toPrintCodes       = Arrays.copyOf(this.toPrintCodes, newCapacity);
+            this.dueDates           = Arrays.copyOf(this.dueDates, newCapacity);
+            this.termsIds           = Arrays.copyOf(this.termsIds, newCapacity);
+        }
+    }
+}
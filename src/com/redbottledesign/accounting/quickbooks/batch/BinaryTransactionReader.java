@@ -0,0 +1,404 @@
+/*
+ * Copyright (C) 2016 Red Bottle Design, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redbottledesign.accounting.quickbooks.batch;
+
+import com.redbottledesign.accounting.quickbooks.iif.HeaderLine;
+import com.redbottledesign.accounting.quickbooks.iif.IifFile;
+import com.redbottledesign.accounting.quickbooks.models.DataLine;
+import com.redbottledesign.accounting.quickbooks.models.Name;
+import com.redbottledesign.accounting.quickbooks.models.Transaction;
+import com.redbottledesign.util.Argument;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads back the items of a stream that was written by a
+ * {@link BinaryTransactionWriter}, one at a time.
+ *
+ * <p>Items are read with {@link #next()}, which reports what kind of item was
+ * read; the item itself is then available from the matching accessor. For
+ * example:</p>
+ * <pre>
+ *   while (reader.next() != BinaryTransactionReader.ItemType.END) {
+ *       ...
+ *   }
+ * </pre>
+ *
+ * <p>Each transaction that is read is built from
+ * {@link com.redbottledesign.accounting.quickbooks.models.TransactionLine}
+ * and {@link com.redbottledesign.accounting.quickbooks.models.SplitLine}
+ * objects, and is {@linkplain Transaction#freeze() frozen}. It exports
+ * identically to the transaction that was written. Streams written in a
+ * newer version of the format than {@value BinaryTransactionWriter#FORMAT_VERSION}
+ * are rejected.</p>
+ *
+ * <p>This class is not thread-safe.</p>
+ *
+ * @author Guy Paddock (guy@redbottledesign.com)
+ */
+public class BinaryTransactionReader
+implements Closeable {
+    private final TransactionRecordReader records;
+    private final int formatVersion;
+
+    private ItemType itemType;
+    private HeaderLine.Type nameTable;
+    private List<Name> names;
+    private DataLine line;
+    private Transaction transaction;
+
+    /**
+     * Constructor for {@code BinaryTransactionReader}.
+     *
+     * <p>The start of the stream is read and checked immediately.</p>
+     *
+     * @param   input
+     *          The stream to read from. It is buffered by the reader, and
+     *          closed when the reader is closed.
+     *
+     * @throws  StreamCorruptedException
+     *          If the stream was not written by a
+     *          {@link BinaryTransactionWriter}.
+     *
+     * @throws  IOException
+     *          If the stream cannot be read, or was written in a version of
+     *          the format that is not supported.
+     */
+    public BinaryTransactionReader(final InputStream input)
+    throws IOException {
+        final byte[]    magic;
+        final long      version;
+
+        Argument.ensureNotNull(input, "input");
+
+        this.records = new TransactionRecordReader(input);
+
+        magic = this.records.readBytes(BinaryTransactionWriter.MAGIC.length);
+
+        if (!Arrays.equals(magic, BinaryTransactionWriter.MAGIC)) {
+            throw new StreamCorruptedException("The stream is not in the binary transaction format.");
+        }
+
+        version = this.records.readVarLong();
+
+        if ((version < 1) || (version > BinaryTransactionWriter.FORMAT_VERSION)) {
+            throw new IOException(
+                String.format(
+                    "Version `%d` of the binary transaction format is not supported (the latest " +
+                    "supported version is `%d`).",
+                    version,
+                    BinaryTransactionWriter.FORMAT_VERSION));
+        }
+
+        this.formatVersion  = (int)version;
+        this.itemType       = null;
+    }
+
+    /**
+     * Gets the version of the format that the stream was written in.
+     *
+     * @return  The format version.
+     */
+    public int getFormatVersion() {
+        return this.formatVersion;
+    }
+
+    /**
+     * Reads the next item.
+     *
+     * @return  The kind of item that was read; or, {@link ItemType#END} if the
+     *          end of the stream has been reached.
+     *
+     * @throws  IOException
+     *          If the stream cannot be read, or is not valid.
+     */
+    public ItemType next()
+    throws IOException {
+        if (this.itemType != ItemType.END) {
+            final int tag = this.records.readByte();
+
+            this.nameTable      = null;
+            this.names          = null;
+            this.line           = null;
+            this.transaction    = null;
+
+            switch (tag) {
+                case BinaryTransactionWriter.TAG_END:
+                    this.itemType = ItemType.END;
+                    break;
+
+                case BinaryTransactionWriter.TAG_NAME_TABLE:
+                    this.readNameTable();
+                    this.itemType = ItemType.NAME_TABLE;
+                    break;
+
+                case BinaryTransactionWriter.TAG_LINE:
+                    this.readLine();
+                    this.itemType = ItemType.LINE;
+                    break;
+
+                case BinaryTransactionWriter.TAG_TRANSACTION:
+                    this.transaction    = this.records.readTransactionBody((int)this.records.readVarLong());
+                    this.itemType       = ItemType.TRANSACTION;
+                    break;
+
+                default:
+                    throw new StreamCorruptedException(
+                        String.format("`%d` is not a valid item tag.", tag));
+            }
+        }
+
+        return this.itemType;
+    }
+
+    /**
+     * Gets the table of the name table that was last read.
+     *
+     * @return  {@link HeaderLine.Type#CUSTOMER},
+     *          {@link HeaderLine.Type#VENDOR}, or
+     *          {@link HeaderLine.Type#OTHER_NAME}.
+     *
+     * @throws  IllegalStateException
+     *          If the last item read was not a name table.
+     */
+    public HeaderLine.Type getNameTable()
+    throws IllegalStateException {
+        this.ensureItemType(ItemType.NAME_TABLE);
+
+        return this.nameTable;
+    }
+
+    /**
+     * Gets the names of the name table that was last read.
+     *
+     * @return  An unmodifiable list of the names, in the order in which they
+     *          were written.
+     *
+     * @throws  IllegalStateException
+     *          If the last item read was not a name table.
+     */
+    public List<Name> getNames()
+    throws IllegalStateException {
+        this.ensureItemType(ItemType.NAME_TABLE);
+
+        return this.names;
+    }
+
+    /**
+     * Gets the line that was last read.
+     *
+     * @return  The line.
+     *
+     * @throws  IllegalStateException
+     *          If the last item read was not a line.
+     */
+    public DataLine getLine()
+    throws IllegalStateException {
+        this.ensureItemType(ItemType.LINE);
+
+        return this.line;
+    }
+
+    /**
+     * Gets the transaction that was last read.
+     *
+     * @return  The frozen transaction.
+     *
+     * @throws  IllegalStateException
+     *          If the last item read was not a transaction.
+     */
+    public Transaction getTransaction()
+    throws IllegalStateException {
+        this.ensureItemType(ItemType.TRANSACTION);
+
+        return this.transaction;
+    }
+
+    /**
+     * Reads all of the remaining items into a new IIF file.
+     *
+     * <p>Name tables are declared in the file, and transactions are added to
+     * it in the order in which they were written.</p>
+     *
+     * @return  The new file.
+     *
+     * @throws  StreamCorruptedException
+     *          If the stream contains a line outside of a transaction.
+     *
+     * @throws  IOException
+     *          If the stream cannot be read, or is not valid.
+     *
+     * @throws  IllegalArgumentException
+     *          If the stream declares the same name in more than one table.
+     */
+    public IifFile readFile()
+    throws IOException, IllegalArgumentException {
+        final IifFile result = new IifFile();
+
+        for (ItemType type = this.next(); type != ItemType.END; type = this.next()) {
+            switch (type) {
+                case NAME_TABLE:
+                    result.addNames(this.names, this.nameTable);
+                    break;
+
+                case TRANSACTION:
+                    result.addOwned(this.transaction);
+                    break;
+
+                default:
+                    throw new StreamCorruptedException(
+                        "An IIF file cannot contain a line outside of a transaction.");
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The underlying stream is closed.</p>
+     */
+    @Override
+    public void close()
+    throws IOException {
+        this.records.close();
+    }
+
+    /**
+     * Reads the body of a name table item.
+     *
+     * @throws  IOException
+     *          If the stream cannot be read, or is not valid.
+     */
+    private void readNameTable()
+    throws IOException {
+        final int           tableCode   = this.records.readByte();
+        final long          nameCount   = this.records.readVarLong();
+        final List<Name>    tableNames;
+
+        switch (tableCode) {
+            case BinaryTransactionWriter.TABLE_CUSTOMER:
+                this.nameTable = HeaderLine.Type.CUSTOMER;
+                break;
+
+            case BinaryTransactionWriter.TABLE_VENDOR:
+                this.nameTable = HeaderLine.Type.VENDOR;
+                break;
+
+            case BinaryTransactionWriter.TABLE_OTHER_NAME:
+                this.nameTable = HeaderLine.Type.OTHER_NAME;
+                break;
+
+            default:
+                throw new StreamCorruptedException(
+                    String.format("`%d` is not a valid name table code.", tableCode));
+        }
+
+        if (nameCount > Integer.MAX_VALUE) {
+            throw new StreamCorruptedException(
+                String.format("`%d` is not a valid name count.", nameCount));
+        }
+
+        tableNames = new ArrayList<>((int)Math.min(nameCount, 1024));
+
+        for (long nameIndex = 0; nameIndex < nameCount; ++nameIndex) {
+            final String value = this.records.readString();
+
+            tableNames.add(value.isEmpty() ? Name.EMPTY : Name.of(value));
+        }
+
+        this.names = Collections.unmodifiableList(tableNames);
+    }
+
+    /**
+     * Reads the body of a line item.
+     *
+     * @throws  IOException
+     *          If the stream cannot be read, or is not valid.
+     */
+    private void readLine()
+    throws IOException {
+        final int lineKind = this.records.readByte();
+
+        switch (lineKind) {
+            case BinaryTransactionWriter.LINE_KIND_TRANSACTION:
+                this.line = this.records.readTransactionLine();
+                break;
+
+            case BinaryTransactionWriter.LINE_KIND_SPLIT:
+                this.line = this.records.readSplitLine();
+                break;
+
+            default:
+                throw new StreamCorruptedException(
+                    String.format("`%d` is not a valid line kind.", lineKind));
+        }
+    }
+
+    /**
+     * Throws an exception if the last item read was not of the given kind.
+     *
+     * @param   expectedType
+     *          The kind of item expected.
+     *
+     * @throws  IllegalStateException
+     *          If the last item read was of a different kind.
+     */
+    private void ensureItemType(final ItemType expectedType)
+    throws IllegalStateException {
+        if (this.itemType != expectedType) {
+            throw new IllegalStateException(
+                String.format(
+                    "The last item read was `%s`, not `%s`.",
+                    this.itemType,
+                    expectedType));
+        }
+    }
+
+    /**
+     * The kinds of item in a binary transaction stream.
+     */
+    public enum ItemType {
+        /**
+         * A name table; see {@link #getNameTable()} and {@link #getNames()}.
+         */
+        NAME_TABLE,
+
+        /**
+         * A line outside of any transaction; see {@link #getLine()}.
+         */
+        LINE,
+
+        /**
+         * A transaction; see {@link #getTransaction()}.
+         */
+        TRANSACTION,
+
+        /**
+         * The end of the stream.
+         */
+        END
+    }
+}
@@ -0,0 +1,436 @@
+/*
+ * Copyright (C) 2016 Red Bottle Design, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redbottledesign.accounting.quickbooks.batch;
+
+import com.redbottledesign.accounting.quickbooks.iif.HeaderLine;
+import com.redbottledesign.accounting.quickbooks.iif.IifFile;
+import com.redbottledesign.accounting.quickbooks.models.DataLineView;
+import com.redbottledesign.accounting.quickbooks.models.Name;
+import com.redbottledesign.accounting.quickbooks.models.Transaction;
+import com.redbottledesign.accounting.quickbooks.models.TransactionLine;
+import com.redbottledesign.accounting.quickbooks.models.TransactionLineView;
+import com.redbottledesign.accounting.quickbooks.models.TxnType;
+import com.redbottledesign.util.Argument;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+
+/**
+ * Writes transactions, lines, name tables, and entire IIF files to a stream
+ * in a compact, versioned binary form, which can be read back with a
+ * {@link BinaryTransactionReader}.
+ *
+ * <p>The binary form is meant for staging data between the stages of a
+ * pipeline, and for exchanging it between processes. It is several times
+ * smaller than IIF text, and much faster to read back, since nothing needs
+ * to be parsed: integers are written as variable-length quantities, dates
+ * as epoch days, amounts as whole cents wherever possible, and each distinct
+ * string is written once, after which it is referred to by ID.</p>
+ *
+ * <p>A stream starts with the bytes {@code QBTX}, followed by the format
+ * version ({@value #FORMAT_VERSION}). It then holds any number of items,
+ * each introduced by a tag byte:</p>
+ * <ul>
+ *   <li>{@code 1}: a name table &mdash; a table code (customer {@code 0},
+ *       vendor {@code 1}, or other name {@code 2}), a name count, and the
+ *       names;</li>
+ *   <li>{@code 2}: a single line &mdash; {@code 0} and the columns of a
+ *       {@code TRNS} line, or {@code 1} and the columns of a {@code SPL}
+ *       line;</li>
+ *   <li>{@code 3}: a transaction &mdash; a line count, and the lines of the
+ *       transaction.</li>
+ * </ul>
+ *
+ * <p>The stream ends with a tag of {@code 0}. The columns of each line, and
+ * the encoding of strings, are the same as those of the records that a
+ * {@link TransactionSpillFile} or an {@link ExternalTransactionSorter}
+ * writes to disk. In particular, transaction types are written by their
+ * {@linkplain TxnType#getQbIdentifier() QuickBooks identifiers}, not by their
+ * position in {@link TxnType}, so adding or reordering types does not affect
+ * streams written in version 1 of the format.</p>
+ *
+ * <p>Only transactions and lines that are
+ * {@linkplain #isEncodable(Transaction) encodable} can be written. This class
+ * is not thread-safe.</p>
+ *
+ * @author Guy Paddock (guy@redbottledesign.com)
+ */
+public class BinaryTransactionWriter
+implements Closeable, Flushable {
+    /**
+     * The version of the binary format that this class writes.
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    /**
+     * The bytes that start every stream.
+     */
+    static final byte[] MAGIC = { 'Q', 'B', 'T', 'X' };
+
+    /**
+     * The tags that introduce each item in a stream.
+     */
+    static final int TAG_END            = 0;
+    static final int TAG_NAME_TABLE     = 1;
+    static final int TAG_LINE           = 2;
+    static final int TAG_TRANSACTION    = 3;
+
+    /**
+     * The kinds of line that can be written on their own.
+     */
+    static final int LINE_KIND_TRANSACTION  = 0;
+    static final int LINE_KIND_SPLIT        = 1;
+
+    /**
+     * The codes of each name table.
+     */
+    static final int TABLE_CUSTOMER     = 0;
+    static final int TABLE_VENDOR       = 1;
+    static final int TABLE_OTHER_NAME   = 2;
+
+    private final TransactionRecordWriter records;
+    private boolean isFinished;
+
+    /**
+     * Constructor for {@code BinaryTransactionWriter}.
+     *
+     * <p>The start of the stream is written immediately.</p>
+     *
+     * @param   output
+     *          The stream to write to. It is buffered by the writer, and
+     *          closed when the writer is closed.
+     *
+     * @throws  IOException
+     *          If the stream cannot be written.
+     */
+    public BinaryTransactionWriter(final OutputStream output)
+    throws IOException {
+        Argument.ensureNotNull(output, "output");
+
+        this.records = new TransactionRecordWriter(output);
+
+        this.records.writeBytes(MAGIC);
+        this.records.writeVarLong(FORMAT_VERSION);
+    }
+
+    /**
+     * Determines whether or not the given transaction can be written, and read
+     * back so that it exports identically.
+     *
+     * <p>The transaction must be a plain {@link Transaction}, its first line
+     * must be a {@link TransactionLine}, its remaining lines must be
+     * {@link com.redbottledesign.accounting.quickbooks.models.SplitLine}s,
+     * and every line must have a type, date, account, and amount.</p>
+     *
+     * @param   transaction
+     *          The transaction to check.
+     *
+     * @return  {@code true} if the transaction can be written; or,
+     *          {@code false} otherwise.
+     */
+    public static boolean isEncodable(final Transaction transaction) {
+        Argument.ensureNotNull(transaction, "transaction");
+
+        return TransactionRecordWriter.isEncodable(transaction);
+    }
+
+    /**
+     * Determines whether or not the given line can be written on its own.
+     *
+     * <p>The line must be a {@link TransactionLine} or a
+     * {@link com.redbottledesign.accounting.quickbooks.models.SplitLine}, and
+     * must have a type, date, account, and amount.</p>
+     *
+     * @param   line
+     *          The line to check.
+     *
+     * @return  {@code true} if the line can be written; or, {@code false}
+     *          otherwise.
+     */
+    public static boolean isEncodable(final DataLineView line) {
+        Argument.ensureNotNull(line, "line");
+
+        return TransactionRecordWriter.isEncodable(line);
+    }
+
+    /**
+     * Writes a name table.
+     *
+     * @param   table
+     *          The table that the names belong to:
+     *          {@link HeaderLine.Type#CUSTOMER},
+     *          {@link HeaderLine.Type#VENDOR}, or
+     *          {@link HeaderLine.Type#OTHER_NAME}.
+     *
+     * @param   names
+     *          The names in the table.
+     *
+     * @throws  IOException
+     *          If the stream cannot be written.
+     *
+     * @throws  IllegalArgumentException
+     *          If {@code table} is not a name table, or {@code names} contains
+     *          {@code null}.
+     *
+     * @throws  IllegalStateException
+     *          If the stream has been finished.
+     */
+    public void writeNames(final HeaderLine.Type table, final Collection<? extends Name> names)
+    throws IOException, IllegalArgumentException, IllegalStateException {
+        final int tableCode;
+
+        Argument.ensureNotNull(table, "table");
+        Argument.ensureNotNull(names, "names");
+
+        this.ensureNotFinished();
+
+        switch (table) {
+            case CUSTOMER:
+                tableCode = TABLE_CUSTOMER;
+                break;
+
+            case VENDOR:
+                tableCode = TABLE_VENDOR;
+                break;
+
+            case OTHER_NAME:
+                tableCode = TABLE_OTHER_NAME;
+                break;
+
+            default:
+                throw new IllegalArgumentException(
+                    String.format("`%s` is not a name table.", table));
+        }
+
+        for (Name name : names) {
+            if (name == null) {
+                throw new IllegalArgumentException("`names` must not contain null.");
+            }
+        }
+
+        this.records.writeByte(TAG_NAME_TABLE);
+        this.records.writeByte(tableCode);
+        this.records.writeVarLong(names.size());
+
+        for (Name name : names) {
+            this.records.writeString(name.getValue());
+        }
+    }
+
+    /**
+     * Writes a single line, outside of any transaction.
+     *
+     * @param   line
+     *          The line to write.
+     *
+     * @throws  IOException
+     *          If the stream cannot be written.
+     *
+     * @throws  IllegalArgumentException
+     *          If the line is not {@linkplain #isEncodable(DataLineView)
+     *          encodable}.
+     *
+     * @throws  IllegalStateException
+     *          If the stream has been finished.
+     */
+    public void writeLine(final DataLineView line)
+    throws IOException, IllegalArgumentException, IllegalStateException {
+        if (!isEncodable(line)) {
+            throw new IllegalArgumentException(
+                "Only transaction lines and split lines that have a type, date, account, and " +
+                "amount can be written.");
+        }
+
+        this.ensureNotFinished();
+
+        this.records.writeByte(TAG_LINE);
+
+        if (TransactionRecordWriter.isTransactionLine(line)) {
+            this.records.writeByte(LINE_KIND_TRANSACTION);
+            this.records.writeTransactionColumns((TransactionLineView)line);
+        }
+        else {
+            this.records.writeByte(LINE_KIND_SPLIT);
+        }
+
+        this.records.writeLine(line);
+    }
+
+    /**
+     * Writes a transaction.
+     *
+     * @param   transaction
+     *          The transaction to write.
+     *
+     * @throws  IOException
+     *          If the stream cannot be written.
+     *
+     * @throws  IllegalArgumentException
+     *          If the transaction is not {@linkplain #isEncodable(Transaction)
+     *          encodable}.
+     *
+     * @throws  IllegalStateException
+     *          If the stream has been finished.
+     */
+    public void writeTransaction(final Transaction transaction)
+    throws IOException, IllegalArgumentException, IllegalStateException {
+        if (!isEncodable(transaction)) {
+            throw new IllegalArgumentException(
+                "Only plain transactions made of a transaction line and split lines, each with a " +
+                "type, date, account, and amount, can be written.");
+        }
+
+        this.ensureNotFinished();
+
+        this.records.writeByte(TAG_TRANSACTION);
+        this.records.writeVarLong(transaction.getLineViews().size());
+        this.records.writeTransactionBody(transaction);
+    }
+
+    /**
+     * Writes the name tables and transactions of an IIF file.
+     *
+     * <p>Reading the items back into a new file with
+     * {@link BinaryTransactionReader#readFile()} produces a file that exports
+     * identically. Names that the file discovered are written the same as
+     * names that were declared.</p>
+     *
+     * @param   file
+     *          The file to write.
+     *
+     * @throws  IOException
+     *          If the stream cannot be written, or transactions that the file
+     *          spilled to disk cannot be read back.
+     *
+     * @throws  IllegalArgumentException
+     *          If any transaction in the file is not
+     *          {@linkplain #isEncodable(Transaction) encodable}. The
+     *          transactions before it will already have been written.
+     *
+     * @throws  IllegalStateException
+     *          If the stream has been finished.
+     */
+    public void writeFile(final IifFile file)
+    throws IOException, IllegalArgumentException, IllegalStateException {
+        Argument.ensureNotNull(file, "file");
+
+        this.ensureNotFinished();
+
+        this.writeNameTable(HeaderLine.Type.CUSTOMER,      file.getCustomerNames());
+        this.writeNameTable(HeaderLine.Type.VENDOR,        file.getVendorNames());
+        this.writeNameTable(HeaderLine.Type.OTHER_NAME,    file.getOtherNames());
+
+        try {
+            file.forEachTransaction(transaction -> {
+                try {
+                    this.writeTransaction(transaction);
+                }
+                catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        }
+        catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    /**
+     * Writes the end of the stream, and flushes it.
+     *
+     * <p>Nothing more can be written afterwards. Finishing a stream that has
+     * already been finished has no effect.</p>
+     *
+     * @throws  IOException
+     *          If the stream cannot be written.
+     */
+    public void finish()
+    throws IOException {
+        if (!this.isFinished) {
+            this.records.writeByte(TAG_END);
+            this.records.flush();
+
+            this.isFinished = true;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Everything written so far is written to the underlying stream. The
+     * end of the stream is not written until the writer is
+     * {@linkplain #finish() finished} or closed.</p>
+     */
+    @Override
+    public void flush()
+    throws IOException {
+        this.records.flush();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The stream is {@linkplain #finish() finished} first, if it has not
+     * been already, and the underlying stream is then closed.</p>
+     */
+    @Override
+    public void close()
+    throws IOException {
+        try {
+            this.finish();
+        }
+        finally {
+            this.records.close();
+        }
+    }
+
+    /**
+     * Writes a name table, unless it is empty.
+     *
+     * @param   table
+     *          The table that the names belong to.
+     *
+     * @param   names
+     *          The names in the table.
+     *
+     * @throws  IOException
+     *          If the stream cannot be written.
+     */
+    private void writeNameTable(final HeaderLine.Type table, final Collection<Name> names)
+    throws IOException {
+        if (!names.isEmpty()) {
+            this.writeNames(table, names);
+        }
+    }
+
+    /**
+     * Throws an exception if the stream has been finished.
+     *
+     * @throws  IllegalStateException
+     *          If the stream has been finished.
+     */
+    private void ensureNotFinished()
+    throws IllegalStateException {
+        if (this.isFinished) {
+            throw new IllegalStateException("The stream has already been finished.");
+        }
+    }
+}
@@ -0,0 +1,810 @@
+/*
+ * Copyright (C) 2016 Red Bottle Design, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redbottledesign.accounting.quickbooks.batch;
+
+import com.redbottledesign.accounting.quickbooks.iif.IifExportable;
+import com.redbottledesign.accounting.quickbooks.iif.IifFile;
+import com.redbottledesign.accounting.quickbooks.models.DataLineView;
+import com.redbottledesign.accounting.quickbooks.models.Name;
+import com.redbottledesign.accounting.quickbooks.models.Transaction;
+import com.redbottledesign.util.Argument;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sorts any number of transactions into chronological order for export,
+ * keeping only a bounded number of them on the heap at a time.
+ *
+ * <p>Transactions are collected in memory until {@linkplain #getRunSize() a
+ * run's worth} have been added. The run is then sorted and spilled to a
+ * temporary file in a compact binary form (see
+ * {@link TransactionRecordWriter}), and the memory is reused for the next
+ * run. On export, all of the runs are merged into the output as a stream,
+ * one transaction at a time; if there are too many runs to merge at once,
+ * the oldest runs are first merged with each other into larger runs.</p>
+ *
+ * <p>Transactions are exported in order of date, then transaction type, then
+ * document number. Transactions that tie on all three are exported in the
+ * order in which they were added. The few transactions that cannot be
+ * written in binary form &mdash; those of a subclass of {@link Transaction},
+ * for example &mdash; are kept in memory instead, and merged in with the
+ * rest.</p>
+ *
+ * <p>Name tables work the same way as they do for {@link IifFile}, including
+ * {@linkplain #setNameDiscoveryEnabled(boolean) name discovery}, and the
+ * output has the same layout.</p>
+ *
+ * <p>The temporary files are deleted when the sorter is closed. This class is
+ * not thread-safe.</p>
+ *
+ * @author Guy Paddock (guy@redbottledesign.com)
+ */
+public class ExternalTransactionSorter
+implements IifExportable, Closeable {
+    /**
+     * The default number of transactions in each sorted run.
+     */
+    public static final int DEFAULT_RUN_SIZE = 100_000;
+
+    /**
+     * The largest number of runs that are merged at once.
+     */
+    public static final int MAX_MERGE_WIDTH = 64;
+
+    /**
+     * The order in which transactions are exported.
+     */
+    private static final Comparator<Entry> EXPORT_ORDER =
+        Comparator
+            .comparingInt((Entry entry) -> entry.epochDay)
+            .thenComparingInt(entry -> entry.typeOrdinal)
+            .thenComparing(entry -> entry.docNumber)
+            .thenComparingLong(entry -> entry.sequence);
+
+    /**
+     * The value used as the sort date or type of transactions that have no
+     * lines, or no date or type.
+     */
+    private static final int NO_KEY = Integer.MIN_VALUE;
+
+    private final Path spoolDirectory;
+    private final int runSize;
+
+    /**
+     * The transactions of the run in progress.
+     */
+    private final List<Entry> buffer;
+
+    /**
+     * The transactions that cannot be written in binary form.
+     */
+    private final List<Entry> retained;
+
+    /**
+     * The files of the runs that have been spilled, oldest first.
+     */
+    private final List<Path> runs;
+
+    /**
+     * The file that holds the name tables. It never holds any transactions.
+     */
+    private final IifFile nameTables;
+
+    private long nextSequence;
+    private boolean isClosed;
+
+    /**
+     * Constructor for {@code ExternalTransactionSorter}, for runs of
+     * {@value #DEFAULT_RUN_SIZE} transactions.
+     *
+     * @param   spoolDirectory
+     *          The directory in which to create the temporary run files.
+     */
+    public ExternalTransactionSorter(final Path spoolDirectory) {
+        this(spoolDirectory, DEFAULT_RUN_SIZE);
+    }
+
+    /**
+     * Constructor for {@code ExternalTransactionSorter}.
+     *
+     * @param   spoolDirectory
+     *          The directory in which to create the temporary run files.
+     *
+     * @param   runSize
+     *          The number of transactions to hold in memory before sorting
+     *          them and spilling them to a file.
+     */
+    public ExternalTransactionSorter(final Path spoolDirectory, final int runSize) {
+        Argument.ensureNotNull(spoolDirectory, "spoolDirectory");
+        Argument.ensureInRange(runSize, 1, Integer.MAX_VALUE, "runSize");
+
+        this.spoolDirectory = spoolDirectory;
+        this.runSize        = runSize;
+        this.buffer         = new ArrayList<>(Math.min(runSize, 1024));
+        this.retained       = new ArrayList<>();
+        this.runs           = new ArrayList<>();
+        this.nameTables     = new IifFile();
+    }
+
+    /**
+     * Gets the number of transactions that are held in memory before they are
+     * sorted and spilled to a file.
+     *
+     * @return  The run size.
+     */
+    public int getRunSize() {
+        return this.runSize;
+    }
+
+    /**
+     * Gets the number of transactions that have been added.
+     *
+     * @return  The transaction count.
+     */
+    public long getTransactionCount() {
+        return this.nextSequence;
+    }
+
+    /**
+     * Gets the number of runs that are currently spilled to files.
+     *
+     * @return  The run count.
+     */
+    public int getRunCount() {
+        return this.runs.size();
+    }
+
+    /**
+     * Indicates whether names are discovered from transactions as they are
+     * added.
+     *
+     * @return  {@code true} if name discovery is enabled; or, {@code false}
+     *          if only names that are declared explicitly are exported.
+     *
+     * @see     IifFile#isNameDiscoveryEnabled()
+     */
+    public boolean isNameDiscoveryEnabled() {
+        return this.nameTables.isNameDiscoveryEnabled();
+    }
+
+    /**
+     * Sets whether names are discovered from transactions as they are added.
+     *
+     * @param   isNameDiscoveryEnabled
+     *          Whether name discovery is enabled.
+     *
+     * @return  This object, for chaining.
+     *
+     * @see     IifFile#setNameDiscoveryEnabled(boolean)
+     */
+    public ExternalTransactionSorter setNameDiscoveryEnabled(final boolean isNameDiscoveryEnabled) {
+        this.nameTables.setNameDiscoveryEnabled(isNameDiscoveryEnabled);
+
+        return this;
+    }
+
+    /**
+     * Adds the specified transaction to the sort.
+     *
+     * <p>The transaction is cloned and frozen in the process, unless it has
+     * already been {@linkplain Transaction#freeze() frozen}, in which case it
+     * is added as-is.</p>
+     *
+     * @param   transaction
+     *          The transaction to add.
+     *
+     * @throws  UncheckedIOException
+     *          If the transaction completes a run that cannot be spilled.
+     *
+     * @throws  IllegalStateException
+     *          If the sorter has been closed.
+     */
+    public void addTransaction(final Transaction transaction)
+    throws UncheckedIOException, IllegalStateException {
+        Argument.ensureNotNull(transaction, "transaction");
+
+        if (transaction.isFrozen()) {
+            this.append(transaction);
+        }
+        else {
+            this.append(transaction.clone().freeze());
+        }
+    }
+
+    /**
+     * Adds the given transaction to the sort, taking ownership of it.
+     *
+     * <p>Instead of being cloned, the transaction is
+     * {@linkplain Transaction#freeze() frozen} and added as-is.</p>
+     *
+     * @param   transaction
+     *          The transaction to freeze and add.
+     *
+     * @throws  UncheckedIOException
+     *          If the transaction completes a run that cannot be spilled.
+     *
+     * @throws  IllegalStateException
+     *          If the sorter has been closed.
+     */
+    public void addOwned(final Transaction transaction)
+    throws UncheckedIOException, IllegalStateException {
+        Argument.ensureNotNull(transaction, "transaction");
+
+        this.append(transaction.freeze());
+    }
+
+    /**
+     * Adds the given name to the list of customers declared at the top of the
+     * output.
+     *
+     * @param   customerName
+     *          The name to add to the customer table.
+     *
+     * @throws  IllegalArgumentException
+     *          If the name has already been added to another table.
+     *
+     * @see     IifFile#addCustomerName(Name)
+     */
+    public void addCustomerName(final Name customerName)
+    throws IllegalArgumentException {
+        this.nameTables.addCustomerName(customerName);
+    }
+
+    /**
+     * Adds the given name to the list of vendors declared at the top of the
+     * output.
+     *
+     * @param   vendorName
+     *          The name to add to the vendor table.
+     *
+     * @throws  IllegalArgumentException
+     *          If the name has already been added to another table.
+     *
+     * @see     IifFile#addVendorName(Name)
+     */
+    public void addVendorName(final Name vendorName)
+    throws IllegalArgumentException {
+        this.nameTables.addVendorName(vendorName);
+    }
+
+    /**
+     * Adds the given entity to the list of "other names" declared at the top of
+     * the output.
+     *
+     * @param   otherName
+     *          The name to add to the other names table.
+     *
+     * @throws  IllegalArgumentException
+     *          If the name has already been added to another table.
+     *
+     * @see     IifFile#addOtherName(Name)
+     */
+    public void addOtherName(final Name otherName)
+    throws IllegalArgumentException {
+        this.nameTables.addOtherName(otherName);
+    }
+
+    /**
+     * Writes the sorted transactions to the given writer, merging the runs
+     * into it one transaction at a time.
+     *
+     * <p>The sorter can continue to be used afterwards. The writer is not
+     * flushed or closed.</p>
+     *
+     * @param   writer
+     *          The writer to write to.
+     *
+     * @throws  IOException
+     *          If the writer cannot be written, or a run cannot be read or
+     *          merged.
+     *
+     * @throws  IllegalStateException
+     *          If the sorter has been closed.
+     */
+    @Override
+    public void writeTo(final Writer writer)
+    throws IOException, IllegalStateException {
+        final List<MergeSource>         sources = new ArrayList<>();
+        final PriorityQueue<MergeSource> queue;
+
+        Argument.ensureNotNull(writer, "writer");
+
+        this.ensureNotClosed();
+
+        while (this.runs.size() > MAX_MERGE_WIDTH) {
+            this.mergeOldestRuns();
+        }
+
+        this.buffer.sort(EXPORT_ORDER);
+        this.retained.sort(EXPORT_ORDER);
+
+        queue = new PriorityQueue<>(this.runs.size() + 2);
+
+        try {
+            for (Path run : this.runs) {
+                sources.add(new RunSource(run));
+            }
+
+            sources.add(new ListSource(this.buffer));
+            sources.add(new ListSource(this.retained));
+
+            for (MergeSource source : sources) {
+                if (source.advance()) {
+                    queue.add(source);
+                }
+            }
+
+            writer.write(this.nameTables.toHeaderIifString());
+
+            while (!queue.isEmpty()) {
+                final MergeSource source = queue.poll();
+
+                writer.write('\n');
+                writer.write(source.current().transaction.toIifString());
+
+                if (source.advance()) {
+                    queue.add(source);
+                }
+            }
+
+            writer.write('\n');
+        }
+        finally {
+            closeAll(sources);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The output has the same layout as that of {@link IifFile}: name
+     * tables, then a transaction header, then the transactions, then a
+     * trailing newline. It is held in memory in its entirety, so large sorts
+     * should be exported with {@link #writeTo(Writer)} instead.</p>
+     *
+     * @throws  UncheckedIOException
+     *          If a run cannot be read or merged.
+     */
+    @Override
+    public String toIifString()
+    throws UncheckedIOException {
+        final StringWriter writer = new StringWriter();
+
+        try {
+            this.writeTo(writer);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        return writer.toString();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>All of the run files are deleted, and the transactions held in memory
+     * are released. Closing a sorter that is already closed has no
+     * effect.</p>
+     */
+    @Override
+    public void close()
+    throws IOException {
+        IOException failure = null;
+
+        this.isClosed = true;
+
+        this.buffer.clear();
+        this.retained.clear();
+
+        for (Path run : this.runs) {
+            try {
+                Files.deleteIfExists(run);
+            }
+            catch (IOException ex) {
+                if (failure == null) {
+                    failure = ex;
+                }
+                else {
+                    failure.addSuppressed(ex);
+                }
+            }
+        }
+
+        this.runs.clear();
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Adds a frozen transaction to the run in progress, spilling the run to a
+     * file once it is full.
+     *
+     * @param   transaction
+     *          The transaction to add.
+     *
+     * @throws  UncheckedIOException
+     *          If the run cannot be spilled.
+     *
+     * @throws  IllegalStateException
+     *          If the sorter has been closed.
+     */
+    protected void append(final Transaction transaction)
+    throws UncheckedIOException, IllegalStateException {
+        final Entry entry;
+
+        this.ensureNotClosed();
+
+        entry = new Entry(this.nextSequence, transaction);
+
+        if (this.nameTables.isNameDiscoveryEnabled()) {
+            this.nameTables.discoverNames(transaction);
+        }
+
+        if (TransactionRecordWriter.isEncodable(transaction)) {
+            this.buffer.add(entry);
+        }
+        else {
+            this.retained.add(entry);
+        }
+
+        ++this.nextSequence;
+
+        if (this.buffer.size() >= this.runSize) {
+            try {
+                this.spillBuffer();
+            }
+            catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+
+    /**
+     * Sorts the run in progress and writes it to a new run file.
+     *
+     * @throws  IOException
+     *          If the run file cannot be written.
+     */
+    private void spillBuffer()
+    throws IOException {
+        final ListSource source;
+
+        this.buffer.sort(EXPORT_ORDER);
+
+        source = new ListSource(this.buffer);
+
+        this.runs.add(this.writeRun(List.of(source)));
+        this.buffer.clear();
+    }
+
+    /**
+     * Merges the {@value #MAX_MERGE_WIDTH} oldest runs into a single run,
+     * which takes their place at the start of the list of runs.
+     *
+     * @throws  IOException
+     *          If the runs cannot be read, or the merged run cannot be
+     *          written.
+     */
+    private void mergeOldestRuns()
+    throws IOException {
+        final List<Path>        oldestRuns  = this.runs.subList(0, MAX_MERGE_WIDTH);
+        final List<MergeSource> sources     = new ArrayList<>(MAX_MERGE_WIDTH);
+        final Path              mergedRun;
+
+        try {
+            for (Path run : oldestRuns) {
+                sources.add(new RunSource(run));
+            }
+
+            mergedRun = this.writeRun(sources);
+        }
+        finally {
+            closeAll(sources);
+        }
+
+        for (Path run : oldestRuns) {
+            Files.deleteIfExists(run);
+        }
+
+        oldestRuns.clear();
+
+        this.runs.add(0, mergedRun);
+    }
+
+    /**
+     * Merges the given sources into a new run file.
+     *
+     * <p>If the file cannot be written, it is deleted.</p>
+     *
+     * @param   sources
+     *          The sources to merge, none of which has been advanced yet.
+     *
+     * @return  The new run file.
+     *
+     * @throws  IOException
+     *          If a source cannot be read, or the file cannot be written.
+     */
+    private Path writeRun(final List<? extends MergeSource> sources)
+    throws IOException {
+        final Path                          run     = Files.createTempFile(this.spoolDirectory, "run-", ".bin");
+        final PriorityQueue<MergeSource>    queue   = new PriorityQueue<>(Math.max(1, sources.size()));
+
+        try (TransactionRecordWriter runWriter = new TransactionRecordWriter(Files.newOutputStream(run))) {
+            for (MergeSource source : sources) {
+                if (source.advance()) {
+                    queue.add(source);
+                }
+            }
+
+            while (!queue.isEmpty()) {
+                final MergeSource   source  = queue.poll();
+                final Entry         entry   = source.current();
+
+                runWriter.write(entry.sequence, entry.transaction);
+
+                if (source.advance()) {
+                    queue.add(source);
+                }
+            }
+
+            runWriter.finish();
+        }
+        catch (IOException | RuntimeException ex) {
+            try {
+                Files.deleteIfExists(run);
+            }
+            catch (IOException deleteEx) {
+                ex.addSuppressed(deleteEx);
+            }
+
+            throw ex;
+        }
+
+        return run;
+    }
+
+    /**
+     * Throws an exception if this sorter has been closed.
+     *
+     * @throws  IllegalStateException
+     *          If the sorter has been closed.
+     */
+    private void ensureNotClosed()
+    throws IllegalStateException {
+        if (this.isClosed) {
+            throw new IllegalStateException("The sorter has been closed.");
+        }
+    }
+
+    /**
+     * Closes each of the given merge sources, even if some of them fail to
+     * close.
+     *
+     * @param   sources
+     *          The sources to close.
+     *
+     * @throws  IOException
+     *          If any source could not be closed.
+     */
+    private static void closeAll(final List<MergeSource> sources)
+    throws IOException {
+        IOException failure = null;
+
+        for (MergeSource source : sources) {
+            try {
+                source.close();
+            }
+            catch (IOException ex) {
+                if (failure == null) {
+                    failure = ex;
+                }
+                else {
+                    failure.addSuppressed(ex);
+                }
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * A transaction, along with its sort key.
+     */
+    private static final class Entry {
+        private final long sequence;
+        private final int epochDay;
+        private final int typeOrdinal;
+        private final String docNumber;
+        private final Transaction transaction;
+
+        /**
+         * Constructor for {@code Entry}.
+         *
+         * @param   sequence
+         *          The order in which the transaction was added.
+         *
+         * @param   transaction
+         *          The frozen transaction.
+         */
+        private Entry(final long sequence, final Transaction transaction) {
+            final List<DataLineView> lines = transaction.getLineViews();
+
+            this.sequence       = sequence;
+            this.transaction    = transaction;
+
+            if (lines.isEmpty()) {
+                this.epochDay       = NO_KEY;
+                this.typeOrdinal    = NO_KEY;
+                this.docNumber      = "";
+            }
+            else {
+                final DataLineView firstLine = lines.get(0);
+
+                this.epochDay       = (firstLine.getDate() == null) ? NO_KEY : firstLine.getDate().getEpochDay();
+                this.typeOrdinal    = (firstLine.getType() == null) ? NO_KEY : firstLine.getType().ordinal();
+                this.docNumber      = (firstLine.getDocNumber() == null) ? "" : firstLine.getDocNumber().getValue();
+            }
+        }
+    }
+
+    /**
+     * A sorted sequence of entries that is being merged.
+     */
+    private abstract static class MergeSource
+    implements Comparable<MergeSource>, Closeable {
+        /**
+         * Gets the entry at the current position.
+         *
+         * @return  The current entry.
+         */
+        abstract Entry current();
+
+        /**
+         * Moves to the next entry. This must be called once before the first
+         * entry is available.
+         *
+         * @return  {@code true} if there is a next entry; or, {@code false} if
+         *          the source has been exhausted.
+         *
+         * @throws  IOException
+         *          If the next entry cannot be read.
+         */
+        abstract boolean advance()
+        throws IOException;
+
+        /**
+         * {@inheritDoc}
+         *
+         * <p>Sources are ordered by their current entries.</p>
+         */
+        @Override
+        public int compareTo(final MergeSource other) {
+            return EXPORT_ORDER.compare(this.current(), other.current());
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * <p>By default, there is nothing to close.</p>
+         */
+        @Override
+        public void close()
+        throws IOException {
+        }
+    }
+
+    /**
+     * A merge source over a sorted list in memory.
+     */
+    private static final class ListSource
+    extends MergeSource {
+        private final List<Entry> entries;
+        private int position;
+
+        /**
+         * Constructor for {@code ListSource}.
+         *
+         * @param   entries
+         *          The sorted entries.
+         */
+        private ListSource(final List<Entry> entries) {
+            this.entries    = entries;
+            this.position   = -1;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        Entry current() {
+            return this.entries.get(this.position);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        boolean advance() {
+            ++this.position;
+
+            return (this.position < this.entries.size());
+        }
+    }
+
+    /**
+     * A merge source that reads a run file.
+     */
+    private static final class RunSource
+    extends MergeSource {
+        private final TransactionRecordReader reader;
+        private Entry current;
+
+        /**
+         * Constructor for {@code RunSource}.
+         *
+         * @param   run
+         *          The run file.
+         *
+         * @throws  IOException
+         *          If the file cannot be opened.
+         */
+        private RunSource(final Path run)
+        throws IOException {
+            this.reader = new TransactionRecordReader(Files.newInputStream(run));
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        Entry current() {
+            return this.current;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        boolean advance()
+        throws IOException {
+            final boolean result = this.reader.next();
+
+            if (result) {
+                this.current = new Entry(this.reader.getSequence(), this.reader.getTransaction());
+            }
+            else {
+                this.current = null;
+            }
+
+            return result;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void close()
+        throws IOException {
+            this.reader.close();
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2016 Red Bottle Design, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redbottledesign.accounting.quickbooks.batch;
+
+import com.redbottledesign.accounting.quickbooks.models.Amount;
+import com.redbottledesign.accounting.quickbooks.models.Date;
+import com.redbottledesign.accounting.quickbooks.models.TransactionLine;
+import com.redbottledesign.accounting.quickbooks.models.TxnType;
+import com.redbottledesign.accounting.quickbooks.util.IifUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encodes the line under a {@link LineCursor} as IIF, directly from its
+ * primitive columns.
+ *
+ * <p>The output is identical to exporting the equivalent {@code DataLine}.
+ * An encoder caches the encoded form of the most recently-used date, so it
+ * should not be shared between threads.</p>
+ *
+ * @author Guy Paddock (guy@redbottledesign.com)
+ */
+final class IifLineEncoder {
+    /**
+     * The pre-encoded separators and fixed column values.
+     */
+    static final byte TAB       = '\t';
+    static final byte NEWLINE   = '\n';
+
+    static final byte[] TERMINATION_LINE = "ENDTRNS\t".getBytes(IifUtils.IIF_CHARSET);
+
+    private static final byte[] TRANSACTION_LINE_TYPE   = "TRNS".getBytes(IifUtils.IIF_CHARSET);
+    private static final byte[] SPLIT_LINE_TYPE         = "SPL".getBytes(IifUtils.IIF_CHARSET);
+    private static final byte[] TO_PRINT_YES            = "Y".getBytes(IifUtils.IIF_CHARSET);
+    private static final byte[] TO_PRINT_NO             = "N".getBytes(IifUtils.IIF_CHARSET);
+    private static final byte[] EMPTY_COLUMN            = IifUtils.escapeColumn("").getBytes(IifUtils.IIF_CHARSET);
+
+    /**
+     * The encoded form of each transaction type, indexed by ordinal.
+     */
+    private static final byte[][] TYPE_BYTES;
+
+    static {
+        final TxnType[] types = TxnType.values();
+
+        TYPE_BYTES = new byte[types.length][];
+
+        for (TxnType type : types) {
+            TYPE_BYTES[type.ordinal()] = type.toIifString().getBytes(IifUtils.IIF_CHARSET);
+        }
+    }
+
+    /**
+     * The dictionary of the store being encoded.
+     */
+    private final StringDictionary dictionary;
+
+    /**
+     * The epoch day of the most recently encoded date.
+     */
+    private int cachedEpochDay;
+
+    /**
+     * The encoded form of the most recently encoded date.
+     */
+    private byte[] cachedDateBytes;
+
+    /**
+     * Constructor for {@code IifLineEncoder}.
+     *
+     * @param   dictionary
+     *          The dictionary of the store being encoded.
+     */
+    IifLineEncoder(final StringDictionary dictionary) {
+        this.dictionary     = dictionary;
+        this.cachedEpochDay = AbstractLineStore.NO_DATE;
+    }
+
+    /**
+     * Writes the line under the given cursor, without a trailing newline.
+     *
+     * @param   output
+     *          The stream to write to.
+     *
+     * @param   line
+     *          The cursor positioned on the line to write.
+     *
+     * @throws  IOException
+     *          If the stream cannot be written.
+     *
+     * @throws  IllegalArgumentException
+     *          If the line is the {@code TRNS} line of a bill or invoice that
+     *          does not have a due date or terms.
+     */
+    void writeLine(final OutputStream output, final LineCursor line)
+    throws IOException, IllegalArgumentException {
+        final boolean   isTransactionLine   = line.isTransactionLine();
+        final TxnType   type                = line.getType();
+
+        if (isTransactionLine) {
+            output.write(TRANSACTION_LINE_TYPE);
+        }
+        else {
+            output.write(SPLIT_LINE_TYPE);
+        }
+
+        this.writeString(output, line.getDocNumberId());
+        this.writeString(output, line.getTxnIdentifierId());
+
+        output.write(TAB);
+        output.write(TYPE_BYTES[type.ordinal()]);
+
+        output.write(TAB);
+        output.write(this.encodeDate(line.getEpochDay()));
+
+        this.writeString(output, line.getAccountId());
+        this.writeString(output, line.getNameId());
+        this.writeString(output, line.getTxnClassId());
+
+        output.write(TAB);
+        output.write(Amount.ofCents(line.getAmountCents()).toString().getBytes(IifUtils.IIF_CHARSET));
+
+        this.writeString(output, line.getPaymentMethodId());
+
+        if (isTransactionLine) {
+            this.writeTransactionColumns(output, line, type);
+        }
+
+        this.writeString(output, line.getMemoId());
+    }
+
+    /**
+     * Writes the columns that only appear on the {@code TRNS} line of a
+     * transaction: to-print flag, due date, and terms.
+     *
+     * @param   output
+     *          The stream to write to.
+     *
+     * @param   line
+     *          The cursor positioned on the {@code TRNS} line.
+     *
+     * @param   type
+     *          The type of the transaction.
+     *
+     * @throws  IOException
+     *          If the stream cannot be written.
+     *
+     * @throws  IllegalArgumentException
+     *          If the transaction is a bill or invoice but does not have a due
+     *          date or terms.
+     */
+    private void writeTransactionColumns(final OutputStream output, final LineCursor line,
+                                         final TxnType type)
+    throws IOException, IllegalArgumentException {
+        final byte      toPrintCode     = line.getToPrintCode();
+        final int       dueDate         = line.getDueDateEpochDay(),
+                        termsId         = line.getTermsId();
+        final boolean   isReceivable    = TransactionLine.isReceivableType(type);
+
+        output.write(TAB);
+
+        if (toPrintCode == AbstractLineStore.TO_PRINT_YES) {
+            output.write(TO_PRINT_YES);
+        }
+        else if (toPrintCode == AbstractLineStore.TO_PRINT_NO) {
+            output.write(TO_PRINT_NO);
+        }
+
+        output.write(TAB);
+
+        if (dueDate != AbstractLineStore.NO_DATE) {
+            output.write(this.encodeDate(dueDate));
+        }
+        else if (!isReceivable) {
+            output.write(EMPTY_COLUMN);
+        }
+        else {
+            throw new IllegalArgumentException(
+                String.format(
+                    "The bill or invoice at transaction index `%d` has no due date.",
+                    line.getTransactionIndex()));
+        }
+
+        if (termsId != AbstractLineStore.NO_VALUE) {
+            this.writeString(output, termsId);
+        }
+        else if (!isReceivable) {
+            output.write(TAB);
+            output.write(EMPTY_COLUMN);
+        }
+        else {
+            throw new IllegalArgumentException(
+                String.format(
+                    "The bill or invoice at transaction index `%d` has no terms.",
+                    line.getTransactionIndex()));
+        }
+    }
+
+    /**
+     * Writes a tab, followed by the escaped, encoded value of a string column.
+     *
+     * @param   output
+     *          The stream to write to.
+     *
+     * @param   id
+     *          The dictionary ID of the value.
+     *
+     * @throws  IOException
+     *          If the stream cannot be written.
+     */
+    private void writeString(final OutputStream output, final int id)
+    throws IOException {
+        output.write(TAB);
+        output.write(this.dictionary.getIifBytes(id));
+    }
+
+    /**
+     * Gets the escaped, encoded form of the given date.
+     *
+     * <p>Lines tend to be grouped by date, so the most recently encoded date
+     * is cached.</p>
+     *
+     * @param   epochDay
+     *          The date, in epoch days.
+     *
+     * @return  The encoded date.
+     */
+    private byte[] encodeDate(final int epochDay) {
+        if (epochDay != this.cachedEpochDay) {
+            this.cachedDateBytes    = Date.ofEpochDay(epochDay).toIifString().getBytes(IifUtils.IIF_CHARSET);
+            this.cachedEpochDay     = epochDay;
+        }
+
+        return this.cachedDateBytes;
+    }
+}
@@ -0,0 +1,511 @@
+/*
+ * Copyright (C) 2016 Red Bottle Design, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redbottledesign.accounting.quickbooks.batch;
+
+import com.redbottledesign.accounting.quickbooks.models.Account;
+import com.redbottledesign.accounting.quickbooks.models.Amount;
+import com.redbottledesign.accounting.quickbooks.models.BooleanValue;
+import com.redbottledesign.accounting.quickbooks.models.DataLine;
+import com.redbottledesign.accounting.quickbooks.models.DataLineView;
+import com.redbottledesign.accounting.quickbooks.models.Date;
+import com.redbottledesign.accounting.quickbooks.models.DocNumber;
+import com.redbottledesign.accounting.quickbooks.models.Memo;
+import com.redbottledesign.accounting.quickbooks.models.Name;
+import com.redbottledesign.accounting.quickbooks.models.PaymentMethod;
+import com.redbottledesign.accounting.quickbooks.models.PaymentTerms;
+import com.redbottledesign.accounting.quickbooks.models.SplitLine;
+import com.redbottledesign.accounting.quickbooks.models.TransactionLine;
+import com.redbottledesign.accounting.quickbooks.models.TxnClass;
+import com.redbottledesign.accounting.quickbooks.models.TxnIdentifier;
+import com.redbottledesign.accounting.quickbooks.models.TxnType;
+import com.redbottledesign.accounting.quickbooks.util.IifUtils;
+import com.redbottledesign.util.Argument;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Function;
+
+/**
+ * A movable, read-only view of one line at a time in an
+ * {@link AbstractLineStore}.
+ *
+ * <p>A single cursor is meant to be re-positioned over many lines, so that
+ * reading a store does not require one object per line. The primitive
+ * accessors (e.g. {@link #getAccountId()}) read straight from the store; the
+ * {@link DataLineView} accessors (e.g. {@link #getAccount()}) create or look
+ * up the corresponding model object on each call.</p>
+ *
+ * <p>A cursor remains valid as more transactions are added to its store.
+ * This class is not thread-safe.</p>
+ *
+ * @author Guy Paddock (guy@redbottledesign.com)
+ */
+public class LineCursor
+implements DataLineView {
+    /**
+     * The store being read.
+     */
+    private final AbstractLineStore store;
+
+    /**
+     * The index of the current line; or, {@code -1} if the cursor is
+     * positioned before the first line.
+     */
+    private int lineIndex;
+
+    /**
+     * The index of the transaction that contains the current line.
+     */
+    private int transactionIndex;
+
+    /**
+     * The index just past the last line of the current transaction.
+     */
+    private int transactionEndIndex;
+
+    /**
+     * Constructor for {@code LineCursor}.
+     *
+     * <p>The new cursor is positioned before the first line.</p>
+     *
+     * @param   store
+     *          The store to read.
+     */
+    public LineCursor(final AbstractLineStore store) {
+        Argument.ensureNotNull(store, "store");
+
+        this.store = store;
+
+        this.reset();
+    }
+
+    /**
+     * Gets the store that this cursor reads.
+     *
+     * @return  The store.
+     */
+    public AbstractLineStore getStore() {
+        return this.store;
+    }
+
+    /**
+     * Positions this cursor before the first line.
+     */
+    public void reset() {
+        this.lineIndex              = -1;
+        this.transactionIndex       = -1;
+        this.transactionEndIndex    = 0;
+    }
+
+    /**
+     * Moves this cursor to the given line.
+     *
+     * @param   lineIndex
+     *          The index of the line.
+     *
+     * @throws  IndexOutOfBoundsException
+     *          If there is no such line in a completed transaction.
+     */
+    public void moveTo(final int lineIndex)
+    throws IndexOutOfBoundsException {
+        final int transactionIndex = this.store.findTransaction(lineIndex);
+
+        this.lineIndex              = lineIndex;
+        this.transactionIndex       = transactionIndex;
+        this.transactionEndIndex    = this.store.getEndLineIndex(transactionIndex);
+    }
+
+    /**
+     * Moves this cursor to the next line, if there is one.
+     *
+     * @return  {@code true} if the cursor was moved; or, {@code false} if the
+     *          cursor was already on the last line, in which case it is not
+     *          moved.
+     */
+    public boolean next() {
+        final boolean result;
+        final int     nextLineIndex = this.lineIndex + 1;
+
+        if (nextLineIndex < this.store.getLineCount()) {
+            if (nextLineIndex == this.transactionEndIndex) {
+                ++this.transactionIndex;
+
+                this.transactionEndIndex = this.store.getEndLineIndex(this.transactionIndex);
+            }
+
+            this.lineIndex = nextLineIndex;
+
+            result = true;
+        }
+        else {
+            result = false;
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets the index of the current line.
+     *
+     * @return  The line index; or, {@code -1} if the cursor is positioned
+     *          before the first line.
+     */
+    public int getLineIndex() {
+        return this.lineIndex;
+    }
+
+    /**
+     * Gets the index of the transaction that contains the current line.
+     *
+     * @return  The transaction index.
+     */
+    public int getTransactionIndex() {
+        return this.transactionIndex;
+    }
+
+    /**
+     * Indicates whether or not the current line is the first line of its
+     * transaction, and so is exported as a {@code TRNS} line.
+     *
+     * @return  {@code true} if the current line is a transaction line; or,
+     *          {@code false} if it is a split line.
+     */
+    public boolean isTransactionLine() {
+        return (this.lineIndex == this.store.getFirstLineIndex(this.transactionIndex));
+    }
+
+    /**
+     * Gets the dictionary ID of the document number of the current line.
+     *
+     * @return  The ID of the document number.
+     */
+    public int getDocNumberId() {
+        return this.store.getDocNumberId(this.lineIndex);
+    }
+
+    /**
+     * Gets the dictionary ID of the transaction identifier of the current
+     * line.
+     *
+     * @return  The ID of the transaction identifier.
+     */
+    public int getTxnIdentifierId() {
+        return this.store.getTxnIdentifierId(this.lineIndex);
+    }
+
+    /**
+     * Gets the date of the current line.
+     *
+     * @return  The date, in epoch days.
+     */
+    public int getEpochDay() {
+        return this.store.getDate(this.lineIndex);
+    }
+
+    /**
+     * Gets the dictionary ID of the account of the current line.
+     *
+     * @return  The ID of the account.
+     */
+    public int getAccountId() {
+        return this.store.getAccountId(this.lineIndex);
+    }
+
+    /**
+     * Gets the dictionary ID of the name of the current line.
+     *
+     * @return  The ID of the name.
+     */
+    public int getNameId() {
+        return this.store.getNameId(this.lineIndex);
+    }
+
+    /**
+     * Gets the dictionary ID of the class of the current line.
+     *
+     * @return  The ID of the class.
+     */
+    public int getTxnClassId() {
+        return this.store.getTxnClassId(this.lineIndex);
+    }
+
+    /**
+     * Gets the amount of the current line.
+     *
+     * @return  The amount, in cents.
+     */
+    public long getAmountCents() {
+        return this.store.getAmountCents(this.lineIndex);
+    }
+
+    /**
+     * Gets the dictionary ID of the payment method of the current line.
+     *
+     * @return  The ID of the payment method.
+     */
+    public int getPaymentMethodId() {
+        return this.store.getPaymentMethodId(this.lineIndex);
+    }
+
+    /**
+     * Gets the dictionary ID of the memo of the current line.
+     *
+     * @return  The ID of the memo.
+     */
+    public int getMemoId() {
+        return this.store.getMemoId(this.lineIndex);
+    }
+
+    /**
+     * Gets the to-print flag of the transaction that contains the current
+     * line.
+     *
+     * @return  {@code 1} for "yes", {@code 0} for "no", or {@code -1} if the
+     *          flag has no value.
+     */
+    public byte getToPrintCode() {
+        return this.store.getToPrintCode(this.transactionIndex);
+    }
+
+    /**
+     * Gets the due date of the transaction that contains the current line.
+     *
+     * @return  The due date, in epoch days; or,
+     *          {@link AbstractLineStore#NO_DATE}.
+     */
+    public int getDueDateEpochDay() {
+        return this.store.getDueDate(this.transactionIndex);
+    }
+
+    /**
+     * Gets the dictionary ID of the payment terms of the transaction that
+     * contains the current line.
+     *
+     * @return  The ID of the terms; or, {@link AbstractLineStore#NO_VALUE}.
+     */
+    public int getTermsId() {
+        return this.store.getTermsId(this.transactionIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DocNumber getDocNumber() {
+        return this.toValue(this.getDocNumberId(), DocNumber.EMPTY, DocNumber::new);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public TxnIdentifier getId() {
+        return this.toValue(this.getTxnIdentifierId(), TxnIdentifier.EMPTY, TxnIdentifier::new);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public TxnType getType() {
+        return this.store.getType(this.lineIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Date getDate() {
+        return Date.ofEpochDay(this.getEpochDay());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Account getAccount() {
+        return Account.of(this.store.getDictionary().get(this.getAccountId()));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Name getName() {
+        return this.toValue(this.getNameId(), Name.EMPTY, Name::of);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public TxnClass getTxnClass() {
+        return this.toValue(this.getTxnClassId(), TxnClass.EMPTY, TxnClass::of);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Amount getAmount() {
+        return Amount.ofCents(this.getAmountCents());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PaymentMethod getPaymentMethod() {
+        return this.toValue(this.getPaymentMethodId(), PaymentMethod.EMPTY, PaymentMethod::of);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Memo getMemo() {
+        return this.toValue(this.getMemoId(), Memo.EMPTY, Memo::of);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getLineType() {
+        final String result;
+
+        if (this.isTransactionLine()) {
+            result = "TRNS";
+        }
+        else {
+            result = "SPL";
+        }
+
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Only the current line is exported, without a trailing newline.</p>
+     */
+    @Override
+    public String toIifString() {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        try {
+            new IifLineEncoder(this.store.getDictionary()).writeLine(output, this);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        return new String(output.toByteArray(), IifUtils.IIF_CHARSET);
+    }
+
+    /**
+     * Creates a new, stand-alone copy of the current line as a model object.
+     *
+     * <p>The first line of a transaction becomes a {@link TransactionLine},
+     * including its {@code TRNS}-only columns; all other lines become
+     * {@link SplitLine}s.</p>
+     *
+     * @return  The new line.
+     */
+    public DataLine toDataLine() {
+        final DataLine result;
+
+        if (this.isTransactionLine()) {
+            result = this.createTransactionLine();
+        }
+        else {
+            result = new SplitLine();
+
+            result.setType(this.getType());
+        }
+
+        result.setDocNumber(this.getDocNumber());
+        result.setId(this.getId());
+        result.setDate(this.getDate());
+        result.setAccount(this.getAccount());
+        result.setName(this.getName());
+        result.setTxnClass(this.getTxnClass());
+        result.setAmount(this.getAmount());
+        result.setPaymentMethod(this.getPaymentMethod());
+        result.setMemo(this.getMemo());
+
+        return result;
+    }
+
+    /**
+     * Creates a {@code TRNS} line for the current line, including the
+     * {@code TRNS}-only columns of its transaction.
+     *
+     * @return  The new transaction line.
+     */
+    private TransactionLine createTransactionLine() {
+        final TransactionLine   line        = new TransactionLine();
+        final byte              toPrintCode = this.getToPrintCode();
+        final int               dueDate     = this.getDueDateEpochDay(),
+                                termsId     = this.getTermsId();
+
+        line.setType(this.getType());
+
+        if (toPrintCode != AbstractLineStore.TO_PRINT_EMPTY) {
+            line.setNeedsToBePrinted(
+                (toPrintCode == AbstractLineStore.TO_PRINT_YES) ? BooleanValue.TRUE : BooleanValue.FALSE);
+        }
+
+        if (dueDate != AbstractLineStore.NO_DATE) {
+            line.setDueDate(Date.ofEpochDay(dueDate));
+        }
+
+        if (termsId != AbstractLineStore.NO_VALUE) {
+            line.setTerms(this.toValue(termsId, PaymentTerms.EMPTY, PaymentTerms::new));
+        }
+
+        return line;
+    }
+
+    /**
+     * Converts a dictionary ID back into a value object.
+     *
+     * @param   id
+     *          The dictionary ID.
+     *
+     * @param   emptyValue
+     *          The value to use for the empty string.
+     *
+     * @param   factory
+     *          The function that creates a value from a non-empty string.
+     *
+     * @return  The value object.
+     */
+    private <V> V toValue(final int id, final V emptyValue, final Function<String, V> factory) {
+        final V result;
+
+        if (id == StringDictionary.EMPTY_ID) {
+            result = emptyValue;
+        }
+        else {
+            result = factory.apply(this.store.getDictionary().get(id));
+        }
+
+        return result;
+    }
+}
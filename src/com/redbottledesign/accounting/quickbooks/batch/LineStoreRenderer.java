@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2016 Red Bottle Design, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redbottledesign.accounting.quickbooks.batch;
+
+import com.redbottledesign.util.Argument;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writes the transactions in an {@link AbstractLineStore} out as IIF,
+ * directly from the columns of the store.
+ *
+ * <p>The output is identical to exporting the equivalent {@code Transaction}
+ * objects: each transaction is a {@code TRNS} line, zero or more {@code SPL}
+ * lines, and an {@code ENDTRNS} line, with all lines separated by newlines.
+ * Like {@code Transaction}, no header and no trailing newline are
+ * written.</p>
+ *
+ * <p>A renderer reads the store through a single {@link LineCursor}, so no
+ * objects are created per line. It caches the encoded form of recently-used
+ * dates, so it should not be shared between threads.</p>
+ *
+ * @author Guy Paddock (guy@redbottledesign.com)
+ */
+public class LineStoreRenderer {
+    /**
+     * The size of the buffer used when writing to a stream.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The store being rendered.
+     */
+    private final AbstractLineStore store;
+
+    /**
+     * The cursor used to read the store.
+     */
+    private final LineCursor cursor;
+
+    /**
+     * The encoder used to write each line.
+     */
+    private final IifLineEncoder encoder;
+
+    /**
+     * Constructor for {@code LineStoreRenderer}.
+     *
+     * @param   store
+     *          The store to render.
+     */
+    public LineStoreRenderer(final AbstractLineStore store) {
+        Argument.ensureNotNull(store, "store");
+
+        this.store      = store;
+        this.cursor     = store.cursor();
+        this.encoder    = new IifLineEncoder(store.getDictionary());
+    }
+
+    /**
+     * Writes all of the transactions in the store to the given stream.
+     *
+     * <p>The stream is flushed, but not closed, by this method.</p>
+     *
+     * @param   output
+     *          The stream to write to.
+     *
+     * @throws  IOException
+     *          If the stream cannot be written.
+     */
+    public void render(final OutputStream output)
+    throws IOException {
+        this.render(output, 0, this.store.getTransactionCount());
+    }
+
+    /**
+     * Writes all of the transactions in the store to the given channel.
+     *
+     * <p>Output is buffered, and written to the channel in large blocks. The
+     * channel is not closed by this method.</p>
+     *
+     * @param   channel
+     *          The channel to write to.
+     *
+     * @throws  IOException
+     *          If the channel cannot be written.
+     */
+    public void render(final WritableByteChannel channel)
+    throws IOException {
+        Argument.ensureNotNull(channel, "channel");
+
+        this.render(Channels.newOutputStream(channel));
+    }
+
+    /**
+     * Writes a range of the transactions in the store to the given stream.
+     *
+     * <p>The stream is flushed, but not closed, by this method.</p>
+     *
+     * @param   output
+     *          The stream to write to.
+     *
+     * @param   fromTransaction
+     *          The index of the first transaction to write.
+     *
+     * @param   toTransaction
+     *          The index just past the last transaction to write.
+     *
+     * @throws  IOException
+     *          If the stream cannot be written.
+     */
+    public void render(final OutputStream output, final int fromTransaction, final int toTransaction)
+    throws IOException {
+        final OutputStream bufferedOutput = new BufferedOutputStream(output, BUFFER_SIZE);
+
+        for (int transactionIndex = fromTransaction; transactionIndex < toTransaction; ++transactionIndex) {
+            if (transactionIndex > fromTransaction) {
+                bufferedOutput.write(IifLineEncoder.NEWLINE);
+            }
+
+            this.renderTransaction(bufferedOutput, transactionIndex);
+        }
+
+        bufferedOutput.flush();
+    }
+
+    /**
+     * Writes a single transaction, including its termination line.
+     *
+     * @param   output
+     *          The stream to write to.
+     *
+     * @param   transactionIndex
+     *          The index of the transaction to write.
+     *
+     * @throws  IOException
+     *          If the stream cannot be written.
+     *
+     * @throws  IllegalArgumentException
+     *          If the transaction is a bill or invoice but does not have a due
+     *          date or terms.
+     */
+    protected void renderTransaction(final OutputStream output, final int transactionIndex)
+    throws IOException, IllegalArgumentException {
+        final LineCursor    cursor      = this.cursor;
+        final int           firstLine   = this.store.getFirstLineIndex(transactionIndex),
+                            endLine     = this.store.getEndLineIndex(transactionIndex);
+
+        // When rendering transactions in order, the cursor is already there.
+        if (cursor.getLineIndex() != firstLine) {
+            cursor.moveTo(firstLine);
+        }
+
+        do {
+            this.encoder.writeLine(output, cursor);
+
+            output.write(IifLineEncoder.NEWLINE);
+        }
+        while (cursor.next() && (cursor.getLineIndex() < endLine));
+
+        output.write(IifLineEncoder.TERMINATION_LINE);
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2016 Red Bottle Design, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redbottledesign.accounting.quickbooks.batch;
+
+import com.redbottledesign.accounting.quickbooks.models.TxnType;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A store for transaction lines that keeps the lines themselves outside of
+ * the Java heap, for ledgers with tens of millions of lines.
+ *
+ * <p>Each line is a fixed-width record in a direct {@link ByteBuffer}, with
+ * its string columns stored as IDs in the store's {@link StringDictionary}.
+ * Records are allocated in chunks of {@value #RECORDS_PER_CHUNK} lines, so
+ * the heap only holds the chunk list, the dictionary of distinct values, and
+ * a few primitive arrays of per-transaction bookkeeping. None of these hold
+ * per-line object references, so the size of the ledger has little effect on
+ * garbage collection.</p>
+ *
+ * <p>Lines are read back through a {@link LineCursor}, and rendered straight
+ * from the records by a {@link LineStoreRenderer}. The off-heap memory is
+ * released once the store itself is no longer reachable.</p>
+ *
+ * <p>This class is not thread-safe.</p>
+ *
+ * @author Guy Paddock (guy@redbottledesign.com)
+ */
+public class OffHeapLineStore
+extends AbstractLineStore {
+    /**
+     * The number of line records in each chunk of off-heap memory.
+     */
+    public static final int RECORDS_PER_CHUNK = 1 << 16;
+
+    /**
+     * The number of bits to shift a line index to get its chunk index.
+     */
+    private static final int CHUNK_SHIFT = 16;
+
+    /**
+     * The mask that gives the position of a line within its chunk.
+     */
+    private static final int CHUNK_MASK = RECORDS_PER_CHUNK - 1;
+
+    /**
+     * The default initial transaction capacity of a store.
+     */
+    private static final int DEFAULT_TRANSACTION_CAPACITY = 1024;
+
+    /**
+     * The offsets of each column within a line record. The amount comes first
+     * so that it stays 8-byte aligned.
+     */
+    private static final int AMOUNT_OFFSET              = 0;
+    private static final int DOC_NUMBER_OFFSET          = 8;
+    private static final int TXN_IDENTIFIER_OFFSET      = 12;
+    private static final int DATE_OFFSET                = 16;
+    private static final int ACCOUNT_OFFSET             = 20;
+    private static final int NAME_OFFSET                = 24;
+    private static final int TXN_CLASS_OFFSET           = 28;
+    private static final int PAYMENT_METHOD_OFFSET      = 32;
+    private static final int MEMO_OFFSET                = 36;
+    private static final int TYPE_OFFSET                = 40;
+
+    /**
+     * The size of each line record, in bytes, padded to a multiple of 8.
+     */
+    public static final int RECORD_SIZE = 48;
+
+    /**
+     * The chunks of off-heap memory that hold the line records.
+     */
+    private final List<ByteBuffer> chunks;
+
+    /**
+     * Default constructor for {@code OffHeapLineStore}.
+     */
+    public OffHeapLineStore() {
+        this(DEFAULT_TRANSACTION_CAPACITY);
+    }
+
+    /**
+     * Constructor for {@code OffHeapLineStore} that pre-sizes the
+     * per-transaction bookkeeping.
+     *
+     * @param   transactionCapacity
+     *          The expected number of transactions. The store grows as
+     *          needed.
+     */
+    public OffHeapLineStore(final int transactionCapacity) {
+        super(transactionCapacity);
+
+        this.chunks = new ArrayList<>();
+    }
+
+    /**
+     * Gets the number of bytes of off-heap memory allocated by this store.
+     *
+     * @return  The size of all allocated chunks, in bytes.
+     */
+    public long getAllocatedBytes() {
+        return (long)this.chunks.size() * RECORDS_PER_CHUNK * RECORD_SIZE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getDocNumberId(final int lineIndex) {
+        return this.readInt(lineIndex, DOC_NUMBER_OFFSET);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getTxnIdentifierId(final int lineIndex) {
+        return this.readInt(lineIndex, TXN_IDENTIFIER_OFFSET);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public TxnType getType(final int lineIndex) {
+        this.ensureValidLine(lineIndex);
+
+        return TYPES[this.getChunk(lineIndex).get(getRecordOffset(lineIndex) + TYPE_OFFSET)];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getDate(final int lineIndex) {
+        return this.readInt(lineIndex, DATE_OFFSET);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getAccountId(final int lineIndex) {
+        return this.readInt(lineIndex, ACCOUNT_OFFSET);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getNameId(final int lineIndex) {
+        return this.readInt(lineIndex, NAME_OFFSET);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getTxnClassId(final int lineIndex) {
+        return this.readInt(lineIndex, TXN_CLASS_OFFSET);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getAmountCents(final int lineIndex) {
+        this.ensureValidLine(lineIndex);
+
+        return this.getChunk(lineIndex).getLong(getRecordOffset(lineIndex) + AMOUNT_OFFSET);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getPaymentMethodId(final int lineIndex) {
+        return this.readInt(lineIndex, PAYMENT_METHOD_OFFSET);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getMemoId(final int lineIndex) {
+        return this.readInt(lineIndex, MEMO_OFFSET);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void storeLine(final int lineIndex, final int docNumberId, final int txnIdentifierId,
+                             final TxnType type, final int epochDay, final int accountId,
+                             final int nameId, final int txnClassId, final long amountCents,
+                             final int paymentMethodId, final int memoId) {
+        final int           chunkIndex  = lineIndex >>> CHUNK_SHIFT;
+        final ByteBuffer    chunk;
+        final int           offset      = getRecordOffset(lineIndex);
+
+        if (chunkIndex == this.chunks.size()) {
+            this.chunks.add(
+                ByteBuffer.allocateDirect(RECORDS_PER_CHUNK * RECORD_SIZE).order(ByteOrder.nativeOrder()));
+        }
+
+        chunk = this.chunks.get(chunkIndex);
+
+        chunk.putLong(offset + AMOUNT_OFFSET,           amountCents);
+        chunk.putInt(offset + DOC_NUMBER_OFFSET,        docNumberId);
+        chunk.putInt(offset + TXN_IDENTIFIER_OFFSET,    txnIdentifierId);
+        chunk.putInt(offset + DATE_OFFSET,              epochDay);
+        chunk.putInt(offset + ACCOUNT_OFFSET,           accountId);
+        chunk.putInt(offset + NAME_OFFSET,              nameId);
+        chunk.putInt(offset + TXN_CLASS_OFFSET,         txnClassId);
+        chunk.putInt(offset + PAYMENT_METHOD_OFFSET,    paymentMethodId);
+        chunk.putInt(offset + MEMO_OFFSET,              memoId);
+        chunk.put(offset + TYPE_OFFSET,                 (byte)type.ordinal());
+    }
+
+    /**
+     * Reads an {@code int} column of the given line.
+     *
+     * @param   lineIndex
+     *          The index of the line.
+     *
+     * @param   columnOffset
+     *          The offset of the column within the line record.
+     *
+     * @return  The value of the column.
+     */
+    private int readInt(final int lineIndex, final int columnOffset) {
+        this.ensureValidLine(lineIndex);
+
+        return this.getChunk(lineIndex).getInt(getRecordOffset(lineIndex) + columnOffset);
+    }
+
+    /**
+     * Gets the chunk that holds the record of the given line.
+     *
+     * @param   lineIndex
+     *          The index of the line.
+     *
+     * @return  The chunk.
+     */
+    private ByteBuffer getChunk(final int lineIndex) {
+        return this.chunks.get(lineIndex >>> CHUNK_SHIFT);
+    }
+
+    /**
+     * Gets the position of the record of the given line within its chunk.
+     *
+     * @param   lineIndex
+     *          The index of the line.
+     *
+     * @return  The byte offset of the record.
+     */
+    private static int getRecordOffset(final int lineIndex) {
+        return (lineIndex & CHUNK_MASK) * RECORD_SIZE;
+    }
+}
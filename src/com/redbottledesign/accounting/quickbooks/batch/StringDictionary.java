@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2016 Red Bottle Design, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redbottledesign.accounting.quickbooks.batch;
+
+import com.redbottledesign.accounting.quickbooks.util.IifUtils;
+import com.redbottledesign.util.Argument;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.CharsetEncoder;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A dictionary that maps each distinct string to a small integer ID.
+ *
+ * <p>The empty string is always present, with an ID of {@link #EMPTY_ID}. The
+ * escaped, encoded IIF form of each value is computed exactly once, when the
+ * value is added.</p>
+ *
+ * <p>This class is not thread-safe for writes. Once values are no longer
+ * being added, any number of threads can read from the dictionary.</p>
+ *
+ * @author Guy Paddock (guy@redbottledesign.com)
+ */
+public class StringDictionary {
+    /**
+     * The ID of the empty string.
+     */
+    public static final int EMPTY_ID = 0;
+
+    /**
+     * The initial capacity of a new dictionary.
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * The ID of each value in the dictionary.
+     */
+    private final Map<String, Integer> ids;
+
+    /**
+     * The values in the dictionary, indexed by ID.
+     */
+    private String[] values;
+
+    /**
+     * The escaped, encoded IIF form of each value, indexed by ID.
+     */
+    private byte[][] iifBytes;
+
+    /**
+     * The number of values in the dictionary.
+     */
+    private int size;
+
+    /**
+     * The encoder used to check whether each new value can be represented in
+     * {@link IifUtils#IIF_CHARSET}.
+     */
+    private final CharsetEncoder iifEncoder;
+
+    /**
+     * Whether every value in the dictionary can be represented in
+     * {@link IifUtils#IIF_CHARSET}.
+     */
+    private boolean isIifCharsetLossless;
+
+    /**
+     * Default constructor for {@code StringDictionary}.
+     */
+    public StringDictionary() {
+        this.ids        = new HashMap<>();
+        this.values     = new String[INITIAL_CAPACITY];
+        this.iifBytes   = new byte[INITIAL_CAPACITY][];
+        this.size       = 0;
+
+        this.iifEncoder             = IifUtils.IIF_CHARSET.newEncoder();
+        this.isIifCharsetLossless   = true;
+
+        this.idOf("");
+    }
+
+    /**
+     * Gets the ID of the given value, adding it to the dictionary if it is not
+     * already present.
+     *
+     * @param   value
+     *          The value to look up.
+     *
+     * @return  The ID of the value.
+     */
+    public int idOf(final String value) {
+        Integer id;
+
+        Argument.ensureNotNull(value, "value");
+
+        id = this.ids.get(value);
+
+        if (id == null) {
+            id = this.size;
+
+            if (id == this.values.length) {
+                this.values     = Arrays.copyOf(this.values, id * 2);
+                this.iifBytes   = Arrays.copyOf(this.iifBytes, id * 2);
+            }
+
+            final String escapedValue = IifUtils.escapeColumn(value);
+
+            this.values[id]     = value;
+            this.iifBytes[id]   = escapedValue.getBytes(IifUtils.IIF_CHARSET);
+
+            if (this.isIifCharsetLossless && !this.iifEncoder.canEncode(escapedValue)) {
+                this.isIifCharsetLossless = false;
+            }
+
+            this.ids.put(value, id);
+
+            ++this.size;
+        }
+
+        return id;
+    }
+
+    /**
+     * Gets the value that has the given ID.
+     *
+     * @param   id
+     *          The ID of the value.
+     *
+     * @return  The value.
+     *
+     * @throws  IndexOutOfBoundsException
+     *          If there is no value with the given ID.
+     */
+    public String get(final int id)
+    throws IndexOutOfBoundsException {
+        this.ensureValidId(id);
+
+        return this.values[id];
+    }
+
+    /**
+     * Gets the number of distinct values in the dictionary, including the
+     * empty string.
+     *
+     * @return  The size of the dictionary.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Indicates whether every value in this dictionary can be represented in
+     * {@link IifUtils#IIF_CHARSET}.
+     *
+     * <p>If not, the encoded IIF form of at least one value has characters
+     * that were replaced during encoding, so decoding it would not give back
+     * the original value.</p>
+     *
+     * @return  {@code true} if every value encodes without loss; or,
+     *          {@code false} otherwise.
+     */
+    public boolean isIifCharsetLossless() {
+        return this.isIifCharsetLossless;
+    }
+
+    /**
+     * Writes the escaped IIF form of the value having the given ID to the
+     * given stream, encoded in {@link IifUtils#IIF_CHARSET}.
+     *
+     * @param   id
+     *          The ID of the value.
+     *
+     * @param   output
+     *          The stream to write to.
+     *
+     * @throws  IOException
+     *          If the stream cannot be written.
+     */
+    public void writeIifTo(final int id, final OutputStream output)
+    throws IOException {
+        output.write(this.getIifBytes(id));
+    }
+
+    /**
+     * Gets the escaped IIF form of the value having the given ID, encoded in
+     * {@link IifUtils#IIF_CHARSET}.
+     *
+     * <p>The returned array is shared, and must not be modified.</p>
+     *
+     * @param   id
+     *          The ID of the value.
+     *
+     * @return  The encoded IIF form of the value.
+     */
+    byte[] getIifBytes(final int id) {
+        this.ensureValidId(id);
+
+        return this.iifBytes[id];
+    }
+
+    /**
+     * Ensures that the given ID refers to a value in this dictionary.
+     *
+     * @param   id
+     *          The ID to check.
+     *
+     * @throws  IndexOutOfBoundsException
+     *          If there is no value with the given ID.
+     */
+    private void ensureValidId(final int id)
+    throws IndexOutOfBoundsException {
+        if ((id < 0) || (id >= this.size)) {
+            throw new IndexOutOfBoundsException(
+                String.format("No value has ID `%d` (dictionary size is `%d`).", id, this.size));
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2016 Red Bottle Design, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redbottledesign.accounting.quickbooks.batch;
+
+import com.redbottledesign.accounting.quickbooks.models.TxnType;
+import com.redbottledesign.util.Argument;
+
+import java.util.Arrays;
+
+/**
+ * A compact, column-oriented, in-memory store for a large number of
+ * transactions.
+ *
+ * <p>Instead of one object per line and one more object per column, each
+ * column is kept in its own primitive array: amounts as whole cents, dates as
+ * epoch days, transaction types as byte codes, and all string columns as IDs
+ * in a shared {@link StringDictionary}.</p>
+ *
+ * <p>See {@link AbstractLineStore} for how transactions are added and read
+ * back. For ledgers too large to keep on the heap, see
+ * {@link OffHeapLineStore}.</p>
+ *
+ * <p>This class is not thread-safe.</p>
+ *
+ * @author Guy Paddock (guy@redbottledesign.com)
+ */
+public class TransactionBatch
+extends AbstractLineStore {
+    /**
+     * The default initial line capacity of a batch.
+     */
+    private static final int DEFAULT_LINE_CAPACITY = 1024;
+
+    /**
+     * The per-line columns. Strings are stored as dictionary IDs, types as
+     * {@link TxnType} ordinals, dates as epoch days, and amounts in cents.
+     */
+    private int[] docNumberIds;
+    private int[] txnIdentifierIds;
+    private byte[] typeCodes;
+    private int[] dates;
+    private int[] accountIds;
+    private int[] nameIds;
+    private int[] txnClassIds;
+    private long[] amounts;
+    private int[] paymentMethodIds;
+    private int[] memoIds;
+
+    /**
+     * Default constructor for {@code TransactionBatch}.
+     */
+    public TransactionBatch() {
+        this(DEFAULT_LINE_CAPACITY / 2, DEFAULT_LINE_CAPACITY);
+    }
+
+    /**
+     * Constructor for {@code TransactionBatch} that pre-sizes the batch.
+     *
+     * <p>The batch grows as needed; the capacities given here only avoid
+     * resizing when the final size is known up front.</p>
+     *
+     * @param   transactionCapacity
+     *          The expected number of transactions.
+     *
+     * @param   lineCapacity
+     *          The expected number of lines, across all transactions.
+     */
+    public TransactionBatch(final int transactionCapacity, final int lineCapacity) {
+        this(transactionCapacity, lineCapacity, new StringDictionary());
+    }
+
+    /**
+     * Constructor for {@code TransactionBatch} that pre-sizes the batch and
+     * stores string columns in an existing dictionary.
+     *
+     * <p>This allows several batches to share one dictionary, so that each
+     * distinct value is only kept and encoded once across all of them.</p>
+     *
+     * @param   transactionCapacity
+     *          The expected number of transactions.
+     *
+     * @param   lineCapacity
+     *          The expected number of lines, across all transactions.
+     *
+     * @param   dictionary
+     *          The dictionary to use for string columns.
+     */
+    public TransactionBatch(final int transactionCapacity, final int lineCapacity,
+                            final StringDictionary dictionary) {
+        super(transactionCapacity, dictionary);
+
+        Argument.ensureInRange(lineCapacity, 1, Integer.MAX_VALUE, "lineCapacity");
+
+        this.docNumberIds       = new int[lineCapacity];
+        this.txnIdentifierIds   = new int[lineCapacity];
+        this.typeCodes          = new byte[lineCapacity];
+        this.dates              = new int[lineCapacity];
+        this.accountIds         = new int[lineCapacity];
+        this.nameIds            = new int[lineCapacity];
+        this.txnClassIds        = new int[lineCapacity];
+        this.amounts            = new long[lineCapacity];
+        this.paymentMethodIds   = new int[lineCapacity];
+        this.memoIds            = new int[lineCapacity];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getDocNumberId(final int lineIndex) {
+        this.ensureValidLine(lineIndex);
+
+        return this.docNumberIds[lineIndex];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getTxnIdentifierId(final int lineIndex) {
+        this.ensureValidLine(lineIndex);
+
+        return this.txnIdentifierIds[lineIndex];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public TxnType getType(final int lineIndex) {
+        this.ensureValidLine(lineIndex);
+
+        return TYPES[this.typeCodes[lineIndex]];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getDate(final int lineIndex) {
+        this.ensureValidLine(lineIndex);
+
+        return this.dates[lineIndex];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getAccountId(final int lineIndex) {
+        this.ensureValidLine(lineIndex);
+
+        return this.accountIds[lineIndex];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getNameId(final int lineIndex) {
+        this.ensureValidLine(lineIndex);
+
+        return this.nameIds[lineIndex];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getTxnClassId(final int lineIndex) {
+        this.ensureValidLine(lineIndex);
+
+        return this.txnClassIds[lineIndex];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getAmountCents(final int lineIndex) {
+        this.ensureValidLine(lineIndex);
+
+        return this.amounts[lineIndex];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getPaymentMethodId(final int lineIndex) {
+        this.ensureValidLine(lineIndex);
+
+        return this.paymentMethodIds[lineIndex];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getMemoId(final int lineIndex) {
+        this.ensureValidLine(lineIndex);
+
+        return this.memoIds[lineIndex];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void storeLine(final int lineIndex, final int docNumberId, final int txnIdentifierId,
+                             final TxnType type, final int epochDay, final int accountId,
+                             final int nameId, final int txnClassId, final long amountCents,
+                             final int paymentMethodId, final int memoId) {
+        this.ensureLineCapacity(lineIndex + 1);
+
+        this.docNumberIds[lineIndex]      = docNumberId;
+        this.txnIdentifierIds[lineIndex]  = txnIdentifierId;
+        this.typeCodes[lineIndex]         = (byte)type.ordinal();
+        this.dates[lineIndex]             = epochDay;
+        this.accountIds[lineIndex]        = accountId;
+        this.nameIds[lineIndex]           = nameId;
+        this.txnClassIds[lineIndex]       = txnClassId;
+        this.amounts[lineIndex]           = amountCents;
+        this.paymentMethodIds[lineIndex]  = paymentMethodId;
+        this.memoIds[lineIndex]           = memoId;
+    }
+
+    /**
+     * Grows the per-line columns, if necessary, to hold at least the given
+     * number of lines.
+     *
+     * @param   capacity
+     *          The minimum number of lines.
+     */
+    private void ensureLineCapacity(final int capacity) {
+        if (capacity > this.amounts.length) {
+            final int newCapacity = growCapacity(this.amounts.length, capacity);
+
+            this.docNumberIds       = Arrays.copyOf(this.docNumberIds, newCapacity);
+            this.txnIdentifierIds   = Arrays.copyOf(this.txnIdentifierIds, newCapacity);
+            this.typeCodes          = Arrays.copyOf(this.typeCodes, newCapacity);
+            this.dates              = Arrays.copyOf(this.dates, newCapacity);
+            this.accountIds         = Arrays.copyOf(this.accountIds, newCapacity);
+            this.nameIds            = Arrays.copyOf(this.nameIds, newCapacity);
+            this.txnClassIds        = Arrays.copyOf(this.txnClassIds, newCapacity);
+            this.amounts            = Arrays.copyOf(this.amounts, newCapacity);
+            this.paymentMethodIds   = Arrays.copyOf(this.paymentMethodIds, newCapacity);
+            this.memoIds            = Arrays.copyOf(this.memoIds, newCapacity);
+        }
+    }
+}
@@ -0,0 +1,488 @@
+/*
+ * Copyright (C) 2016 Red Bottle Design, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redbottledesign.accounting.quickbooks.batch;
+
+import com.redbottledesign.accounting.quickbooks.models.Account;
+import com.redbottledesign.accounting.quickbooks.models.Amount;
+import com.redbottledesign.accounting.quickbooks.models.BooleanValue;
+import com.redbottledesign.accounting.quickbooks.models.DataLine;
+import com.redbottledesign.accounting.quickbooks.models.Date;
+import com.redbottledesign.accounting.quickbooks.models.DocNumber;
+import com.redbottledesign.accounting.quickbooks.models.Memo;
+import com.redbottledesign.accounting.quickbooks.models.Name;
+import com.redbottledesign.accounting.quickbooks.models.PaymentMethod;
+import com.redbottledesign.accounting.quickbooks.models.PaymentTerms;
+import com.redbottledesign.accounting.quickbooks.models.SplitLine;
+import com.redbottledesign.accounting.quickbooks.models.Transaction;
+import com.redbottledesign.accounting.quickbooks.models.TransactionLine;
+import com.redbottledesign.accounting.quickbooks.models.TxnClass;
+import com.redbottledesign.accounting.quickbooks.models.TxnIdentifier;
+import com.redbottledesign.accounting.quickbooks.models.TxnType;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Reads back transactions that were written by a
+ * {@link TransactionRecordWriter}, one record at a time.
+ *
+ * <p>Each transaction that is read is built from {@link TransactionLine} and
+ * {@link SplitLine} objects, and is {@linkplain Transaction#freeze() frozen}
+ * before it is returned. It exports identically to the transaction that was
+ * written.</p>
+ *
+ * <p>This class is not thread-safe.</p>
+ *
+ * @author Guy Paddock (guy@redbottledesign.com)
+ */
+final class TransactionRecordReader
+implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Each transaction type, by its QuickBooks identifier.
+     */
+    private static final Map<String, TxnType> TYPES_BY_IDENTIFIER = new HashMap<>();
+
+    static {
+        for (TxnType type : TxnType.values()) {
+            TYPES_BY_IDENTIFIER.put(type.getQbIdentifier(), type);
+        }
+    }
+
+    private final InputStream input;
+
+    /**
+     * The strings read so far, indexed by ID.
+     */
+    private final List<String> strings;
+
+    private long sequence;
+    private Transaction transaction;
+
+    /**
+     * Constructor for {@code TransactionRecordReader}.
+     *
+     * @param   input
+     *          The stream to read from. It is buffered by the reader, and
+     *          closed when the reader is closed.
+     */
+    TransactionRecordReader(final InputStream input) {
+        this.input      = new BufferedInputStream(input, BUFFER_SIZE);
+        this.strings    = new ArrayList<>();
+
+        this.strings.add("");
+    }
+
+    /**
+     * Reads the next record.
+     *
+     * @return  {@code true} if a record was read; or, {@code false} if the
+     *          end of the stream was reached.
+     *
+     * @throws  IOException
+     *          If the stream cannot be read, or does not contain valid
+     *          records.
+     */
+    boolean next()
+    throws IOException {
+        final int lineCount = (int)this.readVarLong();
+        boolean   result;
+
+        if (lineCount == 0) {
+            this.transaction    = null;
+            result              = false;
+        }
+        else {
+            this.sequence       = this.readVarLong();
+            this.transaction    = this.readTransactionBody(lineCount);
+            result              = true;
+        }
+
+        return result;
+    }
+
+    /**
+     * Reads the lines of a transaction, as written by
+     * {@link TransactionRecordWriter#writeTransactionBody(Transaction)}.
+     *
+     * @param   lineCount
+     *          The number of lines in the transaction.
+     *
+     * @return  The frozen transaction.
+     *
+     * @throws  IOException
+     *          If the stream cannot be read, or is not valid.
+     */
+    Transaction readTransactionBody(final int lineCount)
+    throws IOException {
+        final Transaction transaction;
+
+        if (lineCount <= 0) {
+            throw new StreamCorruptedException(
+                String.format("`%d` is not a valid line count.", lineCount));
+        }
+
+        transaction = new Transaction(lineCount);
+
+        transaction.addLine(this.readTransactionLine());
+
+        for (int lineIndex = 1; lineIndex < lineCount; ++lineIndex) {
+            transaction.addLine(this.readSplitLine());
+        }
+
+        return transaction.freeze();
+    }
+
+    /**
+     * Gets the sequence number of the record that was last read.
+     *
+     * @return  The sequence number.
+     */
+    long getSequence() {
+        return this.sequence;
+    }
+
+    /**
+     * Gets the transaction that was last read.
+     *
+     * @return  The frozen transaction; or, {@code null} if no record has been
+     *          read, or the end of the stream has been reached.
+     */
+    Transaction getTransaction() {
+        return this.transaction;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The underlying stream is closed.</p>
+     */
+    @Override
+    public void close()
+    throws IOException {
+        this.input.close();
+    }
+
+    /**
+     * Reads a {@code SPL} line.
+     *
+     * @return  The split line.
+     *
+     * @throws  IOException
+     *          If the stream cannot be read, or is not valid.
+     */
+    SplitLine readSplitLine()
+    throws IOException {
+        final SplitLine line = new SplitLine();
+
+        line.setType(this.readType());
+
+        this.readCommonColumns(line);
+
+        return line;
+    }
+
+    /**
+     * Reads the {@code TRNS}-only columns of a transaction, followed by its
+     * first line.
+     *
+     * @return  The {@code TRNS} line.
+     *
+     * @throws  IOException
+     *          If the stream cannot be read, or is not valid.
+     */
+    TransactionLine readTransactionLine()
+    throws IOException {
+        final TransactionLine   line        = new TransactionLine();
+        final int               flags       = this.readByte();
+        final int               toPrintCode = flags & TransactionRecordWriter.TO_PRINT_MASK;
+        final Date              dueDate;
+        final PaymentTerms      terms;
+
+        if ((flags & TransactionRecordWriter.HAS_DUE_DATE) != 0) {
+            dueDate = Date.ofEpochDay((int)unzigzag(this.readVarLong()));
+        }
+        else {
+            dueDate = null;
+        }
+
+        if ((flags & TransactionRecordWriter.HAS_TERMS) != 0) {
+            terms = toValue(this.readString(), PaymentTerms.EMPTY, PaymentTerms::new);
+        }
+        else {
+            terms = null;
+        }
+
+        line.setType(this.readType());
+
+        if (toPrintCode == AbstractLineStore.TO_PRINT_YES) {
+            line.setNeedsToBePrinted(BooleanValue.TRUE);
+        }
+        else if (toPrintCode == AbstractLineStore.TO_PRINT_NO) {
+            line.setNeedsToBePrinted(BooleanValue.FALSE);
+        }
+
+        if (dueDate != null) {
+            line.setDueDate(dueDate);
+        }
+
+        if (terms != null) {
+            line.setTerms(terms);
+        }
+
+        this.readCommonColumns(line);
+
+        return line;
+    }
+
+    /**
+     * Reads the columns that every line has, apart from its type.
+     *
+     * @param   line
+     *          The line to populate.
+     *
+     * @throws  IOException
+     *          If the stream cannot be read, or is not valid.
+     */
+    private void readCommonColumns(final DataLine line)
+    throws IOException {
+        line.setDate(Date.ofEpochDay((int)unzigzag(this.readVarLong())));
+        line.setAmount(this.readAmount());
+
+        line.setDocNumber(toValue(this.readString(), DocNumber.EMPTY, DocNumber::new));
+        line.setId(toValue(this.readString(), TxnIdentifier.EMPTY, TxnIdentifier::new));
+        line.setAccount(Account.of(this.readString()));
+        line.setName(toValue(this.readString(), Name.EMPTY, Name::of));
+        line.setTxnClass(toValue(this.readString(), TxnClass.EMPTY, TxnClass::of));
+        line.setPaymentMethod(toValue(this.readString(), PaymentMethod.EMPTY, PaymentMethod::of));
+        line.setMemo(toValue(this.readString(), Memo.EMPTY, Memo::of));
+    }
+
+    /**
+     * Reads a transaction type.
+     *
+     * @return  The type.
+     *
+     * @throws  IOException
+     *          If the stream cannot be read, or the type is not valid.
+     */
+    private TxnType readType()
+    throws IOException {
+        final String    identifier  = this.readString();
+        final TxnType   result      = TYPES_BY_IDENTIFIER.get(identifier);
+
+        if (result == null) {
+            throw new StreamCorruptedException(
+                String.format("`%s` is not a valid transaction type.", identifier));
+        }
+
+        return result;
+    }
+
+    /**
+     * Reads an amount.
+     *
+     * @return  The amount.
+     *
+     * @throws  IOException
+     *          If the stream cannot be read, or the amount is not valid.
+     */
+    private Amount readAmount()
+    throws IOException {
+        final int       tag = this.readByte();
+        final Amount    result;
+
+        if (tag == TransactionRecordWriter.AMOUNT_CENTS) {
+            result = Amount.ofCents(unzigzag(this.readVarLong()));
+        }
+        else if (tag == TransactionRecordWriter.AMOUNT_DECIMAL) {
+            final int       scale           = (int)unzigzag(this.readVarLong());
+            final byte[]    unscaledBytes   = this.readBytes((int)this.readVarLong());
+
+            result = new Amount(new BigDecimal(new BigInteger(unscaledBytes), scale));
+        }
+        else {
+            throw new StreamCorruptedException(
+                String.format("`%d` is not a valid amount tag.", tag));
+        }
+
+        return result;
+    }
+
+    /**
+     * Reads a string, either as a reference to an earlier occurrence or as a
+     * new literal.
+     *
+     * @return  The string.
+     *
+     * @throws  IOException
+     *          If the stream cannot be read, or the reference is not valid.
+     */
+    String readString()
+    throws IOException {
+        final long      reference = this.readVarLong();
+        final String    result;
+
+        if (reference == TransactionRecordWriter.NEW_STRING) {
+            final byte[] bytes = this.readBytes((int)this.readVarLong());
+
+            result = new String(bytes, StandardCharsets.UTF_8);
+
+            if (this.strings.size() < TransactionRecordWriter.MAX_STRING_IDS) {
+                this.strings.add(result);
+            }
+        }
+        else if (reference <= this.strings.size()) {
+            result = this.strings.get((int)(reference - 1));
+        }
+        else {
+            throw new StreamCorruptedException(
+                String.format("`%d` is not a valid string reference.", reference));
+        }
+
+        return result;
+    }
+
+    /**
+     * Reads exactly the given number of bytes.
+     *
+     * @param   length
+     *          The number of bytes to read.
+     *
+     * @return  The bytes.
+     *
+     * @throws  IOException
+     *          If the stream cannot be read, or ends early.
+     */
+    byte[] readBytes(final int length)
+    throws IOException {
+        final byte[] result;
+
+        if (length < 0) {
+            throw new StreamCorruptedException(
+                String.format("`%d` is not a valid length.", length));
+        }
+
+        result = this.input.readNBytes(length);
+
+        if (result.length != length) {
+            throw new EOFException("The stream ended in the middle of a record.");
+        }
+
+        return result;
+    }
+
+    /**
+     * Reads a single unsigned byte.
+     *
+     * @return  The byte.
+     *
+     * @throws  IOException
+     *          If the stream cannot be read, or has ended.
+     */
+    int readByte()
+    throws IOException {
+        final int result = this.input.read();
+
+        if (result < 0) {
+            throw new EOFException("The stream ended in the middle of a record.");
+        }
+
+        return result;
+    }
+
+    /**
+     * Reads a variable-length quantity, as written by
+     * {@link TransactionRecordWriter}.
+     *
+     * @return  The value.
+     *
+     * @throws  IOException
+     *          If the stream cannot be read, or the value is too long.
+     */
+    long readVarLong()
+    throws IOException {
+        long    result  = 0;
+        int     shift   = 0;
+        int     current;
+
+        do {
+            if (shift > 63) {
+                throw new StreamCorruptedException("A variable-length value is too long.");
+            }
+
+            current = this.readByte();
+            result |= (long)(current & 0x7F) << shift;
+            shift  += 7;
+        }
+        while ((current & 0x80) != 0);
+
+        return result;
+    }
+
+    /**
+     * Reverses {@link TransactionRecordWriter#zigzag(long)}.
+     *
+     * @param   value
+     *          The zigzag-encoded value.
+     *
+     * @return  The signed value.
+     */
+    private static long unzigzag(final long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Converts a string back into a value object.
+     *
+     * @param   value
+     *          The string.
+     *
+     * @param   emptyValue
+     *          The value to use for the empty string.
+     *
+     * @param   factory
+     *          The function that creates a value from a non-empty string.
+     *
+     * @return  The value object.
+     */
+    private static <V> V toValue(final String value, final V emptyValue, final Function<String, V> factory) {
+        final V result;
+
+        if (value.isEmpty()) {
+            result = emptyValue;
+        }
+        else {
+            result = factory.apply(value);
+        }
+
+        return result;
+    }
+}
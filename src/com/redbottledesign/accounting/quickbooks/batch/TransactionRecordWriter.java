@@ -0,0 +1,482 @@
+/*
+ * Copyright (C) 2016 Red Bottle Design, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redbottledesign.accounting.quickbooks.batch;
+
+import com.redbottledesign.accounting.quickbooks.models.Amount;
+import com.redbottledesign.accounting.quickbooks.models.BooleanValue;
+import com.redbottledesign.accounting.quickbooks.models.DataLineView;
+import com.redbottledesign.accounting.quickbooks.models.ImmutableSplitLine;
+import com.redbottledesign.accounting.quickbooks.models.ImmutableTransactionLine;
+import com.redbottledesign.accounting.quickbooks.models.SplitLine;
+import com.redbottledesign.accounting.quickbooks.models.Transaction;
+import com.redbottledesign.accounting.quickbooks.models.TransactionLine;
+import com.redbottledesign.accounting.quickbooks.models.TransactionLineView;
+import com.redbottledesign.accounting.quickbooks.models.TxnType;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes transactions to a stream in a compact binary form, as a sequence of
+ * records that can be read back with a {@link TransactionRecordReader}.
+ *
+ * <p>Each record holds one transaction, along with a sequence number chosen by
+ * the caller. Integers are written as variable-length quantities, dates as
+ * epoch days, and amounts as whole cents wherever possible. Each distinct
+ * string is written once; later occurrences refer back to it by ID.</p>
+ *
+ * <p>The layout of a record is:</p>
+ * <pre>
+ *   varint     line count (zero marks the end of the stream)
+ *   varlong    sequence number
+ *   byte       TRNS flags: low bits of the to-print code (bits 0-1), has
+ *              due date (bit 2),
+ *              has terms (bit 3)
+ *   [zigzag]   due date, in epoch days, if present
+ *   [string]   terms, if present
+ *   per line:
+ *     string   transaction type, as its QuickBooks identifier
+ *     zigzag   date, in epoch days
+ *     amount   tag 0 and zigzag cents; or, tag 1, zigzag scale, and the
+ *              bytes of the unscaled value
+ *     string   document number, ID, account, name, class, payment method,
+ *              and memo
+ * </pre>
+ *
+ * <p>Transaction types are written by their
+ * {@linkplain TxnType#getQbIdentifier() QuickBooks identifiers} (such as
+ * {@code GENERAL JOURNAL}), never by their position in {@link TxnType}, so
+ * that adding or reordering types does not change the meaning of existing
+ * streams. Like any other string, each identifier is only written out in full
+ * the first time it occurs.</p>
+ *
+ * <p>Each string is written as a varint reference: zero introduces a new
+ * UTF-8 literal (its length, then its bytes), which receives the next ID
+ * while there are fewer than {@value #MAX_STRING_IDS}; any other value
+ * {@code n} refers to the string having ID {@code n - 1}. The empty string
+ * always has ID zero.</p>
+ *
+ * <p>This class is not thread-safe.</p>
+ *
+ * @author Guy Paddock (guy@redbottledesign.com)
+ */
+final class TransactionRecordWriter
+implements Closeable {
+    /**
+     * The flags that describe the {@code TRNS}-only columns of a record.
+     */
+    static final int TO_PRINT_MASK      = 0x03;
+    static final int HAS_DUE_DATE       = 0x04;
+    static final int HAS_TERMS          = 0x08;
+
+    /**
+     * The tags that describe how an amount is written.
+     */
+    static final int AMOUNT_CENTS       = 0;
+    static final int AMOUNT_DECIMAL     = 1;
+
+    /**
+     * The reference that introduces a new string literal.
+     */
+    static final int NEW_STRING         = 0;
+
+    /**
+     * The largest number of strings that receive IDs. Once this many distinct
+     * strings have been written, any new string is written as a literal every
+     * time it occurs, so that a long stream of unique values does not take up
+     * an unbounded amount of memory on either side.
+     */
+    static final int MAX_STRING_IDS     = 1 << 16;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final OutputStream output;
+
+    /**
+     * The ID of each string written so far.
+     */
+    private final Map<String, Integer> stringIds;
+
+    /**
+     * Constructor for {@code TransactionRecordWriter}.
+     *
+     * @param   output
+     *          The stream to write to. It is buffered by the writer, and
+     *          closed when the writer is closed.
+     */
+    TransactionRecordWriter(final OutputStream output) {
+        this.output     = new BufferedOutputStream(output, BUFFER_SIZE);
+        this.stringIds  = new HashMap<>();
+
+        this.stringIds.put("", 0);
+    }
+
+    /**
+     * Determines whether or not the given transaction can be written by a
+     * {@code TransactionRecordWriter}, and read back so that it exports
+     * identically.
+     *
+     * <p>The transaction must be a plain {@link Transaction}, its first line
+     * must be a {@link TransactionLine}, its remaining lines must be
+     * {@link SplitLine}s, and every line must have a type, date, account, and
+     * amount. Unlike a {@link TransactionBatch}, the transaction does not need
+     * to be in balance, and amounts do not need to be whole cents.</p>
+     *
+     * @param   transaction
+     *          The transaction to check.
+     *
+     * @return  {@code true} if the transaction can be written; or,
+     *          {@code false} otherwise.
+     */
+    static boolean isEncodable(final Transaction transaction) {
+        final List<DataLineView>    lines   = transaction.getLineViews();
+        boolean                     result  = (transaction.getClass() == Transaction.class) && !lines.isEmpty();
+
+        for (int lineIndex = 0; result && (lineIndex < lines.size()); ++lineIndex) {
+            final DataLineView line = lines.get(lineIndex);
+
+            result = (isTransactionLine(line) == (lineIndex == 0)) && isEncodable(line);
+        }
+
+        return result;
+    }
+
+    /**
+     * Determines whether or not the given line can be written on its own.
+     *
+     * <p>The line must be a {@link TransactionLine} or a {@link SplitLine},
+     * and must have a type, date, account, and amount.</p>
+     *
+     * @param   line
+     *          The line to check.
+     *
+     * @return  {@code true} if the line can be written; or, {@code false}
+     *          otherwise.
+     */
+    static boolean isEncodable(final DataLineView line) {
+        final Class<?> lineClass = line.getClass();
+
+        return
+            (isTransactionLine(line) ||
+             (lineClass == SplitLine.class) ||
+             (lineClass == ImmutableSplitLine.class))
+            && (line.getType() != null)
+            && (line.getDate() != null)
+            && (line.getAccount() != null)
+            && (line.getAmount() != null)
+            && (line.getDocNumber() != null)
+            && (line.getId() != null)
+            && (line.getName() != null)
+            && (line.getTxnClass() != null)
+            && (line.getPaymentMethod() != null)
+            && (line.getMemo() != null);
+    }
+
+    /**
+     * Determines whether the given line is written as a {@code TRNS} line.
+     *
+     * @param   line
+     *          The line to check.
+     *
+     * @return  {@code true} if the line is a {@link TransactionLine} or an
+     *          {@link ImmutableTransactionLine}; or, {@code false} otherwise.
+     */
+    static boolean isTransactionLine(final DataLineView line) {
+        final Class<?> lineClass = line.getClass();
+
+        return (lineClass == TransactionLine.class) || (lineClass == ImmutableTransactionLine.class);
+    }
+
+    /**
+     * Writes a record for the given transaction.
+     *
+     * @param   sequence
+     *          The sequence number of the transaction. It must not be
+     *          negative.
+     *
+     * @param   transaction
+     *          The transaction to write. It must be
+     *          {@linkplain #isEncodable(Transaction) encodable}.
+     *
+     * @throws  IOException
+     *          If the stream cannot be written.
+     */
+    void write(final long sequence, final Transaction transaction)
+    throws IOException {
+        final List<DataLineView> lines = transaction.getLineViews();
+
+        this.writeVarLong(lines.size());
+        this.writeVarLong(sequence);
+        this.writeTransactionBody(transaction);
+    }
+
+    /**
+     * Writes the lines of a transaction, preceded by the {@code TRNS}-only
+     * columns of its first line. The line count is not written.
+     *
+     * @param   transaction
+     *          The transaction to write. It must be
+     *          {@linkplain #isEncodable(Transaction) encodable}.
+     *
+     * @throws  IOException
+     *          If the stream cannot be written.
+     */
+    void writeTransactionBody(final Transaction transaction)
+    throws IOException {
+        final List<DataLineView> lines = transaction.getLineViews();
+
+        this.writeTransactionColumns((TransactionLineView)lines.get(0));
+
+        for (DataLineView line : lines) {
+            this.writeLine(line);
+        }
+    }
+
+    /**
+     * Writes the columns that only appear on the {@code TRNS} line of a
+     * transaction: to-print flag, due date, and terms.
+     *
+     * @param   firstLine
+     *          The {@code TRNS} line.
+     *
+     * @throws  IOException
+     *          If the stream cannot be written.
+     */
+    void writeTransactionColumns(final TransactionLineView firstLine)
+    throws IOException {
+        final BooleanValue      toPrint     = firstLine.needsToBePrinted();
+        final byte              toPrintCode;
+        int                     flags;
+
+        if (toPrint.getValue() == null) {
+            toPrintCode = AbstractLineStore.TO_PRINT_EMPTY;
+        }
+        else if (toPrint.getValue()) {
+            toPrintCode = AbstractLineStore.TO_PRINT_YES;
+        }
+        else {
+            toPrintCode = AbstractLineStore.TO_PRINT_NO;
+        }
+
+        flags = toPrintCode & TO_PRINT_MASK;
+
+        if (firstLine.getDueDate() != null) {
+            flags |= HAS_DUE_DATE;
+        }
+
+        if (firstLine.getTerms() != null) {
+            flags |= HAS_TERMS;
+        }
+
+        this.output.write(flags);
+
+        if (firstLine.getDueDate() != null) {
+            this.writeVarLong(zigzag(firstLine.getDueDate().getEpochDay()));
+        }
+
+        if (firstLine.getTerms() != null) {
+            this.writeString(firstLine.getTerms().getValue());
+        }
+    }
+
+    /**
+     * Writes the end-of-stream marker and flushes the stream.
+     *
+     * @throws  IOException
+     *          If the stream cannot be written.
+     */
+    void finish()
+    throws IOException {
+        this.writeVarLong(0);
+        this.output.flush();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The underlying stream is closed. The end-of-stream marker is not
+     * written unless {@link #finish()} was called first.</p>
+     */
+    @Override
+    public void close()
+    throws IOException {
+        this.output.close();
+    }
+
+    /**
+     * Writes the columns that every line has: type, date, amount, and all
+     * string columns.
+     *
+     * @param   line
+     *          The line to write.
+     *
+     * @throws  IOException
+     *          If the stream cannot be written.
+     */
+    void writeLine(final DataLineView line)
+    throws IOException {
+        this.writeString(line.getType().getQbIdentifier());
+        this.writeVarLong(zigzag(line.getDate().getEpochDay()));
+        this.writeAmount(line.getAmount());
+
+        this.writeString(line.getDocNumber().getValue());
+        this.writeString(line.getId().getValue());
+        this.writeString(line.getAccount().getValue());
+        this.writeString(line.getName().getValue());
+        this.writeString(line.getTxnClass().getValue());
+        this.writeString(line.getPaymentMethod().getValue());
+        this.writeString(line.getMemo().getValue());
+    }
+
+    /**
+     * Writes a single byte.
+     *
+     * @param   value
+     *          The byte to write, in its low eight bits.
+     *
+     * @throws  IOException
+     *          If the stream cannot be written.
+     */
+    void writeByte(final int value)
+    throws IOException {
+        this.output.write(value);
+    }
+
+    /**
+     * Writes bytes as-is.
+     *
+     * @param   bytes
+     *          The bytes to write.
+     *
+     * @throws  IOException
+     *          If the stream cannot be written.
+     */
+    void writeBytes(final byte[] bytes)
+    throws IOException {
+        this.output.write(bytes);
+    }
+
+    /**
+     * Flushes the stream, without writing the end-of-stream marker.
+     *
+     * @throws  IOException
+     *          If the stream cannot be written.
+     */
+    void flush()
+    throws IOException {
+        this.output.flush();
+    }
+
+    /**
+     * Writes an amount, as whole cents if possible.
+     *
+     * @param   amount
+     *          The amount to write.
+     *
+     * @throws  IOException
+     *          If the stream cannot be written.
+     */
+    private void writeAmount(final Amount amount)
+    throws IOException {
+        if (amount.isWholeCents()) {
+            this.output.write(AMOUNT_CENTS);
+            this.writeVarLong(zigzag(amount.getCents()));
+        }
+        else {
+            final BigDecimal    value           = amount.getValue();
+            final byte[]        unscaledBytes   = value.unscaledValue().toByteArray();
+
+            this.output.write(AMOUNT_DECIMAL);
+            this.writeVarLong(zigzag(value.scale()));
+            this.writeVarLong(unscaledBytes.length);
+            this.output.write(unscaledBytes);
+        }
+    }
+
+    /**
+     * Writes a string, either as a reference to an earlier occurrence or as a
+     * new literal.
+     *
+     * @param   value
+     *          The string to write.
+     *
+     * @throws  IOException
+     *          If the stream cannot be written.
+     */
+    void writeString(final String value)
+    throws IOException {
+        final Integer id = this.stringIds.get(value);
+
+        if (id != null) {
+            this.writeVarLong(id + 1L);
+        }
+        else {
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+            if (this.stringIds.size() < MAX_STRING_IDS) {
+                this.stringIds.put(value, this.stringIds.size());
+            }
+
+            this.writeVarLong(NEW_STRING);
+            this.writeVarLong(bytes.length);
+            this.output.write(bytes);
+        }
+    }
+
+    /**
+     * Writes a non-negative value as a variable-length quantity, seven bits at
+     * a time, least-significant group first.
+     *
+     * @param   value
+     *          The value to write.
+     *
+     * @throws  IOException
+     *          If the stream cannot be written.
+     */
+    void writeVarLong(final long value)
+    throws IOException {
+        long remaining = value;
+
+        while ((remaining & ~0x7FL) != 0) {
+            this.output.write((int)((remaining & 0x7F) | 0x80));
+
+            remaining >>>= 7;
+        }
+
+        this.output.write((int)remaining);
+    }
+
+    /**
+     * Maps a signed value onto an unsigned one, so that values close to zero
+     * stay small.
+     *
+     * @param   value
+     *          The signed value.
+     *
+     * @return  The zigzag-encoded value.
+     */
+    static long zigzag(final long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+}
@@ -0,0 +1,410 @@
+/*
+ * Copyright (C) 2016 Red Bottle Design, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redbottledesign.accounting.quickbooks.batch;
+
+import com.redbottledesign.accounting.quickbooks.iif.IifExportable;
+import com.redbottledesign.accounting.quickbooks.models.Transaction;
+import com.redbottledesign.accounting.quickbooks.util.IifUtils;
+import com.redbottledesign.util.Argument;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A temporary file that transactions can be moved into, to free up memory,
+ * and read back from when they are exported.
+ *
+ * <p>Transactions are written to the file in groups, in the compact binary
+ * form of a {@link TransactionRecordWriter}. Each group becomes a
+ * {@link Segment}, which exports the transactions of the group exactly as
+ * they would have been exported from memory. Any number of segments can be
+ * exported at the same time, from different threads.</p>
+ *
+ * <p>The file is deleted when it is closed, or once neither it nor any of its
+ * segments are reachable any longer.</p>
+ *
+ * <p>Writing to the file is not thread-safe.</p>
+ *
+ * @author Guy Paddock (guy@redbottledesign.com)
+ */
+public class TransactionSpillFile
+implements Closeable {
+    /**
+     * The cleaner that closes, and thereby deletes, files that are no longer
+     * reachable.
+     */
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final Path path;
+    private final FileChannel channel;
+    private final Cleaner.Cleanable cleanable;
+
+    /**
+     * Constructor for {@code TransactionSpillFile}.
+     *
+     * @param   spoolDirectory
+     *          The directory in which to create the temporary file.
+     *
+     * @throws  IOException
+     *          If the temporary file cannot be created.
+     */
+    public TransactionSpillFile(final Path spoolDirectory)
+    throws IOException {
+        Argument.ensureNotNull(spoolDirectory, "spoolDirectory");
+
+        this.path = Files.createTempFile(spoolDirectory, "iif-spill-", ".bin");
+
+        try {
+            this.channel =
+                FileChannel.open(
+                    this.path,
+                    StandardOpenOption.READ,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE);
+        }
+        catch (IOException ex) {
+            Files.deleteIfExists(this.path);
+
+            throw ex;
+        }
+
+        this.cleanable = CLEANER.register(this, new ChannelCloser(this.channel));
+    }
+
+    /**
+     * Determines whether or not the given transaction can be moved into a
+     * spill file, and read back so that it exports identically.
+     *
+     * <p>This is the case for any plain {@link Transaction} whose first line
+     * is a transaction line, whose remaining lines are split lines, and
+     * whose lines all have a type, date, account, and amount.</p>
+     *
+     * @param   transaction
+     *          The transaction to check.
+     *
+     * @return  {@code true} if the transaction can be spilled; or,
+     *          {@code false} otherwise.
+     */
+    public static boolean isSpillable(final Transaction transaction) {
+        Argument.ensureNotNull(transaction, "transaction");
+
+        return TransactionRecordWriter.isEncodable(transaction);
+    }
+
+    /**
+     * Gets the location of the file.
+     *
+     * @return  The path to the file.
+     */
+    public Path getPath() {
+        return this.path;
+    }
+
+    /**
+     * Gets the number of bytes that have been written to the file.
+     *
+     * @return  The size of the file.
+     *
+     * @throws  IOException
+     *          If the size cannot be determined.
+     */
+    public long getSize()
+    throws IOException {
+        return this.channel.size();
+    }
+
+    /**
+     * Writes the given transactions to the end of the file, as a new segment.
+     *
+     * @param   transactions
+     *          The transactions to write, in export order. Each one must be
+     *          {@linkplain #isSpillable(Transaction) spillable}.
+     *
+     * @return  The segment that exports the transactions.
+     *
+     * @throws  IOException
+     *          If the file cannot be written.
+     *
+     * @throws  IllegalArgumentException
+     *          If any of the transactions is not spillable.
+     */
+    public Segment spill(final Iterator<? extends Transaction> transactions)
+    throws IOException, IllegalArgumentException {
+        final long                      offset              = this.channel.size();
+        final TransactionRecordWriter   writer;
+        int                             transactionCount    = 0;
+
+        Argument.ensureNotNull(transactions, "transactions");
+
+        this.channel.position(offset);
+
+        writer = new TransactionRecordWriter(Channels.newOutputStream(this.channel));
+
+        try {
+            while (transactions.hasNext()) {
+                final Transaction transaction = transactions.next();
+
+                if (!TransactionRecordWriter.isEncodable(transaction)) {
+                    throw new IllegalArgumentException(
+                        "Only plain transactions made of a transaction line and split lines, each with " +
+                        "a type, date, account, and amount, can be spilled.");
+                }
+
+                writer.write(transactionCount, transaction);
+
+                ++transactionCount;
+            }
+
+            writer.finish();
+        }
+        catch (IOException | RuntimeException ex) {
+            // Drop the partial segment, so the next one starts where this one did.
+            this.channel.truncate(offset);
+
+            throw ex;
+        }
+
+        return new Segment(offset, this.channel.size(), transactionCount);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The file is deleted. Segments of the file can no longer be exported
+     * afterwards.</p>
+     */
+    @Override
+    public void close() {
+        this.cleanable.clean();
+    }
+
+    /**
+     * A group of transactions that has been written to a spill file.
+     *
+     * <p>Segments read their transactions back from the file each time they
+     * are exported, so they hold on to almost no memory of their own.</p>
+     */
+    public final class Segment
+    implements IifExportable {
+        private final long startOffset;
+        private final long endOffset;
+        private final int transactionCount;
+
+        /**
+         * Constructor for {@code Segment}.
+         *
+         * @param   startOffset
+         *          The offset of the first record of the segment.
+         *
+         * @param   endOffset
+         *          The offset just past the end of the segment.
+         *
+         * @param   transactionCount
+         *          The number of transactions in the segment.
+         */
+        private Segment(final long startOffset, final long endOffset, final int transactionCount) {
+            this.startOffset        = startOffset;
+            this.endOffset          = endOffset;
+            this.transactionCount   = transactionCount;
+        }
+
+        /**
+         * Gets the number of transactions in this segment.
+         *
+         * @return  The transaction count.
+         */
+        public int getTransactionCount() {
+            return this.transactionCount;
+        }
+
+        /**
+         * Reads the transactions of this segment back from the file, one at a
+         * time, and passes each one to the given action.
+         *
+         * @param   action
+         *          The action to perform on each transaction, in the order in
+         *          which they were written. Each transaction is
+         *          {@linkplain Transaction#freeze() frozen}.
+         *
+         * @throws  IOException
+         *          If the file cannot be read.
+         */
+        public void forEachTransaction(final Consumer<? super Transaction> action)
+        throws IOException {
+            Argument.ensureNotNull(action, "action");
+
+            try (TransactionRecordReader reader = this.openReader()) {
+                while (reader.next()) {
+                    action.accept(reader.getTransaction());
+                }
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * <p>Each transaction is read back from the file and exported in
+         * turn.</p>
+         *
+         * @throws  UncheckedIOException
+         *          If the file cannot be read.
+         */
+        @Override
+        public String toIifString()
+        throws UncheckedIOException {
+            final List<String> iifLines = new ArrayList<>(this.transactionCount);
+
+            try (TransactionRecordReader reader = this.openReader()) {
+                while (reader.next()) {
+                    iifLines.add(reader.getTransaction().toIifString());
+                }
+            }
+            catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+
+            return IifUtils.joinLines(iifLines);
+        }
+
+        /**
+         * Opens a reader over the records of this segment.
+         *
+         * @return  The new reader.
+         */
+        private TransactionRecordReader openReader() {
+            return new TransactionRecordReader(
+                new RangeInputStream(TransactionSpillFile.this.channel, this.startOffset, this.endOffset));
+        }
+    }
+
+    /**
+     * A stream over a range of a file channel, which reads by absolute
+     * position, so that any number of streams can read the same channel at
+     * once.
+     */
+    private static final class RangeInputStream
+    extends InputStream {
+        private final FileChannel channel;
+        private final long endOffset;
+        private long position;
+
+        /**
+         * Constructor for {@code RangeInputStream}.
+         *
+         * @param   channel
+         *          The channel to read from.
+         *
+         * @param   startOffset
+         *          The offset of the first byte to read.
+         *
+         * @param   endOffset
+         *          The offset just past the last byte to read.
+         */
+        private RangeInputStream(final FileChannel channel, final long startOffset, final long endOffset) {
+            this.channel    = channel;
+            this.position   = startOffset;
+            this.endOffset  = endOffset;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int read()
+        throws IOException {
+            final byte[]    buffer  = new byte[1];
+            final int       result;
+
+            if (this.read(buffer, 0, 1) < 0) {
+                result = -1;
+            }
+            else {
+                result = buffer[0] & 0xFF;
+            }
+
+            return result;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length)
+        throws IOException {
+            final long  remaining   = this.endOffset - this.position;
+            int         result;
+
+            if (remaining <= 0) {
+                result = -1;
+            }
+            else if (length == 0) {
+                result = 0;
+            }
+            else {
+                result =
+                    this.channel.read(
+                        ByteBuffer.wrap(buffer, offset, (int)Math.min(length, remaining)),
+                        this.position);
+
+                if (result > 0) {
+                    this.position += result;
+                }
+            }
+
+            return result;
+        }
+    }
+
+    /**
+     * Closes the channel of a spill file once the file is closed or no longer
+     * reachable. It must not refer to the file itself.
+     */
+    private static final class ChannelCloser
+    implements Runnable {
+        private final FileChannel channel;
+
+        /**
+         * Constructor for {@code ChannelCloser}.
+         *
+         * @param   channel
+         *          The channel to close.
+         */
+        private ChannelCloser(final FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void run() {
+            try {
+                this.channel.close();
+            }
+            catch (IOException ex) {
+                // The file is being discarded, so there is nothing more to do.
+            }
+        }
+    }
+}
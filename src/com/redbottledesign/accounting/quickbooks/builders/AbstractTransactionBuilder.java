@@ -27,14 +27,50 @@ import com.redbottledesign.accounting.quickbooks.models.TransactionLine;
 import com.redbottledesign.accounting.quickbooks.models.TxnClass;
 import com.redbottledesign.util.Argument;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
 
 /**
  * Abstract base class for all transaction builder objects.
  *
+ * <p>Builders can be {@code reset()} and re-used to build any number of
+ * unrelated transactions. Each transaction gets its own copies of the lines
+ * that a builder creates, so when a builder is reset (or rebuilds lines that
+ * it only uses internally), its lines are {@linkplain DataLine#clear()
+ * cleared} and recycled for the next transaction instead of becoming
+ * garbage. A single builder per thread can therefore produce a large number
+ * of transactions while allocating little more than the transactions
+ * themselves.</p>
+ *
+ * <p>Builders are not thread-safe.</p>
+ *
  * @author Guy Paddock (guy@redbottledesign.com)
  */
 public abstract class AbstractTransactionBuilder {
+    /**
+     * The number of lines that builders make room for by default.
+     */
+    protected static final int DEFAULT_LINE_CAPACITY = 8;
+
+    /**
+     * Transaction lines that have been recycled, and can be re-used.
+     */
+    private final Deque<TransactionLine> spareTransactionLines;
+
+    /**
+     * Split lines that have been recycled, and can be re-used.
+     */
+    private final Deque<SplitLine> spareSplitLines;
+
+    /**
+     * Default constructor for {@code AbstractTransactionBuilder}.
+     */
+    protected AbstractTransactionBuilder() {
+        this.spareTransactionLines  = new ArrayDeque<>();
+        this.spareSplitLines        = new ArrayDeque<>();
+    }
+
     /**
      * Adds a new data line to the given list of transaction lines.
      *
@@ -147,10 +183,10 @@ public abstract class AbstractTransactionBuilder {
         Argument.ensureNotNull(docNumber,   "docNumber");
 
         if (lines.isEmpty()) {
-            newLine = new TransactionLine();
+            newLine = this.obtainTransactionLine();
         }
         else {
-            newLine = new SplitLine();
+            newLine = this.obtainSplitLine();
         }
 
         newLine.setAccount(account);
@@ -164,4 +200,77 @@ public abstract class AbstractTransactionBuilder {
 
         return newLine;
     }
+
+    /**
+     * Gets an empty transaction line, re-using a recycled line if one is
+     * available.
+     *
+     * @return  The empty line.
+     */
+    protected TransactionLine obtainTransactionLine() {
+        TransactionLine result = this.spareTransactionLines.pollFirst();
+
+        if (result == null) {
+            result = new TransactionLine();
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets an empty split line, re-using a recycled line if one is available.
+     *
+     * @return  The empty line.
+     */
+    protected SplitLine obtainSplitLine() {
+        SplitLine result = this.spareSplitLines.pollFirst();
+
+        if (result == null) {
+            result = new SplitLine();
+        }
+
+        return result;
+    }
+
+    /**
+     * Clears each of the given lines and keeps them for re-use, then empties
+     * the list.
+     *
+     * <p>The lines must have been created by this builder, and must not be
+     * referenced anywhere else. Lines of any other type are dropped.</p>
+     *
+     * @param   lines
+     *          The lines to recycle.
+     */
+    protected void recycleLines(final List<? extends DataLine> lines) {
+        Argument.ensureNotNull(lines, "lines");
+
+        for (DataLine line : lines) {
+            this.recycleLine(line);
+        }
+
+        lines.clear();
+    }
+
+    /**
+     * Clears the given line and keeps it for re-use.
+     *
+     * <p>The line must have been created by this builder, and must not be
+     * referenced anywhere else. Lines of any other type are dropped.</p>
+     *
+     * @param   line
+     *          The line to recycle.
+     */
+    protected void recycleLine(final DataLine line) {
+        if (line.getClass() == TransactionLine.class) {
+            line.clear();
+
+            this.spareTransactionLines.addFirst((TransactionLine)line);
+        }
+        else if (line.getClass() == SplitLine.class) {
+            line.clear();
+
+            this.spareSplitLines.addFirst((SplitLine)line);
+        }
+    }
 }
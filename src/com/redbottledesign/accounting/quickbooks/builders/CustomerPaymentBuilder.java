@@ -28,7 +28,7 @@ import com.redbottledesign.accounting.quickbooks.models.Transaction;
 import com.redbottledesign.accounting.quickbooks.models.TxnType;
 import com.redbottledesign.util.Argument;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -51,6 +51,39 @@ extends AbstractTransactionBuilder {
     private Memo memo;
     private Account depositTo;
 
+    /**
+     * The lines of the most recently built payment, which are recycled by the
+     * next build.
+     */
+    private final List<DataLine> paymentLines;
+
+    /**
+     * Constructor for {@code CustomerPaymentBuilder}.
+     */
+    public CustomerPaymentBuilder() {
+        this.paymentLines = new ArrayList<>(2);
+    }
+
+    /**
+     * Clears all values in this builder, so that it can be used to build an
+     * unrelated payment.
+     *
+     * @return  This object, for chaining.
+     */
+    public CustomerPaymentBuilder reset() {
+        this.customer           = null;
+        this.amount             = null;
+        this.date               = null;
+        this.paymentMethod      = null;
+        this.referenceNumber    = null;
+        this.memo               = null;
+        this.depositTo          = null;
+
+        this.recycleLines(this.paymentLines);
+
+        return this;
+    }
+
     /**
      * Gets the customer from which the payment is being received.
      *
@@ -92,7 +125,7 @@ extends AbstractTransactionBuilder {
      *          The payment amount to set in the transaction being built.
      */
     public CustomerPaymentBuilder setAmount(final Amount amount) {
-        if (amount.getValue().signum() < 0) {
+        if (amount.signum() < 0) {
             throw new IllegalArgumentException("amount must be a positive number.");
         }
 
@@ -241,8 +274,8 @@ extends AbstractTransactionBuilder {
      */
     public Transaction build()
     throws IllegalArgumentException, IllegalStateException {
-        Transaction     transaction     = new Transaction();
-        List<DataLine>  paymentLines    = new LinkedList<>();
+        Transaction     transaction     = new Transaction(2);
+        List<DataLine>  paymentLines    = this.paymentLines;
         Name            customer        = this.getCustomer();
         Amount          debitAmount     = this.getAmount(),
                         creditAmount;
@@ -260,11 +293,13 @@ extends AbstractTransactionBuilder {
         Argument.ensureNotNull(memo,            "memo");
         Argument.ensureNotNull(depositTo,       "depositTo");
 
+        this.recycleLines(paymentLines);
+
         // Debit to the deposit account
         this.addLine(paymentLines, depositTo, debitAmount, customer, memo);
 
         // Credit from AR
-        creditAmount = new Amount(amount.getValue().negate());
+        creditAmount = debitAmount.negate();
 
         this.addLine(paymentLines, Account.ACCOUNTS_RECEIVABLE, creditAmount, customer, memo);
 
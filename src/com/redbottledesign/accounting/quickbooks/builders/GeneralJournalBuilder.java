@@ -19,6 +19,7 @@ package com.redbottledesign.accounting.quickbooks.builders;
 import com.redbottledesign.accounting.quickbooks.models.Account;
 import com.redbottledesign.accounting.quickbooks.models.Amount;
 import com.redbottledesign.accounting.quickbooks.models.DataLine;
+import com.redbottledesign.accounting.quickbooks.models.DataLineView;
 import com.redbottledesign.accounting.quickbooks.models.Date;
 import com.redbottledesign.accounting.quickbooks.models.DocNumber;
 import com.redbottledesign.accounting.quickbooks.models.Memo;
@@ -29,8 +30,11 @@ import com.redbottledesign.accounting.quickbooks.models.TxnType;
 import com.redbottledesign.util.Argument;
 
 import java.math.BigDecimal;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 /**
  * A builder for General Journal entries.
@@ -46,13 +50,41 @@ extends AbstractTransactionBuilder {
 
     private Date date;
     private DocNumber entryNumber;
-    private List<DataLine> journalLines;
+    private ArrayList<DataLine> journalLines;
 
     /**
      * Constructor for {@code GeneralJournalBuilder}
      */
     public GeneralJournalBuilder() {
-        this.journalLines = new LinkedList<>();
+        this(DEFAULT_LINE_CAPACITY);
+    }
+
+    /**
+     * Constructor for {@code GeneralJournalBuilder} that makes room for the
+     * given number of lines in each entry.
+     *
+     * @param   lineCapacity
+     *          The expected number of lines in each journal entry.
+     */
+    public GeneralJournalBuilder(final int lineCapacity) {
+        this.journalLines = new ArrayList<>(lineCapacity);
+    }
+
+    /**
+     * Clears all values in this builder, so that it can be used to build an
+     * unrelated journal entry.
+     *
+     * <p>The lines of the previous entry are recycled for the next one.</p>
+     *
+     * @return  This object, for chaining.
+     */
+    public GeneralJournalBuilder reset() {
+        this.date           = null;
+        this.entryNumber    = null;
+
+        this.recycleLines(this.getJournalLines());
+
+        return this;
     }
 
     /**
@@ -130,7 +162,7 @@ extends AbstractTransactionBuilder {
      */
     public GeneralJournalBuilder addLine(final String account, final BigDecimal amount) {
         return this.addLine(
-            new Account(account),
+            Account.of(account),
             new Amount(amount),
             Name.EMPTY,
             Memo.EMPTY,
@@ -158,9 +190,9 @@ extends AbstractTransactionBuilder {
     public GeneralJournalBuilder addLine(final String account, final BigDecimal amount,
                                          final String name) {
         return this.addLine(
-            new Account(account),
+            Account.of(account),
             new Amount(amount),
-            new Name(name),
+            Name.of(name),
             Memo.EMPTY,
             TxnClass.EMPTY);
     }
@@ -189,10 +221,10 @@ extends AbstractTransactionBuilder {
     public GeneralJournalBuilder addLine(final String account, final BigDecimal amount,
                                          final String name, final String memo) {
         return this.addLine(
-            new Account(account),
+            Account.of(account),
             new Amount(amount),
-            new Name(name),
-            new Memo(memo),
+            Name.of(name),
+            Memo.of(memo),
             TxnClass.EMPTY);
     }
 
@@ -223,11 +255,11 @@ extends AbstractTransactionBuilder {
     public GeneralJournalBuilder addLine(final String account, final BigDecimal amount,
                                          final String name, final String memo, final String txnClass) {
         return this.addLine(
-            new Account(account),
+            Account.of(account),
             new Amount(amount),
-            new Name(name),
-            new Memo(memo),
-            new TxnClass(txnClass));
+            Name.of(name),
+            Memo.of(memo),
+            TxnClass.of(txnClass));
     }
 
     /**
@@ -328,6 +360,219 @@ extends AbstractTransactionBuilder {
         return this;
     }
 
+    /**
+     * Adds several new lines to the transaction being built, from parallel
+     * arrays of column values.
+     *
+     * <p>The arrays are all validated in a single pass before any lines are
+     * added, so either all of the lines are added, or none are. Each array
+     * must have one element per line; {@code names}, {@code memos}, and
+     * {@code txnClasses} can instead be {@code null}, in which case every
+     * line has an empty value for that column.</p>
+     *
+     * <p>By convention, each amount is negative for a credit and positive for
+     * a debit. The balance of the transaction is checked once, when it is
+     * built.</p>
+     *
+     * @param   accounts
+     *          The account that each line affects.
+     *
+     * @param   amounts
+     *          The amount of money being exchanged on each line.
+     *
+     * @param   names
+     *          The name (customer, vendor, contractor, etc.) to associate
+     *          with each line; or, {@code null}.
+     *
+     * @param   memos
+     *          The note to add to each line; or, {@code null}.
+     *
+     * @param   txnClasses
+     *          The transaction class of each line; or, {@code null}.
+     *
+     * @return  This object, for chaining.
+     *
+     * @throws  IllegalArgumentException
+     *          If {@code accounts} or {@code amounts} is {@code null}; if the
+     *          arrays are not all the same length; or, if any of their
+     *          elements are {@code null}.
+     */
+    public GeneralJournalBuilder addLines(final Account[] accounts, final Amount[] amounts,
+                                          final Name[] names, final Memo[] memos,
+                                          final TxnClass[] txnClasses)
+    throws IllegalArgumentException {
+        final int lineCount;
+
+        Argument.ensureNotNull(accounts,    "accounts");
+        Argument.ensureNotNull(amounts,     "amounts");
+
+        lineCount = accounts.length;
+
+        ensureColumnLength(amounts,     lineCount, "amounts");
+        ensureColumnLength(names,       lineCount, "names");
+        ensureColumnLength(memos,       lineCount, "memos");
+        ensureColumnLength(txnClasses,  lineCount, "txnClasses");
+
+        for (int lineIndex = 0; lineIndex < lineCount; ++lineIndex) {
+            ensureColumnValue(accounts,     lineIndex, "accounts");
+            ensureColumnValue(amounts,      lineIndex, "amounts");
+            ensureColumnValue(names,        lineIndex, "names");
+            ensureColumnValue(memos,        lineIndex, "memos");
+            ensureColumnValue(txnClasses,   lineIndex, "txnClasses");
+        }
+
+        this.journalLines.ensureCapacity(this.journalLines.size() + lineCount);
+
+        for (int lineIndex = 0; lineIndex < lineCount; ++lineIndex) {
+            this.addLine(
+                this.journalLines,
+                accounts[lineIndex],
+                amounts[lineIndex],
+                columnValue(names,      lineIndex, Name.EMPTY),
+                columnValue(memos,      lineIndex, Memo.EMPTY),
+                columnValue(txnClasses, lineIndex, TxnClass.EMPTY));
+        }
+
+        return this;
+    }
+
+    /**
+     * Adds several new lines to the transaction being built, from parallel
+     * arrays of raw column values.
+     *
+     * <p>This is the same as
+     * {@link #addLines(Account[], Amount[], Name[], Memo[], TxnClass[])},
+     * except that callers do not need to build a value object for each
+     * column of each line. Accounts, names, memos, and classes are resolved
+     * through their shared instance pools (see {@link Account#of(String)}),
+     * so repeated values share one object, and amounts are given in whole
+     * cents. An empty name, memo, or class gives the line an empty value for
+     * that column.</p>
+     *
+     * <p>The arrays are all validated in a single pass before any lines are
+     * added, so either all of the lines are added, or none are.</p>
+     *
+     * @param   accounts
+     *          The name of the account that each line affects.
+     *
+     * @param   amountCents
+     *          The amount of money being exchanged on each line, in cents.
+     *
+     * @param   names
+     *          The name (customer, vendor, contractor, etc.) to associate
+     *          with each line; or, {@code null}.
+     *
+     * @param   memos
+     *          The note to add to each line; or, {@code null}.
+     *
+     * @param   txnClasses
+     *          The transaction class of each line; or, {@code null}.
+     *
+     * @return  This object, for chaining.
+     *
+     * @throws  IllegalArgumentException
+     *          If {@code accounts} or {@code amountCents} is {@code null}; if
+     *          the arrays are not all the same length; if any of their
+     *          elements are {@code null}; or, if any account is empty.
+     */
+    public GeneralJournalBuilder addLines(final String[] accounts, final long[] amountCents,
+                                          final String[] names, final String[] memos,
+                                          final String[] txnClasses)
+    throws IllegalArgumentException {
+        final int lineCount;
+
+        Argument.ensureNotNull(accounts,    "accounts");
+        Argument.ensureNotNull(amountCents, "amountCents");
+
+        lineCount = accounts.length;
+
+        ensureColumnLength(amountCents.length,  lineCount, "amountCents");
+        ensureColumnLength(names,               lineCount, "names");
+        ensureColumnLength(memos,               lineCount, "memos");
+        ensureColumnLength(txnClasses,          lineCount, "txnClasses");
+
+        for (int lineIndex = 0; lineIndex < lineCount; ++lineIndex) {
+            ensureColumnValue(accounts,     lineIndex, "accounts");
+            ensureColumnValue(names,        lineIndex, "names");
+            ensureColumnValue(memos,        lineIndex, "memos");
+            ensureColumnValue(txnClasses,   lineIndex, "txnClasses");
+
+            if (accounts[lineIndex].isEmpty()) {
+                throw new IllegalArgumentException(
+                    String.format("`accounts[%d]` must not be empty.", lineIndex));
+            }
+        }
+
+        this.journalLines.ensureCapacity(this.journalLines.size() + lineCount);
+
+        for (int lineIndex = 0; lineIndex < lineCount; ++lineIndex) {
+            this.addLine(
+                this.journalLines,
+                Account.of(accounts[lineIndex]),
+                Amount.ofCents(amountCents[lineIndex]),
+                columnValue(names,      lineIndex, Name.EMPTY,      Name::of),
+                columnValue(memos,      lineIndex, Memo.EMPTY,      Memo::of),
+                columnValue(txnClasses, lineIndex, TxnClass.EMPTY,  TxnClass::of));
+        }
+
+        return this;
+    }
+
+    /**
+     * Adds a new line to the transaction being built for each row of the
+     * given stream.
+     *
+     * <p>Only the account, amount, name, memo, and class of each row are
+     * used; the type, date, and entry number come from this builder. Any
+     * {@link DataLineView} can be used as a row, including the lines of an
+     * existing transaction.</p>
+     *
+     * <p>The stream is consumed in order, in a single pass. If any row is
+     * invalid, the lines added from earlier rows are removed again, so either
+     * all of the rows are added, or none are.</p>
+     *
+     * @param   rows
+     *          The rows to add.
+     *
+     * @return  This object, for chaining.
+     *
+     * @throws  IllegalArgumentException
+     *          If {@code rows} is {@code null}, or any row is {@code null} or
+     *          is missing its account or amount.
+     */
+    public GeneralJournalBuilder addLines(final Stream<? extends DataLineView> rows)
+    throws IllegalArgumentException {
+        final List<DataLine>    journalLines    = this.journalLines;
+        final int               startSize       = journalLines.size();
+
+        Argument.ensureNotNull(rows, "rows");
+
+        try {
+            final Iterator<? extends DataLineView> rowIterator = rows.sequential().iterator();
+
+            while (rowIterator.hasNext()) {
+                final DataLineView row = rowIterator.next();
+
+                Argument.ensureNotNull(row, "row");
+
+                this.addLine(
+                    journalLines,
+                    row.getAccount(),
+                    row.getAmount(),
+                    row.getName(),
+                    row.getMemo(),
+                    row.getTxnClass());
+            }
+        }
+        catch (RuntimeException ex) {
+            this.recycleLines(journalLines.subList(startSize, journalLines.size()));
+
+            throw ex;
+        }
+
+        return this;
+    }
+
     /**
      * Builds the transaction, using the parameters set on this builder
      * instance.
@@ -382,7 +627,7 @@ extends AbstractTransactionBuilder {
      */
     public Transaction build(boolean mustBalance)
     throws IllegalArgumentException, IllegalStateException {
-        Transaction transaction = new Transaction();
+        Transaction transaction = new Transaction(this.getJournalLines().size());
         DocNumber   entryNumber = this.getEntryNumber();
         Date        date        = this.getDate();
 
@@ -406,5 +651,138 @@ extends AbstractTransactionBuilder {
         return transaction;
     }
 
+    /**
+     * Ensures that an array of column values has one value per line.
+     *
+     * @param   column
+     *          The column values; or, {@code null} for an optional column.
+     *
+     * @param   lineCount
+     *          The number of lines being added.
+     *
+     * @param   name
+     *          The name of the column, for error messages.
+     *
+     * @throws  IllegalArgumentException
+     *          If the array is not {@code null} and has the wrong length.
+     */
+    private static void ensureColumnLength(final Object[] column, final int lineCount,
+                                           final String name)
+    throws IllegalArgumentException {
+        if (column != null) {
+            ensureColumnLength(column.length, lineCount, name);
+        }
+    }
 
+    /**
+     * Ensures that a column has one value per line.
+     *
+     * @param   columnLength
+     *          The number of values in the column.
+     *
+     * @param   lineCount
+     *          The number of lines being added.
+     *
+     * @param   name
+     *          The name of the column, for error messages.
+     *
+     * @throws  IllegalArgumentException
+     *          If the column has the wrong length.
+     */
+    private static void ensureColumnLength(final int columnLength, final int lineCount,
+                                           final String name)
+    throws IllegalArgumentException {
+        if (columnLength != lineCount) {
+            throw new IllegalArgumentException(
+                String.format(
+                    "`%s` has `%d` values, but `%d` lines are being added.",
+                    name,
+                    columnLength,
+                    lineCount));
+        }
+    }
+
+    /**
+     * Ensures that a line has a value in the given column, if the column was
+     * supplied.
+     *
+     * @param   column
+     *          The column values; or, {@code null} for an optional column.
+     *
+     * @param   lineIndex
+     *          The index of the line being checked.
+     *
+     * @param   name
+     *          The name of the column, for error messages.
+     *
+     * @throws  IllegalArgumentException
+     *          If the column was supplied but has no value for the line.
+     */
+    private static void ensureColumnValue(final Object[] column, final int lineIndex,
+                                          final String name)
+    throws IllegalArgumentException {
+        if ((column != null) && (column[lineIndex] == null)) {
+            throw new IllegalArgumentException(
+                String.format("`%s[%d]` must not be null.", name, lineIndex));
+        }
+    }
+
+    /**
+     * Gets the value of an optional column for a line.
+     *
+     * @param   column
+     *          The column values; or, {@code null}.
+     *
+     * @param   lineIndex
+     *          The index of the line.
+     *
+     * @param   emptyValue
+     *          The value to use if the column was not supplied.
+     *
+     * @return  The value of the column for the line.
+     */
+    private static <T> T columnValue(final T[] column, final int lineIndex, final T emptyValue) {
+        final T result;
+
+        if (column != null) {
+            result = column[lineIndex];
+        }
+        else {
+            result = emptyValue;
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets the value of an optional column for a line, from its raw form.
+     *
+     * @param   column
+     *          The raw column values; or, {@code null}.
+     *
+     * @param   lineIndex
+     *          The index of the line.
+     *
+     * @param   emptyValue
+     *          The value to use if the column was not supplied, or the raw
+     *          value is empty.
+     *
+     * @param   factory
+     *          The function that gets the value for a non-empty raw value.
+     *
+     * @return  The value of the column for the line.
+     */
+    private static <T> T columnValue(final String[] column, final int lineIndex, final T emptyValue,
+                                     final Function<String, T> factory) {
+        final T result;
+
+        if ((column != null) && !column[lineIndex].isEmpty()) {
+            result = factory.apply(column[lineIndex]);
+        }
+        else {
+            result = emptyValue;
+        }
+
+        return result;
+    }
 }
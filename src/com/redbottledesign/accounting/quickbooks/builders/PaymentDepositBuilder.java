@@ -18,6 +18,7 @@ package com.redbottledesign.accounting.quickbooks.builders;
 
 import com.redbottledesign.accounting.quickbooks.models.Account;
 import com.redbottledesign.accounting.quickbooks.models.Amount;
+import com.redbottledesign.accounting.quickbooks.models.AmountTotal;
 import com.redbottledesign.accounting.quickbooks.models.DataLine;
 import com.redbottledesign.accounting.quickbooks.models.Date;
 import com.redbottledesign.accounting.quickbooks.models.DocNumber;
@@ -31,8 +32,8 @@ import com.redbottledesign.accounting.quickbooks.models.TxnType;
 import com.redbottledesign.util.Argument;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 
 /**
@@ -54,17 +55,50 @@ extends AbstractTransactionBuilder {
     private Memo cashBackMemo;
     private Amount cashBackAmount;
 
-    private BigDecimal paymentTotal;
+    private AmountTotal paymentTotal;
     private List<SplitLine> paymentLines;
 
+    /**
+     * The deposit and cash back lines of the most recently built deposit,
+     * which are recycled by the next build.
+     */
+    private final List<DataLine> headerLines;
+
     /**
      * Constructor for {@code PaymentDepositBuilder}.
      */
     public PaymentDepositBuilder() {
+        this.headerLines = new ArrayList<>(2);
+
         this.setPaymentTotal(BigDecimal.ZERO);
         this.setPaymentLines(Collections.emptyList());
     }
 
+    /**
+     * Clears all values in this builder, so that it can be used to build an
+     * unrelated deposit.
+     *
+     * <p>The lines of the previous deposit are recycled for the next
+     * one.</p>
+     *
+     * @return  This object, for chaining.
+     */
+    public PaymentDepositBuilder reset() {
+        this.depositTo          = null;
+        this.date               = null;
+        this.memo               = null;
+        this.cashBackAccount    = null;
+        this.cashBackMemo       = null;
+        this.cashBackAmount     = null;
+
+        this.paymentTotal.reset();
+
+        this.recycleLines(this.headerLines);
+        this.recycleLines(this.getPaymentLines());
+
+        return this;
+    }
+
     /**
      * Gets the account into which the deposit should be recorded.
      *
@@ -240,19 +274,25 @@ extends AbstractTransactionBuilder {
      * @return The payment total.
      */
     public BigDecimal getPaymentTotal() {
-        return this.paymentTotal;
+        return this.paymentTotal.toBigDecimal();
     }
 
     /**
      * Sets the payment lines that have been created for the transaction.
      *
-     * <p>The contents of the provided list are copied into a new list.</p>
+     * <p>Each line of the provided list is cloned and added into a new list,
+     * so that this builder can recycle its lines without affecting the
+     * caller.</p>
      *
      * @param   paymentLines
      *          The new list of payment split lines in the deposit.
      */
     public void setPaymentLines(final List<SplitLine> paymentLines) {
-        this.paymentLines = new LinkedList<>(paymentLines);
+        this.paymentLines = new ArrayList<>(Math.max(paymentLines.size(), DEFAULT_LINE_CAPACITY));
+
+        for (SplitLine line : paymentLines) {
+            this.paymentLines.add((SplitLine)line.clone());
+        }
     }
 
     /**
@@ -262,7 +302,7 @@ extends AbstractTransactionBuilder {
      *          The new payment total.
      */
     protected void setPaymentTotal(final BigDecimal paymentTotal) {
-        this.paymentTotal = paymentTotal;
+        this.paymentTotal = new AmountTotal().add(new Amount(paymentTotal));
     }
 
     /**
@@ -307,7 +347,7 @@ extends AbstractTransactionBuilder {
                                             final Memo memo, final DocNumber checkNumber,
                                             final PaymentMethod paymentMethod, final TxnClass txnClass,
                                             final Amount amount) {
-        SplitLine paymentSplit = new SplitLine();
+        SplitLine paymentSplit = this.obtainSplitLine();
 
         Argument.ensureNotNull(receivedFrom,    "receivedFrom");
         Argument.ensureNotNull(fromAccount,     "fromAccount");
@@ -325,11 +365,11 @@ extends AbstractTransactionBuilder {
         paymentSplit.setDocNumber(checkNumber);
         paymentSplit.setPaymentMethod(paymentMethod);
         paymentSplit.setTxnClass(txnClass);
-        paymentSplit.setAmount(new Amount(amount.getValue().negate()));
+        paymentSplit.setAmount(amount.negate());
 
         this.getPaymentLines().add(paymentSplit);
 
-        this.paymentTotal = this.paymentTotal.add(amount.getValue());
+        this.paymentTotal.add(amount);
 
         return this;
     }
@@ -354,21 +394,25 @@ extends AbstractTransactionBuilder {
      */
     public Transaction build()
     throws IllegalArgumentException, IllegalStateException {
-        Transaction     transaction  = new Transaction();
-        List<DataLine>  depositLines = new LinkedList<>();
+        final List<DataLine>    headerLines     = this.headerLines;
+        final List<SplitLine>   paymentLines    = this.getPaymentLines();
+        final Transaction       transaction;
 
         this.ensureReadyToBuild();
 
-        this.addDepositLine(depositLines);
-        this.addCashBackLine(depositLines);
+        this.recycleLines(headerLines);
 
-        depositLines.addAll(this.getPaymentLines());
+        this.addDepositLine(headerLines);
+        this.addCashBackLine(headerLines);
 
-        for (DataLine line : depositLines) {
-            line.setType(TRANSACTION_TYPE);
-            line.setDate(this.getDate());
+        transaction = new Transaction(headerLines.size() + paymentLines.size());
 
-            transaction.addLine(line);
+        for (DataLine line : headerLines) {
+            this.addToTransaction(transaction, line);
+        }
+
+        for (DataLine line : paymentLines) {
+            this.addToTransaction(transaction, line);
         }
 
         transaction.ensureIsInBalance();
@@ -376,6 +420,23 @@ extends AbstractTransactionBuilder {
         return transaction;
     }
 
+    /**
+     * Fills in the columns that all lines of the deposit share, then adds a
+     * copy of the line to the given transaction.
+     *
+     * @param   transaction
+     *          The transaction being built.
+     *
+     * @param   line
+     *          The line to add.
+     */
+    protected void addToTransaction(final Transaction transaction, final DataLine line) {
+        line.setType(TRANSACTION_TYPE);
+        line.setDate(this.getDate());
+
+        transaction.addLine(line);
+    }
+
     /**
      * Adds the line to the deposit transaction that actually puts the sum of
      * the payments, minus any cash back amount, into an account.
@@ -385,13 +446,13 @@ extends AbstractTransactionBuilder {
      *          deposit line will be added.
      */
     protected void addDepositLine(List<DataLine> depositLines) {
-        final BigDecimal paymentTotal  = this.getPaymentTotal(),
-                         depositTotal;
+        final Amount paymentTotal  = this.paymentTotal.toAmount(),
+                     depositTotal;
 
         if (this.hasCashBack()) {
             final Amount cashBackAmount = this.getCashBackAmount();
 
-            depositTotal = paymentTotal.subtract(cashBackAmount.getValue());
+            depositTotal = paymentTotal.subtract(cashBackAmount);
         }
         else {
             depositTotal = paymentTotal;
@@ -400,7 +461,7 @@ extends AbstractTransactionBuilder {
         this.addLine(
             depositLines,
             this.getDepositTo(),
-            new Amount(depositTotal),
+            depositTotal,
             Name.EMPTY,
             this.getMemo());
     }
@@ -0,0 +1,588 @@
+/*
+ * Copyright (C) 2016 Red Bottle Design, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redbottledesign.accounting.quickbooks.builders;
+
+import com.redbottledesign.accounting.quickbooks.models.Account;
+import com.redbottledesign.accounting.quickbooks.models.Amount;
+import com.redbottledesign.accounting.quickbooks.models.DataLineView;
+import com.redbottledesign.accounting.quickbooks.models.Date;
+import com.redbottledesign.accounting.quickbooks.models.DocNumber;
+import com.redbottledesign.accounting.quickbooks.models.Memo;
+import com.redbottledesign.accounting.quickbooks.models.Name;
+import com.redbottledesign.accounting.quickbooks.models.PaymentMethod;
+import com.redbottledesign.accounting.quickbooks.models.Transaction;
+import com.redbottledesign.accounting.quickbooks.models.TxnClass;
+import com.redbottledesign.accounting.quickbooks.models.TxnIdentifier;
+import com.redbottledesign.accounting.quickbooks.models.TxnType;
+import com.redbottledesign.util.Argument;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A builder that streams in payments and emits them as a series of
+ * Payment Deposit entries, each with a bounded number of payments.
+ *
+ * <p>Very large deposits import slowly into QuickBooks. Instead of building
+ * one enormous transaction, this builder keeps a {@link PaymentDepositBuilder}
+ * for each group of payments, and as soon as a group reaches the maximum
+ * number of payments per deposit, it builds a deposit from the group and
+ * hands it to a consumer. Any partially-filled groups are emitted by
+ * {@link #finish()}. Every deposit is balanced on its own, and is deposited
+ * into the same account on the same date.</p>
+ *
+ * <p>Payments can optionally be grouped by a key, such as their payment
+ * method or class, so that each deposit only contains payments that share a
+ * key. At most one partially-filled deposit is held in memory per key, and
+ * the builder for each key is {@linkplain PaymentDepositBuilder#reset()
+ * reset} and re-used after each deposit, so memory use is bounded by the
+ * number of keys times the maximum number of payments per deposit, no matter
+ * how many payments are added.</p>
+ *
+ * <p>This class is not thread-safe.</p>
+ *
+ * @author Guy Paddock (guy@redbottledesign.com)
+ */
+public class SplittingPaymentDepositBuilder {
+    /**
+     * The default maximum number of payments in each deposit.
+     */
+    public static final int DEFAULT_MAX_PAYMENTS_PER_DEPOSIT = 1000;
+
+    /**
+     * The key used for all payments when no grouping key has been set.
+     */
+    private static final Object SINGLE_GROUP = new Object();
+
+    private Account depositTo;
+    private Date date;
+    private Memo memo;
+    private int maxPaymentsPerDeposit;
+    private Function<? super DataLineView, ?> groupingKey;
+
+    /**
+     * The consumer that receives each deposit as it is built.
+     */
+    private final Consumer<? super Transaction> depositConsumer;
+
+    /**
+     * The builder for the open deposit of each group, in the order in which
+     * the groups were first seen.
+     */
+    private final Map<Object, PaymentDepositBuilder> groupBuilders;
+
+    /**
+     * The number of deposits that have been emitted so far.
+     */
+    private int depositCount;
+
+    /**
+     * Constructor for {@code SplittingPaymentDepositBuilder}.
+     *
+     * @param   depositConsumer
+     *          The consumer that receives each deposit as it is built (e.g.
+     *          {@code iifFile::addOwned}).
+     */
+    public SplittingPaymentDepositBuilder(final Consumer<? super Transaction> depositConsumer) {
+        Argument.ensureNotNull(depositConsumer, "depositConsumer");
+
+        this.depositConsumer        = depositConsumer;
+        this.groupBuilders          = new LinkedHashMap<>();
+        this.maxPaymentsPerDeposit  = DEFAULT_MAX_PAYMENTS_PER_DEPOSIT;
+    }
+
+    /**
+     * Gets the account into which the deposits should be recorded.
+     *
+     * @return  The deposit account.
+     */
+    public Account getDepositTo() {
+        return this.depositTo;
+    }
+
+    /**
+     * Sets the account into which the deposits should be recorded.
+     *
+     * @param   depositTo
+     *          The deposit account.
+     *
+     * @return  This object, for chaining.
+     */
+    public SplittingPaymentDepositBuilder setDepositTo(final Account depositTo) {
+        this.depositTo = depositTo;
+
+        return this;
+    }
+
+    /**
+     * Gets the date of the deposits.
+     *
+     * @return  The deposit date.
+     */
+    public Date getDate() {
+        return this.date;
+    }
+
+    /**
+     * Sets the date of the deposits.
+     *
+     * @param   date
+     *          The deposit date.
+     *
+     * @return  This object, for chaining.
+     */
+    public SplittingPaymentDepositBuilder setDate(final Date date) {
+        this.date = date;
+
+        return this;
+    }
+
+    /**
+     * Gets the memo to associate with each deposit.
+     *
+     * @return  The deposit memo.
+     */
+    public Memo getMemo() {
+        return this.memo;
+    }
+
+    /**
+     * Sets the memo to associate with each deposit.
+     *
+     * @param   memo
+     *          The deposit memo.
+     *
+     * @return  This object, for chaining.
+     */
+    public SplittingPaymentDepositBuilder setMemo(final Memo memo) {
+        this.memo = memo;
+
+        return this;
+    }
+
+    /**
+     * Gets the maximum number of payments in each deposit.
+     *
+     * @return  The maximum number of payments.
+     */
+    public int getMaxPaymentsPerDeposit() {
+        return this.maxPaymentsPerDeposit;
+    }
+
+    /**
+     * Sets the maximum number of payments in each deposit.
+     *
+     * <p>This can only be changed before any payments have been added.</p>
+     *
+     * @param   maxPaymentsPerDeposit
+     *          The maximum number of payments.
+     *
+     * @return  This object, for chaining.
+     *
+     * @throws  IllegalArgumentException
+     *          If the maximum is less than one.
+     *
+     * @throws  IllegalStateException
+     *          If payments have already been added.
+     */
+    public SplittingPaymentDepositBuilder setMaxPaymentsPerDeposit(final int maxPaymentsPerDeposit)
+    throws IllegalArgumentException, IllegalStateException {
+        Argument.ensureInRange(maxPaymentsPerDeposit, 1, Integer.MAX_VALUE, "maxPaymentsPerDeposit");
+
+        this.ensureNoPaymentsAdded();
+
+        this.maxPaymentsPerDeposit = maxPaymentsPerDeposit;
+
+        return this;
+    }
+
+    /**
+     * Gets the function that determines which group each payment belongs to.
+     *
+     * @return  The grouping key function; or, {@code null} if all payments
+     *          are in the same group.
+     */
+    public Function<? super DataLineView, ?> getGroupingKey() {
+        return this.groupingKey;
+    }
+
+    /**
+     * Sets the function that determines which group each payment belongs to.
+     *
+     * <p>The function is given a read-only view of the deposit line for each
+     * payment, and must return a value (such as
+     * {@code DataLineView::getPaymentMethod} or
+     * {@code DataLineView::getTxnClass}) that is equal for all payments that
+     * can share a deposit. Each payment gets its own immutable view, so the
+     * function may return the view itself, or retain it. The date of the
+     * deposit is not known until the deposit is emitted, so the view has no
+     * date.</p>
+     *
+     * <p>This can only be changed before any payments have been added.</p>
+     *
+     * @param   groupingKey
+     *          The grouping key function; or, {@code null} to put all
+     *          payments in the same group.
+     *
+     * @return  This object, for chaining.
+     *
+     * @throws  IllegalStateException
+     *          If payments have already been added.
+     */
+    public SplittingPaymentDepositBuilder setGroupingKey(final Function<? super DataLineView, ?> groupingKey)
+    throws IllegalStateException {
+        this.ensureNoPaymentsAdded();
+
+        this.groupingKey = groupingKey;
+
+        return this;
+    }
+
+    /**
+     * Gets the number of deposits that have been emitted so far.
+     *
+     * @return  The number of deposits.
+     */
+    public int getDepositCount() {
+        return this.depositCount;
+    }
+
+    /**
+     * Adds a new payment, emitting a deposit if the payment fills up its
+     * group.
+     *
+     * <p>The amount must be a positive number. The deposit account and date
+     * must be set before the first deposit is emitted.</p>
+     *
+     * @param   receivedFrom
+     *          The customer, vendor, contractor, etc. to associate with the
+     *          payment.
+     *
+     * @param   fromAccount
+     *          The account that the payment affects.
+     *
+     * @param   memo
+     *          A note to add to the payment.
+     *
+     * @param   checkNumber
+     *          An optional check number to associate with the payment.
+     *
+     * @param   paymentMethod
+     *          The method by which the payment was made.
+     *
+     * @param   txnClass
+     *          An optional transaction class for the payment.
+     *
+     * @param   amount
+     *          The amount of money being exchanged.
+     *
+     * @return  This object, for chaining.
+     *
+     * @throws  IllegalArgumentException
+     *          If any argument is {@code null} or the amount is negative; or,
+     *          if a deposit is emitted but a required field has not been
+     *          set.
+     */
+    public SplittingPaymentDepositBuilder addPayment(final Name receivedFrom, final Account fromAccount,
+                                                     final Memo memo, final DocNumber checkNumber,
+                                                     final PaymentMethod paymentMethod,
+                                                     final TxnClass txnClass, final Amount amount)
+    throws IllegalArgumentException {
+        final Object                groupKey;
+        final PaymentDepositBuilder groupBuilder;
+
+        Argument.ensureNotNull(receivedFrom,    "receivedFrom");
+        Argument.ensureNotNull(fromAccount,     "fromAccount");
+        Argument.ensureNotNull(memo,            "memo");
+        Argument.ensureNotNull(checkNumber,     "checkNumber");
+        Argument.ensureNotNull(paymentMethod,   "paymentMethod");
+        Argument.ensureNotNull(txnClass,        "txnClass");
+        Argument.ensureNotNull(amount,          "amount");
+        Argument.ensurePositiveOrZero(amount.getValue(), "amount");
+
+        groupKey = this.getGroupKey(receivedFrom, fromAccount, memo, checkNumber, paymentMethod,
+                                    txnClass, amount);
+
+        groupBuilder = this.groupBuilders.computeIfAbsent(groupKey, (key) -> new PaymentDepositBuilder());
+
+        groupBuilder.addPayment(receivedFrom, fromAccount, memo, checkNumber, paymentMethod, txnClass, amount);
+
+        if (groupBuilder.getPaymentLines().size() >= this.maxPaymentsPerDeposit) {
+            this.emitDeposit(groupBuilder);
+        }
+
+        return this;
+    }
+
+    /**
+     * Emits a deposit for each group that still has payments in it.
+     *
+     * <p>Groups are emitted in the order in which they were first seen. The
+     * builder can continue to be used afterwards.</p>
+     *
+     * @return  This object, for chaining.
+     *
+     * @throws  IllegalArgumentException
+     *          If a required field has not been set.
+     */
+    public SplittingPaymentDepositBuilder finish()
+    throws IllegalArgumentException {
+        for (PaymentDepositBuilder groupBuilder : this.groupBuilders.values()) {
+            if (!groupBuilder.getPaymentLines().isEmpty()) {
+                this.emitDeposit(groupBuilder);
+            }
+        }
+
+        return this;
+    }
+
+    /**
+     * Builds a deposit from the payments in the given group, hands it to the
+     * consumer, and then resets the group for its next deposit.
+     *
+     * @param   groupBuilder
+     *          The builder for the group.
+     *
+     * @throws  IllegalArgumentException
+     *          If a required field has not been set.
+     */
+    protected void emitDeposit(final PaymentDepositBuilder groupBuilder)
+    throws IllegalArgumentException {
+        final Transaction deposit;
+
+        groupBuilder
+            .setDepositTo(this.getDepositTo())
+            .setDate(this.getDate())
+            .setMemo(this.getMemo());
+
+        deposit = groupBuilder.build();
+
+        groupBuilder.reset();
+
+        ++this.depositCount;
+
+        this.depositConsumer.accept(deposit);
+    }
+
+    /**
+     * Determines the group of a payment, using the grouping key function.
+     *
+     * @return  The key of the group that the payment belongs to.
+     */
+    private Object getGroupKey(final Name receivedFrom, final Account fromAccount, final Memo memo,
+                               final DocNumber checkNumber, final PaymentMethod paymentMethod,
+                               final TxnClass txnClass, final Amount amount) {
+        final Object result;
+
+        if (this.groupingKey == null) {
+            result = SINGLE_GROUP;
+        }
+        else {
+            final PaymentKeyLine keyLine =
+                new PaymentKeyLine(receivedFrom, fromAccount, memo, checkNumber, paymentMethod, txnClass,
+                                   amount.negate());
+
+            result = this.groupingKey.apply(keyLine);
+        }
+
+        return result;
+    }
+
+    /**
+     * Ensures that no payments have been added yet.
+     *
+     * @throws  IllegalStateException
+     *          If payments have already been added.
+     */
+    private void ensureNoPaymentsAdded()
+    throws IllegalStateException {
+        if (!this.groupBuilders.isEmpty()) {
+            throw new IllegalStateException(
+                "This setting cannot be changed once payments have been added.");
+        }
+    }
+
+    /**
+     * The immutable, read-only view of a payment that is given to the
+     * grouping key function.
+     *
+     * <p>The view presents the payment as the split line that it becomes in
+     * its deposit, except that it has no date, since the date is not known
+     * until the deposit is emitted.</p>
+     */
+    private static final class PaymentKeyLine
+    implements DataLineView {
+        /**
+         * The values of the payment. See {@link DataLineView} for the
+         * meaning of each.
+         */
+        private final Name          name;
+        private final Account       account;
+        private final Memo          memo;
+        private final DocNumber     docNumber;
+        private final PaymentMethod paymentMethod;
+        private final TxnClass      txnClass;
+        private final Amount        amount;
+
+        /**
+         * Constructor for {@code PaymentKeyLine}.
+         *
+         * @param   name
+         *          The name that the payment was received from.
+         *
+         * @param   account
+         *          The account that the payment affects.
+         *
+         * @param   memo
+         *          The note on the payment.
+         *
+         * @param   docNumber
+         *          The check number of the payment.
+         *
+         * @param   paymentMethod
+         *          The method by which the payment was made.
+         *
+         * @param   txnClass
+         *          The transaction class of the payment.
+         *
+         * @param   amount
+         *          The amount of the split line for the payment.
+         */
+        PaymentKeyLine(final Name name, final Account account, final Memo memo, final DocNumber docNumber,
+                       final PaymentMethod paymentMethod, final TxnClass txnClass, final Amount amount) {
+            this.name           = name;
+            this.account        = account;
+            this.memo           = memo;
+            this.docNumber      = docNumber;
+            this.paymentMethod  = paymentMethod;
+            this.txnClass       = txnClass;
+            this.amount         = amount;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public DocNumber getDocNumber() {
+            return this.docNumber;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @return  {@link TxnIdentifier#EMPTY}, always.
+         */
+        @Override
+        public TxnIdentifier getId() {
+            return TxnIdentifier.EMPTY;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @return  {@link TxnType#DEPOSIT}, always.
+         */
+        @Override
+        public TxnType getType() {
+            return TxnType.DEPOSIT;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @return  {@code null}, always, since the date of the deposit is not
+         *          yet known.
+         */
+        @Override
+        public Date getDate() {
+            return null;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Account getAccount() {
+            return this.account;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Name getName() {
+            return this.name;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public TxnClass getTxnClass() {
+            return this.txnClass;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Amount getAmount() {
+            return this.amount;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public PaymentMethod getPaymentMethod() {
+            return this.paymentMethod;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Memo getMemo() {
+            return this.memo;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @return {@code "SPL"}, always.
+         */
+        @Override
+        public String getLineType() {
+            return "SPL";
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @throws  UnsupportedOperationException
+         *          Always, since a line without a date cannot be exported.
+         */
+        @Override
+        public String toIifString()
+        throws UnsupportedOperationException {
+            throw new UnsupportedOperationException(
+                "A payment cannot be exported until it has been added to a deposit.");
+        }
+    }
+}
@@ -0,0 +1,457 @@
+/*
+ * Copyright (C) 2016 Red Bottle Design, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redbottledesign.accounting.quickbooks.builders;
+
+import com.redbottledesign.accounting.quickbooks.exception.OutOfBalanceException;
+import com.redbottledesign.accounting.quickbooks.models.Account;
+import com.redbottledesign.accounting.quickbooks.models.Amount;
+import com.redbottledesign.accounting.quickbooks.models.BooleanValue;
+import com.redbottledesign.accounting.quickbooks.models.DataLineBuilder;
+import com.redbottledesign.accounting.quickbooks.models.Date;
+import com.redbottledesign.accounting.quickbooks.models.DocNumber;
+import com.redbottledesign.accounting.quickbooks.models.Memo;
+import com.redbottledesign.accounting.quickbooks.models.Name;
+import com.redbottledesign.accounting.quickbooks.models.PaymentMethod;
+import com.redbottledesign.accounting.quickbooks.models.StringValue;
+import com.redbottledesign.accounting.quickbooks.models.Transaction;
+import com.redbottledesign.accounting.quickbooks.models.TxnClass;
+import com.redbottledesign.accounting.quickbooks.models.TxnIdentifier;
+import com.redbottledesign.accounting.quickbooks.models.TxnType;
+import com.redbottledesign.accounting.quickbooks.util.IifUtils;
+import com.redbottledesign.util.Argument;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A pre-compiled layout for transactions that only differ in their date,
+ * document number, and line amounts.
+ *
+ * <p>Templates are created by a {@link TransactionTemplateBuilder}. All of
+ * the columns that do not change from one transaction to the next are
+ * rendered to IIF when the template is compiled, so stamping out a
+ * transaction only has to fill in the variable columns. Transactions can be
+ * stamped out either as model objects, through {@link #build}, or directly as
+ * IIF bytes, through {@link #write}. Both produce exactly the same IIF.</p>
+ *
+ * <p>Templates cannot be changed once compiled, and are thread-safe.</p>
+ *
+ * @author Guy Paddock (guy@redbottledesign.com)
+ */
+public class TransactionTemplate {
+    /**
+     * The type of transaction the template produces.
+     */
+    private final TxnType type;
+
+    /**
+     * The fixed columns of each line, indexed by line.
+     */
+    private final Account[] accounts;
+    private final Name[] names;
+    private final Memo[] memos;
+    private final TxnClass[] txnClasses;
+
+    /**
+     * The pre-rendered IIF that starts the first line, up to its document
+     * number.
+     */
+    private final byte[] leadingSegment;
+
+    /**
+     * The pre-rendered IIF between the document number and date of each line.
+     */
+    private final byte[][] afterDocNumberSegments;
+
+    /**
+     * The pre-rendered IIF between the date and amount of each line.
+     */
+    private final byte[][] afterDateSegments;
+
+    /**
+     * The pre-rendered IIF after the amount of each line, up to the document
+     * number of the next line. After the last line, this is the termination
+     * line of the transaction.
+     */
+    private final byte[][] afterAmountSegments;
+
+    /**
+     * The same pre-rendered IIF as the segments above, before it was encoded.
+     * This is what {@link #toIifString} renders from, so that characters the
+     * IIF character set cannot represent are kept, just as they are by
+     * {@link Transaction#toIifString()}.
+     */
+    private final String leadingText;
+    private final String[] afterDocNumberTexts;
+    private final String[] afterDateTexts;
+    private final String[] afterAmountTexts;
+
+    /**
+     * Constructor for {@code TransactionTemplate}.
+     *
+     * @param   type
+     *          The type of transaction the template produces.
+     *
+     * @param   accounts
+     *          The account of each line.
+     *
+     * @param   names
+     *          The name of each line.
+     *
+     * @param   memos
+     *          The memo of each line.
+     *
+     * @param   txnClasses
+     *          The class of each line.
+     */
+    TransactionTemplate(final TxnType type, final Account[] accounts, final Name[] names,
+                        final Memo[] memos, final TxnClass[] txnClasses) {
+        final int lineCount = accounts.length;
+
+        this.type                   = type;
+        this.accounts               = accounts;
+        this.names                  = names;
+        this.memos                  = memos;
+        this.txnClasses             = txnClasses;
+        this.leadingText            = joinColumns("TRNS", "");
+        this.afterDocNumberTexts    = new String[lineCount];
+        this.afterDateTexts         = new String[lineCount];
+        this.afterAmountTexts       = new String[lineCount];
+        this.leadingSegment         = encode(this.leadingText);
+        this.afterDocNumberSegments = new byte[lineCount][];
+        this.afterDateSegments      = new byte[lineCount][];
+        this.afterAmountSegments    = new byte[lineCount][];
+
+        for (int lineIndex = 0; lineIndex < lineCount; ++lineIndex) {
+            final String    paymentMethod   = PaymentMethod.EMPTY.toIifString(),
+                            memo            = memos[lineIndex].toIifString();
+            final String    lineEnd;
+
+            this.afterDocNumberTexts[lineIndex] =
+                joinColumns("", TxnIdentifier.EMPTY.toIifString(), type.toIifString(), "");
+
+            this.afterDateTexts[lineIndex] =
+                joinColumns(
+                    "",
+                    accounts[lineIndex].toIifString(),
+                    names[lineIndex].toIifString(),
+                    txnClasses[lineIndex].toIifString(),
+                    "");
+
+            if (lineIndex == (lineCount - 1)) {
+                lineEnd = "\nENDTRNS\t";
+            }
+            else {
+                lineEnd = "\nSPL\t";
+            }
+
+            if (lineIndex == 0) {
+                // The to-print flag, due date, and terms only appear on TRNS.
+                this.afterAmountTexts[lineIndex] =
+                    joinColumns(
+                        "",
+                        paymentMethod,
+                        BooleanValue.EMPTY.toIifString(),
+                        StringValue.EMPTY.toIifString(),
+                        StringValue.EMPTY.toIifString(),
+                        memo + lineEnd);
+            }
+            else {
+                this.afterAmountTexts[lineIndex] = joinColumns("", paymentMethod, memo + lineEnd);
+            }
+
+            this.afterDocNumberSegments[lineIndex]  = encode(this.afterDocNumberTexts[lineIndex]);
+            this.afterDateSegments[lineIndex]       = encode(this.afterDateTexts[lineIndex]);
+            this.afterAmountSegments[lineIndex]     = encode(this.afterAmountTexts[lineIndex]);
+        }
+    }
+
+    /**
+     * Gets the type of transaction this template produces.
+     *
+     * @return  The transaction type.
+     */
+    public TxnType getType() {
+        return this.type;
+    }
+
+    /**
+     * Gets the number of lines in each transaction this template produces.
+     *
+     * <p>This is also the number of amounts that must be supplied each time
+     * the template is used.</p>
+     *
+     * @return  The number of lines.
+     */
+    public int getLineCount() {
+        return this.accounts.length;
+    }
+
+    /**
+     * Stamps out a new transaction from this template.
+     *
+     * @param   date
+     *          The date of the transaction.
+     *
+     * @param   docNumber
+     *          The document number of the transaction.
+     *
+     * @param   amounts
+     *          The amount of each line, in the order the lines were added to
+     *          the template. By convention, the amount is negative for a
+     *          credit and positive for a debit.
+     *
+     * @return  The new transaction, made up of immutable lines.
+     *
+     * @throws  IllegalArgumentException
+     *          If any argument is {@code null}, or the number of amounts does
+     *          not match the number of lines.
+     *
+     * @throws  OutOfBalanceException
+     *          If the amounts do not balance.
+     */
+    public Transaction build(final Date date, final DocNumber docNumber, final Amount... amounts)
+    throws IllegalArgumentException, OutOfBalanceException {
+        final int               lineCount   = this.getLineCount();
+        final Transaction       result      = new Transaction(lineCount);
+        final DataLineBuilder   lineBuilder = new DataLineBuilder();
+
+        Argument.ensureNotNull(date,        "date");
+        Argument.ensureNotNull(docNumber,   "docNumber");
+        Argument.ensureNotNull(amounts,     "amounts");
+
+        this.ensureAmountCount(amounts.length);
+
+        lineBuilder
+            .setType(this.type)
+            .setDate(date)
+            .setDocNumber(docNumber);
+
+        for (int lineIndex = 0; lineIndex < lineCount; ++lineIndex) {
+            lineBuilder
+                .setAccount(this.accounts[lineIndex])
+                .setName(this.names[lineIndex])
+                .setMemo(this.memos[lineIndex])
+                .setTxnClass(this.txnClasses[lineIndex])
+                .setAmount(amounts[lineIndex]);
+
+            if (lineIndex == 0) {
+                result.addLine(lineBuilder.buildTransactionLine());
+            }
+            else {
+                result.addLine(lineBuilder.buildSplitLine());
+            }
+        }
+
+        result.ensureIsInBalance();
+
+        return result;
+    }
+
+    /**
+     * Writes a new transaction from this template directly to the given
+     * stream, as IIF.
+     *
+     * <p>The output is identical to that of the equivalent transaction from
+     * {@link #build(Date, DocNumber, Amount...)}: the lines of the transaction
+     * and its termination line, separated by newlines, without a trailing
+     * newline.</p>
+     *
+     * @param   output
+     *          The stream to write to.
+     *
+     * @param   date
+     *          The date of the transaction.
+     *
+     * @param   docNumber
+     *          The document number of the transaction.
+     *
+     * @param   amountCents
+     *          The amount of each line, in cents, in the order the lines were
+     *          added to the template. By convention, the amount is negative
+     *          for a credit and positive for a debit.
+     *
+     * @throws  IOException
+     *          If the stream cannot be written.
+     *
+     * @throws  IllegalArgumentException
+     *          If any argument is {@code null}, or the number of amounts does
+     *          not match the number of lines.
+     *
+     * @throws  OutOfBalanceException
+     *          If the amounts do not balance. Nothing is written in this
+     *          case.
+     */
+    public void write(final OutputStream output, final Date date, final DocNumber docNumber,
+                      final long... amountCents)
+    throws IOException, IllegalArgumentException, OutOfBalanceException {
+        final byte[] dateBytes;
+
+        Argument.ensureNotNull(output,      "output");
+        Argument.ensureNotNull(date,        "date");
+        Argument.ensureNotNull(docNumber,   "docNumber");
+        Argument.ensureNotNull(amountCents, "amountCents");
+
+        this.ensureAmountCount(amountCents.length);
+        ensureBalanced(amountCents);
+
+        dateBytes = date.toIifString().getBytes(IifUtils.IIF_CHARSET);
+
+        output.write(this.leadingSegment);
+
+        for (int lineIndex = 0; lineIndex < amountCents.length; ++lineIndex) {
+            docNumber.writeIifTo(output);
+            output.write(this.afterDocNumberSegments[lineIndex]);
+            output.write(dateBytes);
+            output.write(this.afterDateSegments[lineIndex]);
+            output.write(Amount.ofCents(amountCents[lineIndex]).toString().getBytes(IifUtils.IIF_CHARSET));
+            output.write(this.afterAmountSegments[lineIndex]);
+        }
+    }
+
+    /**
+     * Renders a new transaction from this template as IIF.
+     *
+     * <p>The result is identical to {@code toIifString()} of the equivalent
+     * transaction from {@link #build(Date, DocNumber, Amount...)}, including
+     * any characters that {@link #write} would have to replace because the
+     * IIF character set cannot represent them.</p>
+     *
+     * @param   date
+     *          The date of the transaction.
+     *
+     * @param   docNumber
+     *          The document number of the transaction.
+     *
+     * @param   amountCents
+     *          The amount of each line, in cents.
+     *
+     * @return  The transaction, in IIF format.
+     *
+     * @throws  IllegalArgumentException
+     *          If any argument is {@code null}, or the number of amounts does
+     *          not match the number of lines.
+     *
+     * @throws  OutOfBalanceException
+     *          If the amounts do not balance.
+     *
+     * @see     #write(OutputStream, Date, DocNumber, long...)
+     */
+    public String toIifString(final Date date, final DocNumber docNumber, final long... amountCents)
+    throws IllegalArgumentException, OutOfBalanceException {
+        final StringBuilder builder = new StringBuilder();
+        final String        dateText,
+                            docNumberText;
+
+        Argument.ensureNotNull(date,        "date");
+        Argument.ensureNotNull(docNumber,   "docNumber");
+        Argument.ensureNotNull(amountCents, "amountCents");
+
+        this.ensureAmountCount(amountCents.length);
+        ensureBalanced(amountCents);
+
+        dateText        = date.toIifString();
+        docNumberText   = docNumber.toIifString();
+
+        builder.append(this.leadingText);
+
+        for (int lineIndex = 0; lineIndex < amountCents.length; ++lineIndex) {
+            builder
+                .append(docNumberText)
+                .append(this.afterDocNumberTexts[lineIndex])
+                .append(dateText)
+                .append(this.afterDateTexts[lineIndex])
+                .append(Amount.ofCents(amountCents[lineIndex]))
+                .append(this.afterAmountTexts[lineIndex]);
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Ensures that the given number of amounts matches the number of lines
+     * in this template.
+     *
+     * @param   amountCount
+     *          The number of amounts supplied.
+     *
+     * @throws  IllegalArgumentException
+     *          If the counts do not match.
+     */
+    protected void ensureAmountCount(final int amountCount)
+    throws IllegalArgumentException {
+        if (amountCount != this.getLineCount()) {
+            throw new IllegalArgumentException(
+                String.format(
+                    "This template has `%d` lines, but `%d` amounts were supplied.",
+                    this.getLineCount(),
+                    amountCount));
+        }
+    }
+
+    /**
+     * Ensures that the given line amounts add up to zero.
+     *
+     * @param   amountCents
+     *          The amount of each line, in cents.
+     *
+     * @throws  OutOfBalanceException
+     *          If the amounts do not balance.
+     *
+     * @throws  ArithmeticException
+     *          If the total overflows.
+     */
+    protected static void ensureBalanced(final long[] amountCents)
+    throws OutOfBalanceException, ArithmeticException {
+        long total = 0;
+
+        for (long cents : amountCents) {
+            total = Math.addExact(total, cents);
+        }
+
+        if (total != 0) {
+            throw new OutOfBalanceException(
+                String.format(
+                    "This transaction is not in balance (DISCREPANCY: %s).",
+                    Amount.ofCents(total)));
+        }
+    }
+
+    /**
+     * Joins the given columns with tabs.
+     *
+     * @param   columns
+     *          The already-rendered columns.
+     *
+     * @return  The joined columns.
+     */
+    private static String joinColumns(final String... columns) {
+        return IifUtils.joinColumns(columns);
+    }
+
+    /**
+     * Encodes pre-rendered IIF in the IIF character set.
+     *
+     * @param   text
+     *          The already-rendered IIF.
+     *
+     * @return  The encoded IIF.
+     */
+    private static byte[] encode(final String text) {
+        return text.getBytes(IifUtils.IIF_CHARSET);
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2016 Red Bottle Design, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redbottledesign.accounting.quickbooks.builders;
+
+import com.redbottledesign.accounting.quickbooks.models.Account;
+import com.redbottledesign.accounting.quickbooks.models.Memo;
+import com.redbottledesign.accounting.quickbooks.models.Name;
+import com.redbottledesign.accounting.quickbooks.models.TransactionLine;
+import com.redbottledesign.accounting.quickbooks.models.TxnClass;
+import com.redbottledesign.accounting.quickbooks.models.TxnType;
+import com.redbottledesign.util.Argument;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A builder that describes the layout of a recurring transaction, and
+ * compiles it into a {@link TransactionTemplate}.
+ *
+ * <p>Lines are described much like they are for a
+ * {@link GeneralJournalBuilder}, except that amounts are left out: the
+ * account, name, memo, and class of each line are fixed by the template,
+ * while the date, document number, and amount of each line are filled in
+ * each time the template is used.</p>
+ *
+ * @author Guy Paddock (guy@redbottledesign.com)
+ */
+public class TransactionTemplateBuilder {
+    private TxnType type;
+
+    private final List<Account> accounts;
+    private final List<Name> names;
+    private final List<Memo> memos;
+    private final List<TxnClass> txnClasses;
+
+    /**
+     * Constructor for {@code TransactionTemplateBuilder}.
+     *
+     * <p>Templates are for General Journal entries unless another type is
+     * set.</p>
+     */
+    public TransactionTemplateBuilder() {
+        this.type       = TxnType.GENERAL_JOURNAL;
+        this.accounts   = new ArrayList<>(AbstractTransactionBuilder.DEFAULT_LINE_CAPACITY);
+        this.names      = new ArrayList<>(AbstractTransactionBuilder.DEFAULT_LINE_CAPACITY);
+        this.memos      = new ArrayList<>(AbstractTransactionBuilder.DEFAULT_LINE_CAPACITY);
+        this.txnClasses = new ArrayList<>(AbstractTransactionBuilder.DEFAULT_LINE_CAPACITY);
+    }
+
+    /**
+     * Gets the type of transaction the template produces.
+     *
+     * @return  The transaction type.
+     */
+    public TxnType getType() {
+        return this.type;
+    }
+
+    /**
+     * Sets the type of transaction the template produces.
+     *
+     * <p>Bills and invoices cannot be templated, since each one needs its own
+     * due date and terms.</p>
+     *
+     * @param   type
+     *          The transaction type.
+     *
+     * @return  This object, for chaining.
+     *
+     * @throws  IllegalArgumentException
+     *          If {@code type} is a bill or invoice.
+     */
+    public TransactionTemplateBuilder setType(final TxnType type)
+    throws IllegalArgumentException {
+        Argument.ensureNotNull(type, "type");
+
+        if (TransactionLine.isReceivableType(type)) {
+            throw new IllegalArgumentException(
+                String.format(
+                    "A `%s` transaction cannot be templated, since it requires a due date and terms.",
+                    type));
+        }
+
+        this.type = type;
+
+        return this;
+    }
+
+    /**
+     * Gets the number of lines that have been described so far.
+     *
+     * @return  The number of lines.
+     */
+    public int getLineCount() {
+        return this.accounts.size();
+    }
+
+    /**
+     * Adds a line to the template.
+     *
+     * @param   account
+     *          The account that the line affects.
+     *
+     * @return  This object, for chaining.
+     */
+    public TransactionTemplateBuilder addLine(final Account account) {
+        return this.addLine(account, Name.EMPTY, Memo.EMPTY, TxnClass.EMPTY);
+    }
+
+    /**
+     * Adds a line to the template.
+     *
+     * @param   account
+     *          The account that the line affects.
+     *
+     * @param   name
+     *          The name (customer, vendor, contractor, etc.) to associate
+     *          with the line.
+     *
+     * @return  This object, for chaining.
+     */
+    public TransactionTemplateBuilder addLine(final Account account, final Name name) {
+        return this.addLine(account, name, Memo.EMPTY, TxnClass.EMPTY);
+    }
+
+    /**
+     * Adds a line to the template.
+     *
+     * @param   account
+     *          The account that the line affects.
+     *
+     * @param   name
+     *          The name (customer, vendor, contractor, etc.) to associate
+     *          with the line.
+     *
+     * @param   memo
+     *          A note to add to the line.
+     *
+     * @return  This object, for chaining.
+     */
+    public TransactionTemplateBuilder addLine(final Account account, final Name name,
+                                              final Memo memo) {
+        return this.addLine(account, name, memo, TxnClass.EMPTY);
+    }
+
+    /**
+     * Adds a line to the template.
+     *
+     * <p>The first line added becomes the transaction ({@code TRNS}) line;
+     * all others become split ({@code SPL}) lines.</p>
+     *
+     * @param   account
+     *          The account that the line affects.
+     *
+     * @param   name
+     *          The name (customer, vendor, contractor, etc.) to associate
+     *          with the line.
+     *
+     * @param   memo
+     *          A note to add to the line.
+     *
+     * @param   txnClass
+     *          The transaction class.
+     *
+     * @return  This object, for chaining.
+     */
+    public TransactionTemplateBuilder addLine(final Account account, final Name name,
+                                              final Memo memo, final TxnClass txnClass) {
+        Argument.ensureNotNull(account,     "account");
+        Argument.ensureNotNull(name,        "name");
+        Argument.ensureNotNull(memo,        "memo");
+        Argument.ensureNotNull(txnClass,    "txnClass");
+
+        this.accounts.add(account);
+        this.names.add(name);
+        this.memos.add(memo);
+        this.txnClasses.add(txnClass);
+
+        return this;
+    }
+
+    /**
+     * Compiles the lines described so far into a template.
+     *
+     * <p>The builder can continue to be used afterwards; changes to it have no
+     * effect on templates that were already compiled.</p>
+     *
+     * @return  The new template.
+     *
+     * @throws  IllegalStateException
+     *          If no lines have been added.
+     */
+    public TransactionTemplate compile()
+    throws IllegalStateException {
+        if (this.accounts.isEmpty()) {
+            throw new IllegalStateException("A template must have at least one line.");
+        }
+
+        return new TransactionTemplate(
+            this.type,
+            this.accounts.toArray(new Account[0]),
+            this.names.toArray(new Name[0]),
+            this.memos.toArray(new Memo[0]),
+            this.txnClasses.toArray(new TxnClass[0]));
+    }
+}
@@ -18,6 +18,7 @@ package com.redbottledesign.accounting.quickbooks.builders;
 
 import com.redbottledesign.accounting.quickbooks.models.Account;
 import com.redbottledesign.accounting.quickbooks.models.Amount;
+import com.redbottledesign.accounting.quickbooks.models.AmountTotal;
 import com.redbottledesign.accounting.quickbooks.models.BooleanValue;
 import com.redbottledesign.accounting.quickbooks.models.DataLine;
 import com.redbottledesign.accounting.quickbooks.models.Date;
@@ -33,8 +34,8 @@ import com.redbottledesign.accounting.quickbooks.models.TxnType;
 import com.redbottledesign.util.Argument;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 
 /**
@@ -42,7 +43,8 @@ import java.util.List;
  *
  * @author Guy Paddock (guy@redbottledesign.com)
  */
-public class VendorBillBuilder {
+public class VendorBillBuilder
+extends AbstractTransactionBuilder {
     /**
      * The type of transaction this builder constructs.
      */
@@ -50,7 +52,7 @@ public class VendorBillBuilder {
 
     private Date date;
     private DocNumber referenceNumber;
-    private BigDecimal lineItemTotal;
+    private AmountTotal lineItemTotal;
 
     private TransactionLine transactionLine;
     private List<SplitLine> splitLines;
@@ -65,6 +67,28 @@ public class VendorBillBuilder {
         this.setSplitLines(Collections.emptyList());
     }
 
+    /**
+     * Clears all values in this builder, so that it can be used to build an
+     * unrelated bill.
+     *
+     * <p>The lines of the previous bill are recycled for the next one.</p>
+     *
+     * @return  This object, for chaining.
+     */
+    public VendorBillBuilder reset() {
+        this.date               = null;
+        this.referenceNumber    = null;
+
+        this.lineItemTotal.reset();
+
+        this.recycleLine(this.getTransactionLine());
+        this.setTransactionLine(this.createTransactionLine());
+
+        this.recycleLines(this.getSplitLines());
+
+        return this;
+    }
+
     /**
      * Gets the vendor from which the bill is being received.
      *
@@ -211,7 +235,7 @@ public class VendorBillBuilder {
      * @return  The line item total amount.
      */
     public BigDecimal getLineItemTotal() {
-        return this.lineItemTotal;
+        return this.lineItemTotal.toBigDecimal();
     }
 
     /**
@@ -249,13 +273,18 @@ public class VendorBillBuilder {
     /**
      * Sets the lines that represent the line items of the bill.
      *
+     * <p>The lines become owned by this builder, and are recycled when it is
+     * {@linkplain #reset() reset}.</p>
+     *
      * @param   splitLines
      *          The new line items in the bill.
      *
      * @return  This object, for chaining.
      */
     protected VendorBillBuilder setSplitLines(final List<SplitLine> splitLines) {
-        this.splitLines = new LinkedList<>(splitLines);
+        this.splitLines = new ArrayList<>(Math.max(splitLines.size(), DEFAULT_LINE_CAPACITY));
+
+        this.splitLines.addAll(splitLines);
 
         return this;
     }
@@ -267,7 +296,7 @@ public class VendorBillBuilder {
      *          The new line item total.
      */
     protected VendorBillBuilder setLineItemTotal(final BigDecimal lineItemTotal) {
-        this.lineItemTotal = lineItemTotal;
+        this.lineItemTotal = new AmountTotal().add(new Amount(lineItemTotal));
 
         return this;
     }
@@ -299,7 +328,7 @@ public class VendorBillBuilder {
     public VendorBillBuilder addLineItem(final Account account, final Amount amount,
                                          final Name customerOrJob, final Memo memo,
                                          final TxnClass txnClass) {
-        SplitLine paymentSplit = new SplitLine();
+        SplitLine paymentSplit = this.obtainSplitLine();
 
         Argument.ensureNotNull(account,         "account");
         Argument.ensureNotNull(amount,          "amount");
@@ -316,7 +345,7 @@ public class VendorBillBuilder {
 
         this.getSplitLines().add(paymentSplit);
 
-        this.lineItemTotal = this.lineItemTotal.add(amount.getValue());
+        this.lineItemTotal.add(amount);
 
         return this;
     }
@@ -338,21 +367,17 @@ public class VendorBillBuilder {
      */
     public Transaction build()
     throws IllegalArgumentException, IllegalStateException {
-        Transaction     transaction     = new Transaction();
+        List<SplitLine> splitLines      = this.getSplitLines();
+        Transaction     transaction     = new Transaction(splitLines.size() + 1);
         TransactionLine transactionLine = this.getTransactionLine();
-        List<DataLine>  lines           = new LinkedList<>();
 
         transactionLine.setMemo(this.getMemo());
-        transactionLine.setAmount(new Amount(this.getLineItemTotal().negate()));
+        transactionLine.setAmount(this.lineItemTotal.toAmount().negate());
 
-        lines.add(this.getTransactionLine());
-        lines.addAll(this.getSplitLines());
+        this.addToTransaction(transaction, transactionLine);
 
-        for (DataLine line : lines) {
-            line.setDocNumber(this.getReferenceNumber());
-            line.setDate(this.getDate());
-
-            transaction.addLine(line);
+        for (DataLine line : splitLines) {
+            this.addToTransaction(transaction, line);
         }
 
         transaction.ensureIsInBalance();
@@ -360,6 +385,23 @@ public class VendorBillBuilder {
         return transaction;
     }
 
+    /**
+     * Fills in the columns that all lines of the bill share, then adds a copy
+     * of the line to the given transaction.
+     *
+     * @param   transaction
+     *          The transaction being built.
+     *
+     * @param   line
+     *          The line to add.
+     */
+    protected void addToTransaction(final Transaction transaction, final DataLine line) {
+        line.setDocNumber(this.getReferenceNumber());
+        line.setDate(this.getDate());
+
+        transaction.addLine(line);
+    }
+
     /**
      * Constructs the transaction line, which is the first line of the bill
      * when exported to IIF.
@@ -370,7 +412,7 @@ public class VendorBillBuilder {
      * @return  The first line of the transaction.
      */
     protected TransactionLine createTransactionLine() {
-        TransactionLine line = new TransactionLine();
+        TransactionLine line = this.obtainTransactionLine();
 
         line.setType(TxnType.BILL);
         line.setAccount(Account.ACCOUNTS_PAYABLE);
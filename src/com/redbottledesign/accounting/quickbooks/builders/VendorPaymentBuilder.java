@@ -29,7 +29,7 @@ import com.redbottledesign.accounting.quickbooks.models.TransactionLine;
 import com.redbottledesign.accounting.quickbooks.models.TxnType;
 import com.redbottledesign.util.Argument;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -60,12 +60,39 @@ extends AbstractTransactionBuilder {
     private Account chargeToAccount;
     private Memo memo;
 
+    /**
+     * The lines of the most recently built payment, which are recycled by the
+     * next build.
+     */
+    private final List<DataLine> paymentLines;
+
     /**
      * Constructor for {@code VendorPaymentBuilder}.
      */
     public VendorPaymentBuilder() {
+        this.paymentLines = new ArrayList<>(2);
+
+        this.reset();
+    }
+
+    /**
+     * Clears all values in this builder, so that it can be used to build an
+     * unrelated payment.
+     *
+     * @return  This object, for chaining.
+     */
+    public VendorPaymentBuilder reset() {
+        this.vendor             = null;
+        this.amount             = null;
+        this.date               = null;
+        this.chargeToAccount    = null;
+
         this.setReferenceNumber(DocNumber.EMPTY);
         this.setMemo(Memo.EMPTY);
+
+        this.recycleLines(this.paymentLines);
+
+        return this;
     }
 
     /**
@@ -109,7 +136,7 @@ extends AbstractTransactionBuilder {
      *          The payment amount to set in the transaction being built.
      */
     public VendorPaymentBuilder setAmount(final Amount amount) {
-        if (amount.getValue().signum() < 0) {
+        if (amount.signum() < 0) {
             throw new IllegalArgumentException("amount must be a positive number.");
         }
 
@@ -235,11 +262,11 @@ extends AbstractTransactionBuilder {
      */
     public Transaction build()
     throws IllegalArgumentException, IllegalStateException {
-        final Transaction       transaction     = new Transaction();
-        final List<DataLine>    paymentLines    = new LinkedList<>();
+        final Transaction       transaction     = new Transaction(2);
+        final List<DataLine>    paymentLines    = this.paymentLines;
         final Name              vendor          = this.getVendor();
         final Amount            debitAmount     = this.getAmount(),
-                                creditAmount    = new Amount(debitAmount.getValue().negate());
+                                creditAmount    = debitAmount.negate();
         final DocNumber         refNumber       = this.getReferenceNumber();
         final Date              date            = this.getDate();
         final Account           chargeTo        = this.getChargeToAccount();
@@ -253,6 +280,8 @@ extends AbstractTransactionBuilder {
         Argument.ensureNotNull(chargeTo,    "chargeTo");
         Argument.ensureNotNull(memo,        "memo");
 
+        this.recycleLines(paymentLines);
+
         // Credit from Charge Account
         txnLine =
             (TransactionLine)this.addLine(
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2016 Red Bottle Design, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redbottledesign.accounting.quickbooks.examples;
+
+import com.redbottledesign.accounting.quickbooks.builders.GeneralJournalBuilder;
+import com.redbottledesign.accounting.quickbooks.iif.ConcurrentIifFile;
+import com.redbottledesign.accounting.quickbooks.iif.IifExecutionPolicy;
+import com.redbottledesign.accounting.quickbooks.iif.IifExportable;
+import com.redbottledesign.accounting.quickbooks.iif.IifFile;
+import com.redbottledesign.accounting.quickbooks.models.Account;
+import com.redbottledesign.accounting.quickbooks.models.Amount;
+import com.redbottledesign.accounting.quickbooks.models.Date;
+import com.redbottledesign.accounting.quickbooks.models.DocNumber;
+import com.redbottledesign.accounting.quickbooks.models.Memo;
+import com.redbottledesign.accounting.quickbooks.models.Name;
+import com.redbottledesign.accounting.quickbooks.models.Transaction;
+import com.redbottledesign.accounting.quickbooks.models.TxnClass;
+
+import java.time.LocalDate;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * An example of running all of the parallel work of the library on a small,
+ * bounded thread pool, by making it the
+ * {@linkplain IifExecutionPolicy#setDefault(IifExecutionPolicy) default
+ * execution policy}.
+ *
+ * <p>Exporting a file renders its transactions in parallel, and each
+ * transaction renders its own lines through the same default policy. The
+ * example checks that this nested work neither deadlocks the pool nor changes
+ * the output: each file must export within a time limit, and produce exactly
+ * what it produces with the sequential policy. Otherwise, the example exits
+ * with a non-zero status.</p>
+ *
+ * @author Guy Paddock (guy@redbottledesign.com)
+ */
+public class BoundedExecutorExportExample {
+    private static final int TRANSACTION_COUNT = 200;
+    private static final int POOL_SIZE = 2;
+    private static final int PARALLELISM = 4;
+    private static final long TIME_LIMIT_SECONDS = 10;
+
+    private static final Account ACCOUNTS_RECEIVABLE = new Account("Accounts Receivable");
+    private static final Account SALES = new Account("Sales Income:Sales - Consulting");
+    private static final TxnClass CONSULTING = new TxnClass("Consulting");
+    private static final LocalDate FIRST_DATE = LocalDate.of(2016, 1, 1);
+
+    public static void main(String[] args)
+    throws InterruptedException, ExecutionException {
+        final ExecutorService       pool            = Executors.newFixedThreadPool(POOL_SIZE);
+        final ExecutorService       watchdog        = Executors.newSingleThreadExecutor();
+        final IifFile               file            = new IifFile();
+        final ConcurrentIifFile     concurrentFile  = new ConcurrentIifFile();
+        final GeneralJournalBuilder builder         = new GeneralJournalBuilder();
+        final String                expectedFile,
+                                    expectedConcurrentFile;
+        boolean                     isPassing;
+
+        for (int index = 0; index < TRANSACTION_COUNT; ++index) {
+            final Transaction transaction = buildEntry(builder, index);
+
+            file.addTransaction(transaction);
+            concurrentFile.addTransaction(transaction);
+        }
+
+        IifExecutionPolicy.setDefault(IifExecutionPolicy.sequential());
+
+        expectedFile            = file.toIifString();
+        expectedConcurrentFile  = concurrentFile.toIifString();
+
+        IifExecutionPolicy.setDefault(IifExecutionPolicy.executor(pool, PARALLELISM));
+
+        try {
+            isPassing =
+                checkExport("IifFile", file, expectedFile, watchdog) &
+                checkExport("ConcurrentIifFile", concurrentFile, expectedConcurrentFile, watchdog);
+        }
+        finally {
+            pool.shutdownNow();
+            watchdog.shutdownNow();
+        }
+
+        if (!isPassing) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean checkExport(final String description, final IifExportable exportable,
+                                       final String expected, final ExecutorService watchdog)
+    throws InterruptedException, ExecutionException {
+        final Future<String>    export  = watchdog.submit(exportable::toIifString);
+        boolean                 result;
+
+        try {
+            result = expected.equals(export.get(TIME_LIMIT_SECONDS, TimeUnit.SECONDS));
+
+            System.out.println(
+                String.format(
+                    "%s: exported %d transactions on %d threads, %s",
+                    description,
+                    TRANSACTION_COUNT,
+                    POOL_SIZE,
+                    result ? "output matches" : "OUTPUT DIFFERS"));
+        }
+        catch (TimeoutException ex) {
+            result = false;
+
+            System.out.println(
+                String.format(
+                    "%s: STILL EXPORTING after %d s; the pool is deadlocked",
+                    description,
+                    TIME_LIMIT_SECONDS));
+        }
+
+        return result;
+    }
+
+    private static Transaction buildEntry(final GeneralJournalBuilder builder, final int index) {
+        final Name      customer    = new Name("Customer " + (index % 10));
+        final Amount    amount      = new Amount(100 + index);
+
+        return builder
+            .reset()
+            .setDate(new Date(FIRST_DATE.plusDays(index % 30)))
+            .setEntryNumber(new DocNumber("INV-" + index))
+            .addLine(ACCOUNTS_RECEIVABLE, amount, customer, new Memo("Invoice " + index), CONSULTING)
+            .addLine(SALES, amount.negate(), customer, Memo.EMPTY, CONSULTING)
+            .build();
+    }
+}
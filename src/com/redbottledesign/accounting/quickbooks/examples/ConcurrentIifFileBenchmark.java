@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2016 Red Bottle Design, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redbottledesign.accounting.quickbooks.examples;
+
+import com.redbottledesign.accounting.quickbooks.builders.GeneralJournalBuilder;
+import com.redbottledesign.accounting.quickbooks.iif.ConcurrentIifFile;
+import com.redbottledesign.accounting.quickbooks.iif.IifFile;
+import com.redbottledesign.accounting.quickbooks.models.Account;
+import com.redbottledesign.accounting.quickbooks.models.Amount;
+import com.redbottledesign.accounting.quickbooks.models.Date;
+import com.redbottledesign.accounting.quickbooks.models.DocNumber;
+import com.redbottledesign.accounting.quickbooks.models.Memo;
+import com.redbottledesign.accounting.quickbooks.models.Name;
+import com.redbottledesign.accounting.quickbooks.models.TxnClass;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+
+/**
+ * A benchmark that measures how adding transactions to an IIF file scales
+ * with the number of producer threads, comparing a striped
+ * {@link ConcurrentIifFile} against one with a single stripe.
+ *
+ * <p>Both files do exactly the same work for each transaction added; the
+ * only difference is that every thread adding to the single-stripe file
+ * takes the same lock. The comparison therefore measures lock contention
+ * alone. (An {@link IifFile} makes a poor baseline, since it also
+ * dictionary-encodes each transaction as it is added.)</p>
+ *
+ * <p>Each producer builds general journal entries with its own builder and
+ * adds them to the shared file. The thread count doubles from 1 up to the
+ * number of available processors (or the second argument, if given), and the
+ * total number of transactions (the first argument, or 200,000 by default)
+ * is divided evenly among the threads. With only one processor, extra
+ * threads cannot add throughput, so the results are only meaningful on a
+ * multi-core machine.</p>
+ *
+ * @author Guy Paddock (guy@redbottledesign.com)
+ */
+public class ConcurrentIifFileBenchmark {
+    private static final int DEFAULT_TRANSACTION_COUNT = 200_000;
+    private static final int WARM_UP_ROUNDS = 2;
+
+    private static final Account ACCOUNTS_RECEIVABLE = new Account("Accounts Receivable");
+    private static final Account SALES = new Account("Sales Income:Sales - Consulting");
+    private static final TxnClass CONSULTING = new TxnClass("Consulting");
+    private static final Date FIRST_DATE = new Date(LocalDate.of(2016, 1, 1));
+
+    public static void main(String[] args)
+    throws InterruptedException {
+        final int transactionCount  = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_TRANSACTION_COUNT;
+        final int maxThreadCount    =
+            (args.length > 1) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        for (int round = 0; round < WARM_UP_ROUNDS; ++round) {
+            runConcurrentIifFile(1, transactionCount, maxThreadCount);
+            runConcurrentIifFile(ConcurrentIifFile.DEFAULT_STRIPE_COUNT, transactionCount, maxThreadCount);
+        }
+
+        System.out.println(
+            String.format(
+                "Adding %,d transactions on %d processors (times in ms):",
+                transactionCount,
+                Runtime.getRuntime().availableProcessors()));
+
+        System.out.println(
+            String.format(
+                "%8s  %14s  %18s  %8s",
+                "threads", "1 stripe", ConcurrentIifFile.DEFAULT_STRIPE_COUNT + " stripes", "speedup"));
+
+        for (int threadCount = 1; threadCount <= maxThreadCount; threadCount *= 2) {
+            final long lockedNanos      = runConcurrentIifFile(1, transactionCount, threadCount);
+            final long concurrentNanos  =
+                runConcurrentIifFile(ConcurrentIifFile.DEFAULT_STRIPE_COUNT, transactionCount, threadCount);
+
+            System.out.println(
+                String.format(
+                    "%8d  %14.1f  %18.1f  %7.2fx",
+                    threadCount,
+                    lockedNanos / 1e6,
+                    concurrentNanos / 1e6,
+                    (double)lockedNanos / concurrentNanos));
+        }
+    }
+
+    private static long runConcurrentIifFile(final int stripeCount, final int transactionCount,
+                                             final int threadCount)
+    throws InterruptedException {
+        final ConcurrentIifFile file = new ConcurrentIifFile(stripeCount);
+
+        return runProducers(transactionCount, threadCount, () -> {
+            final GeneralJournalBuilder builder = new GeneralJournalBuilder();
+
+            return index -> {
+                buildEntry(builder, index);
+
+                file.addOwned(builder.build());
+            };
+        });
+    }
+
+    private static void buildEntry(final GeneralJournalBuilder builder, final int index) {
+        final Name      customer    = new Name("Customer " + (index % 100));
+        final Amount    amount      = new Amount(100 + (index % 1000));
+
+        builder
+            .reset()
+            .setDate(new Date(LocalDate.ofEpochDay(FIRST_DATE.getEpochDay() + (index % 365))))
+            .setEntryNumber(new DocNumber("INV-" + index))
+            .addLine(ACCOUNTS_RECEIVABLE, amount, customer, new Memo("Invoice " + index), CONSULTING)
+            .addLine(SALES, amount.negate(), customer, Memo.EMPTY, CONSULTING);
+    }
+
+    private static long runProducers(final int transactionCount, final int threadCount,
+                                     final Supplier<IntConsumer> factory)
+    throws InterruptedException {
+        final CountDownLatch    startSignal = new CountDownLatch(1);
+        final List<Thread>      threads     = new ArrayList<>(threadCount);
+        final long              startTime;
+
+        for (int threadIndex = 0; threadIndex < threadCount; ++threadIndex) {
+            final int           firstIndex  = threadIndex;
+            final IntConsumer   producer    = factory.get();
+            final Thread        thread      = new Thread(() -> {
+                try {
+                    startSignal.await();
+                }
+                catch (InterruptedException ex) {
+                    return;
+                }
+
+                for (int index = firstIndex; index < transactionCount; index += threadCount) {
+                    producer.accept(index);
+                }
+            });
+
+            thread.start();
+            threads.add(thread);
+        }
+
+        startTime = System.nanoTime();
+
+        startSignal.countDown();
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        return System.nanoTime() - startTime;
+    }
+}
@@ -17,9 +17,11 @@
 package com.redbottledesign.accounting.quickbooks.iif;
 
 import com.redbottledesign.accounting.quickbooks.util.IifUtils;
+import com.redbottledesign.util.Argument;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * An abstract parent class for {@link IifExportable} objects that wrap other
@@ -48,20 +50,79 @@ implements IifExportable {
      */
     protected abstract List<IifExportable> prepareExportables();
 
+    /**
+     * Gets the policy used to export the exportables of this object in
+     * parallel.
+     *
+     * <p>By default, this is the {@linkplain IifExecutionPolicy#getDefault()
+     * default policy}.</p>
+     *
+     * @return  The execution policy.
+     */
+    protected IifExecutionPolicy getExecutionPolicy() {
+        return IifExecutionPolicy.getDefault();
+    }
+
+    /**
+     * Estimates the amount of work involved in exporting the given
+     * exportables, for the benefit of adaptive execution policies.
+     *
+     * <p>By default, each exportable counts as one item of work.</p>
+     *
+     * @param   exportables
+     *          The exportables that are about to be exported.
+     *
+     * @return  The estimated amount of work.
+     */
+    protected long estimateExportWork(final List<IifExportable> exportables) {
+        return exportables.size();
+    }
+
     /**
      * {@inheritDoc}
      *
+     * <p>The exportables are exported according to the
+     * {@linkplain #getExecutionPolicy() execution policy} of this
+     * object.</p>
+     *
      * @return IIF output of each exportable, as a newline-separated String.
      */
     @Override
     public String toIifString() {
-        List<String> iifLines;
+        final List<IifExportable>   exportables = this.prepareExportables();
+        final List<String>          iifLines;
 
-        iifLines = prepareExportables()
-            .parallelStream()
-            .map(IifExportable::toIifString)
-            .collect(Collectors.toList());
+        iifLines =
+            this.getExecutionPolicy().map(
+                exportables,
+                this.estimateExportWork(exportables),
+                IifExportable::toIifString);
 
         return IifUtils.joinLines(iifLines);
     }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The exportables are written one at a time, on the calling thread,
+     * each through its own {@link IifExportable#writeTo(Writer)}, so that
+     * only one of them is held in memory in rendered form at once.</p>
+     */
+    @Override
+    public void writeTo(final Writer writer)
+    throws IOException {
+        boolean isFirst = true;
+
+        Argument.ensureNotNull(writer, "writer");
+
+        for (IifExportable exportable : this.prepareExportables()) {
+            if (!isFirst) {
+                writer.write('\n');
+            }
+
+            exportable.writeTo(writer);
+
+            isFirst = false;
+        }
+    }
 }
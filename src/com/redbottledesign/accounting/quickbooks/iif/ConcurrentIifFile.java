@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2016 Red Bottle Design, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redbottledesign.accounting.quickbooks.iif;
+
+import com.redbottledesign.accounting.quickbooks.models.Transaction;
+
+/**
+ * A thread-safe variant of {@link IifFile}, which any number of threads can
+ * add transactions and names to at the same time.
+ *
+ * <p>This is a {@link ShardedIifFile} that gives each adding thread its own
+ * shard ("stripe"), as far as the number of stripes allows, so threads rarely
+ * wait on one another. Name tables are shared by all threads, and are only
+ * locked while names are added or
+ * {@linkplain #setNameDiscoveryEnabled(boolean) discovered}.</p>
+ *
+ * <p>The order in which threads add transactions is not itself
+ * deterministic, so transactions are exported in a canonical order instead
+ * of the order they were added: by date, then by document number, and then by
+ * their IIF text. The same set of transactions and names therefore always
+ * produces exactly the same file, no matter how the work was divided among
+ * threads. Names are exported in sorted order, just as they are by
+ * {@code IifFile}.</p>
+ *
+ * <p>Transactions are {@linkplain Transaction#freeze() frozen} when they are
+ * added, so that exporting can safely run while other threads are still
+ * adding to the file.</p>
+ *
+ * @author Guy Paddock (guy@redbottledesign.com)
+ */
+public class ConcurrentIifFile
+extends ShardedIifFile {
+    /**
+     * The default number of stripes: enough that threads on different
+     * processors rarely share one.
+     */
+    public static final int DEFAULT_STRIPE_COUNT =
+        Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1) << 1;
+
+    /**
+     * Default constructor for {@code ConcurrentIifFile}.
+     *
+     * <p>The file is created with {@link #DEFAULT_STRIPE_COUNT} stripes.</p>
+     */
+    public ConcurrentIifFile() {
+        this(DEFAULT_STRIPE_COUNT);
+    }
+
+    /**
+     * Constructor for {@code ConcurrentIifFile}.
+     *
+     * @param   stripeCount
+     *          The number of independently-locked buffers to spread
+     *          transactions across.
+     */
+    public ConcurrentIifFile(final int stripeCount) {
+        super(stripeCount, Partitioner.byThread());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ConcurrentIifFile setNameDiscoveryEnabled(final boolean isNameDiscoveryEnabled) {
+        super.setNameDiscoveryEnabled(isNameDiscoveryEnabled);
+
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ConcurrentIifFile setExecutionPolicy(final IifExecutionPolicy executionPolicy) {
+        super.setExecutionPolicy(executionPolicy);
+
+        return this;
+    }
+}
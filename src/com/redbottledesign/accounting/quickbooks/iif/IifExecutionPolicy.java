@@ -0,0 +1,632 @@
+/*
+ * Copyright (C) 2016 Red Bottle Design, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redbottledesign.accounting.quickbooks.iif;
+
+import com.redbottledesign.util.Argument;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * A policy that decides how the library runs work that can be split across
+ * threads, such as rendering the transactions of a file or cloning the lines
+ * of a transaction.
+ *
+ * <p>All of the parallel work in the library goes through an execution
+ * policy, so that applications can keep it off of the common
+ * {@link ForkJoinPool}, bound it, or turn it off entirely. Policies are
+ * created with the static factory methods of this class:</p>
+ * <ul>
+ *   <li>{@link #sequential()} runs everything on the calling thread.</li>
+ *   <li>{@link #commonPool()} and {@link #forkJoinPool(ForkJoinPool)} run
+ *       parallel streams in a fork/join pool.</li>
+ *   <li>{@link #executor(Executor, int)} splits work into a fixed number of
+ *       chunks, and runs them on any executor.</li>
+ *   <li>{@link #threadPerTask(ThreadFactory, int)} runs each chunk on a new
+ *       thread. On Java 21 and later, passing
+ *       {@code Thread.ofVirtual().factory()} runs each chunk on a virtual
+ *       thread.</li>
+ *   <li>{@link #adaptive(int, IifExecutionPolicy)} only runs work in
+ *       parallel once there is enough of it to be worth the overhead.</li>
+ * </ul>
+ *
+ * <p>The {@linkplain #getDefault() default policy} is used wherever no other
+ * policy has been configured. Out of the box, it is adaptive: work smaller
+ * than {@value #DEFAULT_PARALLEL_THRESHOLD} items runs sequentially, and
+ * anything larger runs in the common pool. Individual files can use a
+ * policy of their own (see {@link IifFile#setExecutionPolicy(IifExecutionPolicy)}).</p>
+ *
+ * <p>Regardless of policy, results are always returned in the same order as
+ * the items they came from, so output does not depend on the policy.</p>
+ *
+ * @author Guy Paddock (guy@redbottledesign.com)
+ */
+public abstract class IifExecutionPolicy {
+    /**
+     * The amount of work, in items, at or above which the default policy
+     * runs work in parallel.
+     */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 1024;
+
+    /**
+     * The policy that runs everything on the calling thread.
+     */
+    private static final IifExecutionPolicy SEQUENTIAL = new SequentialPolicy();
+
+    /**
+     * The policy that runs parallel streams in the common pool.
+     */
+    private static final IifExecutionPolicy COMMON_POOL = new ForkJoinPolicy(ForkJoinPool.commonPool());
+
+    /**
+     * The policy used wherever no other policy has been configured.
+     */
+    private static volatile IifExecutionPolicy defaultPolicy =
+        adaptive(DEFAULT_PARALLEL_THRESHOLD, COMMON_POOL);
+
+    /**
+     * Gets the policy used wherever no other policy has been configured.
+     *
+     * @return  The default policy.
+     */
+    public static IifExecutionPolicy getDefault() {
+        return defaultPolicy;
+    }
+
+    /**
+     * Sets the policy used wherever no other policy has been configured.
+     *
+     * <p>This affects the whole JVM, including work that is already under
+     * way on other threads.</p>
+     *
+     * @param   policy
+     *          The new default policy.
+     */
+    public static void setDefault(final IifExecutionPolicy policy) {
+        Argument.ensureNotNull(policy, "policy");
+
+        defaultPolicy = policy;
+    }
+
+    /**
+     * Gets a policy that runs all work on the calling thread.
+     *
+     * @return  The sequential policy.
+     */
+    public static IifExecutionPolicy sequential() {
+        return SEQUENTIAL;
+    }
+
+    /**
+     * Gets a policy that runs work as a parallel stream in the common
+     * {@link ForkJoinPool}.
+     *
+     * <p>This is how the library ran all of its parallel work before
+     * execution policies were introduced.</p>
+     *
+     * @return  The common pool policy.
+     */
+    public static IifExecutionPolicy commonPool() {
+        return COMMON_POOL;
+    }
+
+    /**
+     * Creates a policy that runs work as a parallel stream in the given
+     * {@link ForkJoinPool}.
+     *
+     * <p>The number of threads used is bounded by the parallelism of the
+     * pool.</p>
+     *
+     * @param   pool
+     *          The pool to run work in.
+     *
+     * @return  The new policy.
+     */
+    public static IifExecutionPolicy forkJoinPool(final ForkJoinPool pool) {
+        Argument.ensureNotNull(pool, "pool");
+
+        return new ForkJoinPolicy(pool);
+    }
+
+    /**
+     * Creates a policy that splits work into at most {@code parallelism}
+     * chunks of consecutive items, and runs all but the first of them on the
+     * given executor. The first chunk runs on the calling thread.
+     *
+     * <p>Work that a chunk starts through any policy of this kind runs
+     * sequentially, on the thread running the chunk. This is what keeps the
+     * library from deadlocking a bounded executor when, for example, the
+     * transactions of a file are rendered in parallel and each of them in
+     * turn renders its lines through the same default policy. Work that an
+     * application runs on a bounded executor of its own, however, should
+     * still not use a policy backed by that executor, since the calling
+     * thread waits for the other chunks, and the executor can run out of
+     * threads.</p>
+     *
+     * @param   executor
+     *          The executor to run chunks on.
+     *
+     * @param   parallelism
+     *          The maximum number of chunks to split work into.
+     *
+     * @return  The new policy.
+     */
+    public static IifExecutionPolicy executor(final Executor executor, final int parallelism) {
+        Argument.ensureNotNull(executor, "executor");
+        Argument.ensureInRange(parallelism, 1, Integer.MAX_VALUE, "parallelism");
+
+        return new ExecutorPolicy(executor, parallelism);
+    }
+
+    /**
+     * Creates a policy that splits work into at most {@code parallelism}
+     * chunks of consecutive items, and runs all but the first of them on a
+     * new thread from the given factory.
+     *
+     * <p>This suits factories whose threads are cheap to create, such as
+     * {@code Thread.ofVirtual().factory()} on Java 21 and later.</p>
+     *
+     * @param   threadFactory
+     *          The factory of the threads to run chunks on.
+     *
+     * @param   parallelism
+     *          The maximum number of chunks to split work into.
+     *
+     * @return  The new policy.
+     */
+    public static IifExecutionPolicy threadPerTask(final ThreadFactory threadFactory, final int parallelism) {
+        Argument.ensureNotNull(threadFactory, "threadFactory");
+
+        return executor(task -> threadFactory.newThread(task).start(), parallelism);
+    }
+
+    /**
+     * Creates a policy that runs work sequentially unless there is at least
+     * {@code threshold} items of it, in which case it is run with the given
+     * parallel policy.
+     *
+     * @param   threshold
+     *          The amount of work, in items, at or above which work is run in
+     *          parallel.
+     *
+     * @param   parallelPolicy
+     *          The policy to use for large amounts of work.
+     *
+     * @return  The new policy.
+     */
+    public static IifExecutionPolicy adaptive(final int threshold, final IifExecutionPolicy parallelPolicy) {
+        Argument.ensureInRange(threshold, 1, Integer.MAX_VALUE, "threshold");
+        Argument.ensureNotNull(parallelPolicy, "parallelPolicy");
+
+        return new AdaptivePolicy(threshold, parallelPolicy);
+    }
+
+    /**
+     * Applies the given function to each of the given items, according to this
+     * policy.
+     *
+     * @param   items
+     *          The items to process.
+     *
+     * @param   mapper
+     *          The function to apply to each item. It may be called from
+     *          several threads at once.
+     *
+     * @param   <T>
+     *          The type of the items.
+     *
+     * @param   <R>
+     *          The type of the results.
+     *
+     * @return  A new, modifiable list of the results, in the same order as
+     *          the items.
+     */
+    public <T, R> List<R> map(final List<? extends T> items, final Function<? super T, ? extends R> mapper) {
+        return this.map(items, items.size(), mapper);
+    }
+
+    /**
+     * Applies the given function to each of the given items, according to this
+     * policy, given an estimate of the amount of work involved.
+     *
+     * <p>The estimate is used by adaptive policies when items are not all of
+     * the same size; for example, when some items are themselves made up of
+     * many smaller items.</p>
+     *
+     * @param   items
+     *          The items to process.
+     *
+     * @param   workSize
+     *          The estimated amount of work, in the same units as
+     *          {@link #DEFAULT_PARALLEL_THRESHOLD}.
+     *
+     * @param   mapper
+     *          The function to apply to each item. It may be called from
+     *          several threads at once.
+     *
+     * @param   <T>
+     *          The type of the items.
+     *
+     * @param   <R>
+     *          The type of the results.
+     *
+     * @return  A new, modifiable list of the results, in the same order as
+     *          the items.
+     */
+    public abstract <T, R> List<R> map(List<? extends T> items, long workSize,
+                                       Function<? super T, ? extends R> mapper);
+
+    /**
+     * Applies the given function to each of the given items, in order, on the
+     * calling thread.
+     *
+     * @param   items
+     *          The items to process.
+     *
+     * @param   mapper
+     *          The function to apply to each item.
+     *
+     * @param   <T>
+     *          The type of the items.
+     *
+     * @param   <R>
+     *          The type of the results.
+     *
+     * @return  A new, modifiable list of the results, in the same order as
+     *          the items.
+     */
+    private static <T, R> List<R> mapSequentially(final List<? extends T> items,
+                                                  final Function<? super T, ? extends R> mapper) {
+        final List<R> result = new ArrayList<>(items.size());
+
+        for (T item : items) {
+            result.add(mapper.apply(item));
+        }
+
+        return result;
+    }
+
+    /**
+     * A policy that runs all work on the calling thread.
+     */
+    private static final class SequentialPolicy
+    extends IifExecutionPolicy {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public <T, R> List<R> map(final List<? extends T> items, final long workSize,
+                                  final Function<? super T, ? extends R> mapper) {
+            return mapSequentially(items, mapper);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return "sequential";
+        }
+    }
+
+    /**
+     * A policy that runs work as a parallel stream in a fork/join pool.
+     */
+    private static final class ForkJoinPolicy
+    extends IifExecutionPolicy {
+        private final ForkJoinPool pool;
+
+        /**
+         * Constructor for {@code ForkJoinPolicy}.
+         *
+         * @param   pool
+         *          The pool to run work in.
+         */
+        private ForkJoinPolicy(final ForkJoinPool pool) {
+            this.pool = pool;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * <p>A parallel stream that is started from within a fork/join pool
+         * runs its tasks in that pool, so work is submitted to the pool as a
+         * whole unless the calling thread already belongs to it.</p>
+         */
+        @Override
+        public <T, R> List<R> map(final List<? extends T> items, final long workSize,
+                                  final Function<? super T, ? extends R> mapper) {
+            final List<R> result;
+
+            if (items.size() < 2) {
+                result = mapSequentially(items, mapper);
+            }
+            else if ((this.pool == ForkJoinPool.commonPool()) || this.isInPool()) {
+                result = mapInParallel(items, mapper);
+            }
+            else {
+                result = this.pool.submit(() -> ForkJoinPolicy.<T, R>mapInParallel(items, mapper)).join();
+            }
+
+            return result;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return String.format("fork-join (parallelism %d)", this.pool.getParallelism());
+        }
+
+        /**
+         * Determines whether the calling thread belongs to the pool of this
+         * policy.
+         *
+         * @return  {@code true} if the calling thread is a worker of the pool;
+         *          or, {@code false} otherwise.
+         */
+        private boolean isInPool() {
+            return (ForkJoinTask.getPool() == this.pool);
+        }
+
+        /**
+         * Applies the given function to each of the given items with a
+         * parallel stream.
+         *
+         * @param   items
+         *          The items to process.
+         *
+         * @param   mapper
+         *          The function to apply to each item.
+         *
+         * @param   <T>
+         *          The type of the items.
+         *
+         * @param   <R>
+         *          The type of the results.
+         *
+         * @return  A new, modifiable list of the results, in the same order as
+         *          the items.
+         */
+        private static <T, R> List<R> mapInParallel(final List<? extends T> items,
+                                                    final Function<? super T, ? extends R> mapper) {
+            return items.parallelStream()
+                .<R>map(mapper)
+                .collect(Collectors.toCollection(ArrayList::new));
+        }
+    }
+
+    /**
+     * A policy that splits work into chunks, and runs them on an executor.
+     */
+    private static final class ExecutorPolicy
+    extends IifExecutionPolicy {
+        /**
+         * Whether the current thread is running a chunk for a policy of this
+         * kind.
+         */
+        private static final ThreadLocal<Boolean> IS_RUNNING_CHUNK = ThreadLocal.withInitial(() -> false);
+
+        private final Executor executor;
+        private final int parallelism;
+
+        /**
+         * Constructor for {@code ExecutorPolicy}.
+         *
+         * @param   executor
+         *          The executor to run chunks on.
+         *
+         * @param   parallelism
+         *          The maximum number of chunks to split work into.
+         */
+        private ExecutorPolicy(final Executor executor, final int parallelism) {
+            this.executor       = executor;
+            this.parallelism    = parallelism;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * <p>If the calling thread is already running a chunk, the items are
+         * processed sequentially on that thread, since waiting for chunks
+         * queued behind it could otherwise exhaust the executor.</p>
+         */
+        @Override
+        public <T, R> List<R> map(final List<? extends T> items, final long workSize,
+                                  final Function<? super T, ? extends R> mapper) {
+            final int       itemCount   = items.size(),
+                            chunkCount  = Math.min(this.parallelism, itemCount);
+            final List<R>   result;
+
+            if ((chunkCount < 2) || IS_RUNNING_CHUNK.get()) {
+                result = mapSequentially(items, mapper);
+            }
+            else {
+                final List<CompletableFuture<List<R>>> otherChunks = new ArrayList<>(chunkCount - 1);
+
+                for (int chunkIndex = 1; chunkIndex < chunkCount; ++chunkIndex) {
+                    final List<? extends T> chunk = chunkOf(items, chunkIndex, chunkCount);
+
+                    otherChunks.add(
+                        CompletableFuture.supplyAsync(() -> mapChunk(chunk, mapper), this.executor));
+                }
+
+                result = mapChunk(chunkOf(items, 0, chunkCount), mapper);
+
+                for (CompletableFuture<List<R>> otherChunk : otherChunks) {
+                    result.addAll(join(otherChunk));
+                }
+            }
+
+            return result;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return String.format("executor (parallelism %d)", this.parallelism);
+        }
+
+        /**
+         * Applies the given function to each item of a chunk, in order, on the
+         * calling thread, marking the thread as running a chunk while it does
+         * so.
+         *
+         * @param   chunk
+         *          The items of the chunk.
+         *
+         * @param   mapper
+         *          The function to apply to each item.
+         *
+         * @param   <T>
+         *          The type of the items.
+         *
+         * @param   <R>
+         *          The type of the results.
+         *
+         * @return  A new, modifiable list of the results, in the same order as
+         *          the items.
+         */
+        private static <T, R> List<R> mapChunk(final List<? extends T> chunk,
+                                               final Function<? super T, ? extends R> mapper) {
+            IS_RUNNING_CHUNK.set(true);
+
+            try {
+                return mapSequentially(chunk, mapper);
+            }
+            finally {
+                IS_RUNNING_CHUNK.remove();
+            }
+        }
+
+        /**
+         * Gets one of several nearly-equal chunks of consecutive items.
+         *
+         * @param   items
+         *          The items being split.
+         *
+         * @param   chunkIndex
+         *          The index of the chunk.
+         *
+         * @param   chunkCount
+         *          The total number of chunks.
+         *
+         * @param   <T>
+         *          The type of the items.
+         *
+         * @return  A view of the items in the chunk.
+         */
+        private static <T> List<T> chunkOf(final List<T> items, final int chunkIndex, final int chunkCount) {
+            final long itemCount = items.size();
+
+            return items.subList(
+                (int)((itemCount * chunkIndex) / chunkCount),
+                (int)((itemCount * (chunkIndex + 1)) / chunkCount));
+        }
+
+        /**
+         * Waits for a chunk to finish, and re-throws its failure, if any.
+         *
+         * @param   chunk
+         *          The chunk being run.
+         *
+         * @param   <R>
+         *          The type of the results.
+         *
+         * @return  The results of the chunk.
+         */
+        private static <R> List<R> join(final CompletableFuture<List<R>> chunk) {
+            try {
+                return chunk.join();
+            }
+            catch (CompletionException ex) {
+                final Throwable cause = ex.getCause();
+
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException)cause;
+                }
+                else if (cause instanceof Error) {
+                    throw (Error)cause;
+                }
+                else {
+                    throw ex;
+                }
+            }
+        }
+    }
+
+    /**
+     * A policy that only runs work in parallel once there is enough of it.
+     */
+    private static final class AdaptivePolicy
+    extends IifExecutionPolicy {
+        private final int threshold;
+        private final IifExecutionPolicy parallelPolicy;
+
+        /**
+         * Constructor for {@code AdaptivePolicy}.
+         *
+         * @param   threshold
+         *          The amount of work at or above which work is run in
+         *          parallel.
+         *
+         * @param   parallelPolicy
+         *          The policy to use for large amounts of work.
+         */
+        private AdaptivePolicy(final int threshold, final IifExecutionPolicy parallelPolicy) {
+            this.threshold      = threshold;
+            this.parallelPolicy = parallelPolicy;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public <T, R> List<R> map(final List<? extends T> items, final long workSize,
+                                  final Function<? super T, ? extends R> mapper) {
+            final List<R> result;
+
+            if (workSize < this.threshold) {
+                result = mapSequentially(items, mapper);
+            }
+            else {
+                result = this.parallelPolicy.map(items, workSize, mapper);
+            }
+
+            return result;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return String.format("adaptive (%s at %d or more)", this.parallelPolicy, this.threshold);
+        }
+    }
+}
@@ -16,6 +16,9 @@
  */
 package com.redbottledesign.accounting.quickbooks.iif;
 
+import java.io.IOException;
+import java.io.Writer;
+
 /**
  * Common interface for objects that can be exported to IIF.
  *
@@ -28,4 +31,23 @@ public interface IifExportable {
      * @return The IIF output to represent this object.
      */
     String toIifString();
+
+    /**
+     * Writes the IIF representation of this object to the given writer.
+     *
+     * <p>The output is the same as that of {@link #toIifString()}. By default,
+     * it is rendered in full and then written; objects that can render
+     * themselves in pieces override this to avoid holding all of their output
+     * in memory at once. The writer is not flushed or closed.</p>
+     *
+     * @param   writer
+     *          The writer to write to.
+     *
+     * @throws  IOException
+     *          If the writer cannot be written.
+     */
+    default void writeTo(final Writer writer)
+    throws IOException {
+        writer.write(this.toIifString());
+    }
 }
@@ -16,19 +16,38 @@
  */
 package com.redbottledesign.accounting.quickbooks.iif;
 
+import com.redbottledesign.accounting.quickbooks.batch.AbstractLineStore;
+import com.redbottledesign.accounting.quickbooks.batch.StringDictionary;
+import com.redbottledesign.accounting.quickbooks.batch.TransactionBatch;
+import com.redbottledesign.accounting.quickbooks.batch.TransactionSpillFile;
+import com.redbottledesign.accounting.quickbooks.models.Account;
+import com.redbottledesign.accounting.quickbooks.models.DataLineView;
 import com.redbottledesign.accounting.quickbooks.models.Name;
 import com.redbottledesign.accounting.quickbooks.models.NameLine;
 import com.redbottledesign.accounting.quickbooks.models.Transaction;
+import com.redbottledesign.accounting.quickbooks.util.IifUtils;
 import com.redbottledesign.util.Argument;
 
-import java.util.Arrays;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 /**
  * Top-level representation of a QuickBooks IIF file, which can contain zero or
@@ -38,13 +57,144 @@ import java.util.stream.Collectors;
  * the contents of what can be written out to a stream or file on disk, but
  * contains none of the logic to perform those operations.</p>
  *
+ * <p>Transactions that can be stored in columnar form (see
+ * {@link AbstractLineStore#isStorable(Transaction)}) are dictionary-encoded
+ * as they are added: their string columns become small integer IDs in a
+ * {@link StringDictionary} shared by the whole file, so each distinct
+ * account, name, class, payment method, and memo is only kept once, and is
+ * escaped and encoded exactly once. These transactions are kept in segments
+ * of up to {@value #SEGMENT_SIZE} transactions, which are rendered straight
+ * from their columns, in parallel with one another.</p>
+ *
+ * <p>Every declared name is also recorded in a single index that maps it to
+ * its name table, so checking that a name appears in only one table takes a
+ * single hash lookup, no matter how many names have been declared.</p>
+ *
+ * <p>Optionally, a file can {@linkplain #setNameDiscoveryEnabled(boolean)
+ * discover} the names used by each transaction as it is added, so that its
+ * name tables are complete without a separate pass over the
+ * transactions.</p>
+ *
+ * <p>A file can also be given a {@linkplain #setMemoryBudget(long) memory
+ * budget}. Once the estimated size of the transactions it holds exceeds the
+ * budget, the transactions held so far are moved into a temporary
+ * {@link TransactionSpillFile} in a compact binary form, and are read back
+ * from it when the file is exported. The output is the same either way.</p>
+ *
  * @author Guy Paddock (guy@redbottledesign.com)
  */
 public class IifFile extends CompositeExportableList {
+    /**
+     * The maximum number of transactions in each dictionary-encoded segment.
+     */
+    public static final int SEGMENT_SIZE = 4096;
+
+    /**
+     * The expected number of lines in each transaction, used to pre-size
+     * each segment.
+     */
+    private static final int EXPECTED_LINES_PER_TRANSACTION = 3;
+
+    /**
+     * The memory budget of a file that never spills transactions to disk.
+     */
+    public static final long UNLIMITED_MEMORY_BUDGET = Long.MAX_VALUE;
+
+    /**
+     * The estimated heap footprint of a transaction that is held as an
+     * object, and of each of its lines.
+     */
+    private static final long ESTIMATED_OBJECT_TRANSACTION_SIZE = 128;
+    private static final long ESTIMATED_OBJECT_LINE_SIZE        = 256;
+
+    /**
+     * The estimated heap footprint of a transaction that is held in a
+     * dictionary-encoded segment, and of each of its lines.
+     */
+    private static final long ESTIMATED_ENCODED_TRANSACTION_SIZE    = 16;
+    private static final long ESTIMATED_ENCODED_LINE_SIZE           = 48;
+
+    /**
+     * The smallest fraction of the memory budget that must be spillable
+     * before transactions are spilled, so that a file holding mostly
+     * transactions that cannot be spilled does not spill on every addition.
+     */
+    private static final int MIN_SPILL_FRACTION = 4;
+
     private Set<Name> customerNames;
     private Set<Name> vendorNames;
     private Set<Name> otherNames;
 
+    /**
+     * The name table that each declared name belongs to.
+     */
+    private final Map<Name, HeaderLine.Type> nameTables;
+
+    /**
+     * The names whose table was inferred from the lines they appear on,
+     * rather than declared by the caller.
+     */
+    private final Set<Name> inferredNames;
+
+    /**
+     * Whether names are discovered from transactions as they are added.
+     */
+    private boolean isNameDiscoveryEnabled;
+
+    /**
+     * The policy for parallel work on this file; or, {@code null} to use the
+     * default policy.
+     */
+    private IifExecutionPolicy executionPolicy;
+
+    /**
+     * The dictionary shared by all of the dictionary-encoded segments of this
+     * file.
+     */
+    private final StringDictionary dictionary;
+
+    /**
+     * The segment that dictionary-encoded transactions are currently being
+     * added to; or, {@code null} if a new segment must be started.
+     */
+    private TransactionBatch openSegment;
+
+    /**
+     * The estimated size, in bytes, above which transactions are spilled to
+     * disk.
+     */
+    private long memoryBudget;
+
+    /**
+     * The directory in which to create the spill file; or, {@code null} to
+     * use the default temporary directory.
+     */
+    private Path spoolDirectory;
+
+    /**
+     * The estimated heap footprint of the transactions held in memory by this
+     * file, and the part of it that can be spilled.
+     */
+    private long retainedSize;
+    private long spillableSize;
+
+    /**
+     * The index of the first exportable that has not yet been considered for
+     * spilling.
+     */
+    private int firstUnspilledIndex;
+
+    /**
+     * The file that transactions are spilled to; or, {@code null} if nothing
+     * has been spilled yet.
+     */
+    private TransactionSpillFile spillFile;
+
+    /**
+     * The number of transactions that have been spilled.
+     */
+    private long spilledTransactionCount;
+
     /**
      * Default constructor for {@code IifFile}.
      */
@@ -52,6 +202,196 @@ public class IifFile extends CompositeExportableList {
         this.customerNames = new TreeSet<>();
         this.vendorNames = new TreeSet<>();
         this.otherNames = new TreeSet<>();
+        this.nameTables = new HashMap<>();
+        this.inferredNames = new HashSet<>();
+
+        this.dictionary = new StringDictionary();
+        this.memoryBudget = UNLIMITED_MEMORY_BUDGET;
+    }
+
+    /**
+     * Determines whether names are discovered from transactions as they are
+     * added.
+     *
+     * @return  {@code true} if name discovery is enabled; or, {@code false}
+     *          if only names that are declared explicitly are exported.
+     */
+    public boolean isNameDiscoveryEnabled() {
+        return this.isNameDiscoveryEnabled;
+    }
+
+    /**
+     * Sets whether names are discovered from transactions as they are added.
+     *
+     * <p>When enabled, each name used by a transaction that is added is put
+     * into a name table automatically, based on the account of the line it
+     * appears on: names on Accounts Receivable lines become customers, names
+     * on Accounts Payable lines become vendors, and all others become other
+     * names. A name that has only been seen on other lines is moved to the
+     * customer or vendor table once it appears on an Accounts Receivable or
+     * Accounts Payable line.</p>
+     *
+     * <p>Names that are declared explicitly always take precedence over names
+     * that were discovered, and discovering a name never fails: a discovered
+     * name that conflicts with an existing table is simply left where it
+     * is.</p>
+     *
+     * <p>Only transactions added after discovery is enabled are examined.
+     * Batches added through {@link #addTransactions(AbstractLineStore)} are
+     * never examined.</p>
+     *
+     * @param   isNameDiscoveryEnabled
+     *          Whether name discovery is enabled.
+     *
+     * @return  This object, for chaining.
+     */
+    public IifFile setNameDiscoveryEnabled(final boolean isNameDiscoveryEnabled) {
+        this.isNameDiscoveryEnabled = isNameDiscoveryEnabled;
+
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Unless a policy has been set for this file, this is the
+     * {@linkplain IifExecutionPolicy#getDefault() default policy}.</p>
+     */
+    @Override
+    public IifExecutionPolicy getExecutionPolicy() {
+        final IifExecutionPolicy result;
+
+        if (this.executionPolicy != null) {
+            result = this.executionPolicy;
+        }
+        else {
+            result = super.getExecutionPolicy();
+        }
+
+        return result;
+    }
+
+    /**
+     * Sets the policy for parallel work on this file: exporting its contents,
+     * and validating names added in bulk.
+     *
+     * <p>Transactions that are exported as objects rather than in columnar
+     * form are each rendered according to the default policy.</p>
+     *
+     * @param   executionPolicy
+     *          The policy to use; or, {@code null} to use the
+     *          {@linkplain IifExecutionPolicy#getDefault() default policy}.
+     *
+     * @return  This object, for chaining.
+     */
+    public IifFile setExecutionPolicy(final IifExecutionPolicy executionPolicy) {
+        this.executionPolicy = executionPolicy;
+
+        return this;
+    }
+
+    /**
+     * Gets the estimated heap footprint, in bytes, above which the
+     * transactions held by this file are spilled to disk.
+     *
+     * @return  The memory budget; or, {@link #UNLIMITED_MEMORY_BUDGET} if
+     *          transactions are never spilled.
+     */
+    public long getMemoryBudget() {
+        return this.memoryBudget;
+    }
+
+    /**
+     * Sets the estimated heap footprint, in bytes, above which the
+     * transactions held by this file are spilled to disk.
+     *
+     * <p>Whenever a transaction is added that takes the estimated size of the
+     * transactions held by this file over the budget, all of the transactions
+     * held so far that can be spilled are written to a temporary file, and
+     * released. They are read back from the file each time this file is
+     * exported. Transactions that cannot be spilled (see
+     * {@link TransactionSpillFile#isSpillable(Transaction)}), and batches
+     * added through {@link #addTransactions(AbstractLineStore)}, always stay
+     * where they are; the names and the shared dictionary of the file also
+     * stay in memory.</p>
+     *
+     * <p>The estimate is deliberately rough: it counts transactions and
+     * lines, not the actual objects behind them. The budget should be set
+     * well below the memory that is actually available.</p>
+     *
+     * @param   memoryBudget
+     *          The memory budget, in bytes; or,
+     *          {@link #UNLIMITED_MEMORY_BUDGET} to never spill transactions.
+     *
+     * @return  This object, for chaining.
+     *
+     * @throws  IllegalArgumentException
+     *          If {@code memoryBudget} is negative.
+     *
+     * @throws  UncheckedIOException
+     *          If the file is already over the new budget, and its
+     *          transactions cannot be spilled.
+     */
+    public IifFile setMemoryBudget(final long memoryBudget)
+    throws IllegalArgumentException, UncheckedIOException {
+        if (memoryBudget < 0) {
+            throw new IllegalArgumentException(
+                String.format("`memoryBudget` must not be negative (was `%d`).", memoryBudget));
+        }
+
+        this.memoryBudget = memoryBudget;
+
+        this.spillIfOverBudget();
+
+        return this;
+    }
+
+    /**
+     * Gets the directory in which the spill file of this file is created.
+     *
+     * @return  The spool directory; or, {@code null} if the default temporary
+     *          directory is used.
+     */
+    public Path getSpoolDirectory() {
+        return this.spoolDirectory;
+    }
+
+    /**
+     * Sets the directory in which the spill file of this file is created.
+     *
+     * <p>This only has an effect if nothing has been spilled yet.</p>
+     *
+     * @param   spoolDirectory
+     *          The spool directory; or, {@code null} to use the default
+     *          temporary directory.
+     *
+     * @return  This object, for chaining.
+     */
+    public IifFile setSpoolDirectory(final Path spoolDirectory) {
+        this.spoolDirectory = spoolDirectory;
+
+        return this;
+    }
+
+    /**
+     * Gets the estimated heap footprint, in bytes, of the transactions that
+     * this file currently holds in memory.
+     *
+     * @return  The estimated retained size.
+     *
+     * @see     #setMemoryBudget(long)
+     */
+    public long getEstimatedRetainedSize() {
+        return this.retainedSize;
+    }
+
+    /**
+     * Gets the number of transactions that have been spilled to disk.
+     *
+     * @return  The spilled transaction count.
+     */
+    public long getSpilledTransactionCount() {
+        return this.spilledTransactionCount;
     }
 
     /**
@@ -61,11 +401,372 @@ public class IifFile extends CompositeExportableList {
      * made to the transaction should not have an impact on the information this
      * object exports.</p>
      *
+     * <p>If possible, the transaction is dictionary-encoded into this file
+     * instead of being cloned. Otherwise, a transaction that has been
+     * {@linkplain Transaction#freeze() frozen} cannot change, so it is added
+     * as-is, without being cloned.</p>
+     *
      * @param   transaction
      *          The transaction to clone and add to this file.
+     *
+     * @throws  UncheckedIOException
+     *          If the transaction takes this file over its
+     *          {@linkplain #setMemoryBudget(long) memory budget}, and the
+     *          transactions it holds cannot be spilled to disk.
      */
-    public void addTransaction(final Transaction transaction) {
-        this.getExportables().add(transaction.clone());
+    public void addTransaction(final Transaction transaction)
+    throws UncheckedIOException {
+        Argument.ensureNotNull(transaction, "transaction");
+
+        if (this.isNameDiscoveryEnabled) {
+            this.discoverNames(transaction);
+        }
+
+        if (!this.encodeTransaction(transaction)) {
+            if (transaction.isFrozen()) {
+                this.getExportables().add(transaction);
+            }
+            else {
+                this.getExportables().add(transaction.clone());
+            }
+
+            this.retainObject(transaction);
+        }
+
+        this.spillIfOverBudget();
+    }
+
+    /**
+     * Adds the given transaction to this file, taking ownership of it.
+     *
+     * <p>Instead of being cloned, the transaction is
+     * {@linkplain Transaction#freeze() frozen} and added as-is. This avoids a
+     * copy when the caller has no further use for the transaction, such as
+     * when it was just returned by a builder.</p>
+     *
+     * <p>If possible, the transaction is dictionary-encoded into this file
+     * instead, after which the transaction object itself is no longer
+     * referenced by this file.</p>
+     *
+     * @param   transaction
+     *          The transaction to freeze and add to this file.
+     *
+     * @throws  UncheckedIOException
+     *          If the transaction takes this file over its
+     *          {@linkplain #setMemoryBudget(long) memory budget}, and the
+     *          transactions it holds cannot be spilled to disk.
+     */
+    public void addOwned(final Transaction transaction)
+    throws UncheckedIOException {
+        Argument.ensureNotNull(transaction, "transaction");
+
+        transaction.freeze();
+
+        if (this.isNameDiscoveryEnabled) {
+            this.discoverNames(transaction);
+        }
+
+        if (!this.encodeTransaction(transaction)) {
+            this.getExportables().add(transaction);
+
+            this.retainObject(transaction);
+        }
+
+        this.spillIfOverBudget();
+    }
+
+    /**
+     * Attempts to dictionary-encode the given transaction into the open
+     * segment of this file, starting a new segment if needed.
+     *
+     * <p>A new segment is started if the open segment is full, or if anything
+     * else has been added to this file after it, so that transactions are
+     * always exported in the order they were added.</p>
+     *
+     * @param   transaction
+     *          The transaction to encode.
+     *
+     * @return  {@code true} if the transaction was encoded into this file; or,
+     *          {@code false} if it cannot be stored in columnar form, and must
+     *          be added as an object instead.
+     */
+    protected boolean encodeTransaction(final Transaction transaction) {
+        final List<IifExportable>   exportables = this.getExportables();
+        final boolean               result      = AbstractLineStore.isStorable(transaction);
+
+        if (result) {
+            TransactionBatch segment = this.openSegment;
+
+            if ((segment == null) ||
+                (segment.getTransactionCount() >= SEGMENT_SIZE) ||
+                exportables.isEmpty() ||
+                (exportables.get(exportables.size() - 1) != segment)) {
+                segment =
+                    new TransactionBatch(
+                        SEGMENT_SIZE,
+                        SEGMENT_SIZE * EXPECTED_LINES_PER_TRANSACTION,
+                        this.dictionary);
+
+                exportables.add(segment);
+
+                this.openSegment = segment;
+            }
+
+            segment.add(transaction);
+
+            this.retain(
+                ESTIMATED_ENCODED_TRANSACTION_SIZE +
+                (transaction.getLineViews().size() * ESTIMATED_ENCODED_LINE_SIZE),
+                true);
+        }
+
+        return result;
+    }
+
+    /**
+     * Accounts for a transaction that was added to this file as an object.
+     *
+     * @param   transaction
+     *          The transaction that was added.
+     */
+    private void retainObject(final Transaction transaction) {
+        this.retain(
+            ESTIMATED_OBJECT_TRANSACTION_SIZE + (transaction.getLineViews().size() * ESTIMATED_OBJECT_LINE_SIZE),
+            TransactionSpillFile.isSpillable(transaction));
+    }
+
+    /**
+     * Adds to the estimated heap footprint of this file.
+     *
+     * @param   size
+     *          The estimated size of what was added, in bytes.
+     *
+     * @param   isSpillable
+     *          Whether what was added can be spilled to disk.
+     */
+    private void retain(final long size, final boolean isSpillable) {
+        this.retainedSize += size;
+
+        if (isSpillable) {
+            this.spillableSize += size;
+        }
+    }
+
+    /**
+     * Spills the transactions held by this file to disk, if their estimated
+     * size exceeds the memory budget.
+     *
+     * @throws  UncheckedIOException
+     *          If the transactions cannot be spilled.
+     */
+    protected void spillIfOverBudget()
+    throws UncheckedIOException {
+        if ((this.retainedSize > this.memoryBudget) &&
+            (this.spillableSize > 0) &&
+            (this.spillableSize >= (this.memoryBudget / MIN_SPILL_FRACTION))) {
+            try {
+                this.spillTransactions();
+            }
+            catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+
+    /**
+     * Moves all of the transactions held by this file that can be spilled
+     * into its spill file, creating the spill file if needed.
+     *
+     * <p>Each unbroken run of spillable transactions and segments is replaced
+     * by a single segment of the spill file, so that the export order is
+     * unchanged. If spilling fails, this file is left as it was.</p>
+     *
+     * @throws  IOException
+     *          If the spill file cannot be created or written.
+     */
+    protected void spillTransactions()
+    throws IOException {
+        final List<IifExportable>           exportables     = this.getExportables();
+        final List<IifExportable>           result          = new LinkedList<>();
+        final List<IifExportable>           run             = new ArrayList<>();
+        final ListIterator<IifExportable>   iterator        = exportables.listIterator();
+        long                                spilledCount    = 0;
+
+        if (this.spillFile == null) {
+            final Path directory;
+
+            if (this.spoolDirectory != null) {
+                directory = this.spoolDirectory;
+            }
+            else {
+                directory = Path.of(System.getProperty("java.io.tmpdir"));
+            }
+
+            this.spillFile = new TransactionSpillFile(directory);
+        }
+
+        while (iterator.hasNext()) {
+            final int           index       = iterator.nextIndex();
+            final IifExportable exportable  = iterator.next();
+
+            if ((index >= this.firstUnspilledIndex) && this.isSpillable(exportable)) {
+                run.add(exportable);
+            }
+            else {
+                spilledCount += this.spillRun(run, result);
+
+                result.add(exportable);
+            }
+        }
+
+        spilledCount += this.spillRun(run, result);
+
+        this.setExportables(result);
+
+        this.openSegment                = null;
+        this.firstUnspilledIndex        = result.size();
+        this.retainedSize              -= this.spillableSize;
+        this.spillableSize              = 0;
+        this.spilledTransactionCount   += spilledCount;
+    }
+
+    /**
+     * Writes a run of spillable exportables to the spill file, and adds the
+     * resulting segment to the given list. The run is then cleared.
+     *
+     * @param   run
+     *          The exportables to spill, in export order. If it is empty,
+     *          nothing is spilled.
+     *
+     * @param   result
+     *          The list to add the new segment to.
+     *
+     * @return  The number of transactions that were spilled.
+     *
+     * @throws  IOException
+     *          If the spill file cannot be written.
+     */
+    private int spillRun(final List<IifExportable> run, final List<IifExportable> result)
+    throws IOException {
+        int spilledCount = 0;
+
+        if (!run.isEmpty()) {
+            final TransactionSpillFile.Segment segment =
+                this.spillFile.spill(run.stream().flatMap(IifFile::transactionsOf).iterator());
+
+            result.add(segment);
+            run.clear();
+
+            spilledCount = segment.getTransactionCount();
+        }
+
+        return spilledCount;
+    }
+
+    /**
+     * Determines whether the given exportable of this file can be spilled:
+     * either a dictionary-encoded segment of this file, or a spillable
+     * transaction.
+     *
+     * @param   exportable
+     *          The exportable to check.
+     *
+     * @return  {@code true} if the exportable can be spilled; or,
+     *          {@code false} otherwise.
+     */
+    private boolean isSpillable(final IifExportable exportable) {
+        final boolean result;
+
+        if (exportable instanceof TransactionBatch) {
+            // Only segments of this file share its dictionary; batches added by callers do not.
+            result = (((TransactionBatch)exportable).getDictionary() == this.dictionary);
+        }
+        else if (exportable instanceof Transaction) {
+            result = TransactionSpillFile.isSpillable((Transaction)exportable);
+        }
+        else {
+            result = false;
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets the transactions of a spillable exportable, one at a time.
+     *
+     * @param   exportable
+     *          A segment of this file, or a transaction.
+     *
+     * @return  The transactions, in export order.
+     */
+    private static Stream<Transaction> transactionsOf(final IifExportable exportable) {
+        final Stream<Transaction> result;
+
+        if (exportable instanceof AbstractLineStore) {
+            final AbstractLineStore store = (AbstractLineStore)exportable;
+
+            result = IntStream.range(0, store.getTransactionCount()).mapToObj(store::getTransaction);
+        }
+        else {
+            result = Stream.of((Transaction)exportable);
+        }
+
+        return result;
+    }
+
+    /**
+     * Adds all of the transactions in the given batch to this file.
+     *
+     * <p>The batch can be either an in-memory
+     * {@link com.redbottledesign.accounting.quickbooks.batch.TransactionBatch}
+     * or an off-heap
+     * {@link com.redbottledesign.accounting.quickbooks.batch.OffHeapLineStore}.
+     * Unlike {@link #addTransaction(Transaction)}, the batch is not copied;
+     * transactions added to the batch later on are also exported.</p>
+     *
+     * @param   batch
+     *          The batch of transactions to add to this file.
+     */
+    public void addTransactions(final AbstractLineStore batch) {
+        Argument.ensureNotNull(batch, "batch");
+
+        this.getExportables().add(batch);
+    }
+
+    /**
+     * Passes each transaction in this file to the given action, in the order
+     * in which they are exported.
+     *
+     * <p>Transactions that are held in dictionary-encoded segments or batches,
+     * or that have been spilled to disk, are decoded one at a time. The
+     * transactions must be treated as read-only.</p>
+     *
+     * @param   action
+     *          The action to perform on each transaction.
+     *
+     * @throws  UncheckedIOException
+     *          If spilled transactions cannot be read back.
+     */
+    public void forEachTransaction(final Consumer<? super Transaction> action)
+    throws UncheckedIOException {
+        Argument.ensureNotNull(action, "action");
+
+        for (IifExportable exportable : this.getExportables()) {
+            if (exportable instanceof Transaction) {
+                action.accept((Transaction)exportable);
+            }
+            else if (exportable instanceof AbstractLineStore) {
+                transactionsOf(exportable).forEach(action);
+            }
+            else if (exportable instanceof TransactionSpillFile.Segment) {
+                try {
+                    ((TransactionSpillFile.Segment)exportable).forEachTransaction(action);
+                }
+                catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+        }
     }
 
     /**
@@ -88,11 +789,7 @@ public class IifFile extends CompositeExportableList {
     throws IllegalArgumentException {
         Argument.ensureNotNull(customerName, "customerName");
 
-        this.ensureUniqueAmongTables(
-            customerName,
-            Arrays.asList(this.getVendorNames(), this.getOtherNames()));
-
-        this.customerNames.add(customerName);
+        this.addName(customerName, HeaderLine.Type.CUSTOMER);
     }
 
     /**
@@ -121,14 +818,11 @@ public class IifFile extends CompositeExportableList {
      * @param   vendorName
      *          The name to add to the vendor table.
      */
-    public void addVendorName(final Name vendorName) {
+    public void addVendorName(final Name vendorName)
+    throws IllegalArgumentException {
         Argument.ensureNotNull(vendorName, "vendorName");
 
-        this.ensureUniqueAmongTables(
-            vendorName,
-            Arrays.asList(this.getCustomerNames(), this.getOtherNames()));
-
-        this.vendorNames.add(vendorName);
+        this.addName(vendorName, HeaderLine.Type.VENDOR);
     }
 
     /**
@@ -158,14 +852,11 @@ public class IifFile extends CompositeExportableList {
      * @param   otherName
      *          The name to add to the other names table.
      */
-    public void addOtherName(final Name otherName) {
+    public void addOtherName(final Name otherName)
+    throws IllegalArgumentException {
         Argument.ensureNotNull(otherName, "otherName");
 
-        this.ensureUniqueAmongTables(
-            otherName,
-            Arrays.asList(this.getVendorNames(), this.getCustomerNames()));
-
-        this.otherNames.add(otherName);
+        this.addName(otherName, HeaderLine.Type.OTHER_NAME);
     }
 
     /**
@@ -178,6 +869,255 @@ public class IifFile extends CompositeExportableList {
         return Collections.unmodifiableSet(this.otherNames);
     }
 
+    /**
+     * Adds all of the given names to the given name table at once.
+     *
+     * <p>Duplicates, and names that are already in the table, are skipped.
+     * Either all of the new names are added, or &mdash; if any of them
+     * already appears in a different table &mdash; none are. Names that were
+     * only {@linkplain #setNameDiscoveryEnabled(boolean) discovered} in a
+     * different table are moved, and discovered names that are already in the
+     * table become declared. Names are validated according to the
+     * {@linkplain #getExecutionPolicy() execution policy} of this file.</p>
+     *
+     * @param   names
+     *          The names to add.
+     *
+     * @param   table
+     *          The table to add them to: {@link HeaderLine.Type#CUSTOMER},
+     *          {@link HeaderLine.Type#VENDOR}, or
+     *          {@link HeaderLine.Type#OTHER_NAME}.
+     *
+     * @return  The number of names that were not already in the table.
+     *
+     * @throws  IllegalArgumentException
+     *          If {@code table} is not a name table, if {@code names} contains
+     *          {@code null}, or if any of the names already appears in a
+     *          different table.
+     */
+    public int addNames(final Collection<? extends Name> names, final HeaderLine.Type table)
+    throws IllegalArgumentException {
+        Argument.ensureNotNull(names,   "names");
+        Argument.ensureNotNull(table,   "table");
+
+        final Set<Name>     tableNames  = this.getNameTable(table);
+        final Set<Name>     newNames    = new LinkedHashSet<>();
+        final List<Name>    checkedNames;
+
+        // Each name is checked without changing anything, so that the check can run in parallel.
+        checkedNames =
+            this.getExecutionPolicy().map(
+                new ArrayList<>(names),
+                name -> this.isNewToTable(name, table) ? name : null);
+
+        for (Name name : checkedNames) {
+            if (name != null) {
+                newNames.add(name);
+            }
+        }
+
+        for (Name name : newNames) {
+            final HeaderLine.Type existingTable = this.nameTables.put(name, table);
+
+            if (existingTable != null) {
+                this.getNameTable(existingTable).remove(name);
+                this.inferredNames.remove(name);
+            }
+
+            tableNames.add(name);
+        }
+
+        // Names that were only discovered in this table are now declared, just as with addName().
+        for (Name name : names) {
+            this.inferredNames.remove(name);
+        }
+
+        return newNames.size();
+    }
+
+    /**
+     * Adds the given name to the given name table, provided it is not already
+     * in a different table.
+     *
+     * @param   name
+     *          The name to add.
+     *
+     * @param   table
+     *          The type of the name table.
+     *
+     * @throws  IllegalArgumentException
+     *          If the name already appears in a different table.
+     */
+    protected void addName(final Name name, final HeaderLine.Type table)
+    throws IllegalArgumentException {
+        final Set<Name>         tableNames      = this.getNameTable(table);
+        final HeaderLine.Type   existingTable   = this.nameTables.putIfAbsent(name, table);
+
+        if (existingTable == null) {
+            tableNames.add(name);
+        }
+        else if (this.inferredNames.remove(name)) {
+            this.moveName(name, existingTable, table);
+        }
+        else if (existingTable != table) {
+            throw createNameConflictException(name);
+        }
+    }
+
+    /**
+     * Puts each name used by the given transaction into the table inferred
+     * from the line it appears on, unless the name is already in a table
+     * that takes precedence.
+     *
+     * <p>This is done automatically for each transaction that is added while
+     * {@linkplain #setNameDiscoveryEnabled(boolean) name discovery} is
+     * enabled, but can also be called directly to collect the names of
+     * transactions that are not added to this file, such as ones being
+     * streamed elsewhere.</p>
+     *
+     * @param   transaction
+     *          The transaction whose names are to be discovered.
+     */
+    public void discoverNames(final Transaction transaction) {
+        Argument.ensureNotNull(transaction, "transaction");
+
+        for (DataLineView line : transaction.getLineViews()) {
+            final Name name = line.getName();
+
+            if ((name != null) && !Name.EMPTY.equals(name)) {
+                final HeaderLine.Type table         = inferNameTable(line);
+                final HeaderLine.Type existingTable = this.nameTables.putIfAbsent(name, table);
+
+                if (existingTable == null) {
+                    this.getNameTable(table).add(name);
+                    this.inferredNames.add(name);
+                }
+                else if ((existingTable == HeaderLine.Type.OTHER_NAME) &&
+                         (table != HeaderLine.Type.OTHER_NAME) &&
+                         this.inferredNames.contains(name)) {
+                    this.moveName(name, existingTable, table);
+                }
+            }
+        }
+    }
+
+    /**
+     * Infers the name table of the name on the given line from the account
+     * the line affects.
+     *
+     * @param   line
+     *          The line.
+     *
+     * @return  {@link HeaderLine.Type#CUSTOMER} for an Accounts Receivable
+     *          line; {@link HeaderLine.Type#VENDOR} for an Accounts Payable
+     *          line; or, {@link HeaderLine.Type#OTHER_NAME} for any other line.
+     */
+    protected static HeaderLine.Type inferNameTable(final DataLineView line) {
+        final Account           account = line.getAccount();
+        final HeaderLine.Type   result;
+
+        if (Account.ACCOUNTS_RECEIVABLE.equals(account)) {
+            result = HeaderLine.Type.CUSTOMER;
+        }
+        else if (Account.ACCOUNTS_PAYABLE.equals(account)) {
+            result = HeaderLine.Type.VENDOR;
+        }
+        else {
+            result = HeaderLine.Type.OTHER_NAME;
+        }
+
+        return result;
+    }
+
+    /**
+     * Moves a name from one name table to another.
+     *
+     * @param   name
+     *          The name to move.
+     *
+     * @param   fromTable
+     *          The table the name is in now.
+     *
+     * @param   toTable
+     *          The table to move the name to.
+     */
+    private void moveName(final Name name, final HeaderLine.Type fromTable, final HeaderLine.Type toTable) {
+        this.getNameTable(fromTable).remove(name);
+        this.getNameTable(toTable).add(name);
+        this.nameTables.put(name, toTable);
+    }
+
+    /**
+     * Gets the set of names in the given name table.
+     *
+     * @param   table
+     *          The type of the name table.
+     *
+     * @return  The modifiable set of names in the table.
+     *
+     * @throws  IllegalArgumentException
+     *          If {@code table} is not a name table.
+     */
+    protected Set<Name> getNameTable(final HeaderLine.Type table)
+    throws IllegalArgumentException {
+        final Set<Name> result;
+
+        switch (table) {
+            case CUSTOMER:
+                result = this.customerNames;
+                break;
+
+            case VENDOR:
+                result = this.vendorNames;
+                break;
+
+            case OTHER_NAME:
+                result = this.otherNames;
+                break;
+
+            default:
+                throw new IllegalArgumentException(
+                    String.format("`%s` is not a name table.", table));
+        }
+
+        return result;
+    }
+
+    /**
+     * Determines whether the given name still needs to be added to the given
+     * name table.
+     *
+     * @param   name
+     *          The name being checked.
+     *
+     * @param   table
+     *          The type of the name table.
+     *
+     * @return  {@code true} if the name has not been declared at all, or was
+     *          only discovered in a different table; or, {@code false} if it
+     *          is already in the table.
+     *
+     * @throws  IllegalArgumentException
+     *          If the name is {@code null}, or already appears in a different
+     *          table.
+     */
+    private boolean isNewToTable(final Name name, final HeaderLine.Type table)
+    throws IllegalArgumentException {
+        final HeaderLine.Type existingTable;
+
+        if (name == null) {
+            throw new IllegalArgumentException("`names` must not contain null.");
+        }
+
+        existingTable = this.nameTables.get(name);
+
+        if ((existingTable != null) && (existingTable != table) && !this.inferredNames.contains(name)) {
+            throw createNameConflictException(name);
+        }
+
+        return (existingTable != table);
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -185,6 +1125,64 @@ public class IifFile extends CompositeExportableList {
      */
     @Override
     protected List<IifExportable> prepareExportables() {
+        final List<IifExportable> result = this.prepareHeaderExportables();
+
+        result.addAll(super.prepareExportables());
+
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Each dictionary-encoded or spilled segment counts as one item of work
+     * per transaction it holds.</p>
+     */
+    @Override
+    protected long estimateExportWork(final List<IifExportable> exportables) {
+        long result = 0;
+
+        for (IifExportable exportable : exportables) {
+            if (exportable instanceof AbstractLineStore) {
+                result += ((AbstractLineStore)exportable).getTransactionCount();
+            }
+            else if (exportable instanceof TransactionSpillFile.Segment) {
+                result += ((TransactionSpillFile.Segment)exportable).getTransactionCount();
+            }
+            else {
+                ++result;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Exports the part of this file that precedes its transactions: the name
+     * tables, followed by the transaction header.
+     *
+     * <p>This lets name tables be written ahead of transactions that are
+     * streamed separately. Appending a newline and the IIF output of each
+     * transaction, followed by a final newline, produces the same output as
+     * {@link #toIifString()} would have with those transactions.</p>
+     *
+     * @return  The IIF output of the name tables and transaction header.
+     */
+    public String toHeaderIifString() {
+        return IifUtils.joinLines(
+            this.prepareHeaderExportables()
+                .stream()
+                .map(IifExportable::toIifString)
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Prepares the exportables that precede the transactions in this file:
+     * the name tables, followed by the transaction header.
+     *
+     * @return  The list of name table lines and transaction header.
+     */
+    protected List<IifExportable> prepareHeaderExportables() {
         final List<IifExportable> result = new LinkedList<>();
 
         result.addAll(
@@ -197,7 +1195,6 @@ public class IifFile extends CompositeExportableList {
             this.exportNames(this.otherNames, HeaderLine.Type.OTHER_NAME, "OTHERNAME"));
 
         result.add(new TransactionHeader());
-        result.addAll(super.prepareExportables());
 
         return result;
     }
@@ -253,10 +1250,27 @@ public class IifFile extends CompositeExportableList {
         return super.toIifString() + "\n";
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Also writes a trailing newline, to signify the end of the file, just
+     * as {@link #toIifString()} does.</p>
+     */
+    @Override
+    public void writeTo(final Writer writer)
+    throws IOException {
+        super.writeTo(writer);
+
+        writer.write('\n');
+    }
+
     /**
      * Ensures that the given name does not appear in any of the given name
      * tables.
      *
+     * <p>This file checks names against its index of name tables instead;
+     * this method remains for subclasses that keep tables of their own.</p>
+     *
      * @param   name
      *          The name being checked.
      *
@@ -268,17 +1282,28 @@ public class IifFile extends CompositeExportableList {
      *          same file.
      */
     protected void ensureUniqueAmongTables(final Name name, final Collection<Collection<Name>> searchTables) {
-        searchTables.parallelStream()
-            .filter((t) -> t.contains(name))
-            .findFirst()
-            .ifPresent((c) -> {
-                throw new IllegalArgumentException(
-                    String.format(
-                        "The name `%s` must appear only in one name table. It cannot " +
-                        "simultaneously appear in the 'customer name', 'vendor names', or 'other" +
-                        "names' tables.",
-                        name.getValue()));
-                }
-            );
+        for (Collection<Name> searchTable : searchTables) {
+            if (searchTable.contains(name)) {
+                throw createNameConflictException(name);
+            }
+        }
+    }
+
+    /**
+     * Creates the exception thrown when a name is added to more than one name
+     * table.
+     *
+     * @param   name
+     *          The name that was added.
+     *
+     * @return  The exception to throw.
+     */
+    private static IllegalArgumentException createNameConflictException(final Name name) {
+        return new IllegalArgumentException(
+            String.format(
+                "The name `%s` must appear only in one name table. It cannot " +
+                "simultaneously appear in the 'customer name', 'vendor names', or 'other" +
+                "names' tables.",
+                name.getValue()));
     }
 }
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2016 Red Bottle Design, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redbottledesign.accounting.quickbooks.iif;
+
+import com.redbottledesign.accounting.quickbooks.models.DataLineView;
+import com.redbottledesign.accounting.quickbooks.models.Transaction;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A transaction rendered to IIF, along with the key that orders it on export.
+ *
+ * <p>Files that can be added to by many threads at once, such as
+ * {@link ConcurrentIifFile} and {@link ShardedIifFile}, export their
+ * transactions in this canonical order instead of the order they were added:
+ * by date, and then by document number. Any remaining ties are broken by the
+ * IIF text of the transactions, so the output depends only on which
+ * transactions were added, not on how the work was divided among threads.</p>
+ *
+ * @author Guy Paddock (guy@redbottledesign.com)
+ */
+final class RenderedTransaction {
+    /**
+     * The canonical export order of transactions.
+     */
+    static final Comparator<RenderedTransaction> EXPORT_ORDER =
+        Comparator
+            .comparingInt((RenderedTransaction transaction) -> transaction.epochDay)
+            .thenComparing(transaction -> transaction.docNumber)
+            .thenComparing(transaction -> transaction.iifString);
+
+    /**
+     * The value used as the sort date of transactions that have no lines, or
+     * no date. These sort first.
+     */
+    private static final int NO_DATE = Integer.MIN_VALUE;
+
+    private final int epochDay;
+    private final String docNumber;
+    private final String iifString;
+
+    /**
+     * Constructor for {@code RenderedTransaction}.
+     *
+     * @param   transaction
+     *          The transaction to render.
+     */
+    RenderedTransaction(final Transaction transaction) {
+        final List<DataLineView> lines = transaction.getLineViews();
+
+        if (lines.isEmpty()) {
+            this.epochDay   = NO_DATE;
+            this.docNumber  = "";
+        }
+        else {
+            final DataLineView firstLine = lines.get(0);
+
+            this.epochDay   = (firstLine.getDate() == null) ? NO_DATE : firstLine.getDate().getEpochDay();
+            this.docNumber  = (firstLine.getDocNumber() == null) ? "" : firstLine.getDocNumber().getValue();
+        }
+
+        this.iifString = transaction.toIifString();
+    }
+
+    /**
+     * Gets the IIF output of the transaction.
+     *
+     * @return  The IIF text.
+     */
+    String getIifString() {
+        return this.iifString;
+    }
+}
@@ -0,0 +1,663 @@
+/*
+ * Copyright (C) 2016 Red Bottle Design, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redbottledesign.accounting.quickbooks.iif;
+
+import com.redbottledesign.accounting.quickbooks.models.DataLineView;
+import com.redbottledesign.accounting.quickbooks.models.Name;
+import com.redbottledesign.accounting.quickbooks.models.Transaction;
+import com.redbottledesign.util.Argument;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/**
+ * An IIF file whose transactions are partitioned into independent shards,
+ * which are sorted separately and merged in chronological order on export.
+ *
+ * <p>Each transaction is assigned to a shard by a {@link Partitioner}: by
+ * the thread that adds it, by date range, or by any other key, such as a
+ * tenant. Shards are locked independently, so threads that add to different
+ * shards do not wait on one another. On export, every shard is rendered and
+ * sorted on its own &mdash; in parallel, according to the
+ * {@linkplain #setExecutionPolicy(IifExecutionPolicy) execution policy} of
+ * the file &mdash; and the sorted shards are then merged into the output as
+ * a stream, one transaction at a time.</p>
+ *
+ * <p>Transactions are exported in a canonical order instead of the order in
+ * which they were added: by date, and then by document number, with any
+ * remaining ties broken by the IIF text of the transactions. The output
+ * therefore depends only on which transactions were added, not on how they
+ * were partitioned, nor on the order in which threads added them.</p>
+ *
+ * <p>Transactions are {@linkplain Transaction#freeze() frozen} when they are
+ * added, so that exporting can safely run while other threads are still
+ * adding to the file. An export includes everything that was added before it
+ * started, and may or may not include anything added while it runs.</p>
+ *
+ * <p>Name tables work the same way as they do for {@link IifFile}, including
+ * {@linkplain #setNameDiscoveryEnabled(boolean) name discovery}.</p>
+ *
+ * @author Guy Paddock (guy@redbottledesign.com)
+ */
+public class ShardedIifFile
+implements IifExportable {
+    /**
+     * The value used as the sort date of transactions that have no lines.
+     */
+    private static final int NO_DATE = Integer.MIN_VALUE;
+
+    private final List<List<Transaction>> shards;
+    private final Partitioner partitioner;
+
+    /**
+     * The file that holds the name tables. It never holds any transactions,
+     * and is guarded by its own lock.
+     */
+    private final IifFile nameTables;
+
+    /**
+     * Whether names are discovered from transactions as they are added. This
+     * is kept outside of the name tables, so that adding a transaction only
+     * takes their lock when there are names to discover.
+     */
+    private volatile boolean isNameDiscoveryEnabled;
+
+    /**
+     * The policy for sorting shards in parallel; or, {@code null} to use the
+     * default policy.
+     */
+    private volatile IifExecutionPolicy executionPolicy;
+
+    /**
+     * Constructor for {@code ShardedIifFile} that partitions transactions by
+     * the thread that adds them.
+     *
+     * @param   shardCount
+     *          The number of shards.
+     */
+    public ShardedIifFile(final int shardCount) {
+        this(shardCount, Partitioner.byThread());
+    }
+
+    /**
+     * Constructor for {@code ShardedIifFile}.
+     *
+     * @param   shardCount
+     *          The number of shards.
+     *
+     * @param   partitioner
+     *          The partitioner that assigns each transaction to a shard.
+     */
+    public ShardedIifFile(final int shardCount, final Partitioner partitioner) {
+        Argument.ensureInRange(shardCount, 1, 1 << 16, "shardCount");
+        Argument.ensureNotNull(partitioner, "partitioner");
+
+        this.shards         = new ArrayList<>(shardCount);
+        this.partitioner    = partitioner;
+        this.nameTables     = new IifFile();
+
+        for (int shardIndex = 0; shardIndex < shardCount; ++shardIndex) {
+            this.shards.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Gets the number of shards.
+     *
+     * @return  The shard count.
+     */
+    public int getShardCount() {
+        return this.shards.size();
+    }
+
+    /**
+     * Gets the number of transactions that have been added to this file.
+     *
+     * @return  The transaction count.
+     */
+    public int getTransactionCount() {
+        int result = 0;
+
+        for (List<Transaction> shard : this.shards) {
+            synchronized (shard) {
+                result += shard.size();
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets the policy used to sort shards in parallel during export.
+     *
+     * @return  The policy set for this file; or, the
+     *          {@linkplain IifExecutionPolicy#getDefault() default policy} if
+     *          none has been set.
+     */
+    public IifExecutionPolicy getExecutionPolicy() {
+        final IifExecutionPolicy policy = this.executionPolicy;
+        final IifExecutionPolicy result;
+
+        if (policy != null) {
+            result = policy;
+        }
+        else {
+            result = IifExecutionPolicy.getDefault();
+        }
+
+        return result;
+    }
+
+    /**
+     * Sets the policy used to sort shards in parallel during export.
+     *
+     * <p>Each shard counts as one item of work per transaction it holds.</p>
+     *
+     * @param   executionPolicy
+     *          The policy to use; or, {@code null} to use the
+     *          {@linkplain IifExecutionPolicy#getDefault() default policy}.
+     *
+     * @return  This object, for chaining.
+     */
+    public ShardedIifFile setExecutionPolicy(final IifExecutionPolicy executionPolicy) {
+        this.executionPolicy = executionPolicy;
+
+        return this;
+    }
+
+    /**
+     * Determines whether names are discovered from transactions as they are
+     * added.
+     *
+     * @return  {@code true} if name discovery is enabled; or, {@code false}
+     *          if only names that are declared explicitly are exported.
+     *
+     * @see     IifFile#isNameDiscoveryEnabled()
+     */
+    public boolean isNameDiscoveryEnabled() {
+        return this.isNameDiscoveryEnabled;
+    }
+
+    /**
+     * Sets whether names are discovered from transactions as they are added.
+     *
+     * @param   isNameDiscoveryEnabled
+     *          Whether name discovery is enabled.
+     *
+     * @return  This object, for chaining.
+     *
+     * @see     IifFile#setNameDiscoveryEnabled(boolean)
+     */
+    public ShardedIifFile setNameDiscoveryEnabled(final boolean isNameDiscoveryEnabled) {
+        this.isNameDiscoveryEnabled = isNameDiscoveryEnabled;
+
+        return this;
+    }
+
+    /**
+     * Adds the specified transaction to this file.
+     *
+     * <p>The transaction is cloned and frozen in the process, unless it has
+     * already been {@linkplain Transaction#freeze() frozen}, in which case it
+     * is added as-is.</p>
+     *
+     * @param   transaction
+     *          The transaction to add to this file.
+     */
+    public void addTransaction(final Transaction transaction) {
+        Argument.ensureNotNull(transaction, "transaction");
+
+        if (transaction.isFrozen()) {
+            this.append(transaction);
+        }
+        else {
+            this.append(transaction.clone().freeze());
+        }
+    }
+
+    /**
+     * Adds the given transaction to this file, taking ownership of it.
+     *
+     * <p>Instead of being cloned, the transaction is
+     * {@linkplain Transaction#freeze() frozen} and added as-is.</p>
+     *
+     * @param   transaction
+     *          The transaction to freeze and add to this file.
+     */
+    public void addOwned(final Transaction transaction) {
+        Argument.ensureNotNull(transaction, "transaction");
+
+        this.append(transaction.freeze());
+    }
+
+    /**
+     * Adds the given name to the list of customers declared at the top of the
+     * file.
+     *
+     * @param   customerName
+     *          The name to add to the customer table.
+     *
+     * @throws  IllegalArgumentException
+     *          If the name has already been added to another table.
+     *
+     * @see     IifFile#addCustomerName(Name)
+     */
+    public void addCustomerName(final Name customerName)
+    throws IllegalArgumentException {
+        synchronized (this.nameTables) {
+            this.nameTables.addCustomerName(customerName);
+        }
+    }
+
+    /**
+     * Gets a snapshot of the customer names that have been added to this file.
+     *
+     * @return  The customer names, in sorted order.
+     */
+    public Set<Name> getCustomerNames() {
+        final Set<Name> result;
+
+        synchronized (this.nameTables) {
+            result = new TreeSet<>(this.nameTables.getCustomerNames());
+        }
+
+        return Collections.unmodifiableSet(result);
+    }
+
+    /**
+     * Adds the given name to the list of vendors declared at the top of the
+     * file.
+     *
+     * @param   vendorName
+     *          The name to add to the vendor table.
+     *
+     * @throws  IllegalArgumentException
+     *          If the name has already been added to another table.
+     *
+     * @see     IifFile#addVendorName(Name)
+     */
+    public void addVendorName(final Name vendorName)
+    throws IllegalArgumentException {
+        synchronized (this.nameTables) {
+            this.nameTables.addVendorName(vendorName);
+        }
+    }
+
+    /**
+     * Gets a snapshot of the vendor names that have been added to this file.
+     *
+     * @return  The vendor names, in sorted order.
+     */
+    public Set<Name> getVendorNames() {
+        final Set<Name> result;
+
+        synchronized (this.nameTables) {
+            result = new TreeSet<>(this.nameTables.getVendorNames());
+        }
+
+        return Collections.unmodifiableSet(result);
+    }
+
+    /**
+     * Adds the given entity to the list of "other names" declared at the top of
+     * the file.
+     *
+     * @param   otherName
+     *          The name to add to the other names table.
+     *
+     * @throws  IllegalArgumentException
+     *          If the name has already been added to another table.
+     *
+     * @see     IifFile#addOtherName(Name)
+     */
+    public void addOtherName(final Name otherName)
+    throws IllegalArgumentException {
+        synchronized (this.nameTables) {
+            this.nameTables.addOtherName(otherName);
+        }
+    }
+
+    /**
+     * Gets a snapshot of the other names that have been added to this file.
+     *
+     * @return  The other names, in sorted order.
+     */
+    public Set<Name> getOtherNames() {
+        final Set<Name> result;
+
+        synchronized (this.nameTables) {
+            result = new TreeSet<>(this.nameTables.getOtherNames());
+        }
+
+        return Collections.unmodifiableSet(result);
+    }
+
+    /**
+     * Writes this file to the given writer, merging the sorted shards into it
+     * one transaction at a time.
+     *
+     * <p>The writer is not flushed or closed.</p>
+     *
+     * @param   writer
+     *          The writer to write to.
+     *
+     * @throws  IOException
+     *          If the writer cannot be written.
+     */
+    @Override
+    public void writeTo(final Writer writer)
+    throws IOException {
+        Argument.ensureNotNull(writer, "writer");
+
+        final List<List<RenderedTransaction>>   sortedShards    = this.sortShards();
+        final PriorityQueue<ShardCursor>        cursors         = new PriorityQueue<>(Math.max(1, sortedShards.size()));
+        final String                            header;
+
+        synchronized (this.nameTables) {
+            header = this.nameTables.toHeaderIifString();
+        }
+
+        for (List<RenderedTransaction> sortedShard : sortedShards) {
+            if (!sortedShard.isEmpty()) {
+                cursors.add(new ShardCursor(sortedShard));
+            }
+        }
+
+        writer.write(header);
+
+        while (!cursors.isEmpty()) {
+            final ShardCursor cursor = cursors.poll();
+
+            writer.write('\n');
+            writer.write(cursor.current().getIifString());
+
+            if (cursor.advance()) {
+                cursors.add(cursor);
+            }
+        }
+
+        writer.write('\n');
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The output has the same layout as that of {@link IifFile}: name
+     * tables, then a transaction header, then the transactions, then a
+     * trailing newline.</p>
+     */
+    @Override
+    public String toIifString() {
+        final StringWriter writer = new StringWriter();
+
+        try {
+            this.writeTo(writer);
+        }
+        catch (IOException ex) {
+            // A StringWriter never throws.
+            throw new UncheckedIOException(ex);
+        }
+
+        return writer.toString();
+    }
+
+    /**
+     * Adds a frozen transaction to the shard chosen for it by the
+     * partitioner.
+     *
+     * @param   transaction
+     *          The transaction to add.
+     *
+     * @throws  IllegalStateException
+     *          If the partitioner chooses a shard that does not exist.
+     */
+    protected void append(final Transaction transaction)
+    throws IllegalStateException {
+        final int               shardIndex = this.partitioner.shardOf(transaction, this.shards.size());
+        final List<Transaction> shard;
+
+        if ((shardIndex < 0) || (shardIndex >= this.shards.size())) {
+            throw new IllegalStateException(
+                String.format(
+                    "The partitioner chose shard `%d`, but there are only `%d` shards.",
+                    shardIndex,
+                    this.shards.size()));
+        }
+
+        shard = this.shards.get(shardIndex);
+
+        if (this.isNameDiscoveryEnabled) {
+            synchronized (this.nameTables) {
+                this.nameTables.discoverNames(transaction);
+            }
+        }
+
+        synchronized (shard) {
+            shard.add(transaction);
+        }
+    }
+
+    /**
+     * Renders and sorts each shard on its own, according to the execution
+     * policy of this file.
+     *
+     * @return  The rendered transactions of each shard, in export order.
+     */
+    private List<List<RenderedTransaction>> sortShards() {
+        final List<List<Transaction>>   snapshots   = new ArrayList<>(this.shards.size());
+        long                            workSize    = 0;
+
+        for (List<Transaction> shard : this.shards) {
+            synchronized (shard) {
+                snapshots.add(new ArrayList<>(shard));
+
+                workSize += shard.size();
+            }
+        }
+
+        return this.getExecutionPolicy().map(snapshots, workSize, ShardedIifFile::sortShard);
+    }
+
+    /**
+     * Renders and sorts the transactions of a single shard.
+     *
+     * @param   transactions
+     *          The transactions in the shard.
+     *
+     * @return  The rendered transactions, in export order.
+     */
+    private static List<RenderedTransaction> sortShard(final List<Transaction> transactions) {
+        final List<RenderedTransaction> result = new ArrayList<>(transactions.size());
+
+        for (Transaction transaction : transactions) {
+            result.add(new RenderedTransaction(transaction));
+        }
+
+        result.sort(RenderedTransaction.EXPORT_ORDER);
+
+        return result;
+    }
+
+    /**
+     * Assigns each transaction added to a {@link ShardedIifFile} to one of its
+     * shards.
+     *
+     * <p>Partitioners are called by whichever thread adds the transaction,
+     * so they must be thread-safe.</p>
+     */
+    @FunctionalInterface
+    public interface Partitioner {
+        /**
+         * Chooses the shard for the given transaction.
+         *
+         * @param   transaction
+         *          The transaction being added.
+         *
+         * @param   shardCount
+         *          The number of shards in the file.
+         *
+         * @return  The index of the shard, from {@code 0} to
+         *          {@code shardCount - 1}.
+         */
+        int shardOf(Transaction transaction, int shardCount);
+
+        /**
+         * Gets a partitioner that assigns each thread its own shard, as far
+         * as the number of shards allows.
+         *
+         * @return  The partitioner.
+         */
+        static Partitioner byThread() {
+            return (transaction, shardCount) -> spread(Thread.currentThread().getId(), shardCount);
+        }
+
+        /**
+         * Gets a partitioner that assigns transactions to shards by date, in
+         * consecutive ranges of the given number of days.
+         *
+         * <p>When there are more ranges than shards, ranges share shards in
+         * rotation.</p>
+         *
+         * @param   daysPerRange
+         *          The number of days in each range.
+         *
+         * @return  The partitioner.
+         */
+        static Partitioner byDateRange(final int daysPerRange) {
+            Argument.ensureInRange(daysPerRange, 1, Integer.MAX_VALUE, "daysPerRange");
+
+            return (transaction, shardCount) -> {
+                final int epochDay = epochDayOf(transaction);
+
+                return (epochDay == NO_DATE) ? 0 : Math.floorMod(epochDay / daysPerRange, shardCount);
+            };
+        }
+
+        /**
+         * Gets a partitioner that assigns transactions to shards by the hash of
+         * an arbitrary key, such as the tenant a transaction belongs to.
+         *
+         * @param   keyFunction
+         *          The function that extracts the key of a transaction.
+         *
+         * @return  The partitioner.
+         */
+        static Partitioner byKey(final Function<? super Transaction, ?> keyFunction) {
+            Argument.ensureNotNull(keyFunction, "keyFunction");
+
+            return (transaction, shardCount) -> spread(Objects.hashCode(keyFunction.apply(transaction)), shardCount);
+        }
+    }
+
+    /**
+     * Spreads a hash or identifier evenly across shards.
+     *
+     * @param   value
+     *          The value to spread.
+     *
+     * @param   shardCount
+     *          The number of shards.
+     *
+     * @return  The index of a shard.
+     */
+    private static int spread(final long value, final int shardCount) {
+        final int hash = (int)(value ^ (value >>> 32)) * 0x9E3779B9;
+
+        return Math.floorMod(hash ^ (hash >>> 16), shardCount);
+    }
+
+    /**
+     * Gets the date of a transaction, in epoch days.
+     *
+     * @param   transaction
+     *          The transaction.
+     *
+     * @return  The date of its first line; or, {@link #NO_DATE} if it has no
+     *          lines or no date.
+     */
+    private static int epochDayOf(final Transaction transaction) {
+        final List<DataLineView>    lines   = transaction.getLineViews();
+        int                         result  = NO_DATE;
+
+        if (!lines.isEmpty() && (lines.get(0).getDate() != null)) {
+            result = lines.get(0).getDate().getEpochDay();
+        }
+
+        return result;
+    }
+
+    /**
+     * The position of the merge within one sorted shard.
+     */
+    private static final class ShardCursor
+    implements Comparable<ShardCursor> {
+        private final List<RenderedTransaction> entries;
+        private int position;
+
+        /**
+         * Constructor for {@code ShardCursor}.
+         *
+         * @param   entries
+         *          The sorted entries of the shard, of which there is at least
+         *          one.
+         */
+        private ShardCursor(final List<RenderedTransaction> entries) {
+            this.entries = entries;
+        }
+
+        /**
+         * Gets the entry at the current position.
+         *
+         * @return  The current entry.
+         */
+        private RenderedTransaction current() {
+            return this.entries.get(this.position);
+        }
+
+        /**
+         * Moves to the next entry.
+         *
+         * @return  {@code true} if there is a next entry; or, {@code false} if
+         *          the shard has been exhausted.
+         */
+        private boolean advance() {
+            ++this.position;
+
+            return (this.position < this.entries.size());
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * <p>Cursors are ordered by their current entries.</p>
+         */
+        @Override
+        public int compareTo(final ShardCursor other) {
+            return RenderedTransaction.EXPORT_ORDER.compare(this.current(), other.current());
+        }
+    }
+}
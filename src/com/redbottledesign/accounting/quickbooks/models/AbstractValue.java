@@ -18,6 +18,8 @@ package com.redbottledesign.accounting.quickbooks.models;
 
 import com.redbottledesign.accounting.quickbooks.iif.IifExportable;
 
+import java.util.Objects;
+
 /**
  * Parent class for all QuickBook values.
  *
@@ -96,7 +98,7 @@ implements IifExportable {
         else if (other.getClass().equals(this.getClass())) {
             AbstractValue<?> that = (AbstractValue<?>)other;
 
-            result = this.getValue().equals(that.getValue());
+            result = Objects.equals(this.getValue(), that.getValue());
         }
         else {
             result = false;
@@ -108,11 +110,12 @@ implements IifExportable {
     /**
      * {@inheritDoc}
      *
-     * <p>The hash code is based on the wrapped value's hashcode.</p>
+     * <p>The hash code is based on the wrapped value's hashcode. An empty
+     * ({@code null}) value has a hash code of zero.</p>
      */
     @Override
     public int hashCode() {
-        return this.getValue().hashCode();
+        return Objects.hashCode(this.getValue());
     }
 
     /**
@@ -35,6 +35,32 @@ extends StringValue {
      */
     public static final Account ACCOUNTS_PAYABLE = new Account("Accounts Payable");
 
+    /**
+     * The pool of canonical {@code Account} instances.
+     */
+    private static final StringValuePool<Account> POOL = new StringValuePool<>(Account::new);
+
+    static {
+        POOL.register(ACCOUNTS_RECEIVABLE);
+        POOL.register(ACCOUNTS_PAYABLE);
+    }
+
+    /**
+     * Gets the shared {@code Account} instance that wraps an account having
+     * the specified name, creating it if necessary.
+     *
+     * <p>Repeated calls with the same name return the same instance, as long
+     * as the pool has room for it.</p>
+     *
+     * @param   name
+     *          The name of the account.
+     *
+     * @return  The canonical {@code Account} for {@code name}.
+     */
+    public static Account of(final String name) {
+        return POOL.intern(name);
+    }
+
     /**
      * Constructor for {@code Account} that wraps an account having the
      * specified name.
@@ -19,6 +19,7 @@ package com.redbottledesign.accounting.quickbooks.models;
 import com.redbottledesign.accounting.quickbooks.iif.IifExportable;
 
 import java.math.BigDecimal;
+import java.text.DecimalFormatSymbols;
 import java.text.NumberFormat;
 
 /**
@@ -26,12 +27,31 @@ import java.text.NumberFormat;
  *
  * Amounts are limited to two decimal places, in USD.
  *
+ * <p>Internally, an amount is stored as a whole number of cents whenever the
+ * value can be represented that way exactly, and as a {@link BigDecimal}
+ * otherwise. Arithmetic on amounts stays in whole cents until it would
+ * overflow, at which point it transparently falls back to
+ * {@code BigDecimal}.</p>
+ *
  * @author Guy Paddock (guy@redbottledesign.com)
  */
 public class Amount
 implements IifExportable {
     /**
-     * The value of this amount.
+     * The number of decimal places in a whole-cent amount.
+     */
+    public static final int CENTS_SCALE = 2;
+
+    /**
+     * The value of this amount, in cents.
+     *
+     * <p>This is only meaningful when {@link #value} is {@code null}.</p>
+     */
+    private long cents;
+
+    /**
+     * The value of this amount, if it cannot be expressed exactly in cents;
+     * otherwise, {@code null}.
      */
     private BigDecimal value;
 
@@ -55,13 +75,157 @@ implements IifExportable {
         this.setValue(value);
     }
 
+    /**
+     * Private constructor for {@code Amount}, from a whole number of cents.
+     *
+     * @param   cents
+     *          The value of the new amount, in cents.
+     */
+    private Amount(final long cents) {
+        this.cents = cents;
+    }
+
+    /**
+     * Creates a new amount from a whole number of cents.
+     *
+     * @param   cents
+     *          The value of the new amount, in cents (e.g. {@code 1050} for
+     *          $10.50).
+     *
+     * @return  The new amount.
+     */
+    public static Amount ofCents(final long cents) {
+        return new Amount(cents);
+    }
+
     /**
      * Gets the value of this amount.
      *
+     * <p>Any amount that is a whole number of cents is returned with a scale
+     * of exactly {@link #CENTS_SCALE}, no matter how it was created; for
+     * example, {@code new Amount(new BigDecimal("325"))} has a value of
+     * {@code 325.00}. This matches how amounts are written to IIF files. Any
+     * other amount is returned exactly as it was given. Since
+     * {@link BigDecimal#equals(Object)} also compares scale, values should
+     * be compared with {@link BigDecimal#compareTo(BigDecimal)}, or the
+     * amounts themselves with {@link #equals(Object)}.</p>
+     *
      * @return  The value of this amount.
      */
     public BigDecimal getValue() {
-        return this.value;
+        final BigDecimal result;
+
+        if (this.value == null) {
+            result = BigDecimal.valueOf(this.cents, CENTS_SCALE);
+        }
+        else {
+            result = this.value;
+        }
+
+        return result;
+    }
+
+    /**
+     * Indicates whether or not this amount is an exact, whole number of cents
+     * that fits in a {@code long}.
+     *
+     * @return  {@code true} if {@link #getCents()} can be called on this
+     *          amount; or, {@code false} otherwise.
+     */
+    public boolean isWholeCents() {
+        return (this.value == null);
+    }
+
+    /**
+     * Gets the value of this amount, in cents.
+     *
+     * @return  The value of this amount, in cents.
+     *
+     * @throws  ArithmeticException
+     *          If this amount is not an exact, whole number of cents that fits
+     *          in a {@code long}.
+     *
+     * @see     #isWholeCents()
+     */
+    public long getCents()
+    throws ArithmeticException {
+        if (!this.isWholeCents()) {
+            throw new ArithmeticException(
+                String.format("Amount cannot be expressed in whole cents (`%s`).", this.value));
+        }
+
+        return this.cents;
+    }
+
+    /**
+     * Gets the sign of this amount.
+     *
+     * @return  -1, 0, or 1 as the value of this amount is negative, zero, or
+     *          positive.
+     */
+    public int signum() {
+        final int result;
+
+        if (this.isWholeCents()) {
+            result = Long.signum(this.cents);
+        }
+        else {
+            result = this.value.signum();
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets an amount that has the opposite sign of this amount.
+     *
+     * @return  The negated amount.
+     */
+    public Amount negate() {
+        final Amount result;
+
+        if (this.isWholeCents() && (this.cents != Long.MIN_VALUE)) {
+            result = new Amount(-this.cents);
+        }
+        else {
+            result = new Amount(this.getValue().negate());
+        }
+
+        return result;
+    }
+
+    /**
+     * Adds the given amount to this amount.
+     *
+     * @param   other
+     *          The amount to add.
+     *
+     * @return  The sum of both amounts.
+     */
+    public Amount add(final Amount other) {
+        final Amount result;
+
+        if (this.isWholeCents() && other.isWholeCents() &&
+            !isAdditionOverflow(this.cents, other.cents)) {
+            result = new Amount(this.cents + other.cents);
+        }
+        else {
+            result = new Amount(this.getValue().add(other.getValue()));
+        }
+
+        return result;
+    }
+
+    /**
+     * Subtracts the given amount from this amount.
+     *
+     * @param   other
+     *          The amount to subtract.
+     *
+     * @return  The difference between the two amounts.
+     */
+    public Amount subtract(final Amount other) {
+        return this.add(other.negate());
     }
 
     /**
@@ -75,7 +239,68 @@ implements IifExportable {
             throw new IllegalArgumentException("value cannot be null");
         }
 
-        this.value = value;
+        try {
+            this.cents = value.movePointRight(CENTS_SCALE).longValueExact();
+            this.value = null;
+        }
+        catch (ArithmeticException ex) {
+            // Fractional cents, or too large for a long.
+            this.cents = 0;
+            this.value = value;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Two {@code Amount} instances are equal if they have the same
+     * numeric value, regardless of scale; for example, {@code 325} and
+     * {@code 325.00} are equal.</p>
+     */
+    @Override
+    public boolean equals(final Object other) {
+        final boolean result;
+
+        if (this == other) {
+            result = true;
+        }
+        else if (other instanceof Amount) {
+            final Amount that = (Amount)other;
+
+            if (this.isWholeCents() && that.isWholeCents()) {
+                result = (this.cents == that.cents);
+            }
+            else {
+                result = (this.getValue().compareTo(that.getValue()) == 0);
+            }
+        }
+        else {
+            result = false;
+        }
+
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The hash code is based on the numeric value, so that amounts that
+     * are {@linkplain #equals(Object) equal} have the same hash code.</p>
+     */
+    @Override
+    public int hashCode() {
+        final int result;
+
+        if (this.isWholeCents()) {
+            result = Long.hashCode(this.cents);
+        }
+        else {
+            // Any value that fits in whole cents is stored that way, so only
+            // the scale needs to be normalized here.
+            result = this.value.stripTrailingZeros().hashCode();
+        }
+
+        return result;
     }
 
     /**
@@ -97,12 +322,78 @@ implements IifExportable {
      */
     @Override
     public String toString() {
-        final NumberFormat formatter = NumberFormat.getInstance();
+        final String result;
+
+        if (this.isWholeCents()) {
+            result = formatCents(this.cents);
+        }
+        else {
+            final NumberFormat formatter = NumberFormat.getInstance();
+
+            formatter.setGroupingUsed(false);
+            formatter.setMaximumFractionDigits(2);
+            formatter.setMinimumFractionDigits(2);
 
-        formatter.setGroupingUsed(false);
-        formatter.setMaximumFractionDigits(2);
-        formatter.setMinimumFractionDigits(2);
+            result = formatter.format(this.getValue());
+        }
+
+        return result;
+    }
+
+    /**
+     * Determines whether or not adding the two given values would overflow a
+     * {@code long}.
+     *
+     * @param   first
+     *          The first value.
+     *
+     * @param   second
+     *          The second value.
+     *
+     * @return  {@code true} if the sum overflows; or, {@code false}
+     *          otherwise.
+     */
+    static boolean isAdditionOverflow(final long first, final long second) {
+        final long sum = first + second;
+
+        return (((first ^ sum) & (second ^ sum)) < 0);
+    }
+
+    /**
+     * Formats a whole number of cents the same way {@link #toString()} formats
+     * a {@link BigDecimal}, without the overhead of a {@link NumberFormat}.
+     *
+     * @param   cents
+     *          The value to format, in cents.
+     *
+     * @return  The formatted value.
+     */
+    private static String formatCents(final long cents) {
+        final DecimalFormatSymbols  symbols     = DecimalFormatSymbols.getInstance();
+        final StringBuilder         builder     = new StringBuilder(24);
+        final String                magnitude   = Long.toString(cents).replace("-", "");
+        final int                   wholeDigits = magnitude.length() - CENTS_SCALE;
+
+        if (cents < 0) {
+            builder.append(symbols.getMinusSign());
+        }
+
+        if (wholeDigits > 0) {
+            builder.append(magnitude, 0, wholeDigits);
+            builder.append(symbols.getDecimalSeparator());
+            builder.append(magnitude, wholeDigits, magnitude.length());
+        }
+        else {
+            builder.append('0');
+            builder.append(symbols.getDecimalSeparator());
+
+            if (wholeDigits < 0) {
+                builder.append('0');
+            }
+
+            builder.append(magnitude);
+        }
 
-        return formatter.format(this.getValue());
+        return builder.toString();
     }
 }
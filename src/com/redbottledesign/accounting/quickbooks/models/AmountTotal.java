@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2016 Red Bottle Design, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redbottledesign.accounting.quickbooks.models;
+
+import java.math.BigDecimal;
+
+/**
+ * A mutable running total of {@link Amount} values.
+ *
+ * <p>The total is kept as a whole number of cents for as long as every amount
+ * added to it can be expressed that way and the sum does not overflow. After
+ * that, it falls back to {@link BigDecimal} arithmetic.</p>
+ *
+ * <p>This class is not thread-safe.</p>
+ *
+ * @author Guy Paddock (guy@redbottledesign.com)
+ */
+public class AmountTotal {
+    /**
+     * The total, in cents.
+     *
+     * <p>This is only meaningful when {@link #value} is {@code null}.</p>
+     */
+    private long cents;
+
+    /**
+     * The total, once it can no longer be expressed in cents; otherwise,
+     * {@code null}.
+     */
+    private BigDecimal value;
+
+    /**
+     * Default constructor for {@code AmountTotal}, which starts at zero.
+     */
+    public AmountTotal() {
+        this.reset();
+    }
+
+    /**
+     * Copy constructor for {@code AmountTotal}.
+     *
+     * @param   other
+     *          The total to copy.
+     */
+    public AmountTotal(final AmountTotal other) {
+        this.cents = other.cents;
+        this.value = other.value;
+    }
+
+    /**
+     * Adds the given amount to this total.
+     *
+     * @param   amount
+     *          The amount to add.
+     *
+     * @return  This object, for chaining.
+     */
+    public AmountTotal add(final Amount amount) {
+        if (this.value == null) {
+            if (amount.isWholeCents() && !Amount.isAdditionOverflow(this.cents, amount.getCents())) {
+                this.cents += amount.getCents();
+            }
+            else {
+                this.value = BigDecimal.valueOf(this.cents, Amount.CENTS_SCALE).add(amount.getValue());
+            }
+        }
+        else {
+            this.value = this.value.add(amount.getValue());
+        }
+
+        return this;
+    }
+
+    /**
+     * Subtracts the given amount from this total.
+     *
+     * @param   amount
+     *          The amount to subtract.
+     *
+     * @return  This object, for chaining.
+     */
+    public AmountTotal subtract(final Amount amount) {
+        return this.add(amount.negate());
+    }
+
+    /**
+     * Resets this total back to zero.
+     */
+    public void reset() {
+        this.cents = 0;
+        this.value = null;
+    }
+
+    /**
+     * Indicates whether or not this total is equal to zero.
+     *
+     * @return  {@code true} if the total is zero; or, {@code false} otherwise.
+     */
+    public boolean isZero() {
+        return (this.signum() == 0);
+    }
+
+    /**
+     * Gets the sign of this total.
+     *
+     * @return  -1, 0, or 1 as this total is negative, zero, or positive.
+     */
+    public int signum() {
+        final int result;
+
+        if (this.value == null) {
+            result = Long.signum(this.cents);
+        }
+        else {
+            result = this.value.signum();
+        }
+
+        return result;
+    }
+
+    /**
+     * Indicates whether or not this total has the same value as another.
+     *
+     * @param   other
+     *          The total to compare against.
+     *
+     * @return  {@code true} if both totals are numerically equal; or,
+     *          {@code false} otherwise.
+     */
+    public boolean isEqualTo(final AmountTotal other) {
+        final boolean result;
+
+        if ((this.value == null) && (other.value == null)) {
+            result = (this.cents == other.cents);
+        }
+        else {
+            result = (this.toBigDecimal().compareTo(other.toBigDecimal()) == 0);
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets the value of this total, as a {@link BigDecimal}.
+     *
+     * @return  The total.
+     */
+    public BigDecimal toBigDecimal() {
+        final BigDecimal result;
+
+        if (this.value == null) {
+            result = BigDecimal.valueOf(this.cents, Amount.CENTS_SCALE);
+        }
+        else {
+            result = this.value;
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets the value of this total, as an {@link Amount}.
+     *
+     * @return  The total.
+     */
+    public Amount toAmount() {
+        final Amount result;
+
+        if (this.value == null) {
+            result = Amount.ofCents(this.cents);
+        }
+        else {
+            result = new Amount(this.value);
+        }
+
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return  The total, as a plain decimal string.
+     */
+    @Override
+    public String toString() {
+        return this.toBigDecimal().toString();
+    }
+}
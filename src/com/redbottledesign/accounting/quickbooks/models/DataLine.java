@@ -26,7 +26,7 @@ import com.redbottledesign.util.Argument;
  * @author Guy Paddock (guy@redbottledesign.com)
  */
 public abstract class DataLine
-implements IifExportable, Cloneable {
+implements DataLineView, Cloneable {
     /**
      * The (optional) identifier for the document (i.e. journal entry ID,
      * payment ID, etc.) that contains the transaction.
@@ -351,20 +351,27 @@ implements IifExportable, Cloneable {
      */
     @Override
     public String toIifString() {
-        IifExportable[] columns = new IifExportable[] {
-            this.getDocNumber(),
-            this.getId(),
-            this.getType(),
-            this.getDate(),
-            this.getAccount(),
-            this.getName(),
-            this.getTxnClass(),
-            this.getAmount(),
-            this.getPaymentMethod(),
-            this.getMemo(),
-        };
+        return exportColumns(this);
+    }
 
-        return IifUtils.exportToString(new String[] { this.getLineType() }, columns);
+    /**
+     * Restores every column of this line to the value it has in a new line.
+     *
+     * <p>This allows a line to be recycled, instead of allocating a new one.
+     * Optional columns become empty, while the type, date, account, and amount
+     * become {@code null}.</p>
+     */
+    public void clear() {
+        this.docNumber      = DocNumber.EMPTY;
+        this.id             = TxnIdentifier.EMPTY;
+        this.type           = null;
+        this.date           = null;
+        this.account        = null;
+        this.name           = Name.EMPTY;
+        this.txnClass       = TxnClass.EMPTY;
+        this.amount         = null;
+        this.paymentMethod  = PaymentMethod.EMPTY;
+        this.memo           = Memo.EMPTY;
     }
 
     /**
@@ -381,4 +388,33 @@ implements IifExportable, Cloneable {
             throw new RuntimeException(ex);
         }
     }
+
+    /**
+     * Exports all of the columns of the given line into a tab-separated IIF
+     * line.
+     *
+     * <p>This is shared by every kind of line that has no columns beyond the
+     * ones common to all lines.</p>
+     *
+     * @param   line
+     *          The line to export.
+     *
+     * @return  A representation of the data in the line, in IIF format.
+     */
+    static String exportColumns(final DataLineView line) {
+        IifExportable[] columns = new IifExportable[] {
+            line.getDocNumber(),
+            line.getId(),
+            line.getType(),
+            line.getDate(),
+            line.getAccount(),
+            line.getName(),
+            line.getTxnClass(),
+            line.getAmount(),
+            line.getPaymentMethod(),
+            line.getMemo(),
+        };
+
+        return IifUtils.exportToString(new String[] { line.getLineType() }, columns);
+    }
 }
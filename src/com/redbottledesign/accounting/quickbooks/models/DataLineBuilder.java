@@ -0,0 +1,510 @@
+/*
+ * Copyright (C) 2016 Red Bottle Design, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redbottledesign.accounting.quickbooks.models;
+
+import com.redbottledesign.util.Argument;
+
+/**
+ * A builder for immutable data lines.
+ *
+ * <p>The builder keeps its values after each line is built, so it can be used
+ * to build a series of similar lines by changing only the columns that
+ * differ. Optional columns start out empty, just like they do for a new
+ * {@link DataLine}.</p>
+ *
+ * @author Guy Paddock (guy@redbottledesign.com)
+ */
+public class DataLineBuilder {
+    /**
+     * The values for each column of the next line. See {@link DataLine} and
+     * {@link TransactionLine} for the meaning of each.
+     */
+    private DocNumber docNumber;
+    private TxnIdentifier id;
+    private TxnType type;
+    private Date date;
+    private Account account;
+    private Name name;
+    private TxnClass txnClass;
+    private Amount amount;
+    private PaymentMethod paymentMethod;
+    private Memo memo;
+    private BooleanValue needsToBePrinted;
+    private Date dueDate;
+    private PaymentTerms terms;
+
+    /**
+     * Default constructor for {@code DataLineBuilder}.
+     */
+    public DataLineBuilder() {
+        this.reset();
+    }
+
+    /**
+     * Clears all values in this builder, so that it can be used to build an
+     * unrelated line.
+     *
+     * @return  This object, for chaining.
+     */
+    public DataLineBuilder reset() {
+        this.docNumber          = DocNumber.EMPTY;
+        this.id                 = TxnIdentifier.EMPTY;
+        this.type               = null;
+        this.date               = null;
+        this.account            = null;
+        this.name               = Name.EMPTY;
+        this.txnClass           = TxnClass.EMPTY;
+        this.amount             = null;
+        this.paymentMethod      = PaymentMethod.EMPTY;
+        this.memo               = Memo.EMPTY;
+        this.needsToBePrinted   = BooleanValue.EMPTY;
+        this.dueDate            = null;
+        this.terms              = null;
+
+        return this;
+    }
+
+    /**
+     * Copies all of the values of an existing line into this builder.
+     *
+     * <p>If the line is a {@link TransactionLineView}, its {@code TRNS}-only
+     * columns are copied as well; otherwise, they are cleared.</p>
+     *
+     * @param   line
+     *          The line to copy.
+     *
+     * @return  This object, for chaining.
+     */
+    public DataLineBuilder from(final DataLineView line) {
+        Argument.ensureNotNull(line, "line");
+
+        this.docNumber      = line.getDocNumber();
+        this.id             = line.getId();
+        this.type           = line.getType();
+        this.date           = line.getDate();
+        this.account        = line.getAccount();
+        this.name           = line.getName();
+        this.txnClass       = line.getTxnClass();
+        this.amount         = line.getAmount();
+        this.paymentMethod  = line.getPaymentMethod();
+        this.memo           = line.getMemo();
+
+        if (line instanceof TransactionLineView) {
+            final TransactionLineView transactionLine = (TransactionLineView)line;
+
+            this.needsToBePrinted   = transactionLine.needsToBePrinted();
+            this.dueDate            = transactionLine.getDueDate();
+            this.terms              = transactionLine.getTerms();
+        }
+        else {
+            this.needsToBePrinted   = BooleanValue.EMPTY;
+            this.dueDate            = null;
+            this.terms              = null;
+        }
+
+        return this;
+    }
+
+    /**
+     * Gets the document number for the line.
+     *
+     * @return  The document number.
+     */
+    public DocNumber getDocNumber() {
+        return this.docNumber;
+    }
+
+    /**
+     * Sets the document number for the line.
+     *
+     * @param   docNumber
+     *          The document number.
+     *
+     * @return  This object, for chaining.
+     */
+    public DataLineBuilder setDocNumber(final DocNumber docNumber) {
+        Argument.ensureNotNull(docNumber, "docNumber");
+
+        this.docNumber = docNumber;
+
+        return this;
+    }
+
+    /**
+     * Gets the unique transaction identifier for the line.
+     *
+     * @return  The transaction identifier.
+     */
+    public TxnIdentifier getId() {
+        return this.id;
+    }
+
+    /**
+     * Sets the unique transaction identifier for the line.
+     *
+     * @param   id
+     *          The transaction identifier.
+     *
+     * @return  This object, for chaining.
+     */
+    public DataLineBuilder setId(final TxnIdentifier id) {
+        Argument.ensureNotNull(id, "id");
+
+        this.id = id;
+
+        return this;
+    }
+
+    /**
+     * Gets the type of transaction for the line.
+     *
+     * @return  The transaction type.
+     */
+    public TxnType getType() {
+        return this.type;
+    }
+
+    /**
+     * Sets the type of transaction for the line.
+     *
+     * @param   type
+     *          The transaction type.
+     *
+     * @return  This object, for chaining.
+     */
+    public DataLineBuilder setType(final TxnType type) {
+        Argument.ensureNotNull(type, "type");
+
+        this.type = type;
+
+        return this;
+    }
+
+    /**
+     * Gets the date of the line.
+     *
+     * @return  The date.
+     */
+    public Date getDate() {
+        return this.date;
+    }
+
+    /**
+     * Sets the date of the line.
+     *
+     * @param   date
+     *          The date.
+     *
+     * @return  This object, for chaining.
+     */
+    public DataLineBuilder setDate(final Date date) {
+        Argument.ensureNotNull(date, "date");
+
+        this.date = date;
+
+        return this;
+    }
+
+    /**
+     * Gets the account affected by the line.
+     *
+     * @return  The account.
+     */
+    public Account getAccount() {
+        return this.account;
+    }
+
+    /**
+     * Sets the account affected by the line.
+     *
+     * @param   account
+     *          The account.
+     *
+     * @return  This object, for chaining.
+     */
+    public DataLineBuilder setAccount(final Account account) {
+        Argument.ensureNotNull(account, "account");
+
+        this.account = account;
+
+        return this;
+    }
+
+    /**
+     * Gets the name associated with the line.
+     *
+     * @return  The name.
+     */
+    public Name getName() {
+        return this.name;
+    }
+
+    /**
+     * Sets the name associated with the line.
+     *
+     * @param   name
+     *          The name.
+     *
+     * @return  This object, for chaining.
+     */
+    public DataLineBuilder setName(final Name name) {
+        Argument.ensureNotNull(name, "name");
+
+        this.name = name;
+
+        return this;
+    }
+
+    /**
+     * Gets the class of the line.
+     *
+     * @return  The class.
+     */
+    public TxnClass getTxnClass() {
+        return this.txnClass;
+    }
+
+    /**
+     * Sets the class of the line.
+     *
+     * @param   txnClass
+     *          The class.
+     *
+     * @return  This object, for chaining.
+     */
+    public DataLineBuilder setTxnClass(final TxnClass txnClass) {
+        Argument.ensureNotNull(txnClass, "txnClass");
+
+        this.txnClass = txnClass;
+
+        return this;
+    }
+
+    /**
+     * Gets the amount of the line.
+     *
+     * @return  The amount.
+     */
+    public Amount getAmount() {
+        return this.amount;
+    }
+
+    /**
+     * Sets the amount of the line.
+     *
+     * @param   amount
+     *          The amount.
+     *
+     * @return  This object, for chaining.
+     */
+    public DataLineBuilder setAmount(final Amount amount) {
+        Argument.ensureNotNull(amount, "amount");
+
+        this.amount = amount;
+
+        return this;
+    }
+
+    /**
+     * Gets the payment method of the line.
+     *
+     * @return  The payment method.
+     */
+    public PaymentMethod getPaymentMethod() {
+        return this.paymentMethod;
+    }
+
+    /**
+     * Sets the payment method of the line.
+     *
+     * @param   paymentMethod
+     *          The payment method.
+     *
+     * @return  This object, for chaining.
+     */
+    public DataLineBuilder setPaymentMethod(final PaymentMethod paymentMethod) {
+        Argument.ensureNotNull(paymentMethod, "paymentMethod");
+
+        this.paymentMethod = paymentMethod;
+
+        return this;
+    }
+
+    /**
+     * Gets the memo for the line.
+     *
+     * @return  The memo.
+     */
+    public Memo getMemo() {
+        return this.memo;
+    }
+
+    /**
+     * Sets the memo for the line.
+     *
+     * @param   memo
+     *          The memo.
+     *
+     * @return  This object, for chaining.
+     */
+    public DataLineBuilder setMemo(final Memo memo) {
+        Argument.ensureNotNull(memo, "memo");
+
+        this.memo = memo;
+
+        return this;
+    }
+
+    /**
+     * Gets whether or not the transaction is marked "To be printed".
+     *
+     * <p>This only applies to transaction lines.</p>
+     *
+     * @return  The to-print flag.
+     */
+    public BooleanValue needsToBePrinted() {
+        return this.needsToBePrinted;
+    }
+
+    /**
+     * Sets whether or not the transaction is marked "To be printed".
+     *
+     * <p>This only applies to transaction lines.</p>
+     *
+     * @param   needsToBePrinted
+     *          The to-print flag.
+     *
+     * @return  This object, for chaining.
+     */
+    public DataLineBuilder setNeedsToBePrinted(final BooleanValue needsToBePrinted) {
+        Argument.ensureNotNull(needsToBePrinted, "needsToBePrinted");
+
+        this.needsToBePrinted = needsToBePrinted;
+
+        return this;
+    }
+
+    /**
+     * Gets the due date of a bill or invoice.
+     *
+     * <p>This only applies to transaction lines.</p>
+     *
+     * @return  The due date; or, {@code null}.
+     */
+    public Date getDueDate() {
+        return this.dueDate;
+    }
+
+    /**
+     * Sets the due date of a bill or invoice.
+     *
+     * <p>This only applies to transaction lines.</p>
+     *
+     * @param   dueDate
+     *          The due date; or, {@code null}.
+     *
+     * @return  This object, for chaining.
+     */
+    public DataLineBuilder setDueDate(final Date dueDate) {
+        this.dueDate = dueDate;
+
+        return this;
+    }
+
+    /**
+     * Gets the payment terms of a bill or invoice.
+     *
+     * <p>This only applies to transaction lines.</p>
+     *
+     * @return  The terms; or, {@code null}.
+     */
+    public PaymentTerms getTerms() {
+        return this.terms;
+    }
+
+    /**
+     * Sets the payment terms of a bill or invoice.
+     *
+     * <p>This only applies to transaction lines.</p>
+     *
+     * @param   terms
+     *          The terms; or, {@code null}.
+     *
+     * @return  This object, for chaining.
+     */
+    public DataLineBuilder setTerms(final PaymentTerms terms) {
+        this.terms = terms;
+
+        return this;
+    }
+
+    /**
+     * Builds an immutable transaction ({@code TRNS}) line from the current
+     * values of this builder.
+     *
+     * @return  The new line.
+     *
+     * @throws  IllegalArgumentException
+     *          If the type, date, account, or amount have not been set; if
+     *          the to-print flag, due date, or terms are set on a type of
+     *          transaction that does not support them; or, if the line is for
+     *          a bill or invoice but has no due date or terms.
+     */
+    public ImmutableTransactionLine buildTransactionLine()
+    throws IllegalArgumentException {
+        this.ensureRequiredValues();
+
+        return new ImmutableTransactionLine(
+            new LineValues(this),
+            this.needsToBePrinted,
+            this.dueDate,
+            this.terms);
+    }
+
+    /**
+     * Builds an immutable split ({@code SPL}) line from the current values of
+     * this builder.
+     *
+     * <p>The {@code TRNS}-only columns are ignored.</p>
+     *
+     * @return  The new line.
+     *
+     * @throws  IllegalArgumentException
+     *          If the type, date, account, or amount have not been set.
+     */
+    public ImmutableSplitLine buildSplitLine()
+    throws IllegalArgumentException {
+        this.ensureRequiredValues();
+
+        return new ImmutableSplitLine(new LineValues(this));
+    }
+
+    /**
+     * Ensures that all of the columns that have no default value have been
+     * set.
+     *
+     * @throws  IllegalArgumentException
+     *          If the type, date, account, or amount have not been set.
+     */
+    protected void ensureRequiredValues()
+    throws IllegalArgumentException {
+        Argument.ensureNotNull(this.type,       "type");
+        Argument.ensureNotNull(this.date,       "date");
+        Argument.ensureNotNull(this.account,    "account");
+        Argument.ensureNotNull(this.amount,     "amount");
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2016 Red Bottle Design, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redbottledesign.accounting.quickbooks.models;
+
+import com.redbottledesign.accounting.quickbooks.iif.IifExportable;
+
+/**
+ * The read-only view of a single data line in a QuickBooks IIF file.
+ *
+ * <p>This is implemented by {@link DataLine}, by {@link ImmutableDataLine},
+ * and by objects that expose lines stored in some other form, without first
+ * converting them into {@code DataLine} objects.</p>
+ *
+ * @author Guy Paddock (guy@redbottledesign.com)
+ */
+public interface DataLineView
+extends IifExportable {
+    /**
+     * Gets the (optional) identifier for the document that contains the
+     * transaction.
+     *
+     * @return  The document number for the transaction.
+     */
+    DocNumber getDocNumber();
+
+    /**
+     * Gets the (optional) unique identifier for the transaction.
+     *
+     * @return  The unique ID of the transaction.
+     */
+    TxnIdentifier getId();
+
+    /**
+     * Gets the type of transaction.
+     *
+     * @return  The type of the transaction.
+     */
+    TxnType getType();
+
+    /**
+     * Gets the date on which the transaction occurred.
+     *
+     * @return  The transaction date.
+     */
+    Date getDate();
+
+    /**
+     * Gets the account (from the Chart of Accounts) affected by this line.
+     *
+     * @return  The account affected by this line.
+     */
+    Account getAccount();
+
+    /**
+     * Gets the (optional) name of the Vendor/Client associated with this line.
+     *
+     * @return  The name associated with this line.
+     */
+    Name getName();
+
+    /**
+     * Gets the (optional) class for this line.
+     *
+     * @return  The class on this line.
+     */
+    TxnClass getTxnClass();
+
+    /**
+     * Gets the amount of money credited or debited by this line.
+     *
+     * @return  The amount of this line.
+     */
+    Amount getAmount();
+
+    /**
+     * Gets the (optional) payment method for this line.
+     *
+     * @return  The payment method of the transaction.
+     */
+    PaymentMethod getPaymentMethod();
+
+    /**
+     * Gets the (optional) memo / notes for this line.
+     *
+     * @return  The memo for this line.
+     */
+    Memo getMemo();
+
+    /**
+     * Gets QuickBooks' unique code for the type of this data line.
+     *
+     * @return  Either "TRNS" or "SPL".
+     */
+    String getLineType();
+}
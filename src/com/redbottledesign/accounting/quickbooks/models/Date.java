@@ -22,14 +22,24 @@ import com.redbottledesign.accounting.quickbooks.util.IifUtils;
 import java.text.ParseException;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Representation of a date in the format QuickBooks uses.
  *
+ * <p>The date is stored as a number of days since 1970-01-01 (an "epoch
+ * day"), so comparing and sorting dates only compares {@code int}s.</p>
+ *
+ * <p>Dates are immutable, so {@link #of(LocalDate)} and
+ * {@link #ofEpochDay(int)} can return a shared, canonical instance for dates
+ * within several decades of when the class is loaded, and all of the lines
+ * posted on the same day can share one {@code Date} object. The IIF form of
+ * each instance is computed at most once.</p>
+ *
  * @author Guy Paddock (guy@redbottledesign.com)
  */
 public class Date
-implements IifExportable {
+implements IifExportable, Comparable<Date> {
     /**
      * The QuickBooks date format ({@code M/d/YYYY}).
      */
@@ -37,18 +47,49 @@ implements IifExportable {
         DateTimeFormatter.ofPattern("M/d/yyyy");
 
     /**
-     * The plain date wrapped by this object.
+     * The number of days before today covered by the instance cache.
+     */
+    private static final int CACHED_DAYS_BEFORE_TODAY = 25 * 366;
+
+    /**
+     * The number of days after today covered by the instance cache.
+     */
+    private static final int CACHED_DAYS_AFTER_TODAY = 10 * 366;
+
+    /**
+     * The epoch day of the first date in the instance cache.
+     */
+    private static final int CACHE_START_DAY =
+        (int)LocalDate.now().toEpochDay() - CACHED_DAYS_BEFORE_TODAY;
+
+    /**
+     * The canonical instances, indexed by epoch day relative to
+     * {@link #CACHE_START_DAY}; populated on demand.
+     */
+    private static final AtomicReferenceArray<Date> CACHE =
+        new AtomicReferenceArray<>(CACHED_DAYS_BEFORE_TODAY + CACHED_DAYS_AFTER_TODAY + 1);
+
+    /**
+     * The date, as the number of days since 1970-01-01.
+     */
+    private final int epochDay;
+
+    /**
+     * The IIF form of this date; computed on demand.
      */
-    private LocalDate plainDate;
+    private volatile String iifString;
 
     /**
      * Constructor for {@code Date}, from an existing local date object.
      *
+     * <p>Consider using {@link #of(LocalDate)} instead, which can return a
+     * shared instance.</p>
+     *
      * @param   plainDate
      *          The "plain" {@link LocalDate} to be wrapped by the new object.
      */
     public Date(LocalDate plainDate) {
-        this.setPlainDate(plainDate);
+        this.epochDay = toEpochDay(plainDate);
     }
 
     /**
@@ -59,7 +100,73 @@ implements IifExportable {
      *          The date to parse and wrap in thew new instance.
      */
     public Date(String dateString) throws ParseException {
-        this.setPlainDate(LocalDate.parse(dateString, DATE_FORMAT));
+        this.epochDay = toEpochDay(LocalDate.parse(dateString, DATE_FORMAT));
+    }
+
+    /**
+     * Constructor for {@code Date}, from an epoch day.
+     *
+     * @param   epochDay
+     *          The number of days since 1970-01-01.
+     */
+    protected Date(final int epochDay) {
+        this.epochDay = epochDay;
+    }
+
+    /**
+     * Gets a {@code Date} for the given local date.
+     *
+     * @param   plainDate
+     *          The date.
+     *
+     * @return  The shared instance for the date, if it is in the range of the
+     *          instance cache; or, a new instance otherwise.
+     *
+     * @throws  IllegalArgumentException
+     *          If {@code plainDate} is {@code null}, or too far from 1970 to
+     *          be stored.
+     */
+    public static Date of(final LocalDate plainDate)
+    throws IllegalArgumentException {
+        return ofEpochDay(toEpochDay(plainDate));
+    }
+
+    /**
+     * Gets a {@code Date} for the given epoch day.
+     *
+     * @param   epochDay
+     *          The number of days since 1970-01-01.
+     *
+     * @return  The shared instance for the date, if it is in the range of the
+     *          instance cache; or, a new instance otherwise.
+     */
+    public static Date ofEpochDay(final int epochDay) {
+        final Date  result;
+        final long  cacheIndex = (long)epochDay - CACHE_START_DAY;
+
+        if ((cacheIndex >= 0) && (cacheIndex < CACHE.length())) {
+            final int   index   = (int)cacheIndex;
+            final Date  cached  = CACHE.get(index);
+
+            if (cached != null) {
+                result = cached;
+            }
+            else {
+                final Date newDate = new Date(epochDay);
+
+                if (CACHE.compareAndSet(index, null, newDate)) {
+                    result = newDate;
+                }
+                else {
+                    result = CACHE.get(index);
+                }
+            }
+        }
+        else {
+            result = new Date(epochDay);
+        }
+
+        return result;
     }
 
     /**
@@ -68,21 +175,85 @@ implements IifExportable {
      * @return  The date being wrapped.
      */
     public LocalDate getPlainDate() {
-        return this.plainDate;
+        return LocalDate.ofEpochDay(this.epochDay);
     }
 
     /**
-     * Sets the "plain" date this object wraps.
+     * Gets this date as the number of days since 1970-01-01.
      *
-     * @param   plainDate
-     *          The new date to wrap.
+     * @return  The epoch day.
      */
-    protected void setPlainDate(LocalDate plainDate) {
-        if (plainDate == null) {
-            throw new IllegalArgumentException("plainDate cannot be null");
+    public int getEpochDay() {
+        return this.epochDay;
+    }
+
+    /**
+     * Indicates whether or not this date comes before another.
+     *
+     * @param   other
+     *          The date to compare against.
+     *
+     * @return  {@code true} if this date is earlier than {@code other}; or,
+     *          {@code false} otherwise.
+     */
+    public boolean isBefore(final Date other) {
+        return (this.epochDay < other.epochDay);
+    }
+
+    /**
+     * Indicates whether or not this date comes after another.
+     *
+     * @param   other
+     *          The date to compare against.
+     *
+     * @return  {@code true} if this date is later than {@code other}; or,
+     *          {@code false} otherwise.
+     */
+    public boolean isAfter(final Date other) {
+        return (this.epochDay > other.epochDay);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Dates are ordered chronologically.</p>
+     */
+    @Override
+    public int compareTo(final Date other) {
+        return Integer.compare(this.epochDay, other.epochDay);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Two {@code Date} instances are equal if they represent the same
+     * day.</p>
+     */
+    @Override
+    public boolean equals(final Object other) {
+        final boolean result;
+
+        if (this == other) {
+            result = true;
+        }
+        else if (other instanceof Date) {
+            result = (this.epochDay == ((Date)other).epochDay);
+        }
+        else {
+            result = false;
         }
 
-        this.plainDate = plainDate;
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The hash code is the epoch day.</p>
+     */
+    @Override
+    public int hashCode() {
+        return this.epochDay;
     }
 
     /**
@@ -92,7 +263,15 @@ implements IifExportable {
      */
     @Override
     public String toIifString() {
-        return IifUtils.escapeColumn(this.toString());
+        String result = this.iifString;
+
+        if (result == null) {
+            result = IifUtils.escapeColumn(this.toString());
+
+            this.iifString = result;
+        }
+
+        return result;
     }
 
     /**
@@ -104,4 +283,34 @@ implements IifExportable {
      public String toString() {
          return DATE_FORMAT.format(this.getPlainDate());
      }
+
+    /**
+     * Converts a local date into an epoch day.
+     *
+     * @param   plainDate
+     *          The date to convert.
+     *
+     * @return  The number of days since 1970-01-01.
+     *
+     * @throws  IllegalArgumentException
+     *          If {@code plainDate} is {@code null}, or too far from 1970 to
+     *          be stored.
+     */
+    private static int toEpochDay(final LocalDate plainDate)
+    throws IllegalArgumentException {
+        final long epochDay;
+
+        if (plainDate == null) {
+            throw new IllegalArgumentException("plainDate cannot be null");
+        }
+
+        epochDay = plainDate.toEpochDay();
+
+        if ((epochDay < Integer.MIN_VALUE) || (epochDay > Integer.MAX_VALUE)) {
+            throw new IllegalArgumentException(
+                String.format("The date `%s` is out of range.", plainDate));
+        }
+
+        return (int)epochDay;
+    }
 }
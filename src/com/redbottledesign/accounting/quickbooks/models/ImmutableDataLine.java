@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2016 Red Bottle Design, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redbottledesign.accounting.quickbooks.models;
+
+/**
+ * The abstract parent of data lines whose values cannot be changed after they
+ * are created.
+ *
+ * <p>Unlike {@link DataLine}, an immutable line has no setters at all: it is
+ * only a {@link DataLineView}. Its values are held in a single set of final
+ * fields, and its hash code and IIF form are computed up front, so the same
+ * line can be shared by any number of transactions, caches, and threads
+ * without being copied or synchronized. A {@link Transaction} shares an
+ * immutable line instead of cloning it.</p>
+ *
+ * <p>Instances are created by {@link DataLineBuilder}.</p>
+ *
+ * @author Guy Paddock (guy@redbottledesign.com)
+ */
+public abstract class ImmutableDataLine
+implements DataLineView {
+    /**
+     * The values of the columns shared by all lines.
+     */
+    private final LineValues values;
+
+    /**
+     * Constructor for {@code ImmutableDataLine}.
+     *
+     * @param   values
+     *          The values of the columns shared by all lines.
+     */
+    ImmutableDataLine(final LineValues values) {
+        this.values = values;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DocNumber getDocNumber() {
+        return this.values.docNumber;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public TxnIdentifier getId() {
+        return this.values.id;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public TxnType getType() {
+        return this.values.type;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Date getDate() {
+        return this.values.date;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Account getAccount() {
+        return this.values.account;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Name getName() {
+        return this.values.name;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public TxnClass getTxnClass() {
+        return this.values.txnClass;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Amount getAmount() {
+        return this.values.amount;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PaymentMethod getPaymentMethod() {
+        return this.values.paymentMethod;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Memo getMemo() {
+        return this.values.memo;
+    }
+
+    /**
+     * Creates a new, stand-alone copy of this line as a mutable
+     * {@link DataLine}.
+     *
+     * <p>This is how {@link Transaction#getLines()} hands immutable lines to
+     * code written against {@code DataLine}. Changes made to the copy have no
+     * effect on this line.</p>
+     *
+     * @return  The new line.
+     */
+    public abstract DataLine toDataLine();
+
+    /**
+     * Copies the values of the columns shared by all lines to the given
+     * mutable line, starting with its type.
+     *
+     * @param   line
+     *          The line to copy the values to.
+     */
+    void copyValuesTo(final DataLine line) {
+        line.setType(this.values.type);
+        line.setDocNumber(this.values.docNumber);
+        line.setId(this.values.id);
+        line.setDate(this.values.date);
+        line.setAccount(this.values.account);
+        line.setName(this.values.name);
+        line.setTxnClass(this.values.txnClass);
+        line.setAmount(this.values.amount);
+        line.setPaymentMethod(this.values.paymentMethod);
+        line.setMemo(this.values.memo);
+    }
+
+    /**
+     * Gets the values of the columns shared by all lines.
+     *
+     * @return  The column values.
+     */
+    LineValues getValues() {
+        return this.values;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2016 Red Bottle Design, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redbottledesign.accounting.quickbooks.models;
+
+/**
+ * A split line whose values cannot be changed after it is created.
+ *
+ * <p>See {@link ImmutableDataLine} for how immutable lines are stored and
+ * shared.</p>
+ *
+ * <p>Instances are created by {@link DataLineBuilder#buildSplitLine()}.</p>
+ *
+ * @author Guy Paddock (guy@redbottledesign.com)
+ */
+public final class ImmutableSplitLine
+extends ImmutableDataLine {
+    /**
+     * The hash code of this line.
+     */
+    private final int hash;
+
+    /**
+     * The IIF form of this line.
+     */
+    private final String iifString;
+
+    /**
+     * Constructor for {@code ImmutableSplitLine}.
+     *
+     * @param   values
+     *          The values of the columns of the new line.
+     */
+    ImmutableSplitLine(final LineValues values) {
+        super(values);
+
+        this.hash       = values.hashCode();
+        this.iifString  = DataLine.exportColumns(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return {@code "SPL"}, always.
+     */
+    @Override
+    public String getLineType() {
+        return "SPL";
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return  A new {@link SplitLine}.
+     */
+    @Override
+    public DataLine toDataLine() {
+        final SplitLine result = new SplitLine();
+
+        this.copyValuesTo(result);
+
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Two immutable split lines are equal if all of their columns are
+     * equal.</p>
+     */
+    @Override
+    public boolean equals(final Object other) {
+        final boolean result;
+
+        if (this == other) {
+            result = true;
+        }
+        else if (other instanceof ImmutableSplitLine) {
+            final ImmutableSplitLine that = (ImmutableSplitLine)other;
+
+            result = (this.hash == that.hash) && this.getValues().equals(that.getValues());
+        }
+        else {
+            result = false;
+        }
+
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The hash code is computed once, when the line is created.</p>
+     */
+    @Override
+    public int hashCode() {
+        return this.hash;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The IIF form of this line is computed once, when the line is
+     * created.</p>
+     */
+    @Override
+    public String toIifString() {
+        return this.iifString;
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2016 Red Bottle Design, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redbottledesign.accounting.quickbooks.models;
+
+import java.util.Objects;
+
+/**
+ * A transaction line whose values cannot be changed after it is created.
+ *
+ * <p>See {@link ImmutableDataLine} for how immutable lines are stored and
+ * shared.</p>
+ *
+ * <p>Because the IIF form is computed up front, a bill or invoice line
+ * without a due date or terms is rejected when it is built, rather than when
+ * it is exported.</p>
+ *
+ * <p>Instances are created by {@link DataLineBuilder#buildTransactionLine()}.</p>
+ *
+ * @author Guy Paddock (guy@redbottledesign.com)
+ */
+public final class ImmutableTransactionLine
+extends ImmutableDataLine
+implements TransactionLineView {
+    /**
+     * Whether or not the transaction is marked "To be printed".
+     */
+    private final BooleanValue needsToBePrinted;
+
+    /**
+     * The due date of a bill or invoice; or, {@code null}.
+     */
+    private final Date dueDate;
+
+    /**
+     * The payment terms of a bill or invoice; or, {@code null}.
+     */
+    private final PaymentTerms terms;
+
+    /**
+     * The hash code of this line.
+     */
+    private final int hash;
+
+    /**
+     * The IIF form of this line.
+     */
+    private final String iifString;
+
+    /**
+     * Constructor for {@code ImmutableTransactionLine}.
+     *
+     * @param   values
+     *          The values of the columns shared by all lines.
+     *
+     * @param   needsToBePrinted
+     *          Whether or not the transaction is marked "To be printed".
+     *
+     * @param   dueDate
+     *          The due date of a bill or invoice; or, {@code null}.
+     *
+     * @param   terms
+     *          The payment terms of a bill or invoice; or, {@code null}.
+     *
+     * @throws  IllegalArgumentException
+     *          If the to-print flag, due date, or terms are set on a type of
+     *          transaction that does not support them; or, if the line is for
+     *          a bill or invoice but has no due date or terms.
+     */
+    ImmutableTransactionLine(final LineValues values, final BooleanValue needsToBePrinted,
+                             final Date dueDate, final PaymentTerms terms)
+    throws IllegalArgumentException {
+        super(values);
+
+        if ((needsToBePrinted != BooleanValue.EMPTY) && !TransactionLine.isPrintableType(values.type)) {
+            throw new IllegalArgumentException(
+                String.format(
+                    "Whether or not a transaction needs printing can only be set on a check, " +
+                    "invoice, credit memo, or sales receipt transaction (the type is `%s`).",
+                    values.type));
+        }
+
+        if (((dueDate != null) || (terms != null)) && !TransactionLine.isReceivableType(values.type)) {
+            throw new IllegalArgumentException(
+                "A due date and payment terms can only be set on an invoice or bill transaction.");
+        }
+
+        this.needsToBePrinted   = needsToBePrinted;
+        this.dueDate            = dueDate;
+        this.terms              = terms;
+        this.hash               = Objects.hash(values, needsToBePrinted, dueDate, terms);
+        this.iifString          = TransactionLine.exportTransactionColumns(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BooleanValue needsToBePrinted() {
+        return this.needsToBePrinted;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PaymentTerms getTerms() {
+        return this.terms;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Date getDueDate() {
+        return this.dueDate;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return {@code "TRNS"}, always.
+     */
+    @Override
+    public String getLineType() {
+        return "TRNS";
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return  A new {@link TransactionLine}, including the {@code TRNS}-only
+     *          columns of this line.
+     */
+    @Override
+    public DataLine toDataLine() {
+        final TransactionLine result = new TransactionLine();
+
+        this.copyValuesTo(result);
+
+        if (this.needsToBePrinted != BooleanValue.EMPTY) {
+            result.setNeedsToBePrinted(this.needsToBePrinted);
+        }
+
+        if (this.dueDate != null) {
+            result.setDueDate(this.dueDate);
+        }
+
+        if (this.terms != null) {
+            result.setTerms(this.terms);
+        }
+
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Two immutable transaction lines are equal if all of their columns
+     * are equal.</p>
+     */
+    @Override
+    public boolean equals(final Object other) {
+        final boolean result;
+
+        if (this == other) {
+            result = true;
+        }
+        else if (other instanceof ImmutableTransactionLine) {
+            final ImmutableTransactionLine that = (ImmutableTransactionLine)other;
+
+            result =
+                (this.hash == that.hash) &&
+                this.getValues().equals(that.getValues()) &&
+                Objects.equals(this.needsToBePrinted, that.needsToBePrinted) &&
+                Objects.equals(this.dueDate, that.dueDate) &&
+                Objects.equals(this.terms, that.terms);
+        }
+        else {
+            result = false;
+        }
+
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The hash code is computed once, when the line is created.</p>
+     */
+    @Override
+    public int hashCode() {
+        return this.hash;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The IIF form of this line is computed once, when the line is
+     * created.</p>
+     */
+    @Override
+    public String toIifString() {
+        return this.iifString;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2016 Red Bottle Design, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redbottledesign.accounting.quickbooks.models;
+
+import java.util.Objects;
+
+/**
+ * The values of the columns shared by every kind of data line, held in final
+ * fields.
+ *
+ * <p>This is the storage behind {@link ImmutableTransactionLine} and
+ * {@link ImmutableSplitLine}. Instances are created by
+ * {@link DataLineBuilder}.</p>
+ *
+ * @author Guy Paddock (guy@redbottledesign.com)
+ */
+final class LineValues {
+    /**
+     * The value of each column. See {@link DataLine} for the meaning of
+     * each.
+     */
+    final DocNumber     docNumber;
+    final TxnIdentifier id;
+    final TxnType       type;
+    final Date          date;
+    final Account       account;
+    final Name          name;
+    final TxnClass      txnClass;
+    final Amount        amount;
+    final PaymentMethod paymentMethod;
+    final Memo          memo;
+
+    /**
+     * Constructor for {@code LineValues}.
+     *
+     * @param   builder
+     *          The builder whose current values are copied.
+     */
+    LineValues(final DataLineBuilder builder) {
+        this.docNumber      = builder.getDocNumber();
+        this.id             = builder.getId();
+        this.type           = builder.getType();
+        this.date           = builder.getDate();
+        this.account        = builder.getAccount();
+        this.name           = builder.getName();
+        this.txnClass       = builder.getTxnClass();
+        this.amount         = builder.getAmount();
+        this.paymentMethod  = builder.getPaymentMethod();
+        this.memo           = builder.getMemo();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Two sets of values are equal if every column is equal.</p>
+     */
+    @Override
+    public boolean equals(final Object other) {
+        final boolean result;
+
+        if (this == other) {
+            result = true;
+        }
+        else if (other instanceof LineValues) {
+            final LineValues that = (LineValues)other;
+
+            result =
+                Objects.equals(this.docNumber,      that.docNumber) &&
+                Objects.equals(this.id,             that.id) &&
+                Objects.equals(this.type,           that.type) &&
+                Objects.equals(this.date,           that.date) &&
+                Objects.equals(this.account,        that.account) &&
+                Objects.equals(this.name,           that.name) &&
+                Objects.equals(this.txnClass,       that.txnClass) &&
+                Objects.equals(this.amount,         that.amount) &&
+                Objects.equals(this.paymentMethod,  that.paymentMethod) &&
+                Objects.equals(this.memo,           that.memo);
+        }
+        else {
+            result = false;
+        }
+
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The hash code is based on the hash codes of all columns.</p>
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hash(
+            this.docNumber,
+            this.id,
+            this.type,
+            this.date,
+            this.account,
+            this.name,
+            this.txnClass,
+            this.amount,
+            this.paymentMethod,
+            this.memo);
+    }
+}
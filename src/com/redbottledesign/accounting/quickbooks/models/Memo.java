@@ -29,6 +29,31 @@ extends StringValue {
      */
     public static final Memo EMPTY = new Memo();
 
+    /**
+     * The pool of canonical {@code Memo} instances.
+     *
+     * <p>Values are held weakly, since there can be a large number of distinct
+     * values over the life of an application.</p>
+     */
+    private static final StringValuePool<Memo> POOL =
+        new StringValuePool<>(Memo::new, StringValuePool.DEFAULT_MAX_SIZE, true);
+
+    /**
+     * Gets the shared {@code Memo} instance that wraps the specified
+     * memo, creating it if necessary.
+     *
+     * <p>Repeated calls with the same value return the same instance, as long
+     * as the pool has room for it.</p>
+     *
+     * @param   value
+     *          The memo text to wrap.
+     *
+     * @return  The canonical {@code Memo} for {@code value}.
+     */
+    public static Memo of(final String value) {
+        return POOL.intern(value);
+    }
+
     /**
      * Constructor for a {@code Memo} to wrap the specified text.
      *
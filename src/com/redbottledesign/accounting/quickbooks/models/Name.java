@@ -30,6 +30,31 @@ extends StringValue {
      */
     public static final Name EMPTY = new Name();
 
+    /**
+     * The pool of canonical {@code Name} instances.
+     *
+     * <p>Values are held weakly, since there can be a large number of distinct
+     * values over the life of an application.</p>
+     */
+    private static final StringValuePool<Name> POOL =
+        new StringValuePool<>(Name::new, StringValuePool.DEFAULT_MAX_SIZE, true);
+
+    /**
+     * Gets the shared {@code Name} instance that wraps the specified
+     * name, creating it if necessary.
+     *
+     * <p>Repeated calls with the same value return the same instance, as long
+     * as the pool has room for it.</p>
+     *
+     * @param   value
+     *          The name to wrap.
+     *
+     * @return  The canonical {@code Name} for {@code value}.
+     */
+    public static Name of(final String value) {
+        return POOL.intern(value);
+    }
+
     /**
      * Constructor for a {@code Name} to wrap the specified name.
      *
@@ -86,6 +86,41 @@ extends StringValue {
      */
     public static final PaymentMethod GIFT_CARD = new PaymentMethod("Gift Card");
 
+    /**
+     * The pool of canonical {@code PaymentMethod} instances.
+     */
+    private static final StringValuePool<PaymentMethod> POOL = new StringValuePool<>(PaymentMethod::new);
+
+    static {
+        POOL.register(CASH);
+        POOL.register(CHECK);
+        POOL.register(E_CHECK);
+        POOL.register(ACH_TRANSFER);
+        POOL.register(WIRE_TRANSFER);
+        POOL.register(AMEX);
+        POOL.register(DISCOVER);
+        POOL.register(MASTERCARD);
+        POOL.register(VISA);
+        POOL.register(DEBIT_CARD);
+        POOL.register(GIFT_CARD);
+    }
+
+    /**
+     * Gets the shared {@code PaymentMethod} instance that wraps the specified
+     * payment method, creating it if necessary.
+     *
+     * <p>Repeated calls with the same value return the same instance, as long
+     * as the pool has room for it.</p>
+     *
+     * @param   value
+     *          The payment method to wrap.
+     *
+     * @return  The canonical {@code PaymentMethod} for {@code value}.
+     */
+    public static PaymentMethod of(final String value) {
+        return POOL.intern(value);
+    }
+
     /**
      * Constructor for a {@code PaymentMethod} to wrap the specified payment method.
      *
@@ -19,6 +19,9 @@ package com.redbottledesign.accounting.quickbooks.models;
 import com.redbottledesign.accounting.quickbooks.iif.IifExportable;
 import com.redbottledesign.accounting.quickbooks.util.IifUtils;
 
+import java.io.IOException;
+import java.io.OutputStream;
+
 /**
  * Parent class for values that are represented internally as a {@link String}.
  *
@@ -35,6 +38,17 @@ implements IifExportable, Comparable<StringValue> {
      */
     public static final StringValue EMPTY = new StringValue("", true);
 
+    /**
+     * The escaped form of the value, computed on first export.
+     */
+    private volatile String iifString;
+
+    /**
+     * The escaped form of the value, encoded in {@link IifUtils#IIF_CHARSET},
+     * computed on first export.
+     */
+    private volatile byte[] iifBytes;
+
     /**
      * Constructor for {@code StringValue} that populates the new instance from
      * the provided {@link String}.
@@ -69,11 +83,48 @@ implements IifExportable, Comparable<StringValue> {
      *
      * <p>The string value is automatically escaped and wrapped in quotes.</p>
      *
+     * <p>The escaped value is computed once and then retained, since the same
+     * instance is typically exported many times.</p>
+     *
      * @return  The value of this object, in a format acceptable for IIF.
      */
     @Override
     public String toIifString() {
-        return IifUtils.escapeColumn(this.getValue());
+        String result = this.iifString;
+
+        if (result == null) {
+            result = IifUtils.escapeColumn(this.getValue());
+
+            this.iifString = result;
+        }
+
+        return result;
+    }
+
+    /**
+     * Writes the IIF representation of this value to the given stream, encoded
+     * in {@link IifUtils#IIF_CHARSET}.
+     *
+     * <p>The encoded bytes are computed once and then retained, so repeated
+     * writes of the same instance are a bulk copy.</p>
+     *
+     * @param   output
+     *          The stream to write to.
+     *
+     * @throws  IOException
+     *          If the stream cannot be written.
+     */
+    public void writeIifTo(final OutputStream output)
+    throws IOException {
+        byte[] bytes = this.iifBytes;
+
+        if (bytes == null) {
+            bytes = this.toIifString().getBytes(IifUtils.IIF_CHARSET);
+
+            this.iifBytes = bytes;
+        }
+
+        output.write(bytes);
     }
 
     /**
@@ -99,6 +150,19 @@ implements IifExportable, Comparable<StringValue> {
         return result;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Any previously-computed IIF representation is discarded.</p>
+     */
+    @Override
+    protected void setValue(final String value) {
+        super.setValue(value);
+
+        this.iifString  = null;
+        this.iifBytes   = null;
+    }
+
     @Override
     protected boolean isValueEmpty(final String value) {
         return value.isEmpty();
@@ -0,0 +1,317 @@
+/*
+ * Copyright (C) 2016 Red Bottle Design, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redbottledesign.accounting.quickbooks.models;
+
+import com.redbottledesign.util.Argument;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * A bounded, thread-safe pool of canonical {@link StringValue} instances.
+ *
+ * <p>Interning lets identical values (e.g. the same {@link Account} used on
+ * millions of lines) share a single instance. Comparisons between interned
+ * values short-circuit on identity in {@link AbstractValue#equals(Object)}.</p>
+ *
+ * <p>The pool never evicts strongly-held values. Once it reaches its maximum
+ * size, values that are not already pooled are simply returned as new,
+ * un-pooled instances. Weakly-held values are released once nothing else
+ * references them, which frees up room in the pool.</p>
+ *
+ * @param   <V>
+ *          The type of value held in the pool.
+ *
+ * @author Guy Paddock (guy@redbottledesign.com)
+ */
+public class StringValuePool<V extends StringValue> {
+    /**
+     * The default maximum number of values held in a pool.
+     */
+    public static final int DEFAULT_MAX_SIZE = 65536;
+
+    /**
+     * The function used to create new values on a pool miss.
+     */
+    private final Function<String, V> factory;
+
+    /**
+     * The maximum number of values held in this pool.
+     */
+    private final int maxSize;
+
+    /**
+     * Whether or not values are held via weak references.
+     */
+    private final boolean isWeak;
+
+    /**
+     * The canonical values, keyed by the string they wrap.
+     *
+     * <p>Each entry is either a {@code V} (for strong pools) or a
+     * {@link KeyedReference} to a {@code V} (for weak pools).</p>
+     */
+    private final ConcurrentMap<String, Object> values;
+
+    /**
+     * The queue of weak references that have been cleared by the garbage
+     * collector, and should be purged from {@link #values}.
+     */
+    private final ReferenceQueue<V> clearedReferences;
+
+    /**
+     * Constructor for {@code StringValuePool} that holds up to
+     * {@link #DEFAULT_MAX_SIZE} values strongly.
+     *
+     * @param   factory
+     *          The function used to create new values on a pool miss (usually
+     *          a constructor reference).
+     */
+    public StringValuePool(final Function<String, V> factory) {
+        this(factory, DEFAULT_MAX_SIZE, false);
+    }
+
+    /**
+     * Constructor for {@code StringValuePool}.
+     *
+     * @param   factory
+     *          The function used to create new values on a pool miss (usually
+     *          a constructor reference).
+     *
+     * @param   maxSize
+     *          The maximum number of values to hold in the pool.
+     *
+     * @param   isWeak
+     *          {@code true} if values should be held only weakly, allowing
+     *          them to be garbage collected once no longer in use; or,
+     *          {@code false} if values should be held for the life of the
+     *          pool.
+     */
+    public StringValuePool(final Function<String, V> factory, final int maxSize,
+                           final boolean isWeak) {
+        Argument.ensureNotNull(factory, "factory");
+        Argument.ensureInRange(maxSize, 0, Integer.MAX_VALUE, "maxSize");
+
+        this.factory            = factory;
+        this.maxSize            = maxSize;
+        this.isWeak             = isWeak;
+        this.values             = new ConcurrentHashMap<>();
+        this.clearedReferences  = new ReferenceQueue<>();
+    }
+
+    /**
+     * Gets the canonical value that wraps the given string, creating and
+     * pooling one if necessary.
+     *
+     * @param   value
+     *          The string to wrap.
+     *
+     * @return  The canonical value, if the pool holds or has room for it;
+     *          otherwise, a new un-pooled value.
+     *
+     * @throws  IllegalArgumentException
+     *          If {@code value} is not acceptable to the pooled type (for
+     *          example, if it is {@code null} or empty).
+     */
+    public V intern(final String value)
+    throws IllegalArgumentException {
+        V result = this.lookup(value);
+
+        if (result == null) {
+            result = this.register(this.factory.apply(value));
+        }
+
+        return result;
+    }
+
+    /**
+     * Adds an existing value to the pool, unless an equal value is already
+     * pooled.
+     *
+     * <p>This is typically used to seed a pool with well-known constants.</p>
+     *
+     * @param   value
+     *          The value to add.
+     *
+     * @return  The canonical value, which is {@code value} itself unless an
+     *          equal value was already pooled, or the pool is full.
+     */
+    public V register(final V value) {
+        final String key = value.getValue();
+        V            result;
+
+        this.purgeClearedReferences();
+
+        result = this.lookup(key);
+
+        if ((result == null) && (this.values.size() < this.maxSize)) {
+            final Object    entry;
+            boolean         isSettled = false;
+
+            if (this.isWeak) {
+                entry = new KeyedReference<>(key, value, this.clearedReferences);
+            }
+            else {
+                entry = value;
+            }
+
+            while (!isSettled) {
+                final Object existing = this.values.putIfAbsent(key, entry);
+
+                if (existing == null) {
+                    isSettled = true;
+                }
+                else {
+                    result = this.dereference(existing);
+
+                    // If the existing value has since been collected, take its place. If another
+                    // thread replaced or removed it first, try again.
+                    isSettled = (result != null) || this.values.replace(key, existing, entry);
+                }
+            }
+        }
+
+        if (result == null) {
+            result = value;
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets the number of values currently in the pool.
+     *
+     * @return  The pool size.
+     */
+    public int size() {
+        this.purgeClearedReferences();
+
+        return this.values.size();
+    }
+
+    /**
+     * Removes all values from the pool.
+     *
+     * <p>Values previously returned by the pool remain valid, but will no
+     * longer be returned by future calls to {@link #intern(String)}.</p>
+     */
+    public void clear() {
+        this.values.clear();
+    }
+
+    /**
+     * Looks up the pooled value for the given string, if there is one.
+     *
+     * @param   key
+     *          The string to look up.
+     *
+     * @return  The pooled value; or, {@code null} if there is none.
+     */
+    protected V lookup(final String key) {
+        final V result;
+
+        if (key == null) {
+            result = null;
+        }
+        else {
+            result = this.dereference(this.values.get(key));
+        }
+
+        return result;
+    }
+
+    /**
+     * Resolves an entry of {@link #values} to the value it holds.
+     *
+     * @param   entry
+     *          The entry to resolve.
+     *
+     * @return  The value; or, {@code null} if the entry is {@code null} or
+     *          has been garbage collected.
+     */
+    @SuppressWarnings("unchecked")
+    protected V dereference(final Object entry) {
+        final V result;
+
+        if (entry instanceof KeyedReference) {
+            result = ((KeyedReference<V>)entry).get();
+        }
+        else {
+            result = (V)entry;
+        }
+
+        return result;
+    }
+
+    /**
+     * Removes entries for weakly-held values that have been garbage collected.
+     */
+    protected void purgeClearedReferences() {
+        Reference<? extends V> reference;
+
+        while ((reference = this.clearedReferences.poll()) != null) {
+            this.values.remove(((KeyedReference<?>)reference).getKey(), reference);
+        }
+    }
+
+    /**
+     * A weak reference that remembers the pool key it was stored under, so
+     * that it can be purged once cleared.
+     *
+     * @param   <V>
+     *          The type of value being referenced.
+     */
+    private static class KeyedReference<V>
+    extends WeakReference<V> {
+        /**
+         * The key under which this reference is pooled.
+         */
+        private final String key;
+
+        /**
+         * Constructor for {@code KeyedReference}.
+         *
+         * @param   key
+         *          The key under which the reference is pooled.
+         *
+         * @param   referent
+         *          The value being referenced.
+         *
+         * @param   queue
+         *          The queue to notify once the value has been collected.
+         */
+        KeyedReference(final String key, final V referent,
+                       final ReferenceQueue<? super V> queue) {
+            super(referent, queue);
+
+            this.key = key;
+        }
+
+        /**
+         * Gets the key under which this reference is pooled.
+         *
+         * @return  The pool key.
+         */
+        String getKey() {
+            return this.key;
+        }
+    }
+}
@@ -19,21 +19,29 @@ package com.redbottledesign.accounting.quickbooks.models;
 import com.redbottledesign.accounting.TransactionEffect;
 import com.redbottledesign.accounting.quickbooks.exception.OutOfBalanceException;
 import com.redbottledesign.accounting.quickbooks.iif.CompositeExportable;
+import com.redbottledesign.accounting.quickbooks.iif.IifExecutionPolicy;
 import com.redbottledesign.accounting.quickbooks.iif.IifExportable;
 import com.redbottledesign.accounting.quickbooks.iif.TransactionTerminationLine;
+import com.redbottledesign.util.Argument;
 
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.math.BigDecimal;
+import java.util.AbstractList;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * A QuickBooks transaction.
  *
+ * <p>A transaction can be {@linkplain #freeze() frozen} once it is complete.
+ * A frozen transaction can no longer be changed, so it can be shared (e.g. by
+ * {@link com.redbottledesign.accounting.quickbooks.iif.IifFile}) without
+ * being copied.</p>
+ *
  * @author Guy Paddock (guy@redbottledesign.com)
  */
 public class Transaction
@@ -42,7 +50,29 @@ implements Cloneable {
     /**
      * The lines in this transaction.
      */
-    private List<DataLine> lines;
+    private List<DataLineView> lines;
+
+    /**
+     * The running total of all debit lines in this transaction.
+     */
+    private AmountTotal debitTotal;
+
+    /**
+     * The running total of all credit lines in this transaction, as a positive
+     * number.
+     */
+    private AmountTotal creditTotal;
+
+    /**
+     * Whether or not this transaction has been verified to be in balance since
+     * its lines were last changed.
+     */
+    private boolean isValidated;
+
+    /**
+     * Whether or not this transaction can no longer be changed.
+     */
+    private boolean isFrozen;
 
     /**
      * Default constructor for {@code Transaction}.
@@ -51,55 +81,177 @@ implements Cloneable {
         this(Collections.emptyList());
     }
 
+    /**
+     * Constructor for an empty {@code Transaction} that has room for the given
+     * number of lines before it needs to grow.
+     *
+     * <p>This avoids re-allocating the list of lines when the number of lines
+     * is known up front, such as in a builder.</p>
+     *
+     * @param   lineCapacity
+     *          The expected number of lines.
+     */
+    public Transaction(final int lineCapacity) {
+        Argument.ensureInRange(lineCapacity, 0, Integer.MAX_VALUE, "lineCapacity");
+
+        this.lines = new ArrayList<>(lineCapacity);
+
+        this.recalculateTotals();
+    }
+
     /**
      * Constructor that initializes a new {@code Transaction} to contain the
      * given list of transaction lines.
      *
-     * <p>Each line of the list is cloned and added into a new list.</p>
+     * <p>Each line of the list is {@linkplain #copyLine(DataLineView) copied}
+     * into a new list. Long lists are copied according to the
+     * {@linkplain IifExecutionPolicy#getDefault() default execution
+     * policy}.</p>
      *
      * @param   lines
      *          The lines from which to populate the new transaction.
      */
-    public Transaction(List<DataLine> lines) {
+    public Transaction(List<? extends DataLineView> lines) {
         this.setLines(lines);
     }
 
     /**
-     * Gets an immutable view of the lines in this transaction.
+     * Gets an immutable view of the lines in this transaction, as
+     * {@link DataLine} instances.
+     *
+     * <p>The lines themselves must be treated as read-only. Changes made to
+     * them directly are not reflected in the totals of this transaction.</p>
+     *
+     * <p>{@linkplain ImmutableDataLine Immutable lines} are not
+     * {@code DataLine}s, so each time one of them is retrieved through this
+     * view, a new {@linkplain ImmutableDataLine#toDataLine() copy} of it is
+     * returned. Code that only reads lines should use
+     * {@link #getLineViews()} instead, which returns every line as-is.</p>
      *
      * @return  The lines in this transaction.
      */
     public List<DataLine> getLines() {
-        return Collections.unmodifiableList(lines);
+        final List<DataLineView> lineViews = this.getLineViews();
+
+        return new AbstractList<DataLine>() {
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public DataLine get(final int index) {
+                final DataLineView  line = lineViews.get(index);
+                final DataLine      result;
+
+                if (line instanceof DataLine) {
+                    result = (DataLine)line;
+                }
+                else {
+                    // Lines are only ever stored as DataLine or ImmutableDataLine; see copyLine().
+                    result = ((ImmutableDataLine)line).toDataLine();
+                }
+
+                return result;
+            }
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public int size() {
+                return lineViews.size();
+            }
+        };
+    }
+
+    /**
+     * Gets an immutable view of the lines in this transaction, exactly as they
+     * are stored.
+     *
+     * <p>The lines themselves must be treated as read-only. Changes made to
+     * them directly are not reflected in the totals of this transaction.</p>
+     *
+     * @return  The lines in this transaction.
+     */
+    public List<DataLineView> getLineViews() {
+        return Collections.unmodifiableList(this.lines);
     }
 
     /**
      * Sets the lines in this transaction.
      *
-     * <p>Each line of the list is cloned and added into a new list.</p>
+     * <p>Each line of the list is {@linkplain #copyLine(DataLineView) copied}
+     * into a new list. Long lists are copied according to the
+     * {@linkplain IifExecutionPolicy#getDefault() default execution
+     * policy}.</p>
      *
      * @param   lines
      *          The new list of lines.
+     *
+     * @throws  IllegalStateException
+     *          If this transaction has been frozen.
      */
-    protected void setLines(final List<DataLine> lines) {
-        this.lines =
-            lines.parallelStream()
-                .map(DataLine::clone)
-                .collect(Collectors.toCollection(LinkedList::new));
+    protected void setLines(final List<? extends DataLineView> lines)
+    throws IllegalStateException {
+        this.ensureNotFrozen();
+
+        this.lines = IifExecutionPolicy.getDefault().map(lines, Transaction::copyLine);
+
+        this.recalculateTotals();
     }
 
     /**
      * Adds the specified line to this transaction.
      *
-     * <p>The line is cloned in the process. Consequently, any changes made to
-     * the line should not have an impact on the information this object
-     * exports.</p>
+     * <p>The line is {@linkplain #copyLine(DataLineView) copied} in the
+     * process. Consequently, any changes made to the line should not have an
+     * impact on the information this object exports.</p>
      *
      * @param   line
-     *          The line to clone and add to this transaction.
+     *          The line to copy and add to this transaction.
+     *
+     * @throws  IllegalStateException
+     *          If this transaction has been frozen.
+     */
+    public void addLine(final DataLineView line)
+    throws IllegalStateException {
+        final DataLineView newLine;
+
+        this.ensureNotFrozen();
+
+        newLine = copyLine(line);
+
+        this.lines.add(newLine);
+        this.addToTotals(newLine);
+
+        this.isValidated = false;
+    }
+
+    /**
+     * Prevents any further changes to this transaction.
+     *
+     * <p>Once frozen, a transaction can be shared rather than copied. The
+     * lines of a frozen transaction must not be modified through
+     * {@link #getLines()}. Freezing a transaction that is already frozen has
+     * no effect. A {@linkplain #clone() clone} of a frozen transaction is not
+     * frozen.</p>
+     *
+     * @return  This transaction, for chaining.
      */
-    public void addLine(final DataLine line) {
-        this.lines.add(line.clone());
+    public Transaction freeze() {
+        this.isFrozen = true;
+
+        return this;
+    }
+
+    /**
+     * Indicates whether or not this transaction has been frozen, and can no
+     * longer be changed.
+     *
+     * @return  {@code true} if the transaction is frozen; or, {@code false}
+     *          otherwise.
+     */
+    public boolean isFrozen() {
+        return this.isFrozen;
     }
 
     /**
@@ -108,24 +260,47 @@ implements Cloneable {
      * <p>A transaction is in balance only if both the totals of debits and the
      * total of credits in the transaction are equal.</p>
      *
+     * <p>The totals are maintained as lines are added, so this does not need to
+     * visit each line.</p>
+     *
      * @return  {@code true} if the transaction is in balance; otherwise,
      *          {@code false}.
      */
     public boolean isInBalance() {
-        return (this.calculateBalanceDiscrepancy().signum() == 0);
+        return this.debitTotal.isEqualTo(this.creditTotal);
+    }
+
+    /**
+     * Indicates whether or not this transaction has been verified to be in
+     * balance by {@link #ensureIsInBalance()}, since its lines were last
+     * changed.
+     *
+     * @return  {@code true} if the transaction has been validated; or,
+     *          {@code false} otherwise.
+     */
+    public boolean isValidated() {
+        return this.isValidated;
     }
 
     /**
      * Checks whether or not this transaction is considered to be in balance,
      * and raises an appropriate exception if it is not.
      *
+     * <p>Once a transaction has passed this check, it is not repeated until
+     * the lines of the transaction change.</p>
+     *
      * @see     #isInBalance()
+     * @see     #isValidated()
      *
      * @throws  OutOfBalanceException
      *          If the transaction is not in balance.
      */
     public void ensureIsInBalance()
     throws OutOfBalanceException {
+        if (this.isValidated()) {
+            return;
+        }
+
         if (!this.isInBalance()) {
             throw new OutOfBalanceException(
                 String.format(
@@ -136,6 +311,8 @@ implements Cloneable {
                     this.calculateBalanceDiscrepancy(),
                     this.asHumanReadableReport()));
         }
+
+        this.isValidated = true;
     }
 
     /**
@@ -197,7 +374,7 @@ implements Cloneable {
 
             printWriter.printf(rowFormat, "Account", "Debits", "Credits");
 
-            for (DataLine line : this.getLines()) {
+            for (DataLineView line : this.getLineViews()) {
                 Account     account     = line.getAccount();
                 BigDecimal  lineValue   = line.getAmount().getValue();
 
@@ -224,23 +401,42 @@ implements Cloneable {
     }
 
     /**
-     * Creates a shallow copy of this {@code Transaction}.
+     * Creates a deep copy of this {@code Transaction}.
+     *
+     * <p>The copy has its own list of lines, its own copy of each line, and
+     * its own totals, so changes to the copy do not affect this instance. The
+     * values within each line are immutable, and so are shared, as are
+     * {@linkplain ImmutableDataLine immutable lines}. The copy is never
+     * frozen, even if this transaction is.</p>
      *
-     * @return  A new {@code Transaction}, having all of the same field values
-     *          and references as this instance.
+     * @return  A new {@code Transaction}, having copies of all of the same
+     *          lines as this instance.
      */
     @Override
     public Transaction clone() {
+        final Transaction result;
+
         try {
-            return (Transaction)super.clone();
+            result = (Transaction)super.clone();
         } catch (CloneNotSupportedException ex) {
             throw new RuntimeException(ex);
         }
+
+        result.lines        = new ArrayList<>(this.lines.size());
+        result.debitTotal   = new AmountTotal(this.debitTotal);
+        result.creditTotal  = new AmountTotal(this.creditTotal);
+        result.isFrozen     = false;
+
+        for (DataLineView line : this.lines) {
+            result.lines.add(copyLine(line));
+        }
+
+        return result;
     }
 
     /**
-     * Calculates the sum total of all lines in this transaction of the
-     * specified type.
+     * Gets the sum total of all lines in this transaction of the specified
+     * type.
      *
      * @param   type
      *          The type of transaction lines to include in the sum.
@@ -249,16 +445,116 @@ implements Cloneable {
      *          (This is always a positive number, or zero).
      */
     protected BigDecimal calculateTotal(TransactionEffect type) {
-        BigDecimal sum;
+        final BigDecimal result;
+
+        switch (type) {
+            case DEBIT:
+                result = this.debitTotal.toBigDecimal();
+                break;
+
+            case CREDIT:
+                result = this.creditTotal.toBigDecimal();
+                break;
+
+            default:
+                result = BigDecimal.ZERO;
+                break;
+        }
+
+        return result;
+    }
+
+    /**
+     * Recalculates the debit and credit totals of this transaction from
+     * scratch.
+     *
+     * <p>This must be called whenever the list of lines is replaced.</p>
+     */
+    protected void recalculateTotals() {
+        this.debitTotal     = new AmountTotal();
+        this.creditTotal    = new AmountTotal();
+        this.isValidated    = false;
+
+        for (DataLineView line : this.lines) {
+            this.addToTotals(line);
+        }
+    }
+
+    /**
+     * Adds the amount of the given line to either the debit or credit total of
+     * this transaction, depending on its sign.
+     *
+     * @param   line
+     *          The line being added to this transaction.
+     */
+    protected void addToTotals(final DataLineView line) {
+        final Amount amount = line.getAmount();
+
+        Argument.ensureNotNull(amount, "amount");
+
+        if (amount.signum() > 0) {
+            this.debitTotal.add(amount);
+        }
+        else if (amount.signum() < 0) {
+            this.creditTotal.subtract(amount);
+        }
+    }
+
+    /**
+     * Copies a line so that it can be held by a transaction.
+     *
+     * <p>An {@linkplain ImmutableDataLine immutable line} cannot change, so it
+     * is shared rather than copied. A {@link DataLine} is cloned. Any other
+     * view of a line is copied into a new immutable line; its
+     * {@code TRNS}-only columns are copied if it is a
+     * {@link TransactionLineView}.</p>
+     *
+     * @param   line
+     *          The line to copy.
+     *
+     * @return  The copy of the line; or, the line itself, if it is immutable.
+     *
+     * @throws  IllegalArgumentException
+     *          If the line is not a {@code DataLine} and lacks a type, date,
+     *          account, or amount.
+     */
+    protected static DataLineView copyLine(final DataLineView line)
+    throws IllegalArgumentException {
+        final DataLineView result;
+
+        Argument.ensureNotNull(line, "line");
+
+        if (line instanceof ImmutableDataLine) {
+            result = line;
+        }
+        else if (line instanceof DataLine) {
+            result = ((DataLine)line).clone();
+        }
+        else {
+            final DataLineBuilder builder = new DataLineBuilder().from(line);
 
-        sum = this.getLines()
-            .parallelStream()
-            .map(line -> line.getAmount().getValue())
-            .filter(amount -> amount.signum() == type.getSignNumber())
-            .reduce(BigDecimal.ZERO, BigDecimal::add)
-            .abs();
+            if ("TRNS".equals(line.getLineType())) {
+                result = builder.buildTransactionLine();
+            }
+            else {
+                result = builder.buildSplitLine();
+            }
+        }
 
-        return sum;
+        return result;
+    }
+
+    /**
+     * Ensures that this transaction has not been frozen.
+     *
+     * @throws  IllegalStateException
+     *          If this transaction has been frozen.
+     */
+    protected void ensureNotFrozen()
+    throws IllegalStateException {
+        if (this.isFrozen()) {
+            throw new IllegalStateException("This transaction is frozen and cannot be changed.");
+        }
     }
 
     /**
@@ -279,7 +575,7 @@ implements Cloneable {
 
         this.ensureIsInBalance();
 
-        result = new LinkedList<>(this.getLines());
+        result = new LinkedList<>(this.getLineViews());
 
         result.add(new TransactionTerminationLine());
 
@@ -29,7 +29,8 @@ import java.util.function.Supplier;
  * @author Guy Paddock (guy@redbottledesign.com)
  */
 public class TransactionLine
-extends DataLine {
+extends DataLine
+implements TransactionLineView {
     private static final EnumSet<TxnType> PRINTABLE_TYPES =
         EnumSet.of(
             TxnType.BILL,
@@ -189,6 +190,20 @@ extends DataLine {
         this.dueDate = dueDate;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The to-print flag, due date, and terms are cleared as well.</p>
+     */
+    @Override
+    public void clear() {
+        super.clear();
+
+        this.needsToBePrinted   = null;
+        this.dueDate            = null;
+        this.terms              = null;
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -209,39 +224,7 @@ extends DataLine {
      */
     @Override
     public String toIifString() {
-        final IifExportable[]   columns;
-        final IifExportable     dueDate,
-                                terms;
-
-        dueDate =
-            this.conditionalDefault(
-                this::getDueDate,
-                () -> !this.isReceivable(),
-                StringValue.EMPTY);
-
-        terms =
-            this.conditionalDefault(
-                this::getTerms,
-                () -> !this.isReceivable(),
-                StringValue.EMPTY);
-
-        columns = new IifExportable[] {
-            this.getDocNumber(),        // 1
-            this.getId(),               // 2
-            this.getType(),             // 3
-            this.getDate(),             // 4
-            this.getAccount(),          // 5
-            this.getName(),             // 6
-            this.getTxnClass(),         // 7
-            this.getAmount(),           // 8
-            this.getPaymentMethod(),    // 9
-            this.needsToBePrinted(),    // 10
-            dueDate,                    // 11
-            terms,                      // 12
-            this.getMemo(),             // 13
-        };
-
-        return IifUtils.exportToString(new String[] { this.getLineType() }, columns);
+        return exportTransactionColumns(this);
     }
 
     /**
@@ -286,7 +269,7 @@ extends DataLine {
      *          or, {@code false} otherwise.
      */
     protected boolean isPrintable() {
-        return PRINTABLE_TYPES.contains(this.getType());
+        return isPrintableType(this.getType());
     }
 
     /**
@@ -297,6 +280,80 @@ extends DataLine {
      *          or, {@code false} otherwise.
      */
     protected boolean isReceivable() {
-        return RECEIVABLE_TYPES.contains(this.getType());
+        return isReceivableType(this.getType());
+    }
+
+    /**
+     * Indicates whether or not the given type of transaction is a receivable
+     * (either an invoice or a vendor bill).
+     *
+     * <p>The transaction line of a receivable must have a due date and terms
+     * in order to be exported.</p>
+     *
+     * @param   type
+     *          The type of transaction.
+     *
+     * @return  {@code true} if the type is a receivable; or, {@code false}
+     *          otherwise.
+     */
+    public static boolean isReceivableType(final TxnType type) {
+        return RECEIVABLE_TYPES.contains(type);
+    }
+
+    /**
+     * Indicates whether or not the given type of transaction is one that must
+     * typically be printed (check, invoice, credit memo, or receipt).
+     *
+     * @param   type
+     *          The type of transaction.
+     *
+     * @return  {@code true} if the type is a printable instrument; or,
+     *          {@code false} otherwise.
+     */
+    public static boolean isPrintableType(final TxnType type) {
+        return PRINTABLE_TYPES.contains(type);
+    }
+
+    /**
+     * Exports all of the columns of the given transaction line into a
+     * tab-separated IIF line.
+     *
+     * <p>The due date and terms are left blank on any type of transaction
+     * other than a receivable.</p>
+     *
+     * @param   line
+     *          The line to export.
+     *
+     * @return  A representation of the data in the line, in IIF format.
+     */
+    static String exportTransactionColumns(final TransactionLineView line) {
+        final boolean           isReceivable = isReceivableType(line.getType());
+        final IifExportable[]   columns;
+        final IifExportable     dueDate,
+                                terms;
+
+        dueDate =
+            ((line.getDueDate() == null) && !isReceivable) ? StringValue.EMPTY : line.getDueDate();
+
+        terms =
+            ((line.getTerms() == null) && !isReceivable) ? StringValue.EMPTY : line.getTerms();
+
+        columns = new IifExportable[] {
+            line.getDocNumber(),        // 1
+            line.getId(),               // 2
+            line.getType(),             // 3
+            line.getDate(),             // 4
+            line.getAccount(),          // 5
+            line.getName(),             // 6
+            line.getTxnClass(),         // 7
+            line.getAmount(),           // 8
+            line.getPaymentMethod(),    // 9
+            line.needsToBePrinted(),    // 10
+            dueDate,                    // 11
+            terms,                      // 12
+            line.getMemo(),             // 13
+        };
+
+        return IifUtils.exportToString(new String[] { line.getLineType() }, columns);
     }
 }
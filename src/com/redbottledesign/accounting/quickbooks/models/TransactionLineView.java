@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2016 Red Bottle Design, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redbottledesign.accounting.quickbooks.models;
+
+/**
+ * The read-only view of the first line of a {@link Transaction}, which
+ * carries a few columns that split lines do not.
+ *
+ * <p>This is implemented both by {@link TransactionLine} and by
+ * {@link ImmutableTransactionLine}.</p>
+ *
+ * @author Guy Paddock (guy@redbottledesign.com)
+ */
+public interface TransactionLineView
+extends DataLineView {
+    /**
+     * Gets whether a check, invoice, credit memo, or sales receipt has been
+     * marked as "To be printed." or whether a vendor bill has been received.
+     *
+     * @return  {@link BooleanValue#TRUE} if it needs to be printed;
+     *          {@link BooleanValue#FALSE} if it does not; or,
+     *          {@link BooleanValue#EMPTY} if this does not apply.
+     */
+    BooleanValue needsToBePrinted();
+
+    /**
+     * Gets the payment terms for a bill or invoice transaction.
+     *
+     * @return  The payment terms; or, {@code null}.
+     */
+    PaymentTerms getTerms();
+
+    /**
+     * Gets the due date for a bill or invoice transaction.
+     *
+     * @return  The due date; or, {@code null}.
+     */
+    Date getDueDate();
+}
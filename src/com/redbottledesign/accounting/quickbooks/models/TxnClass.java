@@ -32,6 +32,27 @@ extends StringValue {
      */
     public static final TxnClass EMPTY = new TxnClass();
 
+    /**
+     * The pool of canonical {@code TxnClass} instances.
+     */
+    private static final StringValuePool<TxnClass> POOL = new StringValuePool<>(TxnClass::new);
+
+    /**
+     * Gets the shared {@code TxnClass} instance that wraps the specified
+     * class, creating it if necessary.
+     *
+     * <p>Repeated calls with the same value return the same instance, as long
+     * as the pool has room for it.</p>
+     *
+     * @param   value
+     *          The class to wrap.
+     *
+     * @return  The canonical {@code TxnClass} for {@code value}.
+     */
+    public static TxnClass of(final String value) {
+        return POOL.intern(value);
+    }
+
     /**
      * Constructor for a {@code TxnClass} to wrap the specified class.
      *
@@ -0,0 +1,310 @@
+/*
+ * Copyright (C) 2016 Red Bottle Design, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redbottledesign.accounting.quickbooks.pipeline;
+
+import com.redbottledesign.util.Argument;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A record source that reads the rows of a CSV feed, such as an export from a
+ * bank or payment processor.
+ *
+ * <p>Each record is the array of fields in one row. Fields can be wrapped in
+ * double quotes, in which case they can contain delimiters, line breaks, and
+ * doubled ({@code ""}) quotes. Rows can end with {@code \n}, {@code \r\n}, or
+ * {@code \r}. Blank lines are skipped.</p>
+ *
+ * <p>This class is not thread-safe.</p>
+ *
+ * @author Guy Paddock (guy@redbottledesign.com)
+ */
+public class CsvRecordSource
+implements RecordSource<String[]>, Closeable {
+    /**
+     * The default field delimiter.
+     */
+    public static final char DEFAULT_DELIMITER = ',';
+
+    /**
+     * The character used to quote fields.
+     */
+    private static final char QUOTE = '"';
+
+    /**
+     * The value returned by a {@link Reader} at the end of the stream.
+     */
+    private static final int END_OF_STREAM = -1;
+
+    private final Reader reader;
+    private final char delimiter;
+
+    /**
+     * The fields of the row being read; re-used from row to row.
+     */
+    private final List<String> fields;
+
+    /**
+     * The value of the field being read; re-used from field to field.
+     */
+    private final StringBuilder field;
+
+    /**
+     * A character that was read ahead but not consumed; or,
+     * {@link #END_OF_STREAM} if there is none.
+     */
+    private int pushedBack;
+
+    /**
+     * The number of records that have been read.
+     */
+    private long recordCount;
+
+    /**
+     * Constructor for {@code CsvRecordSource} that reads comma-separated
+     * values.
+     *
+     * @param   reader
+     *          The reader for the CSV feed.
+     */
+    public CsvRecordSource(final Reader reader) {
+        this(reader, DEFAULT_DELIMITER);
+    }
+
+    /**
+     * Constructor for {@code CsvRecordSource}.
+     *
+     * @param   reader
+     *          The reader for the CSV feed. It is buffered if it is not
+     *          already.
+     *
+     * @param   delimiter
+     *          The character that separates fields (e.g. {@code ','} or
+     *          {@code '\t'}).
+     */
+    public CsvRecordSource(final Reader reader, final char delimiter) {
+        Argument.ensureNotNull(reader, "reader");
+
+        if ((delimiter == QUOTE) || (delimiter == '\r') || (delimiter == '\n')) {
+            throw new IllegalArgumentException("The delimiter cannot be a quote or a line break.");
+        }
+
+        if (reader instanceof BufferedReader) {
+            this.reader = reader;
+        }
+        else {
+            this.reader = new BufferedReader(reader);
+        }
+
+        this.delimiter  = delimiter;
+        this.fields     = new ArrayList<>();
+        this.field      = new StringBuilder();
+        this.pushedBack = END_OF_STREAM;
+    }
+
+    /**
+     * Gets the number of records that have been read so far.
+     *
+     * @return  The record count.
+     */
+    public long getRecordCount() {
+        return this.recordCount;
+    }
+
+    /**
+     * Reads and returns the header row of the feed.
+     *
+     * <p>This must be called before any other records are read, and before
+     * the source is handed to a pipeline, if the feed has a header.</p>
+     *
+     * @return  The fields of the header row; or, {@code null} if the feed is
+     *          empty.
+     *
+     * @throws  IOException
+     *          If the feed cannot be read.
+     *
+     * @throws  IllegalStateException
+     *          If records have already been read.
+     */
+    public String[] readHeader()
+    throws IOException, IllegalStateException {
+        if (this.recordCount != 0) {
+            throw new IllegalStateException("The header must be read before any other records.");
+        }
+
+        return this.read();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws  IOException
+     *          If the feed cannot be read, or it ends inside a quoted
+     *          field.
+     */
+    @Override
+    public String[] read()
+    throws IOException {
+        String[]    result      = null;
+        boolean     isAtEnd     = false;
+
+        while ((result == null) && !isAtEnd) {
+            final int first = this.nextChar();
+
+            if (first == END_OF_STREAM) {
+                isAtEnd = true;
+            }
+            else if ((first == '\r') || (first == '\n')) {
+                // Skip blank lines.
+                this.skipLineFeedAfter(first);
+            }
+            else {
+                this.pushedBack = first;
+                result          = this.readRow();
+            }
+        }
+
+        if (result != null) {
+            ++this.recordCount;
+        }
+
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close()
+    throws IOException {
+        this.reader.close();
+    }
+
+    /**
+     * Reads the fields of a row, up to and including its line break.
+     *
+     * @return  The fields of the row.
+     *
+     * @throws  IOException
+     *          If the feed cannot be read, or it ends inside a quoted
+     *          field.
+     */
+    private String[] readRow()
+    throws IOException {
+        final List<String>  fields      = this.fields;
+        final StringBuilder field       = this.field;
+        boolean             isQuoted    = false,
+                            isRowEnd    = false;
+
+        fields.clear();
+        field.setLength(0);
+
+        while (!isRowEnd) {
+            final int character = this.nextChar();
+
+            if (isQuoted) {
+                if (character == END_OF_STREAM) {
+                    throw new IOException(
+                        String.format(
+                            "The feed ended inside a quoted field of record %d.",
+                            this.recordCount + 1));
+                }
+                else if (character == QUOTE) {
+                    final int next = this.nextChar();
+
+                    if (next == QUOTE) {
+                        field.append(QUOTE);
+                    }
+                    else {
+                        isQuoted        = false;
+                        this.pushedBack = next;
+                    }
+                }
+                else {
+                    field.append((char)character);
+                }
+            }
+            else if ((character == QUOTE) && (field.length() == 0)) {
+                isQuoted = true;
+            }
+            else if (character == this.delimiter) {
+                fields.add(field.toString());
+                field.setLength(0);
+            }
+            else if ((character == '\r') || (character == '\n') || (character == END_OF_STREAM)) {
+                this.skipLineFeedAfter(character);
+
+                fields.add(field.toString());
+
+                isRowEnd = true;
+            }
+            else {
+                field.append((char)character);
+            }
+        }
+
+        return fields.toArray(new String[fields.size()]);
+    }
+
+    /**
+     * Consumes the line feed of a {@code \r\n} line break.
+     *
+     * @param   character
+     *          The character that ended the line.
+     *
+     * @throws  IOException
+     *          If the feed cannot be read.
+     */
+    private void skipLineFeedAfter(final int character)
+    throws IOException {
+        if (character == '\r') {
+            final int next = this.nextChar();
+
+            if (next != '\n') {
+                this.pushedBack = next;
+            }
+        }
+    }
+
+    /**
+     * Reads the next character of the feed.
+     *
+     * @return  The next character; or, {@link #END_OF_STREAM}.
+     *
+     * @throws  IOException
+     *          If the feed cannot be read.
+     */
+    private int nextChar()
+    throws IOException {
+        final int result;
+
+        if (this.pushedBack != END_OF_STREAM) {
+            result          = this.pushedBack;
+            this.pushedBack = END_OF_STREAM;
+        }
+        else {
+            result = this.reader.read();
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2016 Red Bottle Design, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redbottledesign.accounting.quickbooks.pipeline;
+
+import com.redbottledesign.util.Argument;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Where the IIF file of one {@link TenantExport} is written.
+ *
+ * <p>The destination is only opened once the file has been built. The file is
+ * then rendered straight into the stream it returns, which is closed by the
+ * caller as soon as the file has been written.</p>
+ *
+ * @author Guy Paddock (guy@redbottledesign.com)
+ */
+@FunctionalInterface
+public interface ExportDestination {
+    /**
+     * Opens the destination for writing.
+     *
+     * @return  A new stream to write the file to.
+     *
+     * @throws  IOException
+     *          If the destination cannot be opened.
+     */
+    OutputStream open()
+    throws IOException;
+
+    /**
+     * Creates a destination that writes to a file, creating or replacing it.
+     *
+     * @param   path
+     *          The path of the file.
+     *
+     * @return  The destination.
+     */
+    static ExportDestination toFile(final Path path) {
+        Argument.ensureNotNull(path, "path");
+
+        return () -> Files.newOutputStream(path);
+    }
+}
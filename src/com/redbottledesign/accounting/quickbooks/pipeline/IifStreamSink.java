@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2016 Red Bottle Design, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redbottledesign.accounting.quickbooks.pipeline;
+
+import com.redbottledesign.accounting.quickbooks.iif.TransactionHeader;
+import com.redbottledesign.accounting.quickbooks.models.Transaction;
+import com.redbottledesign.accounting.quickbooks.util.IifUtils;
+import com.redbottledesign.util.Argument;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * A sink that writes transactions straight to a stream as an IIF file,
+ * without holding on to them.
+ *
+ * <p>The output is the same as that of an
+ * {@link com.redbottledesign.accounting.quickbooks.iif.IifFile} with the same
+ * transactions and no name tables: the transaction header, each transaction,
+ * and a trailing newline.</p>
+ *
+ * <p>The stream is flushed, but not closed, when the sink is finished.</p>
+ *
+ * @author Guy Paddock (guy@redbottledesign.com)
+ */
+public class IifStreamSink
+implements TransactionSink {
+    /**
+     * The size of the buffer used when writing to the stream.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Writer writer;
+
+    /**
+     * The number of transactions written so far.
+     */
+    private long transactionCount;
+
+    /**
+     * Whether or not the transaction header has been written.
+     */
+    private boolean isHeaderWritten;
+
+    /**
+     * Constructor for {@code IifStreamSink}.
+     *
+     * @param   output
+     *          The stream to write to.
+     */
+    public IifStreamSink(final OutputStream output) {
+        Argument.ensureNotNull(output, "output");
+
+        this.writer =
+            new BufferedWriter(new OutputStreamWriter(output, IifUtils.IIF_CHARSET), BUFFER_SIZE);
+    }
+
+    /**
+     * Gets the number of transactions written so far.
+     *
+     * @return  The transaction count.
+     */
+    public long getTransactionCount() {
+        return this.transactionCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(final Transaction transaction)
+    throws IOException {
+        Argument.ensureNotNull(transaction, "transaction");
+
+        this.writeHeaderIfNeeded();
+
+        this.writer.write('\n');
+        this.writer.write(transaction.toIifString());
+
+        ++this.transactionCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Writes the trailing newline that QuickBooks needs in order to process
+     * the last transaction, then flushes the stream.</p>
+     */
+    @Override
+    public void finish()
+    throws IOException {
+        this.writeHeaderIfNeeded();
+
+        this.writer.write('\n');
+        this.writer.flush();
+    }
+
+    /**
+     * Writes the transaction header, if it has not yet been written.
+     *
+     * @throws  IOException
+     *          If the stream cannot be written.
+     */
+    private void writeHeaderIfNeeded()
+    throws IOException {
+        if (!this.isHeaderWritten) {
+            this.writer.write(new TransactionHeader().toIifString());
+
+            this.isHeaderWritten = true;
+        }
+    }
+}
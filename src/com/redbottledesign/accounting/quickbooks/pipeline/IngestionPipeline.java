@@ -0,0 +1,557 @@
+/*
+ * Copyright (C) 2016 Red Bottle Design, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redbottledesign.accounting.quickbooks.pipeline;
+
+import com.redbottledesign.accounting.quickbooks.models.Transaction;
+import com.redbottledesign.util.Argument;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A multi-stage pipeline that reads records from a source, converts them into
+ * transactions in parallel, and writes the transactions to a sink in their
+ * original order.
+ *
+ * <p>The pipeline has three stages:</p>
+ * <ol>
+ *   <li><b>read</b> &ndash; a single thread reads records from the
+ *       {@link RecordSource} and groups them into batches.</li>
+ *   <li><b>build</b> &ndash; a pool of worker threads converts each batch
+ *       into transactions, using a {@link TransactionMapper}. Each worker
+ *       gets its own mapper, so mappers can re-use builders without any
+ *       synchronization.</li>
+ *   <li><b>write</b> &ndash; the thread that called {@link #run()} writes
+ *       the transactions of each batch to the {@link TransactionSink}, in the
+ *       same order as the records they came from.</li>
+ * </ol>
+ *
+ * <p>Batches are handed from the read stage to the write stage through a
+ * bounded queue, so at most {@link #getQueueCapacity()} batches are in
+ * memory at once, no matter how large the feed is. If the writer falls
+ * behind, the reader waits; if the reader falls behind, the workers and
+ * writer wait. The time each stage spends waiting is reported in the
+ * {@link PipelineStats} returned by {@link #run()}, along with its
+ * throughput.</p>
+ *
+ * <p>If any stage fails, the pipeline stops and the failure is re-thrown by
+ * {@link #run()}. A pipeline can be run more than once, as long as its source
+ * has more records.</p>
+ *
+ * @param   <R>
+ *          The type of record read from the source.
+ *
+ * @author Guy Paddock (guy@redbottledesign.com)
+ */
+public class IngestionPipeline<R> {
+    /**
+     * The default number of records in each batch.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    /**
+     * The default number of batches that can be in flight at once.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+    /**
+     * The marker that the read stage puts on the queue after the last batch.
+     */
+    private static final Future<List<Transaction>> END_OF_INPUT = CompletableFuture.completedFuture(null);
+
+    private final RecordSource<? extends R> source;
+    private final Supplier<? extends TransactionMapper<? super R>> mapperFactory;
+    private final TransactionSink sink;
+
+    private int workerCount;
+    private int queueCapacity;
+    private int batchSize;
+
+    /**
+     * Constructor for {@code IngestionPipeline}.
+     *
+     * <p>By default, there is one build worker per available processor.</p>
+     *
+     * @param   source
+     *          The source of records.
+     *
+     * @param   mapperFactory
+     *          The factory that creates the mapper for each build worker.
+     *
+     * @param   sink
+     *          The destination of the transactions.
+     */
+    public IngestionPipeline(final RecordSource<? extends R> source,
+                             final Supplier<? extends TransactionMapper<? super R>> mapperFactory,
+                             final TransactionSink sink) {
+        Argument.ensureNotNull(source,          "source");
+        Argument.ensureNotNull(mapperFactory,   "mapperFactory");
+        Argument.ensureNotNull(sink,            "sink");
+
+        this.source         = source;
+        this.mapperFactory  = mapperFactory;
+        this.sink           = sink;
+        this.workerCount    = Runtime.getRuntime().availableProcessors();
+        this.queueCapacity  = DEFAULT_QUEUE_CAPACITY;
+        this.batchSize      = DEFAULT_BATCH_SIZE;
+    }
+
+    /**
+     * Gets the number of threads in the build stage.
+     *
+     * @return  The number of build workers.
+     */
+    public int getWorkerCount() {
+        return this.workerCount;
+    }
+
+    /**
+     * Sets the number of threads in the build stage.
+     *
+     * @param   workerCount
+     *          The number of build workers.
+     *
+     * @return  This object, for chaining.
+     */
+    public IngestionPipeline<R> setWorkerCount(final int workerCount) {
+        Argument.ensureInRange(workerCount, 1, Integer.MAX_VALUE, "workerCount");
+
+        this.workerCount = workerCount;
+
+        return this;
+    }
+
+    /**
+     * Gets the maximum number of batches that can be in flight between the
+     * read and write stages.
+     *
+     * @return  The queue capacity, in batches.
+     */
+    public int getQueueCapacity() {
+        return this.queueCapacity;
+    }
+
+    /**
+     * Sets the maximum number of batches that can be in flight between the
+     * read and write stages.
+     *
+     * @param   queueCapacity
+     *          The queue capacity, in batches.
+     *
+     * @return  This object, for chaining.
+     */
+    public IngestionPipeline<R> setQueueCapacity(final int queueCapacity) {
+        Argument.ensureInRange(queueCapacity, 1, Integer.MAX_VALUE, "queueCapacity");
+
+        this.queueCapacity = queueCapacity;
+
+        return this;
+    }
+
+    /**
+     * Gets the number of records in each batch.
+     *
+     * @return  The batch size.
+     */
+    public int getBatchSize() {
+        return this.batchSize;
+    }
+
+    /**
+     * Sets the number of records in each batch.
+     *
+     * <p>Larger batches reduce the overhead of handing work between threads,
+     * at the cost of memory.</p>
+     *
+     * @param   batchSize
+     *          The batch size.
+     *
+     * @return  This object, for chaining.
+     */
+    public IngestionPipeline<R> setBatchSize(final int batchSize) {
+        Argument.ensureInRange(batchSize, 1, Integer.MAX_VALUE, "batchSize");
+
+        this.batchSize = batchSize;
+
+        return this;
+    }
+
+    /**
+     * Runs the pipeline until the source runs out of records, then finishes
+     * the sink.
+     *
+     * @return  The statistics of the run.
+     *
+     * @throws  IOException
+     *          If the source cannot be read, or the sink cannot be written.
+     *
+     * @throws  IllegalArgumentException
+     *          If a record could not be converted into a transaction.
+     *
+     * @throws  InterruptedException
+     *          If the calling thread is interrupted while waiting for the
+     *          other stages.
+     */
+    public PipelineStats run()
+    throws IOException, IllegalArgumentException, InterruptedException {
+        final Run                   run         = new Run(this.queueCapacity);
+        final ExecutorService       workers     =
+            Executors.newFixedThreadPool(this.workerCount, new StageThreadFactory("build"));
+        final Thread                reader      =
+            new StageThreadFactory("read").newThread(() -> this.readRecords(run, workers));
+        final long                  startTime   = System.nanoTime();
+        final long                  elapsedTime;
+
+        reader.start();
+
+        try {
+            this.writeTransactions(run);
+
+            reader.join();
+        }
+        finally {
+            reader.interrupt();
+            workers.shutdownNow();
+        }
+
+        elapsedTime = System.nanoTime() - startTime;
+
+        return new PipelineStats(
+            new StageStats(
+                "read", 1, run.readCount.sum(),
+                run.readBusyNanos.sum(), run.readStallNanos.sum(), elapsedTime),
+            new StageStats(
+                "build", this.workerCount, run.buildCount.sum(),
+                run.buildBusyNanos.sum(),
+                Math.max(0, (elapsedTime * this.workerCount) - run.buildBusyNanos.sum()),
+                elapsedTime),
+            new StageStats(
+                "write", 1, run.writeCount.sum(),
+                run.writeBusyNanos.sum(), run.writeStallNanos.sum(), elapsedTime),
+            run.skippedCount.sum(),
+            elapsedTime);
+    }
+
+    /**
+     * Runs the read stage: reads records in batches, hands each batch to the
+     * build workers, and queues the pending result for the write stage.
+     *
+     * <p>Any failure &mdash; including an {@link Error} thrown by the source
+     * &mdash; is queued in place of the next batch, so that the write stage
+     * re-throws it. Something is always queued to end the input, unless the
+     * write stage has already stopped.</p>
+     *
+     * @param   run
+     *          The state of the current run.
+     *
+     * @param   workers
+     *          The build workers.
+     */
+    protected void readRecords(final Run run, final ExecutorService workers) {
+        final ThreadLocal<TransactionMapper<? super R>> mappers =
+            ThreadLocal.withInitial(this.mapperFactory::get);
+
+        Future<List<Transaction>>   endOfInput          = END_OF_INPUT;
+        long                        nextRecordNumber    = 1;
+        boolean                     isAtEnd             = false;
+
+        try {
+            while (!isAtEnd) {
+                final long      readStart   = System.nanoTime();
+                final List<R>   records     = new ArrayList<>(this.batchSize);
+                R               record      = null;
+
+                try {
+                    while ((records.size() < this.batchSize) && ((record = this.source.read()) != null)) {
+                        records.add(record);
+                    }
+                }
+                catch (Throwable ex) {
+                    // Queue the failure after the records that were read successfully.
+                    endOfInput  = failedBatch(ex);
+                    record      = null;
+                }
+
+                isAtEnd = (record == null);
+
+                run.readBusyNanos.add(System.nanoTime() - readStart);
+                run.readCount.add(records.size());
+
+                if (!records.isEmpty()) {
+                    final long                      firstRecordNumber   = nextRecordNumber;
+                    final Future<List<Transaction>> pendingBatch        =
+                        workers.submit(() -> this.buildTransactions(run, mappers.get(), records, firstRecordNumber));
+                    final long                      stallStart          = System.nanoTime();
+
+                    run.pendingBatches.put(pendingBatch);
+                    run.readStallNanos.add(System.nanoTime() - stallStart);
+
+                    nextRecordNumber += records.size();
+                }
+            }
+
+            run.pendingBatches.put(endOfInput);
+        }
+        catch (InterruptedException ex) {
+            // The write stage has stopped; nothing is waiting on this stage.
+            Thread.currentThread().interrupt();
+        }
+        catch (Throwable ex) {
+            // Handing a batch to the workers failed; the write stage is still waiting.
+            try {
+                run.pendingBatches.put(failedBatch(ex));
+            }
+            catch (InterruptedException interruptedEx) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Creates a pending batch that has failed with the given exception.
+     *
+     * @param   failure
+     *          The exception.
+     *
+     * @return  The failed batch.
+     */
+    private static Future<List<Transaction>> failedBatch(final Throwable failure) {
+        final CompletableFuture<List<Transaction>> result = new CompletableFuture<>();
+
+        result.completeExceptionally(failure);
+
+        return result;
+    }
+
+    /**
+     * Runs the build stage for one batch: converts each record into a
+     * frozen transaction.
+     *
+     * @param   run
+     *          The state of the current run.
+     *
+     * @param   mapper
+     *          The mapper of the current worker.
+     *
+     * @param   records
+     *          The records in the batch.
+     *
+     * @param   firstRecordNumber
+     *          The one-based number of the first record in the batch, for
+     *          error messages.
+     *
+     * @return  The transactions for the batch, in order.
+     *
+     * @throws  IllegalArgumentException
+     *          If a record could not be converted.
+     */
+    protected List<Transaction> buildTransactions(final Run run, final TransactionMapper<? super R> mapper,
+                                                  final List<R> records, final long firstRecordNumber)
+    throws IllegalArgumentException {
+        final long              buildStart  = System.nanoTime();
+        final List<Transaction> result      = new ArrayList<>(records.size());
+
+        for (int recordIndex = 0; recordIndex < records.size(); ++recordIndex) {
+            final Transaction transaction;
+
+            try {
+                transaction = mapper.map(records.get(recordIndex));
+            }
+            catch (RuntimeException ex) {
+                throw new IllegalArgumentException(
+                    String.format(
+                        "Record %d could not be converted into a transaction: %s",
+                        firstRecordNumber + recordIndex,
+                        ex.getMessage()),
+                    ex);
+            }
+
+            if (transaction != null) {
+                result.add(transaction.freeze());
+            }
+            else {
+                run.skippedCount.increment();
+            }
+        }
+
+        run.buildBusyNanos.add(System.nanoTime() - buildStart);
+        run.buildCount.add(records.size());
+
+        return result;
+    }
+
+    /**
+     * Runs the write stage: takes each pending batch off of the queue in
+     * order, waits for it to be built, and writes its transactions to the
+     * sink.
+     *
+     * @param   run
+     *          The state of the current run.
+     *
+     * @throws  IOException
+     *          If the source cannot be read, or the sink cannot be written.
+     *
+     * @throws  InterruptedException
+     *          If the calling thread is interrupted.
+     */
+    protected void writeTransactions(final Run run)
+    throws IOException, InterruptedException {
+        List<Transaction> batch;
+
+        do {
+            final long stallStart = System.nanoTime();
+
+            batch = awaitBatch(run.pendingBatches.take());
+
+            run.writeStallNanos.add(System.nanoTime() - stallStart);
+
+            if (batch != null) {
+                final long writeStart = System.nanoTime();
+
+                for (Transaction transaction : batch) {
+                    this.sink.write(transaction);
+                }
+
+                run.writeBusyNanos.add(System.nanoTime() - writeStart);
+                run.writeCount.add(batch.size());
+            }
+        }
+        while (batch != null);
+
+        this.sink.finish();
+    }
+
+    /**
+     * Waits for a pending batch, and re-throws the failure of any stage that
+     * worked on it.
+     *
+     * @param   pendingBatch
+     *          The pending batch.
+     *
+     * @return  The transactions of the batch; or, {@code null} if this is
+     *          the end of the input.
+     *
+     * @throws  IOException
+     *          If the source could not be read.
+     *
+     * @throws  InterruptedException
+     *          If the calling thread is interrupted.
+     */
+    private static List<Transaction> awaitBatch(final Future<List<Transaction>> pendingBatch)
+    throws IOException, InterruptedException {
+        try {
+            return pendingBatch.get();
+        }
+        catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+
+            if (cause instanceof IOException) {
+                throw (IOException)cause;
+            }
+            else if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            else if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            else {
+                throw new IllegalStateException(cause);
+            }
+        }
+    }
+
+    /**
+     * The state shared by the stages during a single run of the pipeline.
+     */
+    protected static final class Run {
+        /**
+         * The batches that have been read, in order, whether or not they have
+         * been built yet.
+         */
+        private final BlockingQueue<Future<List<Transaction>>> pendingBatches;
+
+        /**
+         * The counters for each stage.
+         */
+        private final LongAdder readCount       = new LongAdder();
+        private final LongAdder readBusyNanos   = new LongAdder();
+        private final LongAdder readStallNanos  = new LongAdder();
+        private final LongAdder buildCount      = new LongAdder();
+        private final LongAdder buildBusyNanos  = new LongAdder();
+        private final LongAdder skippedCount    = new LongAdder();
+        private final LongAdder writeCount      = new LongAdder();
+        private final LongAdder writeBusyNanos  = new LongAdder();
+        private final LongAdder writeStallNanos = new LongAdder();
+
+        /**
+         * Constructor for {@code Run}.
+         *
+         * @param   queueCapacity
+         *          The maximum number of batches in flight.
+         */
+        private Run(final int queueCapacity) {
+            this.pendingBatches = new ArrayBlockingQueue<>(queueCapacity);
+        }
+    }
+
+    /**
+     * A factory for the daemon threads of a pipeline stage.
+     */
+    private static final class StageThreadFactory
+    implements ThreadFactory {
+        private final String stageName;
+        private final AtomicInteger threadCount;
+
+        /**
+         * Constructor for {@code StageThreadFactory}.
+         *
+         * @param   stageName
+         *          The name of the stage, used to name its threads.
+         */
+        private StageThreadFactory(final String stageName) {
+            this.stageName      = stageName;
+            this.threadCount    = new AtomicInteger();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread result =
+                new Thread(
+                    runnable,
+                    String.format("iif-pipeline-%s-%d", this.stageName, this.threadCount.incrementAndGet()));
+
+            result.setDaemon(true);
+
+            return result;
+        }
+    }
+}
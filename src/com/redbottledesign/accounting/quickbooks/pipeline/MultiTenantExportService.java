@@ -0,0 +1,654 @@
+/*
+ * Copyright (C) 2016 Red Bottle Design, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redbottledesign.accounting.quickbooks.pipeline;
+
+import com.redbottledesign.accounting.quickbooks.iif.IifExportable;
+import com.redbottledesign.accounting.quickbooks.util.IifUtils;
+import com.redbottledesign.util.Argument;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A service that exports the IIF files of many tenants (for example, client
+ * companies) at once, each to its own destination.
+ *
+ * <p>Each export runs on its own thread. When the JVM supports virtual
+ * threads (Java 21 and later), these are virtual threads; otherwise, they are
+ * daemon platform threads. A different {@link ThreadFactory} can be supplied
+ * instead. Either way, a thread is only started once its export has a turn to
+ * be in flight, so the number of export threads is bounded by the limit on
+ * open files rather than by the number of exports.</p>
+ *
+ * <p>Two limits keep the exports from overwhelming the machine:</p>
+ * <ul>
+ *   <li>the number of exports that can <em>render</em> at once &mdash;
+ *       build a file, and render it to IIF, which is CPU-heavy work &mdash;
+ *       defaults to the number of available processors; and</li>
+ *   <li>the number of exports that can be <em>in flight</em> at once &mdash;
+ *       waiting to render, rendering, or writing &mdash; defaults to
+ *       {@value #DEFAULT_MAX_OPEN_FILES}. This bounds the number of threads,
+ *       open destinations, and files held in memory.</li>
+ * </ul>
+ *
+ * <p>Each file is rendered into a small buffer, which is written to its
+ * destination whenever it fills up. An export only holds its turn to render
+ * while it is filling the buffer, and gives the turn up while the buffer is
+ * being written, so a slow destination does not hold up the rendering of
+ * other exports. The rendered form of a file is never held in memory in its
+ * entirety.</p>
+ *
+ * <p>Exports are independent: if one fails, the others carry on, and the
+ * failure is reported in its {@link TenantExportResult}.</p>
+ *
+ * @author Guy Paddock (guy@redbottledesign.com)
+ */
+public class MultiTenantExportService {
+    /**
+     * The default number of exports that can be in flight at once.
+     */
+    public static final int DEFAULT_MAX_OPEN_FILES = 64;
+
+    /**
+     * The size, in characters, of the buffer that each file is rendered into
+     * before it is written to its destination.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private ThreadFactory threadFactory;
+    private int maxConcurrentRenders;
+    private int maxOpenFiles;
+
+    /**
+     * Default constructor for {@code MultiTenantExportService}.
+     */
+    public MultiTenantExportService() {
+        this.threadFactory          = createDefaultThreadFactory();
+        this.maxConcurrentRenders   = Runtime.getRuntime().availableProcessors();
+        this.maxOpenFiles           = DEFAULT_MAX_OPEN_FILES;
+    }
+
+    /**
+     * Gets the factory of the thread that each export runs on.
+     *
+     * @return  The thread factory.
+     */
+    public ThreadFactory getThreadFactory() {
+        return this.threadFactory;
+    }
+
+    /**
+     * Sets the factory of the thread that each export runs on.
+     *
+     * @param   threadFactory
+     *          The thread factory.
+     *
+     * @return  This object, for chaining.
+     */
+    public MultiTenantExportService setThreadFactory(final ThreadFactory threadFactory) {
+        Argument.ensureNotNull(threadFactory, "threadFactory");
+
+        this.threadFactory = threadFactory;
+
+        return this;
+    }
+
+    /**
+     * Gets the maximum number of exports that can render at once.
+     *
+     * @return  The render limit.
+     */
+    public int getMaxConcurrentRenders() {
+        return this.maxConcurrentRenders;
+    }
+
+    /**
+     * Sets the maximum number of exports that can render at once.
+     *
+     * @param   maxConcurrentRenders
+     *          The render limit.
+     *
+     * @return  This object, for chaining.
+     */
+    public MultiTenantExportService setMaxConcurrentRenders(final int maxConcurrentRenders) {
+        Argument.ensureInRange(maxConcurrentRenders, 1, Integer.MAX_VALUE, "maxConcurrentRenders");
+
+        this.maxConcurrentRenders = maxConcurrentRenders;
+
+        return this;
+    }
+
+    /**
+     * Gets the maximum number of exports that can be in flight at once.
+     *
+     * @return  The limit on open files.
+     */
+    public int getMaxOpenFiles() {
+        return this.maxOpenFiles;
+    }
+
+    /**
+     * Sets the maximum number of exports that can be in flight at once.
+     *
+     * @param   maxOpenFiles
+     *          The limit on open files.
+     *
+     * @return  This object, for chaining.
+     */
+    public MultiTenantExportService setMaxOpenFiles(final int maxOpenFiles) {
+        Argument.ensureInRange(maxOpenFiles, 1, Integer.MAX_VALUE, "maxOpenFiles");
+
+        this.maxOpenFiles = maxOpenFiles;
+
+        return this;
+    }
+
+    /**
+     * Runs all of the given exports, and waits for them to finish.
+     *
+     * <p>The thread for each export is only created and started once a
+     * {@linkplain #getMaxOpenFiles() file permit} is free, so that the number of
+     * export threads stays bounded even when they are platform threads.</p>
+     *
+     * @param   exports
+     *          The exports to run.
+     *
+     * @return  The result of each export, in the same order as the exports.
+     *
+     * @throws  InterruptedException
+     *          If the calling thread is interrupted while waiting. The
+     *          exports that are still running are interrupted as well.
+     */
+    public List<TenantExportResult> exportAll(final Collection<? extends TenantExport> exports)
+    throws InterruptedException {
+        Argument.ensureNotNull(exports, "exports");
+
+        final long                  queuedTime      = System.nanoTime();
+        final List<TenantExport>    exportList      = new ArrayList<>(exports);
+        final TenantExportResult[]  results         = new TenantExportResult[exportList.size()];
+        final List<Thread>          threads         = new ArrayList<>(exportList.size());
+        final Semaphore             renderPermits   = new Semaphore(this.maxConcurrentRenders, true);
+        final Semaphore             filePermits     = new Semaphore(this.maxOpenFiles, true);
+
+        for (int exportIndex = 0; exportIndex < exportList.size(); ++exportIndex) {
+            Argument.ensureNotNull(exportList.get(exportIndex), "exports[" + exportIndex + "]");
+        }
+
+        try {
+            for (int exportIndex = 0; exportIndex < exportList.size(); ++exportIndex) {
+                final int           resultIndex = exportIndex;
+                final TenantExport  export      = exportList.get(exportIndex);
+
+                filePermits.acquire();
+
+                try {
+                    final Thread thread =
+                        this.threadFactory.newThread(() -> {
+                            try {
+                                results[resultIndex] = this.export(export, renderPermits, queuedTime);
+                            }
+                            finally {
+                                filePermits.release();
+                            }
+                        });
+
+                    thread.start();
+                    threads.add(thread);
+                }
+                catch (Throwable ex) {
+                    // The thread could not be created or started, so it will never release its permit.
+                    filePermits.release();
+
+                    results[resultIndex] = new TenantExportResult(export.getTenantId(), ex, 0, 0, 0, 0, 0);
+                }
+            }
+
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+        catch (InterruptedException ex) {
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+
+            throw ex;
+        }
+
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Runs a single export: waits for a turn to render, builds the file, and
+     * renders it to its destination.
+     *
+     * <p>The file is rendered through a {@link RenderBufferWriter}, which
+     * gives up the render permit of the export each time it writes its buffer
+     * to the destination, and waits for a permit again before rendering
+     * resumes.</p>
+     *
+     * <p>Any failure, including an {@link Error}, is reported in the result
+     * rather than thrown.</p>
+     *
+     * @param   export
+     *          The export to run.
+     *
+     * @param   renderPermits
+     *          The permits that limit how many exports render at once.
+     *
+     * @param   queuedTime
+     *          The {@linkplain System#nanoTime() time} at which the export was
+     *          queued, from which its wait time is measured.
+     *
+     * @return  The result of the export.
+     */
+    protected TenantExportResult export(final TenantExport export, final Semaphore renderPermits,
+                                        final long queuedTime) {
+        final RenderBufferWriter    writer      =
+            new RenderBufferWriter(export.getDestination(), renderPermits, queuedTime);
+        long                        buildNanos  = 0;
+        Throwable                   failure     = null;
+
+        try {
+            final IifExportable file;
+            final long          buildStart;
+
+            writer.acquireRenderPermit();
+
+            buildStart = System.nanoTime();
+
+            try {
+                file = export.getFileSupplier().get();
+            }
+            finally {
+                buildNanos = System.nanoTime() - buildStart;
+            }
+
+            file.writeTo(writer);
+
+            writer.close();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+
+            failure = ex;
+        }
+        catch (Throwable ex) {
+            failure = ex;
+        }
+
+        if (failure != null) {
+            writer.abandon(failure);
+        }
+
+        return new TenantExportResult(
+            export.getTenantId(),
+            failure,
+            writer.getByteCount(),
+            writer.getWaitNanos(),
+            buildNanos,
+            writer.getRenderPermitNanos() - buildNanos,
+            writer.getWriteNanos());
+    }
+
+    /**
+     * Creates the default thread factory: one for virtual threads, if the JVM
+     * supports them; otherwise, one for daemon platform threads.
+     *
+     * <p>Virtual threads are looked up reflectively, so that the library
+     * still runs on JVMs that predate them.</p>
+     *
+     * @return  The default thread factory.
+     */
+    private static ThreadFactory createDefaultThreadFactory() {
+        ThreadFactory result;
+
+        try {
+            final Object threadBuilder = Thread.class.getMethod("ofVirtual").invoke(null);
+
+            result =
+                (ThreadFactory)Class.forName("java.lang.Thread$Builder")
+                    .getMethod("factory")
+                    .invoke(threadBuilder);
+        }
+        catch (ReflectiveOperationException ex) {
+            final AtomicInteger threadCount = new AtomicInteger();
+
+            result = runnable -> {
+                final Thread thread =
+                    new Thread(runnable, "iif-tenant-export-" + threadCount.incrementAndGet());
+
+                thread.setDaemon(true);
+
+                return thread;
+            };
+        }
+
+        return result;
+    }
+
+    /**
+     * A writer that collects rendered output in a buffer while its export
+     * holds a render permit, and gives the permit up while it writes the
+     * buffer to the destination.
+     *
+     * <p>The destination is only opened once there is something to write to
+     * it, or once the writer is closed.</p>
+     */
+    private static final class RenderBufferWriter
+    extends Writer {
+        private final ExportDestination destination;
+        private final Semaphore renderPermits;
+        private final char[] buffer;
+        private int bufferLength;
+
+        /**
+         * The stream and writer of the destination, once it has been opened;
+         * or, {@code null}.
+         */
+        private CountingOutputStream output;
+        private Writer destinationWriter;
+
+        /**
+         * Whether the export currently holds a render permit, and when it was
+         * acquired.
+         */
+        private boolean isHoldingPermit;
+        private long permitTime;
+
+        /**
+         * When the export last started waiting for a render permit.
+         */
+        private long waitStartTime;
+
+        private long waitNanos;
+        private long renderPermitNanos;
+        private long writeNanos;
+
+        /**
+         * Constructor for {@code RenderBufferWriter}.
+         *
+         * @param   destination
+         *          The destination to write to.
+         *
+         * @param   renderPermits
+         *          The permits that limit how many exports render at once.
+         *
+         * @param   queuedTime
+         *          The {@linkplain System#nanoTime() time} at which the export
+         *          was queued, from which its wait for the first permit is
+         *          measured.
+         */
+        private RenderBufferWriter(final ExportDestination destination, final Semaphore renderPermits,
+                                   final long queuedTime) {
+            this.destination    = destination;
+            this.renderPermits  = renderPermits;
+            this.buffer         = new char[BUFFER_SIZE];
+            this.waitStartTime  = queuedTime;
+        }
+
+        /**
+         * Gets the number of bytes written to the destination so far.
+         *
+         * @return  The byte count.
+         */
+        private long getByteCount() {
+            final long result;
+
+            if (this.output != null) {
+                result = this.output.getByteCount();
+            }
+            else {
+                result = 0;
+            }
+
+            return result;
+        }
+
+        /**
+         * Gets the total time spent waiting for render permits.
+         *
+         * @return  The wait time, in nanoseconds.
+         */
+        private long getWaitNanos() {
+            return this.waitNanos;
+        }
+
+        /**
+         * Gets the total time that render permits were held.
+         *
+         * @return  The time, in nanoseconds.
+         */
+        private long getRenderPermitNanos() {
+            return this.renderPermitNanos;
+        }
+
+        /**
+         * Gets the total time spent opening, writing to, and closing the
+         * destination.
+         *
+         * @return  The write time, in nanoseconds.
+         */
+        private long getWriteNanos() {
+            return this.writeNanos;
+        }
+
+        /**
+         * Waits for a render permit.
+         *
+         * @throws  InterruptedException
+         *          If the thread is interrupted while waiting.
+         */
+        private void acquireRenderPermit()
+        throws InterruptedException {
+            this.renderPermits.acquire();
+
+            this.permitTime         = System.nanoTime();
+            this.waitNanos          += this.permitTime - this.waitStartTime;
+            this.isHoldingPermit    = true;
+        }
+
+        /**
+         * Gives up the render permit of the export, if it holds one.
+         */
+        private void releaseRenderPermit() {
+            if (this.isHoldingPermit) {
+                this.isHoldingPermit    = false;
+                this.renderPermitNanos  += System.nanoTime() - this.permitTime;
+
+                this.renderPermits.release();
+            }
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void write(final char[] chars, final int offset, final int length)
+        throws IOException {
+            int writtenCount = 0;
+
+            while (writtenCount < length) {
+                final int count = Math.min(length - writtenCount, this.buffer.length - this.bufferLength);
+
+                System.arraycopy(chars, offset + writtenCount, this.buffer, this.bufferLength, count);
+
+                this.bufferLength   += count;
+                writtenCount        += count;
+
+                if (this.bufferLength == this.buffer.length) {
+                    this.drain(true);
+                }
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * <p>The buffer is written to the destination, without the render
+         * permit.</p>
+         */
+        @Override
+        public void flush()
+        throws IOException {
+            this.drain(true);
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * <p>The render permit is given up for good, and the rest of the
+         * buffer is written to the destination before it is closed.</p>
+         */
+        @Override
+        public void close()
+        throws IOException {
+            final long writeStart;
+
+            this.drain(false);
+
+            writeStart = System.nanoTime();
+
+            this.destinationWriter.close();
+
+            this.writeNanos += System.nanoTime() - writeStart;
+        }
+
+        /**
+         * Gives up the render permit, and closes the destination if it was
+         * opened, after the export has failed. The buffer is discarded.
+         *
+         * @param   failure
+         *          The failure of the export, to which any failure to close
+         *          the destination is added as a suppressed exception.
+         */
+        private void abandon(final Throwable failure) {
+            this.releaseRenderPermit();
+
+            if (this.destinationWriter != null) {
+                try {
+                    this.destinationWriter.close();
+                }
+                catch (Throwable ex) {
+                    failure.addSuppressed(ex);
+                }
+            }
+        }
+
+        /**
+         * Gives up the render permit, writes the buffer to the destination,
+         * opening it first if needed, and optionally waits for a render permit
+         * again.
+         *
+         * @param   isResuming
+         *          {@code true} if rendering is going to resume afterwards, so
+         *          a render permit is needed again; or, {@code false}
+         *          otherwise.
+         *
+         * @throws  IOException
+         *          If the destination cannot be opened or written.
+         *
+         * @throws  InterruptedIOException
+         *          If the thread is interrupted while waiting for a render
+         *          permit.
+         */
+        private void drain(final boolean isResuming)
+        throws IOException, InterruptedIOException {
+            final long writeStart;
+
+            this.releaseRenderPermit();
+
+            writeStart = System.nanoTime();
+
+            if (this.destinationWriter == null) {
+                this.output             = new CountingOutputStream(this.destination.open());
+                this.destinationWriter  = new OutputStreamWriter(this.output, IifUtils.IIF_CHARSET);
+            }
+
+            this.destinationWriter.write(this.buffer, 0, this.bufferLength);
+
+            this.bufferLength   = 0;
+            this.waitStartTime  = System.nanoTime();
+            this.writeNanos     += this.waitStartTime - writeStart;
+
+            if (isResuming) {
+                try {
+                    this.acquireRenderPermit();
+                }
+                catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+
+                    throw new InterruptedIOException("Interrupted while waiting for a turn to render.");
+                }
+            }
+        }
+    }
+
+    /**
+     * A stream that counts the bytes written through it to another stream.
+     */
+    private static final class CountingOutputStream
+    extends FilterOutputStream {
+        private long byteCount;
+
+        /**
+         * Constructor for {@code CountingOutputStream}.
+         *
+         * @param   output
+         *          The stream to write to.
+         */
+        private CountingOutputStream(final OutputStream output) {
+            super(output);
+        }
+
+        /**
+         * Gets the number of bytes written so far.
+         *
+         * @return  The byte count.
+         */
+        private long getByteCount() {
+            return this.byteCount;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void write(final int value)
+        throws IOException {
+            this.out.write(value);
+
+            ++this.byteCount;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void write(final byte[] buffer, final int offset, final int length)
+        throws IOException {
+            this.out.write(buffer, offset, length);
+
+            this.byteCount += length;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2016 Red Bottle Design, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redbottledesign.accounting.quickbooks.pipeline;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A snapshot of how a run of an {@link IngestionPipeline} performed, stage by
+ * stage.
+ *
+ * @author Guy Paddock (guy@redbottledesign.com)
+ */
+public class PipelineStats {
+    private final StageStats readStage;
+    private final StageStats buildStage;
+    private final StageStats writeStage;
+    private final long skippedCount;
+    private final long elapsedNanos;
+
+    /**
+     * Constructor for {@code PipelineStats}.
+     *
+     * @param   readStage
+     *          The statistics of the stage that reads records.
+     *
+     * @param   buildStage
+     *          The statistics of the stage that builds transactions.
+     *
+     * @param   writeStage
+     *          The statistics of the stage that writes transactions.
+     *
+     * @param   skippedCount
+     *          The number of records that did not produce a transaction.
+     *
+     * @param   elapsedNanos
+     *          The wall-clock time the pipeline ran for.
+     */
+    public PipelineStats(final StageStats readStage, final StageStats buildStage,
+                         final StageStats writeStage, final long skippedCount,
+                         final long elapsedNanos) {
+        this.readStage      = readStage;
+        this.buildStage     = buildStage;
+        this.writeStage     = writeStage;
+        this.skippedCount   = skippedCount;
+        this.elapsedNanos   = elapsedNanos;
+    }
+
+    /**
+     * Gets the statistics of the stage that reads records from the source.
+     *
+     * @return  The read stage statistics.
+     */
+    public StageStats getReadStage() {
+        return this.readStage;
+    }
+
+    /**
+     * Gets the statistics of the stage that builds transactions from
+     * records.
+     *
+     * @return  The build stage statistics.
+     */
+    public StageStats getBuildStage() {
+        return this.buildStage;
+    }
+
+    /**
+     * Gets the statistics of the stage that writes transactions to the
+     * sink.
+     *
+     * @return  The write stage statistics.
+     */
+    public StageStats getWriteStage() {
+        return this.writeStage;
+    }
+
+    /**
+     * Gets the number of records that were read.
+     *
+     * @return  The record count.
+     */
+    public long getRecordCount() {
+        return this.readStage.getItemCount();
+    }
+
+    /**
+     * Gets the number of transactions that were written.
+     *
+     * @return  The transaction count.
+     */
+    public long getTransactionCount() {
+        return this.writeStage.getItemCount();
+    }
+
+    /**
+     * Gets the number of records that were skipped, because their mapper did
+     * not produce a transaction.
+     *
+     * @return  The skipped record count.
+     */
+    public long getSkippedCount() {
+        return this.skippedCount;
+    }
+
+    /**
+     * Gets the wall-clock time the pipeline ran for.
+     *
+     * @param   unit
+     *          The unit of the result.
+     *
+     * @return  The elapsed time.
+     */
+    public long getElapsedTime(final TimeUnit unit) {
+        return unit.convert(this.elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return  A multi-line report of the run, suitable for logging.
+     */
+    @Override
+    public String toString() {
+        return String.format(
+            "Pipeline: %,d records -> %,d transactions (%,d skipped) in %,d ms%n  %s%n  %s%n  %s",
+            this.getRecordCount(),
+            this.getTransactionCount(),
+            this.getSkippedCount(),
+            this.getElapsedTime(TimeUnit.MILLISECONDS),
+            this.readStage,
+            this.buildStage,
+            this.writeStage);
+    }
+}
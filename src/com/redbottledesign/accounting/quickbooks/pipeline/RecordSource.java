@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2016 Red Bottle Design, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redbottledesign.accounting.quickbooks.pipeline;
+
+import java.io.IOException;
+
+/**
+ * A source of input records for an {@link IngestionPipeline}, such as the
+ * rows of a CSV feed.
+ *
+ * <p>Records are read by a single thread, in order.</p>
+ *
+ * @param   <R>
+ *          The type of record produced by the source.
+ *
+ * @author Guy Paddock (guy@redbottledesign.com)
+ */
+@FunctionalInterface
+public interface RecordSource<R> {
+    /**
+     * Reads the next record from this source.
+     *
+     * @return  The next record; or, {@code null} if there are no more
+     *          records.
+     *
+     * @throws  IOException
+     *          If the record cannot be read.
+     */
+    R read()
+    throws IOException;
+}
@@ -0,0 +1,386 @@
+/*
+ * Copyright (C) 2016 Red Bottle Design, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redbottledesign.accounting.quickbooks.pipeline;
+
+import com.redbottledesign.accounting.quickbooks.iif.IifFile;
+import com.redbottledesign.accounting.quickbooks.models.Name;
+import com.redbottledesign.accounting.quickbooks.models.Transaction;
+import com.redbottledesign.accounting.quickbooks.util.IifUtils;
+import com.redbottledesign.util.Argument;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A sink that writes a complete IIF file, including name tables, in a single
+ * pass over transactions whose names are not known up front.
+ *
+ * <p>Name tables have to appear before the transaction header, but the names
+ * are not all known until the last transaction has been seen. This sink
+ * therefore spools the IIF output of each transaction to a temporary file as
+ * it arrives, while collecting the names the transactions use (see
+ * {@link IifFile#discoverNames(Transaction)}). When the sink is finished, it
+ * writes the name tables and transaction header to the target, and then
+ * copies the spooled transactions after them with
+ * {@link FileChannel#transferTo(long, long, WritableByteChannel)}, which lets
+ * the operating system move the bytes without copying them through the
+ * heap.</p>
+ *
+ * <p>Memory use therefore depends only on the number of distinct names, not
+ * on the number of transactions. The output is the same as that of an
+ * {@code IifFile} with name discovery enabled and the same
+ * transactions.</p>
+ *
+ * <p>The temporary file is deleted when the sink is closed.</p>
+ *
+ * @author Guy Paddock (guy@redbottledesign.com)
+ */
+public class SpoolingIifSink
+implements TransactionSink, Closeable {
+    /**
+     * The size of the buffer used when writing to the spool file.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The encoded form of the newline that separates transactions, and ends
+     * the file.
+     */
+    private static final byte[] NEWLINE = "\n".getBytes(IifUtils.IIF_CHARSET);
+
+    /**
+     * The channel that the finished file is written to.
+     */
+    private final WritableByteChannel target;
+
+    /**
+     * Whether or not the target was opened by this sink, and should be
+     * closed by it.
+     */
+    private final boolean isTargetOwned;
+
+    /**
+     * The file that holds the name tables being collected. It never holds
+     * any transactions.
+     */
+    private final IifFile nameTables;
+
+    /**
+     * The temporary file that transactions are spooled to.
+     */
+    private final Path spoolPath;
+    private final FileChannel spoolChannel;
+    private final Writer spoolWriter;
+
+    /**
+     * The number of transactions written so far.
+     */
+    private long transactionCount;
+
+    /**
+     * Constructor for {@code SpoolingIifSink} that writes to a file.
+     *
+     * <p>The file is created, or replaced if it exists. Transactions are
+     * spooled to a temporary file in the same directory.</p>
+     *
+     * @param   targetPath
+     *          The path of the IIF file to write.
+     *
+     * @throws  IOException
+     *          If either the target or the temporary file cannot be
+     *          created.
+     */
+    public SpoolingIifSink(final Path targetPath)
+    throws IOException {
+        this(openTarget(targetPath), true, targetPath.toAbsolutePath().getParent());
+    }
+
+    /**
+     * Constructor for {@code SpoolingIifSink} that writes to a channel.
+     *
+     * <p>The channel is not closed by this sink.</p>
+     *
+     * @param   target
+     *          The channel to write the finished file to.
+     *
+     * @param   spoolDirectory
+     *          The directory in which to create the temporary file.
+     *
+     * @throws  IOException
+     *          If the temporary file cannot be created.
+     */
+    public SpoolingIifSink(final WritableByteChannel target, final Path spoolDirectory)
+    throws IOException {
+        this(target, false, spoolDirectory);
+    }
+
+    /**
+     * Constructor for {@code SpoolingIifSink}.
+     *
+     * @param   target
+     *          The channel to write the finished file to.
+     *
+     * @param   isTargetOwned
+     *          Whether the sink should close the target when it is closed.
+     *
+     * @param   spoolDirectory
+     *          The directory in which to create the temporary file.
+     *
+     * @throws  IOException
+     *          If the temporary file cannot be created.
+     */
+    private SpoolingIifSink(final WritableByteChannel target, final boolean isTargetOwned,
+                            final Path spoolDirectory)
+    throws IOException {
+        Argument.ensureNotNull(target,          "target");
+        Argument.ensureNotNull(spoolDirectory,  "spoolDirectory");
+
+        this.target         = target;
+        this.isTargetOwned  = isTargetOwned;
+        this.nameTables     = new IifFile().setNameDiscoveryEnabled(true);
+
+        try {
+            this.spoolPath = Files.createTempFile(spoolDirectory, "iif-spool-", ".tmp");
+        }
+        catch (IOException ex) {
+            if (isTargetOwned) {
+                target.close();
+            }
+
+            throw ex;
+        }
+
+        try {
+            this.spoolChannel =
+                FileChannel.open(
+                    this.spoolPath,
+                    StandardOpenOption.READ,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE);
+        }
+        catch (IOException ex) {
+            Files.deleteIfExists(this.spoolPath);
+
+            if (isTargetOwned) {
+                target.close();
+            }
+
+            throw ex;
+        }
+
+        this.spoolWriter =
+            new BufferedWriter(
+                new OutputStreamWriter(Channels.newOutputStream(this.spoolChannel), IifUtils.IIF_CHARSET),
+                BUFFER_SIZE);
+    }
+
+    /**
+     * Opens the file that a sink writes to, creating or replacing it.
+     *
+     * @param   targetPath
+     *          The path of the IIF file to write.
+     *
+     * @return  The channel for writing the file.
+     *
+     * @throws  IOException
+     *          If the file cannot be opened.
+     */
+    private static FileChannel openTarget(final Path targetPath)
+    throws IOException {
+        Argument.ensureNotNull(targetPath, "targetPath");
+
+        return FileChannel.open(
+            targetPath,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Gets the number of transactions written so far.
+     *
+     * @return  The transaction count.
+     */
+    public long getTransactionCount() {
+        return this.transactionCount;
+    }
+
+    /**
+     * Determines whether names are discovered from transactions as they are
+     * written.
+     *
+     * @return  {@code true} if name discovery is enabled (the default); or,
+     *          {@code false} if only names that are declared explicitly are
+     *          written.
+     */
+    public boolean isNameDiscoveryEnabled() {
+        return this.nameTables.isNameDiscoveryEnabled();
+    }
+
+    /**
+     * Sets whether names are discovered from transactions as they are
+     * written.
+     *
+     * @param   isNameDiscoveryEnabled
+     *          Whether name discovery is enabled.
+     *
+     * @return  This object, for chaining.
+     *
+     * @see     IifFile#setNameDiscoveryEnabled(boolean)
+     */
+    public SpoolingIifSink setNameDiscoveryEnabled(final boolean isNameDiscoveryEnabled) {
+        this.nameTables.setNameDiscoveryEnabled(isNameDiscoveryEnabled);
+
+        return this;
+    }
+
+    /**
+     * Declares a customer name, in addition to any that are discovered.
+     *
+     * @param   customerName
+     *          The name to add to the customer table.
+     *
+     * @see     IifFile#addCustomerName(Name)
+     */
+    public void addCustomerName(final Name customerName) {
+        this.nameTables.addCustomerName(customerName);
+    }
+
+    /**
+     * Declares a vendor name, in addition to any that are discovered.
+     *
+     * @param   vendorName
+     *          The name to add to the vendor table.
+     *
+     * @see     IifFile#addVendorName(Name)
+     */
+    public void addVendorName(final Name vendorName) {
+        this.nameTables.addVendorName(vendorName);
+    }
+
+    /**
+     * Declares an other name, in addition to any that are discovered.
+     *
+     * @param   otherName
+     *          The name to add to the other names table.
+     *
+     * @see     IifFile#addOtherName(Name)
+     */
+    public void addOtherName(final Name otherName) {
+        this.nameTables.addOtherName(otherName);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The transaction is spooled to the temporary file, and its names are
+     * collected.</p>
+     */
+    @Override
+    public void write(final Transaction transaction)
+    throws IOException {
+        Argument.ensureNotNull(transaction, "transaction");
+
+        if (this.nameTables.isNameDiscoveryEnabled()) {
+            this.nameTables.discoverNames(transaction);
+        }
+
+        this.spoolWriter.write('\n');
+        this.spoolWriter.write(transaction.toIifString());
+
+        ++this.transactionCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Writes the name tables and transaction header to the target,
+     * followed by the spooled transactions and the trailing newline that
+     * QuickBooks needs in order to process the last transaction. The sink is
+     * then closed.</p>
+     */
+    @Override
+    public void finish()
+    throws IOException {
+        try {
+            final long  spoolSize;
+            long        position    = 0;
+
+            this.spoolWriter.flush();
+
+            spoolSize = this.spoolChannel.size();
+
+            this.writeFully(
+                ByteBuffer.wrap(this.nameTables.toHeaderIifString().getBytes(IifUtils.IIF_CHARSET)));
+
+            while (position < spoolSize) {
+                position += this.spoolChannel.transferTo(position, spoolSize - position, this.target);
+            }
+
+            this.writeFully(ByteBuffer.wrap(NEWLINE));
+        }
+        finally {
+            this.close();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Deletes the temporary file, and closes the target if it was opened by
+     * this sink. A sink that is closed without being finished leaves the
+     * target incomplete.</p>
+     */
+    @Override
+    public void close()
+    throws IOException {
+        try {
+            this.spoolChannel.close();
+        }
+        finally {
+            if (this.isTargetOwned) {
+                this.target.close();
+            }
+        }
+    }
+
+    /**
+     * Writes all of the given bytes to the target.
+     *
+     * @param   buffer
+     *          The bytes to write.
+     *
+     * @throws  IOException
+     *          If the target cannot be written.
+     */
+    private void writeFully(final ByteBuffer buffer)
+    throws IOException {
+        while (buffer.hasRemaining()) {
+            this.target.write(buffer);
+        }
+    }
+}
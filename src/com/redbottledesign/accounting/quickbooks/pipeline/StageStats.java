@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2016 Red Bottle Design, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redbottledesign.accounting.quickbooks.pipeline;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A snapshot of how one stage of an {@link IngestionPipeline} performed.
+ *
+ * <p>Busy time is the time the stage's threads spent doing useful work. Stall
+ * time is the time they spent blocked: waiting on a full queue for the next
+ * stage to catch up, or waiting on an empty one for the previous stage. A
+ * stage with high stall time and low busy time is not the bottleneck; adding
+ * threads or queue space elsewhere will help more.</p>
+ *
+ * @author Guy Paddock (guy@redbottledesign.com)
+ */
+public class StageStats {
+    private final String name;
+    private final int threadCount;
+    private final long itemCount;
+    private final long busyNanos;
+    private final long stallNanos;
+    private final long elapsedNanos;
+
+    /**
+     * Constructor for {@code StageStats}.
+     *
+     * @param   name
+     *          The name of the stage.
+     *
+     * @param   threadCount
+     *          The number of threads in the stage.
+     *
+     * @param   itemCount
+     *          The number of items the stage processed.
+     *
+     * @param   busyNanos
+     *          The total time spent working, across all threads.
+     *
+     * @param   stallNanos
+     *          The total time spent blocked, across all threads.
+     *
+     * @param   elapsedNanos
+     *          The wall-clock time the pipeline ran for.
+     */
+    public StageStats(final String name, final int threadCount, final long itemCount,
+                      final long busyNanos, final long stallNanos, final long elapsedNanos) {
+        this.name           = name;
+        this.threadCount    = threadCount;
+        this.itemCount      = itemCount;
+        this.busyNanos      = busyNanos;
+        this.stallNanos     = stallNanos;
+        this.elapsedNanos   = elapsedNanos;
+    }
+
+    /**
+     * Gets the name of the stage.
+     *
+     * @return  The stage name.
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Gets the number of threads in the stage.
+     *
+     * @return  The thread count.
+     */
+    public int getThreadCount() {
+        return this.threadCount;
+    }
+
+    /**
+     * Gets the number of items the stage processed.
+     *
+     * @return  The item count.
+     */
+    public long getItemCount() {
+        return this.itemCount;
+    }
+
+    /**
+     * Gets the total time spent working, across all threads of the stage.
+     *
+     * @param   unit
+     *          The unit of the result.
+     *
+     * @return  The busy time.
+     */
+    public long getBusyTime(final TimeUnit unit) {
+        return unit.convert(this.busyNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Gets the total time spent blocked, across all threads of the stage.
+     *
+     * @param   unit
+     *          The unit of the result.
+     *
+     * @return  The stall time.
+     */
+    public long getStallTime(final TimeUnit unit) {
+        return unit.convert(this.stallNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Gets the number of items the stage processed per second of wall-clock
+     * time.
+     *
+     * @return  The throughput, in items per second.
+     */
+    public double getThroughput() {
+        final double result;
+
+        if (this.elapsedNanos > 0) {
+            result = this.itemCount * (double)TimeUnit.SECONDS.toNanos(1) / this.elapsedNanos;
+        }
+        else {
+            result = 0;
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets the fraction of the stage's available thread time that was spent
+     * working.
+     *
+     * @return  The utilization, from {@code 0} to {@code 1}.
+     */
+    public double getUtilization() {
+        final double available = (double)this.elapsedNanos * this.threadCount;
+        final double result;
+
+        if (available > 0) {
+            result = Math.min(1, this.busyNanos / available);
+        }
+        else {
+            result = 0;
+        }
+
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return  A one-line summary of the stage.
+     */
+    @Override
+    public String toString() {
+        return String.format(
+            "%-6s threads: %3d  items: %,12d  throughput: %,12.0f/s  busy: %,8d ms  " +
+            "stalled: %,8d ms  utilization: %5.1f%%",
+            this.getName(),
+            this.getThreadCount(),
+            this.getItemCount(),
+            this.getThroughput(),
+            this.getBusyTime(TimeUnit.MILLISECONDS),
+            this.getStallTime(TimeUnit.MILLISECONDS),
+            this.getUtilization() * 100);
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2016 Red Bottle Design, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redbottledesign.accounting.quickbooks.pipeline;
+
+import com.redbottledesign.accounting.quickbooks.iif.IifExportable;
+import com.redbottledesign.util.Argument;
+
+import java.nio.file.Path;
+import java.util.function.Supplier;
+
+/**
+ * The export of one tenant's IIF file, as run by a
+ * {@link MultiTenantExportService}.
+ *
+ * <p>The file itself is supplied lazily, so that it is only built once the
+ * export has been given a turn to render, and can be discarded as soon as it
+ * has been written.</p>
+ *
+ * @author Guy Paddock (guy@redbottledesign.com)
+ */
+public class TenantExport {
+    private final String tenantId;
+    private final Supplier<? extends IifExportable> fileSupplier;
+    private final ExportDestination destination;
+
+    /**
+     * Constructor for {@code TenantExport}.
+     *
+     * @param   tenantId
+     *          The identifier of the tenant (for example, the client
+     *          company), used in reports.
+     *
+     * @param   fileSupplier
+     *          The supplier that builds the tenant's file, typically an
+     *          {@link com.redbottledesign.accounting.quickbooks.iif.IifFile}.
+     *
+     * @param   destination
+     *          Where the file is written.
+     */
+    public TenantExport(final String tenantId, final Supplier<? extends IifExportable> fileSupplier,
+                        final ExportDestination destination) {
+        Argument.ensureNotNull(tenantId,        "tenantId");
+        Argument.ensureNotNull(fileSupplier,    "fileSupplier");
+        Argument.ensureNotNull(destination,     "destination");
+
+        this.tenantId       = tenantId;
+        this.fileSupplier   = fileSupplier;
+        this.destination    = destination;
+    }
+
+    /**
+     * Constructor for {@code TenantExport} that writes to a file.
+     *
+     * @param   tenantId
+     *          The identifier of the tenant, used in reports.
+     *
+     * @param   fileSupplier
+     *          The supplier that builds the tenant's file.
+     *
+     * @param   path
+     *          The path of the file to write, which is created or replaced.
+     */
+    public TenantExport(final String tenantId, final Supplier<? extends IifExportable> fileSupplier,
+                        final Path path) {
+        this(tenantId, fileSupplier, ExportDestination.toFile(path));
+    }
+
+    /**
+     * Gets the identifier of the tenant.
+     *
+     * @return  The tenant identifier.
+     */
+    public String getTenantId() {
+        return this.tenantId;
+    }
+
+    /**
+     * Gets the supplier that builds the tenant's file.
+     *
+     * @return  The file supplier.
+     */
+    public Supplier<? extends IifExportable> getFileSupplier() {
+        return this.fileSupplier;
+    }
+
+    /**
+     * Gets where the tenant's file is written.
+     *
+     * @return  The destination.
+     */
+    public ExportDestination getDestination() {
+        return this.destination;
+    }
+}
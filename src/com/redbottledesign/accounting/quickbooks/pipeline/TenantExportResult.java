@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2016 Red Bottle Design, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redbottledesign.accounting.quickbooks.pipeline;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The outcome and timing of one {@link TenantExport}.
+ *
+ * <p>Time is broken down into the time spent waiting for a turn to render,
+ * building the file, rendering it to IIF, and writing it to its destination.
+ * Rendering and writing take turns, a buffer at a time, so the render and
+ * write times are each the total of many such turns.</p>
+ *
+ * @author Guy Paddock (guy@redbottledesign.com)
+ */
+public class TenantExportResult {
+    private final String tenantId;
+    private final Throwable failure;
+    private final long byteCount;
+    private final long waitNanos;
+    private final long buildNanos;
+    private final long renderNanos;
+    private final long writeNanos;
+
+    /**
+     * Constructor for {@code TenantExportResult}.
+     *
+     * @param   tenantId
+     *          The identifier of the tenant.
+     *
+     * @param   failure
+     *          The reason the export failed; or, {@code null} if it
+     *          succeeded.
+     *
+     * @param   byteCount
+     *          The number of bytes written.
+     *
+     * @param   waitNanos
+     *          The time spent waiting for a turn to render.
+     *
+     * @param   buildNanos
+     *          The time spent building the file.
+     *
+     * @param   renderNanos
+     *          The time spent rendering the file to IIF.
+     *
+     * @param   writeNanos
+     *          The time spent opening the destination, writing the rendered
+     *          file to it, and closing it.
+     */
+    public TenantExportResult(final String tenantId, final Throwable failure, final long byteCount,
+                              final long waitNanos, final long buildNanos, final long renderNanos,
+                              final long writeNanos) {
+        this.tenantId       = tenantId;
+        this.failure        = failure;
+        this.byteCount      = byteCount;
+        this.waitNanos      = waitNanos;
+        this.buildNanos     = buildNanos;
+        this.renderNanos    = renderNanos;
+        this.writeNanos     = writeNanos;
+    }
+
+    /**
+     * Gets the identifier of the tenant.
+     *
+     * @return  The tenant identifier.
+     */
+    public String getTenantId() {
+        return this.tenantId;
+    }
+
+    /**
+     * Determines whether the export succeeded.
+     *
+     * @return  {@code true} if the file was written in full; or,
+     *          {@code false} if the export failed.
+     */
+    public boolean isSuccessful() {
+        return (this.failure == null);
+    }
+
+    /**
+     * Gets the reason the export failed.
+     *
+     * @return  The failure; or, {@code null} if the export succeeded.
+     */
+    public Throwable getFailure() {
+        return this.failure;
+    }
+
+    /**
+     * Gets the number of bytes written to the destination.
+     *
+     * @return  The byte count.
+     */
+    public long getByteCount() {
+        return this.byteCount;
+    }
+
+    /**
+     * Gets the time spent waiting for a turn to render, both before the file
+     * was built and between writes.
+     *
+     * @param   unit
+     *          The unit of the result.
+     *
+     * @return  The wait time.
+     */
+    public long getWaitTime(final TimeUnit unit) {
+        return unit.convert(this.waitNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Gets the time spent building the file, before it was rendered.
+     *
+     * @param   unit
+     *          The unit of the result.
+     *
+     * @return  The build time.
+     */
+    public long getBuildTime(final TimeUnit unit) {
+        return unit.convert(this.buildNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Gets the time spent rendering the file to IIF, not including the time
+     * spent writing it.
+     *
+     * @param   unit
+     *          The unit of the result.
+     *
+     * @return  The render time.
+     */
+    public long getRenderTime(final TimeUnit unit) {
+        return unit.convert(this.renderNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Gets the time spent opening the destination, writing the rendered file
+     * to it, and closing it.
+     *
+     * @param   unit
+     *          The unit of the result.
+     *
+     * @return  The write time.
+     */
+    public long getWriteTime(final TimeUnit unit) {
+        return unit.convert(this.writeNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Gets the total time taken by the export, from when it started waiting
+     * until it finished writing.
+     *
+     * @param   unit
+     *          The unit of the result.
+     *
+     * @return  The total time.
+     */
+    public long getTotalTime(final TimeUnit unit) {
+        return unit.convert(this.waitNanos + this.buildNanos + this.renderNanos + this.writeNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return  A one-line summary of the export.
+     */
+    @Override
+    public String toString() {
+        return String.format(
+            "%-24s %-6s bytes: %,12d  wait: %,8d ms  build: %,8d ms  render: %,8d ms  write: %,8d ms%s",
+            this.getTenantId(),
+            this.isSuccessful() ? "ok" : "FAILED",
+            this.getByteCount(),
+            this.getWaitTime(TimeUnit.MILLISECONDS),
+            this.getBuildTime(TimeUnit.MILLISECONDS),
+            this.getRenderTime(TimeUnit.MILLISECONDS),
+            this.getWriteTime(TimeUnit.MILLISECONDS),
+            this.isSuccessful() ? "" : ("  (" + this.getFailure() + ")"));
+    }
+}
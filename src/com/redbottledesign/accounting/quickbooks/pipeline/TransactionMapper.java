@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2016 Red Bottle Design, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redbottledesign.accounting.quickbooks.pipeline;
+
+import com.redbottledesign.accounting.quickbooks.models.Transaction;
+
+/**
+ * Converts an input record into a transaction, usually by way of one of the
+ * transaction builders.
+ *
+ * <p>An {@link IngestionPipeline} creates a separate mapper for each of its
+ * build workers, so a mapper can keep a builder of its own and
+ * {@code reset()} it for each record, without any synchronization.</p>
+ *
+ * @param   <R>
+ *          The type of record being converted.
+ *
+ * @author Guy Paddock (guy@redbottledesign.com)
+ */
+@FunctionalInterface
+public interface TransactionMapper<R> {
+    /**
+     * Converts the given record into a transaction.
+     *
+     * @param   record
+     *          The record to convert.
+     *
+     * @return  The transaction for the record; or, {@code null} if the
+     *          record should be skipped.
+     */
+    Transaction map(R record);
+}
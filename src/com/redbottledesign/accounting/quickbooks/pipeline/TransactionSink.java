@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2016 Red Bottle Design, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redbottledesign.accounting.quickbooks.pipeline;
+
+import com.redbottledesign.accounting.quickbooks.models.Transaction;
+
+import java.io.IOException;
+
+/**
+ * The destination of the transactions produced by an
+ * {@link IngestionPipeline}.
+ *
+ * <p>Transactions are written by a single thread, in the same order as the
+ * records they came from. A method reference such as
+ * {@code iifFile::addOwned} can be used as a sink.</p>
+ *
+ * @author Guy Paddock (guy@redbottledesign.com)
+ */
+@FunctionalInterface
+public interface TransactionSink {
+    /**
+     * Writes the given transaction.
+     *
+     * @param   transaction
+     *          The transaction to write. It has been
+     *          {@linkplain Transaction#freeze() frozen}.
+     *
+     * @throws  IOException
+     *          If the transaction cannot be written.
+     */
+    void write(Transaction transaction)
+    throws IOException;
+
+    /**
+     * Called once all transactions have been written successfully.
+     *
+     * <p>By default, this does nothing.</p>
+     *
+     * @throws  IOException
+     *          If the sink cannot be finished.
+     */
+    default void finish()
+    throws IOException {
+        // Nothing to do by default.
+    }
+}
@@ -23,6 +23,7 @@ import com.redbottledesign.util.Argument;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.Writer;
+import java.nio.charset.Charset;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
@@ -33,6 +34,11 @@ import java.util.List;
  * @author Guy Paddock (guy@redbottledesign.com)
  */
 public class IifUtils {
+    /**
+     * The character set QuickBooks expects IIF files to be encoded in.
+     */
+    public static final Charset IIF_CHARSET = Charset.forName("windows-1252");
+
     /**
      * Private constructor to ensure this class is static.
      */